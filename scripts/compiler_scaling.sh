@@ -0,0 +1,11 @@
+#!/bin/bash
+
+if [[ ! -e benchmarking_results ]]; then
+    mkdir benchmarking_results
+elif [[ ! -d benchmarking_results ]]; then
+    rm benchmarking_results
+    mkdir benchmarking_results
+fi
+
+./gradlew compilerScalingBenchmark
+python3 scripts/plot_compiler_scaling.py
@@ -0,0 +1,41 @@
+import matplotlib.pyplot as plt
+import pandas as pd
+
+
+COLOR1 = '#68c8c6'
+COLOR2 = '#ff6166'
+
+
+data_csv = pd.read_csv('benchmarking_results/compiler_scaling.csv')
+
+
+def plot_graph(column, y_axis_label, color, title, pdf_location):
+    fig, ax = plt.subplots(figsize=(5,3.5))
+    ax.plot(data_csv['Lines'], data_csv[column], marker='o', color=color)
+
+    ax.set_ylabel(y_axis_label)
+    ax.set_xlabel('Lines of Code')
+    ax.set_xscale('log')
+    ax.set_yscale('log')
+    ax.set_title(title)
+    fig.tight_layout()
+
+    fig.savefig(pdf_location, bbox_inches='tight')
+    print('Created ' + pdf_location)
+
+
+plot_graph(
+    'Median Time (ms)',
+    'Median Compile Time (ms)',
+    COLOR1,
+    'Compile Time',
+    'benchmarking_results/compiler_scaling_time.pdf'
+)
+
+plot_graph(
+    'Peak Heap (MB)',
+    'Peak Heap Usage (MB)',
+    COLOR2,
+    'Compiler Memory Usage',
+    'benchmarking_results/compiler_scaling_memory.pdf'
+)
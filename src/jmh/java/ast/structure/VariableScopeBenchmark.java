@@ -0,0 +1,54 @@
+package ast.structure;
+
+import ast.types.PrimitiveType;
+import errors.MultipleVariableDeclarationException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures looking up variables from the innermost of a chain of nested
+ * scopes, each of which declares a few variables of its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VariableScopeBenchmark {
+
+    private static final int VARIABLES_PER_SCOPE = 4;
+
+    @Param({"1", "4", "16"})
+    public int depth;
+
+    private VariableScope innermostScope;
+    private String innermostVariable;
+    private String outermostVariable;
+
+    @Setup(Level.Trial)
+    public void setUp() throws MultipleVariableDeclarationException {
+        VariableScope scope = null;
+        for (int level = 0; level < depth; level++) {
+            scope = (scope == null) ? new VariableScope() : new VariableScope(scope);
+            for (int i = 0; i < VARIABLES_PER_SCOPE; i++) {
+                scope.registerVariable("variable_" + level + "_" + i, PrimitiveType.Int);
+            }
+        }
+        innermostScope = scope;
+        innermostVariable = "variable_" + (depth - 1) + "_0";
+        outermostVariable = "variable_0_0";
+    }
+
+    @Benchmark
+    public VariableScope.Allocation lookupInnermostVariable() {
+        return innermostScope.getVariableWithName(innermostVariable);
+    }
+
+    @Benchmark
+    public VariableScope.Allocation lookupOutermostVariable() {
+        return innermostScope.getVariableWithName(outermostVariable);
+    }
+
+}
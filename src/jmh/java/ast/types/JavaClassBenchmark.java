@@ -0,0 +1,55 @@
+package ast.types;
+
+import errors.DuplicateClassAttributeException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures computing the pointer information that is written into the
+ * header of every object, for the deepest class in a chain of subclasses.
+ *
+ * Each class in the chain alternates between primitive and reference
+ * attributes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JavaClassBenchmark {
+
+    @Param({"1", "8"})
+    public int depth;
+
+    @Param({"4", "33"})
+    public int attributesPerClass;
+
+    private JavaClass javaClass;
+
+    @Setup(Level.Trial)
+    public void setUp() throws DuplicateClassAttributeException {
+        JavaClass referencedClass = new JavaClass("Referenced", Collections.emptyList(), null);
+        JavaClass parent = null;
+        for (int level = 0; level < depth; level++) {
+            List<JavaClass.ClassAttribute> attributes = new ArrayList<>();
+            for (int i = 0; i < attributesPerClass; i++) {
+                Type type = (i % 2 == 0) ? PrimitiveType.Int : referencedClass;
+                String name = "attribute_" + level + "_" + i;
+                attributes.add(new JavaClass.ClassAttribute(name, type, AccessModifier.PRIVATE));
+            }
+            parent = new JavaClass("Class" + level, attributes, parent);
+        }
+        javaClass = parent;
+    }
+
+    @Benchmark
+    public List<Integer> getEncodedPointersDescription() {
+        return javaClass.getEncodedPointersDescription();
+    }
+
+}
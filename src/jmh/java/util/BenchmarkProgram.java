@@ -0,0 +1,137 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The programs that the compiler benchmarks are run against.
+ *
+ * The paths are relative to the root of the project, which is the working
+ * directory used by the jmh Gradle task.
+ */
+public enum BenchmarkProgram {
+
+    /**
+     * The linked list benchmark program, which has three small files
+     */
+    SMALL,
+
+    /**
+     * All of the test programs that are compiled by compile_examples.sh
+     */
+    MEDIUM,
+
+    /**
+     * Many copies of the test programs, with the classes in each copy renamed
+     * so that they do not clash
+     */
+    HUGE;
+
+    private static final String BENCHMARKS_DIR = "sample_programs/benchmarks/java/";
+    private static final String TESTS_DIR = "sample_programs/tests/";
+
+    private static final String[] SMALL_FILES = {
+            "Benchmarks.java",
+            "LinkedList.java",
+            "LinkedListNode.java"
+    };
+
+    private static final String[] MEDIUM_FILES = {
+            "Arrays.java",
+            "Child.java",
+            "Classes.java",
+            "ClassWith33Attributes.java",
+            "DynamicPolymorphism.java",
+            "ExampleClass.java",
+            "Expressions.java",
+            "Functions.java",
+            "FunctionsExternal.java",
+            "Integer.java",
+            "LanguageConstructs.java",
+            "Parent.java",
+            "GarbageCollection.java",
+            "NullTest.java",
+            "TypeRanges.java",
+            "LinkedList.java",
+            "LinkedListNode.java",
+            "GenericContainer.java",
+            "GenericTypes.java"
+    };
+
+    /**
+     * The number of copies of the test programs that make up the huge input
+     */
+    private static final int NUM_HUGE_COPIES = 25;
+
+    private static final Pattern CLASS_NAME_PATTERN = Pattern.compile("\\bclass\\s+([A-Za-z_][A-Za-z_0-9]*)");
+
+    /**
+     * Returns the files that make up this program, creating them first if
+     * they are generated.
+     *
+     * @return The paths of the files to compile
+     * @throws IOException If the files cannot be read or created
+     */
+    public String[] getFiles() throws IOException {
+        switch (this) {
+            case SMALL:
+                return prefixAll(BENCHMARKS_DIR, SMALL_FILES);
+            case MEDIUM:
+                return prefixAll(TESTS_DIR, MEDIUM_FILES);
+            default:
+                return generateHugeProgram();
+        }
+    }
+
+    private static String[] prefixAll(String directory, String[] fileNames) {
+        String[] paths = new String[fileNames.length];
+        for (int i = 0; i < fileNames.length; i++) {
+            paths[i] = directory + fileNames[i];
+        }
+        return paths;
+    }
+
+    /**
+     * Writes NUM_HUGE_COPIES copies of the test programs to a temporary
+     * directory, appending the number of the copy to every class name.
+     *
+     * @return The paths of the generated files
+     * @throws IOException If the files cannot be read or created
+     */
+    private static String[] generateHugeProgram() throws IOException {
+        List<String> sources = new ArrayList<>();
+        List<String> classNames = new ArrayList<>();
+        for (String path : prefixAll(TESTS_DIR, MEDIUM_FILES)) {
+            String source = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+            sources.add(source);
+            Matcher matcher = CLASS_NAME_PATTERN.matcher(source);
+            while (matcher.find()) {
+                classNames.add(matcher.group(1));
+            }
+        }
+        Pattern classNamePattern = Pattern.compile("\\b(" + String.join("|", classNames) + ")\\b");
+
+        Path directory = Files.createTempDirectory("javassembler-benchmark");
+        directory.toFile().deleteOnExit();
+        List<String> paths = new ArrayList<>();
+        for (int copy = 0; copy < NUM_HUGE_COPIES; copy++) {
+            for (int i = 0; i < sources.size(); i++) {
+                String renamed = classNamePattern.matcher(sources.get(i)).replaceAll("$1_" + copy);
+                File file = directory.resolve(copy + "_" + MEDIUM_FILES[i]).toFile();
+                file.deleteOnExit();
+                Files.write(file.toPath(), renamed.getBytes(StandardCharsets.UTF_8));
+                paths.add(file.getPath());
+            }
+        }
+        return paths.toArray(new String[0]);
+    }
+
+}
@@ -0,0 +1,137 @@
+package util;
+
+import ast.structure.ClassMethod;
+import ast.types.GenericClassInstantiationCache;
+import codegen.CodeEmitter;
+import codegen.WasmGenerator;
+import errors.SyntaxErrorException;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import parser.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each phase of the compiler in the same order as
+ * Compilation.compileFiles, on programs of several sizes.
+ *
+ * The output of every phase before the one being measured is computed once,
+ * in setUp().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilationPipelineBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public BenchmarkProgram program;
+
+    private String[] files;
+    private ParserWrapper parserWrapper;
+    private List<JavaFileParser.ClassDefinitionContext> classes;
+    private FunctionAndClassTableBuilder tables;
+    private GenericClassInstantiationCache instantiationCache;
+    private VirtualTable virtualTable;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SyntaxErrorException {
+        files = program.getFiles();
+        parserWrapper = new ParserWrapper();
+        List<CharStream> sources = new ArrayList<>();
+        for (String file : files) {
+            sources.add(CharStreams.fromFileName(file));
+        }
+        classes = orderClasses(parserWrapper.parseAll(sources));
+        tables = buildTables(classes);
+        instantiationCache = new GenericClassInstantiationCache(tables.getFunctionTable(), tables.getClassTable());
+
+        // Building the ASTs instantiates any generic classes that are used,
+        // which must happen before the virtual table is built
+        buildASTs();
+        virtualTable = tables.getClassTable().buildCombinedVirtualTable();
+    }
+
+    /**
+     * Holds a fresh set of ASTs for each invocation of generateCode(), since
+     * code generation modifies the ASTs that it compiles.
+     */
+    @State(Scope.Thread)
+    public static class MethodASTs {
+
+        private List<ClassMethod> methods;
+
+        @Setup(Level.Invocation)
+        public void setUp(CompilationPipelineBenchmark pipeline) {
+            methods = pipeline.buildASTs();
+        }
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) throws IOException, SyntaxErrorException {
+        for (String file : files) {
+            blackhole.consume(parserWrapper.parse(CharStreams.fromFileName(file)));
+        }
+    }
+
+    @Benchmark
+    public void parseDeclarations(Blackhole blackhole) throws IOException, SyntaxErrorException {
+        for (String file : files) {
+            blackhole.consume(parserWrapper.parseDeclarations(CharStreams.fromFileName(file)));
+        }
+    }
+
+    @Benchmark
+    public FunctionAndClassTableBuilder buildTables() {
+        return buildTables(classes);
+    }
+
+    @Benchmark
+    public List<ClassMethod> buildASTs() {
+        return Compilation.buildASTs(tables.getSubroutines(), tables.getContainingClasses(),
+                tables.getFunctionTable(), tables.getClassTable(), instantiationCache, parserWrapper,
+                new ArrayList<>());
+    }
+
+    @Benchmark
+    public String generateCode(MethodASTs methodASTs) {
+        List<String> compiledMethods = WasmGenerator.compileMethods(methodASTs.methods,
+                tables.getFunctionTable(), tables.getClassTable(), virtualTable, null, null, null);
+        CodeEmitter emitter = new CodeEmitter();
+        WasmGenerator.emitModule(compiledMethods, emitter, tables.getFunctionTable(), virtualTable, false, false);
+        return emitter.getEmittedCode();
+    }
+
+    private static List<JavaFileParser.ClassDefinitionContext> orderClasses(
+            List<JavaFileParser.FileContext> parseTrees) {
+        ClassHierarchyBuilder hierarchyBuilder = new ClassHierarchyBuilder();
+        for (JavaFileParser.FileContext parseTree : parseTrees) {
+            hierarchyBuilder.visit(parseTree);
+        }
+        return hierarchyBuilder.getSerialClassOrdering();
+    }
+
+    /**
+     * Builds and validates the class and function tables.
+     */
+    private static FunctionAndClassTableBuilder buildTables(
+            List<JavaFileParser.ClassDefinitionContext> classes) {
+        FunctionAndClassTableBuilder builder = new FunctionAndClassTableBuilder();
+        for (JavaFileParser.ClassDefinitionContext classDefinitionContext : classes) {
+            builder.visit(classDefinitionContext);
+        }
+        ClassTable classTable = builder.getClassTable();
+        FunctionTable functionTable = builder.getFunctionTable();
+        classTable.validateAllTypes();
+        functionTable.validateAllTypes(classTable);
+        return builder;
+    }
+
+}
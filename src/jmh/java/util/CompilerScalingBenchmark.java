@@ -0,0 +1,106 @@
+package util;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Measures how the time and peak heap usage of a whole compilation grow with
+ * the size of the program, using programs from SyntheticProgramGenerator.
+ *
+ * This does not use JMH, since JMH cannot report peak heap usage. Instead,
+ * each program is compiled a number of times in this JVM after a warmup, and
+ * the median time and the largest peak heap usage are recorded. The results
+ * are written as CSV, to be plotted by scripts/plot_compiler_scaling.py.
+ */
+public class CompilerScalingBenchmark {
+
+    /**
+     * The numbers of classes in the programs that are compiled
+     */
+    private static final int[] NUM_CLASSES = {25, 50, 100, 200, 400, 800, 1600};
+
+    private static final int NUM_WARMUP_RUNS = 3;
+    private static final int NUM_MEASURED_RUNS = 5;
+
+    private static final String DEFAULT_RESULTS_FILE = "benchmarking_results/compiler_scaling.csv";
+
+    public static void main(String[] args) throws IOException {
+        Path resultsFile = Paths.get(args.length > 0 ? args[0] : DEFAULT_RESULTS_FILE);
+        if (resultsFile.getParent() != null) {
+            Files.createDirectories(resultsFile.getParent());
+        }
+        Path workingDirectory = Files.createTempDirectory("javassembler-scaling");
+
+        try (PrintWriter results = new PrintWriter(Files.newBufferedWriter(resultsFile, StandardCharsets.UTF_8))) {
+            results.println("Classes,Lines,Median Time (ms),Peak Heap (MB)");
+            for (int numClasses : NUM_CLASSES) {
+                SyntheticProgramGenerator generator = new SyntheticProgramGenerator();
+                generator.setNumClasses(numClasses);
+                generator.setNumInstantiations(numClasses / 2);
+                Path programDirectory = workingDirectory.resolve("program" + numClasses);
+                String[] files = generator.generate(programDirectory).toArray(new String[0]);
+                String outputFile = workingDirectory.resolve("program" + numClasses + ".wat").toString();
+
+                for (int run = 0; run < NUM_WARMUP_RUNS; run++) {
+                    Compilation.compileFiles(files, outputFile, false);
+                }
+                long[] times = new long[NUM_MEASURED_RUNS];
+                long peakHeap = 0;
+                for (int run = 0; run < NUM_MEASURED_RUNS; run++) {
+                    System.gc();
+                    resetPeakHeapUsage();
+                    long start = System.nanoTime();
+                    Compilation.compileFiles(files, outputFile, false);
+                    times[run] = System.nanoTime() - start;
+                    peakHeap = Math.max(peakHeap, getPeakHeapUsage());
+                }
+                Arrays.sort(times);
+
+                double medianMillis = times[NUM_MEASURED_RUNS / 2] / 1e6;
+                double peakHeapMegabytes = peakHeap / (1024.0 * 1024.0);
+                results.printf("%d,%d,%.3f,%.3f%n", numClasses, generator.getNumLines(),
+                        medianMillis, peakHeapMegabytes);
+                results.flush();
+                System.out.printf("%5d classes, %7d lines: %10.3f ms, %8.3f MB%n",
+                        numClasses, generator.getNumLines(), medianMillis, peakHeapMegabytes);
+            }
+        }
+        System.out.println("Wrote " + resultsFile);
+    }
+
+    private static List<MemoryPoolMXBean> getHeapPools() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .collect(Collectors.toList());
+    }
+
+    private static void resetPeakHeapUsage() {
+        for (MemoryPoolMXBean pool : getHeapPools()) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    /**
+     * Returns the sum of the peak usage of each heap memory pool since they
+     * were last reset. The pools do not necessarily peak at the same time, so
+     * this is an upper bound on the true peak.
+     */
+    private static long getPeakHeapUsage() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : getHeapPools()) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+}
@@ -0,0 +1,68 @@
+package util;
+
+import ast.types.PrimitiveType;
+import ast.types.Type;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures looking up method signatures in a LookupTree, in the same way as
+ * the function table and virtual table lookups.
+ *
+ * The tree holds every signature made up of primitive types with up to
+ * maxParameters parameters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupTreeBenchmark {
+
+    @Param({"1", "2", "3"})
+    public int maxParameters;
+
+    private LookupTree<Integer> lookupTree;
+    private List<List<Type>> signatures;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        signatures = new ArrayList<>();
+        List<List<Type>> shorterSignatures = Collections.singletonList(Collections.emptyList());
+        signatures.addAll(shorterSignatures);
+        for (int numParameters = 1; numParameters <= maxParameters; numParameters++) {
+            List<List<Type>> longerSignatures = new ArrayList<>();
+            for (List<Type> signature : shorterSignatures) {
+                for (PrimitiveType type : PrimitiveType.values()) {
+                    List<Type> longerSignature = new ArrayList<>(signature);
+                    longerSignature.add(type);
+                    longerSignatures.add(longerSignature);
+                }
+            }
+            signatures.addAll(longerSignatures);
+            shorterSignatures = longerSignatures;
+        }
+
+        lookupTree = new LookupTree<>();
+        for (int i = 0; i < signatures.size(); i++) {
+            lookupTree.insert(LookupTree.getEdges(signatures.get(i)), i);
+        }
+    }
+
+    /**
+     * Looks up every signature in the tree once.
+     */
+    @Benchmark
+    public void lookup(Blackhole blackhole) {
+        for (List<Type> signature : signatures) {
+            blackhole.consume(lookupTree.lookup(signature));
+        }
+    }
+
+}
@@ -0,0 +1,302 @@
+package util;
+
+import org.apache.commons.cli.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates large programs, in the subset of Java accepted by JavaFile.g4,
+ * for measuring how the compiler scales.
+ *
+ * Every program consists of numClasses classes, Class0 to ClassN, plus a
+ * generic class Box and a class Instantiations that instantiates Box. The
+ * classes form chains of subclasses hierarchyDepth long, and each class
+ * overrides numOverloads overloads of a method called compute, so that the
+ * virtual tables grow with both parameters. Each class also has a long
+ * static method made up of loopDepth nested for loops, the innermost of
+ * which contains statementsPerLoop statements.
+ *
+ * Each class is written to its own file, as the grammar requires.
+ */
+public class SyntheticProgramGenerator {
+
+    private int numClasses;
+    private int hierarchyDepth;
+    private int numOverloads;
+    private int numInstantiations;
+    private int loopDepth;
+    private int statementsPerLoop;
+
+    /**
+     * The number of lines written by the most recent call to generate()
+     */
+    private int numLines;
+
+    public SyntheticProgramGenerator() {
+        numClasses = 100;
+        hierarchyDepth = 5;
+        numOverloads = 4;
+        numInstantiations = 10;
+        loopDepth = 3;
+        statementsPerLoop = 10;
+        numLines = 0;
+    }
+
+    public void setNumClasses(int numClasses) {
+        this.numClasses = numClasses;
+    }
+
+    public void setHierarchyDepth(int hierarchyDepth) {
+        this.hierarchyDepth = hierarchyDepth;
+    }
+
+    public void setNumOverloads(int numOverloads) {
+        this.numOverloads = numOverloads;
+    }
+
+    /**
+     * Sets the number of distinct instantiations of the generic class.
+     *
+     * Each instantiation uses a different class as its type argument, so
+     * this is capped at the number of classes.
+     *
+     * @param numInstantiations The number of instantiations
+     */
+    public void setNumInstantiations(int numInstantiations) {
+        this.numInstantiations = numInstantiations;
+    }
+
+    public void setLoopDepth(int loopDepth) {
+        this.loopDepth = loopDepth;
+    }
+
+    public void setStatementsPerLoop(int statementsPerLoop) {
+        this.statementsPerLoop = statementsPerLoop;
+    }
+
+    /**
+     * @return The number of lines of code in the most recently generated
+     *         program
+     */
+    public int getNumLines() {
+        return numLines;
+    }
+
+    /**
+     * Writes a program to a directory, replacing any files of the same name.
+     *
+     * @param directory The directory to write the files to, which is created
+     *                  if it does not exist
+     * @return The paths of the files that were written
+     * @throws IOException If a file cannot be written
+     */
+    public List<String> generate(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        numLines = 0;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < numClasses; i++) {
+            files.add(writeClass(directory, "Class" + i, generateClass(i)));
+        }
+        files.add(writeClass(directory, "Box", generateBoxClass()));
+        files.add(writeClass(directory, "Instantiations", generateInstantiationsClass()));
+        return files;
+    }
+
+    private String writeClass(Path directory, String className, List<String> lines) throws IOException {
+        Path file = directory.resolve(className + ".java");
+        Files.write(file, lines, StandardCharsets.UTF_8);
+        numLines += lines.size();
+        return file.toString();
+    }
+
+    private List<String> generateClass(int index) {
+        List<String> lines = new ArrayList<>();
+        String className = "Class" + index;
+        if (index % hierarchyDepth == 0) {
+            lines.add("public class " + className + " {");
+        } else {
+            lines.add("public class " + className + " extends Class" + (index - 1) + " {");
+        }
+        lines.add("");
+
+        // Attribute names must be unique across the whole hierarchy
+        lines.add("    public int value" + index + ";");
+        lines.add("");
+
+        // Overloads of compute, each of which overrides the one in the parent
+        for (int overload = 0; overload < numOverloads; overload++) {
+            List<String> parameters = new ArrayList<>();
+            StringBuilder sum = new StringBuilder("this.value" + index);
+            for (int i = 0; i <= overload; i++) {
+                parameters.add("int a" + i);
+                sum.append(" + a").append(i);
+            }
+            lines.add("    public int compute(" + String.join(", ", parameters) + ") {");
+            lines.add("        return " + sum + ";");
+            lines.add("    }");
+            lines.add("");
+        }
+
+        // A static method that calls every overload on a new object
+        lines.add("    public static int callAll" + index + "(int x) {");
+        lines.add("        " + className + " object = new " + className + "();");
+        lines.add("        int total = 0;");
+        for (int overload = 0; overload < numOverloads; overload++) {
+            List<String> arguments = new ArrayList<>();
+            for (int i = 0; i <= overload; i++) {
+                arguments.add("x");
+            }
+            lines.add("        total = total + object.compute(" + String.join(", ", arguments) + ");");
+        }
+        lines.add("        return total;");
+        lines.add("    }");
+        lines.add("");
+
+        // A long method made up of nested loops
+        lines.add("    public static int loops" + index + "(int n) {");
+        lines.add("        int total = 0;");
+        String indent = "        ";
+        for (int depth = 0; depth < loopDepth; depth++) {
+            lines.add(indent + "for (int i" + depth + " = 0; i" + depth + " < n; i" + depth + "++) {");
+            indent += "    ";
+        }
+        String counter = (loopDepth > 0) ? "i" + (loopDepth - 1) : "n";
+        for (int statement = 0; statement < statementsPerLoop; statement++) {
+            switch (statement % 3) {
+                case 0:
+                    lines.add(indent + "total = total + " + counter + " * " + (statement + 1) + ";");
+                    break;
+                case 1:
+                    lines.add(indent + "total = total - " + counter + " / " + (statement + 1) + ";");
+                    break;
+                default:
+                    lines.add(indent + "if (total > " + (statement * 1000) + ") {");
+                    lines.add(indent + "    total = total / 2;");
+                    lines.add(indent + "}");
+                    break;
+            }
+        }
+        for (int depth = loopDepth - 1; depth >= 0; depth--) {
+            indent = indent.substring(4);
+            lines.add(indent + "}");
+        }
+        lines.add("        return total;");
+        lines.add("    }");
+        lines.add("");
+
+        lines.add("}");
+        return lines;
+    }
+
+    private List<String> generateBoxClass() {
+        List<String> lines = new ArrayList<>();
+        lines.add("public class Box<T> {");
+        lines.add("");
+        lines.add("    private T value;");
+        lines.add("");
+        lines.add("    public Box(T value) {");
+        lines.add("        this.value = value;");
+        lines.add("    }");
+        lines.add("");
+        lines.add("    public T getValue() {");
+        lines.add("        return this.value;");
+        lines.add("    }");
+        lines.add("");
+        lines.add("    public void setValue(T value) {");
+        lines.add("        this.value = value;");
+        lines.add("    }");
+        lines.add("");
+        lines.add("}");
+        return lines;
+    }
+
+    private List<String> generateInstantiationsClass() {
+        List<String> lines = new ArrayList<>();
+        lines.add("public class Instantiations {");
+        lines.add("");
+        lines.add("    public static int instantiateAll() {");
+        lines.add("        int total = 0;");
+        int instantiations = Math.min(numInstantiations, numClasses);
+        for (int i = 0; i < instantiations; i++) {
+            String className = "Class" + i;
+            lines.add("        " + className + " value" + i + " = new " + className + "();");
+            lines.add("        Box<" + className + "> box" + i + " = new Box<" + className + ">(value" + i + ");");
+            lines.add("        " + className + " unboxed" + i + " = box" + i + ".getValue();");
+            lines.add("        total = total + unboxed" + i + ".compute(" + i + ");");
+        }
+        lines.add("        return total;");
+        lines.add("    }");
+        lines.add("");
+        lines.add("}");
+        return lines;
+    }
+
+    /**
+     * Generates a program from the command line, as used by the
+     * generateSyntheticProgram Gradle task.
+     */
+    public static void main(String[] args) {
+        Options options = new Options();
+        Option outputDirectory = new Option("o", "output", true, "The directory to write the program to");
+        outputDirectory.setRequired(true);
+        options.addOption(outputDirectory);
+        options.addOption(null, "classes", true, "The number of classes (default 100)");
+        options.addOption(null, "depth", true, "The length of each chain of subclasses (default 5)");
+        options.addOption(null, "overloads", true, "The number of overloads of each method (default 4)");
+        options.addOption(null, "instantiations", true,
+                "The number of instantiations of the generic class (default 10)");
+        options.addOption(null, "loop-depth", true, "How deeply loops are nested (default 3)");
+        options.addOption(null, "statements", true,
+                "The number of statements in the innermost loop (default 10)");
+
+        SyntheticProgramGenerator generator = new SyntheticProgramGenerator();
+        CommandLine commandLine = null;
+        try {
+            commandLine = new DefaultParser().parse(options, args);
+            generator.setNumClasses(parsePositiveInt(commandLine, "classes", 100));
+            generator.setHierarchyDepth(parsePositiveInt(commandLine, "depth", 5));
+            generator.setNumOverloads(parsePositiveInt(commandLine, "overloads", 4));
+            generator.setNumInstantiations(parsePositiveInt(commandLine, "instantiations", 10));
+            generator.setLoopDepth(parsePositiveInt(commandLine, "loop-depth", 3));
+            generator.setStatementsPerLoop(parsePositiveInt(commandLine, "statements", 10));
+        } catch (ParseException e) {
+            System.out.println(e.getMessage());
+            HelpFormatter helpFormatter = new HelpFormatter();
+            helpFormatter.printHelp("SyntheticProgramGenerator", options);
+            System.exit(1);
+        }
+
+        try {
+            List<String> files = generator.generate(Paths.get(commandLine.getOptionValue("output")));
+            System.out.println("Generated " + files.size() + " files (" + generator.getNumLines()
+                    + " lines) in " + commandLine.getOptionValue("output"));
+        } catch (IOException e) {
+            System.err.println("Unable to write program: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static int parsePositiveInt(CommandLine commandLine, String option, int defaultValue)
+            throws ParseException {
+        if (!commandLine.hasOption(option)) {
+            return defaultValue;
+        }
+        String value = commandLine.getOptionValue(option);
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to the error below
+        }
+        throw new ParseException("--" + option + " must be a positive integer, not " + value);
+    }
+
+}
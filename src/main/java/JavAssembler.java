@@ -1,7 +1,18 @@
+import codegen.OutputFormat;
+import errors.CompilationAbortedException;
+import ir.passes.PassManager;
 import org.apache.commons.cli.*;
 import util.Compilation;
+import util.CompilationTimings;
+import util.CompilerOptions;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 public class JavAssembler {
 
@@ -12,6 +23,9 @@ public class JavAssembler {
         CommandLine commandLine = null;
         try {
             commandLine = commandLineParser.parse(commandLineOptions, args);
+            if (!commandLine.hasOption("server")) {
+                checkRequiredOptions(commandLine);
+            }
         } catch (ParseException e) {
             System.out.println(e.getMessage());
             HelpFormatter helpFormatter = new HelpFormatter();
@@ -19,24 +33,219 @@ public class JavAssembler {
             System.exit(1);
         }
 
+        if (commandLine.hasOption("server")) {
+            runServer(commandLineOptions, new BufferedReader(new InputStreamReader(System.in)), System.out);
+            return;
+        }
+
+        try {
+            compile(commandLine);
+        } catch (ParseException e) {
+            System.out.println(e.getMessage());
+            HelpFormatter helpFormatter = new HelpFormatter();
+            helpFormatter.printHelp("JavAssembler", commandLineOptions);
+            System.exit(1);
+        } catch (CompilationAbortedException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Exiting...");
+            System.exit(0);
+        }
+    }
+
+    /**
+     * Runs the compiler as a long-running server, so that the JVM, the parser
+     * and the runtime library stay warm between compilations.
+     *
+     * Each line read from standard input is one request, consisting of the
+     * same arguments that would be passed on the command line, separated by
+     * whitespace. For each request, any error messages are written to
+     * standard output prefixed with "! ", followed by a line containing
+     * either "OK" or "FAILED". The server exits when standard input is
+     * closed.
+     *
+     * @param commandLineOptions The options that each request may use
+     * @param requests The requests, normally standard input
+     * @param responses Where to write the responses, normally standard output
+     * @throws IOException If the requests cannot be read
+     */
+    static void runServer(Options commandLineOptions, BufferedReader requests, PrintStream responses)
+            throws IOException {
+        CommandLineParser commandLineParser = new DefaultParser();
+        String request;
+        while ((request = requests.readLine()) != null) {
+            request = request.trim();
+            if (request.isEmpty()) {
+                continue;
+            }
+            boolean succeeded = false;
+            String error = null;
+            try {
+                CommandLine commandLine = commandLineParser.parse(commandLineOptions, request.split("\\s+"));
+                checkRequiredOptions(commandLine);
+                compile(commandLine);
+                succeeded = true;
+            } catch (CompilationAbortedException | ParseException | IOException e) {
+                // Not every exception has a message, but the request still failed
+                error = (e.getMessage() != null) ? e.getMessage() : String.valueOf(e);
+            } catch (RuntimeException e) {
+                // Keep the server alive even if the compiler fails unexpectedly
+                error = "Internal compiler error: " + e;
+            }
+            if (succeeded) {
+                responses.println("OK");
+            } else {
+                for (String line : error.split("\n")) {
+                    responses.println("! " + line);
+                }
+                responses.println("FAILED");
+            }
+            responses.flush();
+        }
+    }
+
+    /**
+     * Compiles the files named in a set of command line arguments.
+     *
+     * @param commandLine The parsed command line arguments
+     * @throws ParseException If an option has an invalid value
+     * @throws IOException If the output file cannot be written
+     */
+    private static void compile(CommandLine commandLine) throws ParseException, IOException {
         String[] inputFiles = commandLine.getOptionValues("inputs");
         String outputFile = commandLine.getOptionValue("output");
-        boolean debug = commandLine.hasOption("debug");
+        CompilerOptions options = new CompilerOptions();
+        options.setDebug(commandLine.hasOption("debug"));
+        options.setCacheDirectory(commandLine.getOptionValue("cache-dir"));
+        options.setParserCacheFile(commandLine.getOptionValue("parser-cache"));
+        options.setStreaming(commandLine.hasOption("streaming"));
+        options.setCompileOnly(commandLine.hasOption("compile-only"));
+        options.setSharedRuntime(commandLine.hasOption("shared-runtime"));
+        options.setUseIR(commandLine.hasOption("ir"));
+        options.setIRDumpFile(commandLine.getOptionValue("dump-ir"));
+        String level = commandLine.getOptionValue("O", "0");
+        try {
+            options.setOptimisationLevel(Integer.parseInt(level));
+        } catch (NumberFormatException e) {
+            throw new ParseException("Unknown optimisation level: " + level);
+        }
+        if (options.getOptimisationLevel() < 0
+                || options.getOptimisationLevel() > PassManager.MAX_OPTIMISATION_LEVEL) {
+            throw new ParseException("Unknown optimisation level: " + level);
+        }
+        String printAfterPass = commandLine.getOptionValue("print-after");
+        if (printAfterPass != null && !PassManager.getPassNames().contains(printAfterPass)) {
+            throw new ParseException("Unknown pass: " + printAfterPass + ", expected one of "
+                    + String.join(", ", PassManager.getPassNames()));
+        }
+        options.setPrintAfterPass(printAfterPass);
+        String[] entryPoints = commandLine.getOptionValues("entry");
+        if (entryPoints != null) {
+            for (String entryPoint : entryPoints) {
+                int dot = entryPoint.lastIndexOf('.');
+                if (dot <= 0 || dot == entryPoint.length() - 1) {
+                    throw new ParseException("Invalid entry point: " + entryPoint + ", expected Class.method");
+                }
+            }
+            options.setEntryPoints(Arrays.asList(entryPoints));
+        }
+        String format = commandLine.getOptionValue("format", "wat");
+        try {
+            options.setOutputFormat(OutputFormat.valueOf(format.toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("Unknown output format: " + format);
+        }
+        if (commandLine.hasOption("emit-runtime")) {
+            Files.write(Paths.get(outputFile), Compilation.buildRuntimeModule(options.getOutputFormat()));
+            return;
+        }
+        if (commandLine.hasOption("timings")) {
+            String timingsFormat = commandLine.getOptionValue("timings", "table");
+            try {
+                options.setTimingsFormat(CompilationTimings.Format.valueOf(timingsFormat.toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new ParseException("Unknown timings format: " + timingsFormat);
+            }
+        }
 
-        Compilation.compileFiles(inputFiles, outputFile, debug);
+        Compilation.compileFiles(inputFiles, outputFile, options);
+    }
+
+    /**
+     * Checks that the options needed for a compilation were given.
+     *
+     * These cannot be marked as required, since they are not needed to start
+     * the server, and no inputs are needed to write the runtime module.
+     *
+     * @param commandLine The parsed command line arguments
+     * @throws ParseException If an option is missing
+     */
+    private static void checkRequiredOptions(CommandLine commandLine) throws ParseException {
+        if (!commandLine.hasOption("inputs") && !commandLine.hasOption("emit-runtime")) {
+            throw new MissingOptionException("Missing required option: i");
+        }
+        if (!commandLine.hasOption("output")) {
+            throw new MissingOptionException("Missing required option: o");
+        }
     }
 
-    private static Options getCommandLineOptions() {
+    static Options getCommandLineOptions() {
         Options options = new Options();
-        Option input = new Option("i", "inputs", true, "The Java files to read from");
-        input.setRequired(true);
+        Option input = new Option("i", "inputs", true,
+                "The Java files, and any .jobj object modules, to read from");
         input.setArgs(Option.UNLIMITED_VALUES);
         options.addOption(input);
         Option output = new Option("o", "output", true, "The wasm file to write to");
-        output.setRequired(true);
         options.addOption(output);
         Option debug = new Option("d", "debug", false, "Include additional debugging functions in the output");
         options.addOption(debug);
+        Option cacheDir = new Option(null, "cache-dir", true,
+                "A directory in which to cache compiled methods between runs");
+        options.addOption(cacheDir);
+        Option parserCache = new Option(null, "parser-cache", true,
+                "A file in which to save the parser's state between runs, to speed up parsing");
+        options.addOption(parserCache);
+        Option format = new Option(null, "format", true,
+                "The output format: wat (the default) for text, or wasm for binary");
+        options.addOption(format);
+        Option streaming = new Option(null, "streaming", false,
+                "Write out each method as soon as it is compiled, to reduce memory use on large inputs");
+        options.addOption(streaming);
+        Option compileOnly = new Option("c", "compile-only", false,
+                "Compile the inputs into an object module (.jobj) to be linked later, "
+                        + "rather than into a complete module");
+        options.addOption(compileOnly);
+        Option sharedRuntime = new Option(null, "shared-runtime", false,
+                "Import the runtime library from a separate runtime module instead of including it");
+        options.addOption(sharedRuntime);
+        Option emitRuntime = new Option(null, "emit-runtime", false,
+                "Write the runtime module for --shared-runtime to the output file, instead of compiling");
+        options.addOption(emitRuntime);
+        Option ir = new Option(null, "ir", false,
+                "Generate code through the intermediate representation rather than straight from the AST");
+        options.addOption(ir);
+        Option dumpIR = new Option(null, "dump-ir", true,
+                "Write the intermediate representation of every method to a file (implies --ir)");
+        options.addOption(dumpIR);
+        Option optimisationLevel = new Option("O", null, true,
+                "Optimise the generated code, from 0 (the default, no optimisation) to "
+                        + PassManager.MAX_OPTIMISATION_LEVEL + "; levels above 0 imply --ir");
+        options.addOption(optimisationLevel);
+        Option printAfter = new Option(null, "print-after", true,
+                "Print the intermediate representation of every method after the given optimisation pass "
+                        + "to standard error, or to the --dump-ir file if there is one");
+        options.addOption(printAfter);
+        Option entry = new Option(null, "entry", true,
+                "A method, given as Class.method, from which the program is entered; may be repeated. "
+                        + "Only the entry points are exported, and unreachable code is left out");
+        options.addOption(entry);
+        Option timings = new Option(null, "timings", true,
+                "Print the time, memory and item count of each phase to standard error, "
+                        + "as a table (the default) or as json");
+        timings.setOptionalArg(true);
+        options.addOption(timings);
+        Option server = new Option(null, "server", false,
+                "Run as a server, reading one set of arguments per line from standard input");
+        options.addOption(server);
         return options;
     }
 
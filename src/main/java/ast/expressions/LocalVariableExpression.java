@@ -2,6 +2,7 @@ package ast.expressions;
 
 import ast.structure.VariableScope;
 import ast.types.Type;
+import util.InternTable;
 
 /**
  * This is one of the 'base case' expressions, denoting a variable name.
@@ -9,21 +10,33 @@ import ast.types.Type;
 public class LocalVariableExpression implements VariableExpression {
 
     private String variableName;
+    private int variableNameId;
     private VariableScope containingScope;
 
     public LocalVariableExpression(String variableName, VariableScope containingScope) {
         this.variableName = variableName;
         this.containingScope = containingScope;
+        variableNameId = InternTable.IDENTIFIERS.intern(variableName);
     }
 
     public String getVariableName() {
         return variableName;
     }
 
+    /**
+     * Returns the id of the variable name in InternTable.IDENTIFIERS, with
+     * which the variable can be looked up without hashing its name.
+     *
+     * @return The id of the variable name
+     */
+    public int getVariableNameId() {
+        return variableNameId;
+    }
+
     @Override
     public Type getType() {
         return containingScope
-                .getVariableWithName(variableName)
+                .getVariableWithId(variableNameId)
                 .getType();
     }
 
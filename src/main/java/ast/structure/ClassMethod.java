@@ -60,13 +60,4 @@ public class ClassMethod implements ASTNode {
     public JavaClass getContainingClass() {
         return containingClass;
     }
-
-    /**
-     * Sets the VariableScope that contains this code block.
-     *
-     * @param containingScope The new VariableScope to contain this code block
-     */
-    public void bindContainingVariableScope(VariableScope containingScope) {
-        body.bindContainingVariableScope(containingScope);
-    }
 }
@@ -4,11 +4,11 @@ import ast.types.HeapObjectReference;
 import ast.types.PrimitiveType;
 import ast.types.Type;
 import errors.MultipleVariableDeclarationException;
+import util.InternTable;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -16,9 +16,13 @@ import java.util.stream.Collectors;
  *
  * This class handles mappings from variable names to types and to their
  * register allocations. The main features are the lookup functions for type
- * and register allocation index. If the variable was declared in a containing
- * scope then the lookup functions will recursively call the corresponding
- * function in the containing scope.
+ * and register allocation index.
+ *
+ * Each scope holds flat arrays of every variable visible in it, keyed by the
+ * id of the variable name in InternTable.IDENTIFIERS. A new scope starts with
+ * the variables that its containing scope has declared so far, just as in
+ * Java a block can only see variables declared before it, so a lookup never
+ * needs to visit the containing scopes.
  */
 public class VariableScope {
 
@@ -79,18 +83,29 @@ public class VariableScope {
         }
     }
 
+    private static final int[] NO_NAME_IDS = new int[0];
+    private static final Allocation[] NO_ALLOCATIONS = new Allocation[0];
+
     /**
      * Reference to the containing scope
-     *
-     * This is needed in case a variable is requested that
-     * was declared in a higher scope.
      */
     private VariableScope containingScope;
 
     /**
-     * Contains the allocations for all variables that have been registered.
+     * The name ids of all variables visible in this scope, including those
+     * declared in containing scopes, in ascending order.
+     *
+     * The arrays are never modified once they have been built, since they
+     * may be shared. Registering a variable builds new arrays, so most scopes,
+     * such as the bodies of loops and if statements, declare no variables and
+     * share the arrays of their containing scope.
+     */
+    private int[] visibleNameIds;
+
+    /**
+     * The allocation of each variable in visibleNameIds, in the same order
      */
-    private Map<String, Allocation> variableAllocations;
+    private Allocation[] visibleAllocations;
 
     /**
      * An ordered list of all known allocations at this level or below
@@ -113,7 +128,8 @@ public class VariableScope {
     private int nextStackOffsetToAllocate;
 
     public VariableScope() {
-        variableAllocations = new HashMap<>();
+        visibleNameIds = NO_NAME_IDS;
+        visibleAllocations = NO_ALLOCATIONS;
         localVariableAllocationsList = new ArrayList<>();
         nextLocalVariableIndexToAllocate = 0;
         nextStackOffsetToAllocate = 0;
@@ -123,19 +139,12 @@ public class VariableScope {
     public VariableScope(VariableScope containingScope) {
         this();
         this.containingScope = containingScope;
+        visibleNameIds = containingScope.visibleNameIds;
+        visibleAllocations = containingScope.visibleAllocations;
         nextLocalVariableIndexToAllocate = containingScope.nextLocalVariableIndexToAllocate;
         nextStackOffsetToAllocate = containingScope.nextStackOffsetToAllocate;
     }
 
-    /**
-     * Sets the containing scope.
-     *
-     * @param containingScope The new ContainingScope
-     */
-    public void bindContainingScope(VariableScope containingScope) {
-        this.containingScope = containingScope;
-    }
-
     /**
      * Returns the containing scope.
      *
@@ -154,7 +163,9 @@ public class VariableScope {
      *         name has already been declared in this scope
      */
     public void registerVariable(String name, Type type) throws MultipleVariableDeclarationException {
-        if (hasMappingFor(name)) {
+        int nameId = InternTable.IDENTIFIERS.intern(name);
+        int position = Arrays.binarySearch(visibleNameIds, nameId);
+        if (position >= 0) {
             String message = "Variable " + name + " already has a declaration in this scope";
             throw new MultipleVariableDeclarationException(message);
         }
@@ -169,7 +180,21 @@ public class VariableScope {
             allocation = new StackOffsetAllocation(nextStackOffsetToAllocate, nonPrimitiveType);
             nextStackOffsetToAllocate += 4;
         }
-        variableAllocations.put(name, allocation);
+
+        // Build new arrays with the variable in its sorted position, leaving
+        // the old ones untouched for any scopes that share them
+        int insertionPoint = -position - 1;
+        int numVisible = visibleNameIds.length;
+        int[] nameIds = new int[numVisible + 1];
+        Allocation[] allocations = new Allocation[numVisible + 1];
+        System.arraycopy(visibleNameIds, 0, nameIds, 0, insertionPoint);
+        System.arraycopy(visibleAllocations, 0, allocations, 0, insertionPoint);
+        nameIds[insertionPoint] = nameId;
+        allocations[insertionPoint] = allocation;
+        System.arraycopy(visibleNameIds, insertionPoint, nameIds, insertionPoint + 1, numVisible - insertionPoint);
+        System.arraycopy(visibleAllocations, insertionPoint, allocations, insertionPoint + 1, numVisible - insertionPoint);
+        visibleNameIds = nameIds;
+        visibleAllocations = allocations;
     }
 
     /**
@@ -192,25 +217,34 @@ public class VariableScope {
      * @return true if this scope has a mapping; false otherwise
      */
     public boolean hasMappingFor(String name) {
-        if (variableAllocations.containsKey(name)) return true;
-        if (containingScope != null) return containingScope.hasMappingFor(name);
-        return false;
+        return getVariableWithName(name) != null;
     }
 
     /**
      * Looks up an allocated variable from its name.
      *
      * @param name The variable name to look up
-     * @return The Allocation of that variable
+     * @return The Allocation of that variable, or null if there is no
+     *         variable with that name visible in this scope
      */
     public Allocation getVariableWithName(String name) {
-        if (variableAllocations.containsKey(name)) {
-            return variableAllocations.get(name);
-        } else if (containingScope != null) {
-            return containingScope.getVariableWithName(name);
-        } else {
+        int nameId = InternTable.IDENTIFIERS.lookup(name);
+        if (nameId == InternTable.NOT_INTERNED) {
             return null;
         }
+        return getVariableWithId(nameId);
+    }
+
+    /**
+     * Looks up an allocated variable from the id of its name.
+     *
+     * @param nameId The id of the variable name in InternTable.IDENTIFIERS
+     * @return The Allocation of that variable, or null if there is no
+     *         variable with that name visible in this scope
+     */
+    public Allocation getVariableWithId(int nameId) {
+        int position = Arrays.binarySearch(visibleNameIds, nameId);
+        return (position >= 0) ? visibleAllocations[position] : null;
     }
 
     /**
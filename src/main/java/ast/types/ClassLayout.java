@@ -0,0 +1,172 @@
+package ast.types;
+
+import codegen.Constants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes how an object of a class is laid out in the heap.
+ *
+ * Heap layout:
+ *  flags            (4 bytes)
+ *  vtable pointer   (4 bytes)
+ *  size field       (4 bytes)
+ *  attributes       (variable)
+ *  pointer_info     (variable)
+ *
+ * The pointer information records, for every 4-byte word of the attributes,
+ * whether that word should be interpreted as a pointer, using one bit per
+ * word. This is used by the garbage collector to determine which attributes
+ * to treat as pointers to other objects.
+ *
+ * A layout never changes once it has been built, so it is worked out once
+ * for each class and then shared by every part of the compiler that needs
+ * it.
+ */
+public class ClassLayout {
+
+    private static final int BITS_PER_WORD = 32;
+
+    /**
+     * Every attribute of the class, including those defined in parent
+     * classes, in the order they appear in the heap
+     */
+    private List<JavaClass.AllocatedClassAttribute> attributes;
+
+    /**
+     * The number of bytes taken up by attributes
+     */
+    private int numAttributeBytes;
+
+    /**
+     * The number of 4-byte words described by the pointer information
+     */
+    private int numPointerInfoWords;
+
+    /**
+     * The pointer information, where bit i of element n is set if word
+     * (32n + i) of the attributes is a pointer
+     */
+    private int[] encodedPointers;
+    private List<Integer> encodedPointersDescription;
+
+    /**
+     * Builds the layout of a class from the layout of its parent and the
+     * attributes that it defines itself.
+     *
+     * @param parentLayout The layout of the parent class, or null if the
+     *                     class has no parent
+     * @param ownAttributes The attributes defined in the class itself, in
+     *                      the order they appear in the heap
+     * @param numAttributeBytes The number of bytes taken up by all attributes
+     */
+    ClassLayout(ClassLayout parentLayout,
+                List<JavaClass.AllocatedClassAttribute> ownAttributes,
+                int numAttributeBytes) {
+        this.numAttributeBytes = numAttributeBytes;
+
+        List<JavaClass.AllocatedClassAttribute> allAttributes = new ArrayList<>();
+        if (parentLayout != null) {
+            allAttributes.addAll(parentLayout.attributes);
+            numPointerInfoWords = parentLayout.numPointerInfoWords;
+            encodedPointers = parentLayout.encodedPointers;
+        } else {
+            numPointerInfoWords = 0;
+            encodedPointers = new int[0];
+        }
+        allAttributes.addAll(ownAttributes);
+        attributes = Collections.unmodifiableList(allAttributes);
+
+        // Count the words first so that the bitmap is only copied once
+        int numOwnWords = 0;
+        for (JavaClass.ClassAttribute attribute : ownAttributes) {
+            numOwnWords += (attribute.getType().getStackSize() > 4) ? 2 : 1;
+        }
+        int numWords = numPointerInfoWords + numOwnWords;
+        encodedPointers = Arrays.copyOf(encodedPointers, (numWords + BITS_PER_WORD - 1) / BITS_PER_WORD);
+        for (JavaClass.ClassAttribute attribute : ownAttributes) {
+            Type attributeType = attribute.getType();
+            if (attributeType.getStackSize() > 4) {
+                numPointerInfoWords += 2;
+            } else {
+                if (attributeType.isPointer()) {
+                    int word = numPointerInfoWords;
+                    encodedPointers[word / BITS_PER_WORD] |= 1 << (word % BITS_PER_WORD);
+                }
+                numPointerInfoWords++;
+            }
+        }
+        List<Integer> encoded = new ArrayList<>(encodedPointers.length);
+        for (int value : encodedPointers) {
+            encoded.add(value);
+        }
+        encodedPointersDescription = Collections.unmodifiableList(encoded);
+    }
+
+    /**
+     * @return Every attribute of the class, including those defined in parent
+     *         classes, in the order they appear in the heap
+     */
+    public List<JavaClass.AllocatedClassAttribute> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * @return The number of bytes taken up by attributes
+     */
+    public int getNumAttributeBytes() {
+        return numAttributeBytes;
+    }
+
+    /**
+     * @return The number of 4-byte words of attributes described by the
+     *         pointer information
+     */
+    public int getNumPointerInfoWords() {
+        return numPointerInfoWords;
+    }
+
+    /**
+     * Reports whether a word of the attributes holds a pointer.
+     *
+     * @param word The index of the 4-byte word, counting from the first
+     *             attribute
+     * @return true if the word should be treated as a pointer
+     */
+    public boolean isPointer(int word) {
+        return (encodedPointers[word / BITS_PER_WORD] & (1 << (word % BITS_PER_WORD))) != 0;
+    }
+
+    /**
+     * Returns the pointer information as a list of integers, in which
+     * whether each 4-byte word is a pointer is encoded using a single bit.
+     *
+     * @return The encoded version of the pointer information
+     */
+    public List<Integer> getEncodedPointersDescription() {
+        return encodedPointersDescription;
+    }
+
+    /**
+     * Returns the offset at which the pointer information should start being
+     * written.
+     *
+     * This comes after the header and all attributes.
+     *
+     * @return The offset at which pointer information starts
+     */
+    public int getPointerInfoStartOffset() {
+        return Constants.OBJECT_HEADER_LENGTH + numAttributeBytes;
+    }
+
+    /**
+     * @return The total size of an object of the class, in bytes
+     */
+    public int getHeapSize() {
+        return getPointerInfoStartOffset() + 4 * encodedPointers.length;
+    }
+
+}
@@ -5,44 +5,42 @@ import util.ClassTable;
 import util.ErrorReporting;
 import util.FunctionTable;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manages instantiating generic classes with type arguments. A JavaClass object
  * is built for each generic class, for each sequence of type arguments that
  * are used in the program.
+ *
+ * Each compilation has its own cache. The cache is safe to use from several
+ * threads at once, so that methods can be type checked in parallel. Each
+ * instantiation is only ever built once, and threads that need an
+ * instantiation that is being built wait for it.
  */
 public class GenericClassInstantiationCache {
 
-    private static GenericClassInstantiationCache INSTANCE;
-
     private FunctionTable functionTable;
     private ClassTable classTable;
 
     /**
      * The cache of all instantiations
      */
-    Map<GenericJavaClass, Map<List<HeapObjectReference>,JavaClass>> cache;
-
-    private GenericClassInstantiationCache() {
-        cache = new HashMap<>();
-    }
+    private Map<GenericJavaClass, Map<List<HeapObjectReference>,JavaClass>> cache;
 
-    public static GenericClassInstantiationCache getInstance() {
-        if (INSTANCE == null) {
-            INSTANCE = new GenericClassInstantiationCache();
-        }
-        return INSTANCE;
-    }
-
-    public void setFunctionTable(FunctionTable functionTable) {
+    /**
+     * Creates an empty cache for a single compilation.
+     *
+     * @param functionTable The function table of the compilation, to which
+     *                      the methods of each instantiation are added
+     * @param classTable The class table of the compilation, with which each
+     *                   instantiation is registered
+     */
+    public GenericClassInstantiationCache(FunctionTable functionTable, ClassTable classTable) {
         this.functionTable = functionTable;
-    }
-
-    public void setClassTable(ClassTable classTable) {
         this.classTable = classTable;
+        cache = new ConcurrentHashMap<>();
     }
 
     /**
@@ -54,23 +52,17 @@ public class GenericClassInstantiationCache {
      * @return The actual class that was instantiated
      */
     public JavaClass getActualClass(GenericJavaClass genericClass, List<HeapObjectReference> typeArguments) {
-        Map<List<HeapObjectReference>,JavaClass> mapThisClass;
-        if (cache.containsKey(genericClass)) {
-            mapThisClass = cache.get(genericClass);
-        } else {
-            mapThisClass = new HashMap<>();
-            cache.put(genericClass, mapThisClass);
-        }
+        Map<List<HeapObjectReference>,JavaClass> mapThisClass =
+                cache.computeIfAbsent(genericClass, key -> new ConcurrentHashMap<>());
+        return mapThisClass.computeIfAbsent(typeArguments, key -> instantiate(genericClass, typeArguments));
+    }
+
+    private JavaClass instantiate(GenericJavaClass genericClass, List<HeapObjectReference> typeArguments) {
         JavaClass javaClass = null;
-        if (mapThisClass.containsKey(typeArguments)) {
-            javaClass = mapThisClass.get(typeArguments);
-        } else {
-            try {
-                javaClass = genericClass.instantiate(typeArguments, functionTable, classTable);
-            } catch (JavAssemblerException e) {
-                ErrorReporting.reportError(e.getMessage());
-            }
-            mapThisClass.put(typeArguments, javaClass);
+        try {
+            javaClass = genericClass.instantiate(typeArguments, functionTable, classTable);
+        } catch (JavAssemblerException e) {
+            ErrorReporting.reportError(e.getMessage());
         }
         return javaClass;
     }
@@ -0,0 +1,37 @@
+package ast.types;
+
+import java.util.List;
+
+/**
+ * Records symbolically that a generic class was instantiated with a given
+ * list of type arguments.
+ *
+ * For example, GenericContainer<Integer> would be recorded as the generic
+ * class name "GenericContainer" with type argument names ["Integer"].
+ */
+public class GenericInstantiation {
+
+    private String genericClassName;
+    private List<String> typeArgumentNames;
+
+    public GenericInstantiation(String genericClassName, List<String> typeArgumentNames) {
+        this.genericClassName = genericClassName;
+        this.typeArgumentNames = typeArgumentNames;
+    }
+
+    public String getGenericClassName() {
+        return genericClassName;
+    }
+
+    public List<String> getTypeArgumentNames() {
+        return typeArgumentNames;
+    }
+
+    /**
+     * @return The name of the instantiated class, for example
+     *         "GenericContainer<Integer>"
+     */
+    public String getInstantiatedClassName() {
+        return genericClassName + "<" + String.join(",", typeArgumentNames) + ">";
+    }
+}
@@ -1,6 +1,6 @@
 package ast.types;
 
-import java.util.Objects;
+import util.InternTable;
 
 /**
  * Represents a generic type that will be replaced once the generic class is
@@ -13,10 +13,15 @@ public class GenericType extends HeapObjectReference {
 
     private String name;
     private int positionInArguments;
+    private int typeId;
 
     public GenericType(String name, int positionInArguments) {
         this.name = name;
         this.positionInArguments = positionInArguments;
+
+        // Generic types are only equal to other generic types, so they must
+        // not share an id with a class of the same name
+        typeId = InternTable.TYPES.intern("<" + name + ">");
     }
 
     public String getName() {
@@ -37,7 +42,12 @@ public class GenericType extends HeapObjectReference {
 
     @Override
     public int hashCode() {
-        return Objects.hash(name);
+        return name.hashCode();
+    }
+
+    @Override
+    public int getTypeId() {
+        return typeId;
     }
 
     @Override
@@ -1,6 +1,6 @@
 package ast.types;
 
-import java.util.Objects;
+import util.InternTable;
 
 public class ItemArray extends HeapObjectReference {
 
@@ -9,8 +9,20 @@ public class ItemArray extends HeapObjectReference {
      */
     private Type elementType;
 
+    private int typeId;
+
     public ItemArray(Type elementType) {
         this.elementType = elementType;
+
+        // Arrays are equal iff their element types are, so the id is keyed by
+        // the id of the element type. An element type that is only equal to
+        // itself makes the array only equal to itself too.
+        int elementTypeId = elementType.getTypeId();
+        if (elementTypeId >= 0) {
+            typeId = InternTable.TYPES.intern("[" + elementTypeId);
+        } else {
+            typeId = InternTable.TYPES.newId();
+        }
     }
 
     public Type getElementType() {
@@ -25,6 +37,11 @@ public class ItemArray extends HeapObjectReference {
         return elementType.equals(otherArray.elementType);
     }
 
+    @Override
+    public int getTypeId() {
+        return typeId;
+    }
+
     @Override
     public String toString() {
         return elementType + "[]";
@@ -40,6 +57,6 @@ public class ItemArray extends HeapObjectReference {
 
     @Override
     public int hashCode() {
-        return Objects.hash(elementType);
+        return 31 * elementType.hashCode() + 1;
     }
 }
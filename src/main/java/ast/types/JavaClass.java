@@ -1,12 +1,12 @@
 package ast.types;
 
-import codegen.Constants;
 import errors.DuplicateClassAttributeException;
 import errors.DuplicateFunctionSignatureException;
 import errors.IllegalPrivateAccessException;
 import errors.InvalidAttributeException;
 import util.ClassTable;
 import util.FunctionTableEntry;
+import util.InternTable;
 import util.LookupTree;
 
 import java.util.*;
@@ -22,6 +22,11 @@ public class JavaClass extends HeapObjectReference {
      */
     protected String name;
 
+    /**
+     * The id of the class in InternTable.TYPES
+     */
+    private int typeId;
+
     /**
      * A list of all attributes defined in this class only (not including any
      * that are defined in parent classes), in the same order as will be used
@@ -59,16 +64,16 @@ public class JavaClass extends HeapObjectReference {
     protected List<FunctionTableEntry> virtualTable;
 
     /**
-     * A map of strings (function names) to tries used for efficiently looking
-     * up the virtual table index of a method, given its name and type
-     * signature.
+     * A trie used for efficiently looking up the virtual table index of a
+     * method, given its name and type signature. The first edge is the id of
+     * the method name and the rest are the ids of the parameter types.
      */
-    private Map<String, LookupTree<Integer, Type>> vtableIndexLookupTreeMap;
+    private LookupTree<Integer> vtableIndexLookupTree;
 
     /**
      * A lookup tree for the class constructor
      */
-    private LookupTree<FunctionTableEntry, Type> constructorLookupTree;
+    private LookupTree<FunctionTableEntry> constructorLookupTree;
 
     /**
      * The generic class from which this was realised.
@@ -78,11 +83,18 @@ public class JavaClass extends HeapObjectReference {
      */
     private GenericJavaClass genericClass;
 
+    /**
+     * The layout of objects of this class in the heap, or null if it has not
+     * been built yet
+     */
+    private volatile ClassLayout layout;
+
     public JavaClass(String name, List<ClassAttribute> attributes, JavaClass parent)
             throws DuplicateClassAttributeException {
         this.name = name;
         this.parent = parent;
-        vtableIndexLookupTreeMap = new HashMap<>();
+        typeId = InternTable.TYPES.intern(name);
+        vtableIndexLookupTree = new LookupTree<>();
         virtualTable = new ArrayList<>();
         constructorLookupTree = new LookupTree<>();
         if (parent == null) {
@@ -143,13 +155,21 @@ public class JavaClass extends HeapObjectReference {
 
     @Override
     public boolean equals(Object obj) {
-        return (obj instanceof JavaClass)
-                && ((JavaClass) obj).name.equals(this.name);
+        // Each class is only ever represented by one object once the class
+        // table has been built, so this is nearly always decided by identity
+        return (this == obj)
+                || ((obj instanceof JavaClass) && ((JavaClass) obj).name.equals(this.name));
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(name);
+        // Strings cache their hash codes, so this does not rehash the name
+        return name.hashCode();
+    }
+
+    @Override
+    public int getTypeId() {
+        return typeId;
     }
 
     @Override
@@ -158,15 +178,29 @@ public class JavaClass extends HeapObjectReference {
     }
 
     public int getHeapSize() {
-        // Heap layout:
-        //  flags            (4 bytes)
-        //  vtable pointer   (4 bytes)
-        //  size field       (4 bytes)
-        //  attributes       (variable)
-        //  pointer_info     (variable)
-        return Constants.OBJECT_HEADER_LENGTH  // Headers
-                + nextFreeAssignmentOffset     // Attributes
-                + 4 * getEncodedPointersDescription().size();  // Pointer info
+        return getLayout().getHeapSize();
+    }
+
+    /**
+     * Returns the layout of objects of this class in the heap.
+     *
+     * The layout is built from the layout of the parent class the first time
+     * it is needed, and is then kept. It must not be needed until the types
+     * of the attributes have been validated, which the class table does for
+     * all classes before building their layouts.
+     *
+     * @return The layout of this class
+     */
+    public ClassLayout getLayout() {
+        // Several threads may build the layout at once, but they will all
+        // build the same one
+        ClassLayout classLayout = layout;
+        if (classLayout == null) {
+            ClassLayout parentLayout = (parent == null) ? null : parent.getLayout();
+            classLayout = new ClassLayout(parentLayout, allocatedAttributes, nextFreeAssignmentOffset);
+            layout = classLayout;
+        }
+        return classLayout;
     }
 
     /**
@@ -213,6 +247,25 @@ public class JavaClass extends HeapObjectReference {
         return attribute;
     }
 
+    /**
+     * Returns the parent class.
+     *
+     * @return The parent class, or null if this is the top of the hierarchy
+     */
+    public JavaClass getParent() {
+        return parent;
+    }
+
+    /**
+     * Returns the attributes defined in this class only, not including any
+     * defined in parent classes, in the order they appear in the heap.
+     *
+     * @return The attributes allocated by this class
+     */
+    public List<AllocatedClassAttribute> getAllocatedAttributes() {
+        return allocatedAttributes;
+    }
+
     /**
      * Returns the number of bytes taken up by attributes.
      */
@@ -233,18 +286,10 @@ public class JavaClass extends HeapObjectReference {
      *         pointer
      */
     public List<Boolean> getIsPointerList() {
-        List<Boolean> list = (parent == null)
-                ? new ArrayList<>()
-                : parent.getIsPointerList();
-        for (ClassAttribute attribute : allocatedAttributes) {
-            Type attributeType = attribute.getType();
-            if (attributeType.getStackSize() > 4) {
-                list.add(false);
-                list.add(false);
-            } else {
-                boolean isPointer = attributeType.isPointer();
-                list.add(isPointer);
-            }
+        ClassLayout classLayout = getLayout();
+        List<Boolean> list = new ArrayList<>(classLayout.getNumPointerInfoWords());
+        for (int word = 0; word < classLayout.getNumPointerInfoWords(); word++) {
+            list.add(classLayout.isPointer(word));
         }
         return list;
     }
@@ -256,19 +301,7 @@ public class JavaClass extends HeapObjectReference {
      * @return The encoded version of the pointer information
      */
     public List<Integer> getEncodedPointersDescription() {
-        List<Boolean> pointersList = getIsPointerList();
-        List<Integer> encoded = new ArrayList<>();
-        while (!pointersList.isEmpty()) {
-            int value = 0;
-            for (int i = 0; i < 32 && !pointersList.isEmpty(); i++) {
-                boolean isPointer = pointersList.remove(0);
-                int bit = isPointer ? 1 : 0;
-                int mask = bit << i;
-                value |= mask;
-            }
-            encoded.add(value);
-        }
-        return encoded;
+        return getLayout().getEncodedPointersDescription();
     }
 
     /**
@@ -280,7 +313,7 @@ public class JavaClass extends HeapObjectReference {
      * @return The offset at which pointer information starts
      */
     public int getPointerInfoStartOffset() {
-    return Constants.OBJECT_HEADER_LENGTH + nextFreeAssignmentOffset;
+        return getLayout().getPointerInfoStartOffset();
     }
 
     /**
@@ -313,11 +346,7 @@ public class JavaClass extends HeapObjectReference {
 
         // Extract information about the method
         String methodName = functionTableEntry.getFunctionName();
-
-        // Look up the tree for this class, creating it if necessary
-        if (!vtableIndexLookupTreeMap.containsKey(methodName))
-            vtableIndexLookupTreeMap.put(methodName, new LookupTree<>());
-        LookupTree<Integer, Type> vtableIndexLookupTree = vtableIndexLookupTreeMap.get(methodName);
+        int methodNameId = InternTable.IDENTIFIERS.intern(methodName);
 
         // Attempt to find the vtable index from the parent class. If the parent
         // already has an entry for a method with this signature then this must
@@ -326,7 +355,7 @@ public class JavaClass extends HeapObjectReference {
         // we want to add a new entry to the virtual table.
         Integer vtableIndex = null;
         if (parent != null) {
-            vtableIndex = parent.getVirtualTableIndex(methodName, parameterTypes);
+            vtableIndex = parent.getVirtualTableIndex(methodNameId, parameterTypes);
         }
 
 
@@ -342,7 +371,8 @@ public class JavaClass extends HeapObjectReference {
 
         // Update the lookup tree so that we can quickly look up this method
         // in the future.
-        boolean success = vtableIndexLookupTree.insert(parameterTypes, vtableIndex);
+        boolean success = vtableIndexLookupTree.insert(
+                LookupTree.getEdges(methodNameId, parameterTypes), vtableIndex);
         if (!success) {
             String signature = functionTableEntry.getQualifiedSignature();
             String message = "Multiple declarations for method with signature "
@@ -360,9 +390,9 @@ public class JavaClass extends HeapObjectReference {
      */
     public FunctionTableEntry lookupMethod(String name, List<Type> parameterTypes) {
         FunctionTableEntry entry = null;
-        if (vtableIndexLookupTreeMap.containsKey(name)) {
-            LookupTree<Integer, Type> lookupTree = vtableIndexLookupTreeMap.get(name);
-            Integer vtableIndex = lookupTree.lookup(parameterTypes);
+        int nameId = InternTable.IDENTIFIERS.lookup(name);
+        if (nameId != InternTable.NOT_INTERNED) {
+            Integer vtableIndex = vtableIndexLookupTree.lookup(nameId, parameterTypes);
             if (vtableIndex != null) {
                 entry = virtualTable.get(vtableIndex);
             }
@@ -386,7 +416,7 @@ public class JavaClass extends HeapObjectReference {
     public void registerNewConstructor(List<Type> parameterTypes,
                                        FunctionTableEntry functionTableEntry)
             throws DuplicateFunctionSignatureException {
-        boolean success = constructorLookupTree.insert(parameterTypes, functionTableEntry);
+        boolean success = constructorLookupTree.insert(LookupTree.getEdges(parameterTypes), functionTableEntry);
         if (!success) {
             String signature = functionTableEntry.getQualifiedSignature();
             String message = "Duplicate constructors in class " + name
@@ -443,13 +473,17 @@ public class JavaClass extends HeapObjectReference {
      *      does not exist
      */
     public Integer getVirtualTableIndex(String name, List<Type> parameterTypes) {
-        LookupTree<Integer, Type> functionLookupTree =
-                vtableIndexLookupTreeMap.getOrDefault(name, null);
-        if (functionLookupTree == null)
+        int nameId = InternTable.IDENTIFIERS.lookup(name);
+        if (nameId == InternTable.NOT_INTERNED)
             return null;
-        Integer vtableIndex = functionLookupTree.lookup(parameterTypes);
+        return getVirtualTableIndex(nameId, parameterTypes);
+    }
+
+    private Integer getVirtualTableIndex(int nameId, List<Type> parameterTypes) {
+        // A class that does not declare the method may still inherit it
+        Integer vtableIndex = vtableIndexLookupTree.lookup(nameId, parameterTypes);
         if (vtableIndex == null && parent != null)
-            return parent.getVirtualTableIndex(name, parameterTypes);
+            return parent.getVirtualTableIndex(nameId, parameterTypes);
         return vtableIndex;
     }
 
@@ -460,8 +494,7 @@ public class JavaClass extends HeapObjectReference {
      *         false otherwise
      */
     public boolean hasNoArgumentConstructor() {
-        List<Type> emptyList = new ArrayList<>();
-        return (constructorLookupTree.lookup(emptyList) != null);
+        return (constructorLookupTree.lookup(Collections.emptyList()) != null);
     }
 
     /**
@@ -1,11 +1,18 @@
 package ast.types;
 
+import util.InternTable;
+
 public class NullType extends HeapObjectReference {
     @Override
     public boolean isSubtypeOf(Type other) {
         return other instanceof HeapObjectReference;
     }
 
+    @Override
+    public int getTypeId() {
+        return InternTable.TYPES.intern("null");
+    }
+
     @Override
     public String toString() {
         return "null";
@@ -1,5 +1,7 @@
 package ast.types;
 
+import util.InternTable;
+
 public enum PrimitiveType implements Type {
     Int(true, false, 32, "int"),
     Short(true, false, 16, "short"),
@@ -14,12 +16,14 @@ public enum PrimitiveType implements Type {
     private boolean isDecimalType;
     private int sizeBits;
     private String representation;
+    private int typeId;
 
     PrimitiveType(boolean isIntegralType, boolean isDecimalType, int sizeBits, String representation) {
         this.isIntegralType = isIntegralType;
         this.isDecimalType = isDecimalType;
         this.sizeBits = sizeBits;
         this.representation = representation;
+        typeId = InternTable.TYPES.intern(representation);
     }
 
     /**
@@ -69,6 +73,11 @@ public enum PrimitiveType implements Type {
         return this.equals(other);
     }
 
+    @Override
+    public int getTypeId() {
+        return typeId;
+    }
+
     @Override
     public String toString() {
         return representation;
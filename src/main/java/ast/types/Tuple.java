@@ -1,5 +1,7 @@
 package ast.types;
 
+import util.InternTable;
+
 import java.util.List;
 import java.util.Optional;
 
@@ -10,8 +12,14 @@ public class Tuple implements Type {
      */
     private List<Type> types;
 
+    /**
+     * Tuples are only equal to themselves, so each one has its own id
+     */
+    private int typeId;
+
     public Tuple(List<Type> types) {
         this.types = types;
+        typeId = InternTable.TYPES.newId();
     }
 
     @Override
@@ -33,4 +41,9 @@ public class Tuple implements Type {
     public boolean isPointer() {
         return false;
     }
+
+    @Override
+    public int getTypeId() {
+        return typeId;
+    }
 }
@@ -37,4 +37,14 @@ public interface Type extends ASTNode {
      */
     boolean isPointer();
 
+    /**
+     * Returns the id of this type in InternTable.TYPES.
+     *
+     * Types that are equal have the same id and types that are not equal have
+     * different ids, so ids can be compared in place of the types themselves.
+     *
+     * @return The id of the type
+     */
+    int getTypeId();
+
 }
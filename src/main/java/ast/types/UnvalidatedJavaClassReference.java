@@ -1,5 +1,7 @@
 package ast.types;
 
+import util.InternTable;
+
 import java.util.List;
 
 /**
@@ -22,9 +24,15 @@ public class UnvalidatedJavaClassReference extends HeapObjectReference {
      */
     private List<HeapObjectReference> typeArguments;
 
+    /**
+     * References are only equal to themselves, so each one has its own id
+     */
+    private int typeId;
+
     public UnvalidatedJavaClassReference(String className) {
         this.className = className;
         typeArguments = null;
+        typeId = InternTable.TYPES.newId();
     }
 
     public void setTypeArguments(List<HeapObjectReference> typeArguments) {
@@ -52,6 +60,11 @@ public class UnvalidatedJavaClassReference extends HeapObjectReference {
         return 4;
     }
 
+    @Override
+    public int getTypeId() {
+        return typeId;
+    }
+
     /**
      * Returns the class name referenced.
      *
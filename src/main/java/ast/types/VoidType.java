@@ -1,5 +1,7 @@
 package ast.types;
 
+import util.InternTable;
+
 /**
  * Denotes a void type.
  *
@@ -22,4 +24,10 @@ public class VoidType implements Type {
     public boolean isPointer() {
         return false;
     }
+
+    @Override
+    public int getTypeId() {
+        // Every void type is interchangeable with every other
+        return InternTable.TYPES.intern("void");
+    }
 }
@@ -1,26 +1,106 @@
 package codegen;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 
 /**
  * Encapsulates the writing of lines of assembly to a file.
  *
  * This class handles indention levels and newline characters automatically.
- * The aim is that you only have to interact with the emitLine() method.
+ * The aim is that you only have to interact with the emitLine() method, or
+ * with the emitInstruction() family of methods for instructions that take an
+ * immediate operand.
+ *
+ * Code is appended straight into a reusable character buffer, so emitting an
+ * instruction does not allocate. When writing to a file or stream, the
+ * buffer is encoded and written through a channel, such as a FileChannel,
+ * in large chunks whenever it fills up.
+ *
+ * Since the buffer may be written out by any of the emit methods, a failure
+ * to write is thrown from them as an UncheckedIOException.
  */
 public class CodeEmitter {
 
     private static String DEFAULT_INDENTION_STRING = "  ";
 
-    private BufferedWriter writer;
+    /**
+     * The number of characters buffered before they are written out
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The initial size of the buffer of an in-memory emitter, which grows as
+     * needed. This is small since one is used for every method.
+     */
+    private static final int INITIAL_IN_MEMORY_SIZE = 1024;
+
+    /**
+     * Enough space for any long written in decimal, including its sign
+     */
+    private static final int MAX_LONG_LENGTH = 20;
+
+    private WritableByteChannel channel;
+    private CharsetEncoder encoder;
+    private ByteBuffer byteBuffer;
+
+    private char[] buffer;
+    private int position;
+
     private int indentationLevel;
     private String indentationString;
 
+    /**
+     * The indentation string repeated once for each level, computed as each
+     * level is first used
+     */
+    private String[] indentationPrefixes;
+
     public CodeEmitter(String outputFilePath) throws IOException {
-        FileWriter fileWriter = new FileWriter(outputFilePath, false);
-        writer = new BufferedWriter(fileWriter);
+        this(FileChannel.open(Paths.get(outputFilePath), CREATE, WRITE, TRUNCATE_EXISTING));
+    }
+
+    /**
+     * Creates an emitter that encodes its code as UTF-8 and writes it to a
+     * channel. To write to an OutputStream, use Channels.newChannel(), which
+     * returns the FileChannel of a FileOutputStream.
+     *
+     * @param channel The channel to send the code to
+     */
+    public CodeEmitter(WritableByteChannel channel) {
+        this(BUFFER_SIZE);
+        this.channel = channel;
+        encoder = StandardCharsets.UTF_8.newEncoder();
+        byteBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /**
+     * Creates an emitter that keeps all of its code in memory.
+     *
+     * This is used so that each method can be generated separately and
+     * spliced into the module afterwards. The code can be retrieved with
+     * getEmittedCode().
+     */
+    public CodeEmitter() {
+        this(INITIAL_IN_MEMORY_SIZE);
+    }
+
+    private CodeEmitter(int bufferSize) {
+        buffer = new char[bufferSize];
+        position = 0;
         indentationLevel = 0;
         indentationString = DEFAULT_INDENTION_STRING;
+        indentationPrefixes = new String[0];
     }
 
     /**
@@ -30,33 +110,156 @@ public class CodeEmitter {
      * @param line The line of code to emit
      */
     public void emitLine(String line) {
-        for (int i = 0; i < indentationLevel; i++) {
-            emit(indentationString);
-        }
-        emit(line + "\n");
+        emitIndentation();
+        append(line);
+        append('\n');
+    }
+
+    /**
+     * Emits an instruction with an integer immediate, such as i32.const 5.
+     *
+     * @param instruction The instruction
+     * @param immediate The immediate operand
+     */
+    public void emitInstruction(String instruction, long immediate) {
+        emitIndentation();
+        append(instruction);
+        append(' ');
+        append(immediate);
+        append('\n');
+    }
+
+    /**
+     * Emits a numeric instruction for a given type, such as i32.add.
+     *
+     * @param type The type that the instruction operates on
+     * @param operation The operation, such as add
+     */
+    public void emitInstruction(WasmType type, String operation) {
+        emitIndentation();
+        append(type.toString());
+        append('.');
+        append(operation);
+        append('\n');
+    }
+
+    /**
+     * Emits an instruction that refers to something by name, such as
+     * call $alloc.
+     *
+     * @param instruction The instruction
+     * @param name The name it refers to, without the leading $
+     */
+    public void emitSymbolicInstruction(String instruction, String name) {
+        emitIndentation();
+        append(instruction);
+        append(" $");
+        append(name);
+        append('\n');
+    }
+
+    /**
+     * Emits an indirect function call, such as
+     * call_indirect (type $func_Shape_area).
+     *
+     * @param typeName The name of the function type, without the leading $
+     */
+    public void emitIndirectCall(String typeName) {
+        emitIndentation();
+        append("call_indirect (type $");
+        append(typeName);
+        append(")\n");
+    }
+
+    /**
+     * Emits a load or store with a memory offset and the natural alignment,
+     * such as i32.load offset=12.
+     *
+     * @param type The type of the value to load or store
+     * @param operation Either load or store
+     * @param offset The memory offset
+     */
+    public void emitMemoryInstruction(WasmType type, String operation, int offset) {
+        emitIndentation();
+        append(type.toString());
+        append('.');
+        append(operation);
+        append(" offset=");
+        append(offset);
+        append('\n');
+    }
+
+    /**
+     * Emits a load or store with a memory offset and an explicit alignment,
+     * such as i32.store offset=12 align=2.
+     *
+     * @param type The type of the value to load or store
+     * @param operation Either load or store
+     * @param offset The memory offset
+     * @param alignment The alignment, in bytes
+     */
+    public void emitMemoryInstruction(WasmType type, String operation, int offset, int alignment) {
+        emitIndentation();
+        append(type.toString());
+        append('.');
+        append(operation);
+        append(" offset=");
+        append(offset);
+        append(" align=");
+        append(alignment);
+        append('\n');
+    }
+
+    /**
+     * Emits code that has already been formatted, such as the contents of
+     * another emitter's buffer.
+     *
+     * No indentation or newline characters are added.
+     *
+     * @param code The code to emit
+     */
+    public void emitRaw(String code) {
+        append(code);
     }
 
     /**
-     * Emits text to the output buffer.
+     * Returns the code emitted so far by an emitter that was created to keep
+     * its code in memory.
      *
-     * @param output The text to output
+     * @return The emitted code
      */
-    private void emit(String output) {
+    public String getEmittedCode() {
+        return new String(buffer, 0, position);
+    }
+
+    /**
+     * Writes out any buffered code.
+     *
+     * @throws UncheckedIOException If the code cannot be written
+     */
+    public void flush() {
         try {
-            writer.write(output);
+            if (channel != null) {
+                writeToChannel(false);
+            }
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
         }
     }
 
     /**
-     * Attempts to close the file.
+     * Writes out any buffered code and closes the channel.
+     *
+     * @throws UncheckedIOException If the code cannot be written
      */
     public void close() {
         try {
-            writer.close();
+            if (channel != null) {
+                writeToChannel(true);
+                channel.close();
+            }
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -82,6 +285,22 @@ public class CodeEmitter {
         return indentationLevel;
     }
 
+    /**
+     * @return The current indentation level
+     */
+    public int getIndentationLevel() {
+        return indentationLevel;
+    }
+
+    /**
+     * Sets the indentation level.
+     *
+     * @param indentationLevel The new indentation level
+     */
+    public void setIndentationLevel(int indentationLevel) {
+        this.indentationLevel = indentationLevel;
+    }
+
     /**
      * Sets a new string to use for indentation.
      *
@@ -91,5 +310,118 @@ public class CodeEmitter {
      */
     public void setIndentationString(String indentationString) {
         this.indentationString = indentationString;
+        indentationPrefixes = new String[0];
+    }
+
+    /**
+     * Emits the indentation for the current level.
+     */
+    private void emitIndentation() {
+        if (indentationLevel == 0) {
+            return;
+        }
+        if (indentationLevel >= indentationPrefixes.length) {
+            String[] prefixes = Arrays.copyOf(indentationPrefixes, indentationLevel + 1);
+            for (int level = indentationPrefixes.length; level <= indentationLevel; level++) {
+                StringBuilder prefix = new StringBuilder();
+                for (int i = 0; i < level; i++) {
+                    prefix.append(indentationString);
+                }
+                prefixes[level] = prefix.toString();
+            }
+            indentationPrefixes = prefixes;
+        }
+        append(indentationPrefixes[indentationLevel]);
+    }
+
+    private void append(String text) {
+        int length = text.length();
+        int start = 0;
+        while (start < length) {
+            if (position == buffer.length) {
+                makeRoom(length - start);
+            }
+            int numChars = Math.min(length - start, buffer.length - position);
+            text.getChars(start, start + numChars, buffer, position);
+            position += numChars;
+            start += numChars;
+        }
+    }
+
+    private void append(char c) {
+        if (position == buffer.length) {
+            makeRoom(1);
+        }
+        buffer[position++] = c;
+    }
+
+    /**
+     * Appends a number in decimal without creating a String for it.
+     */
+    private void append(long value) {
+        if (value == Long.MIN_VALUE) {
+            append(Long.toString(value));
+            return;
+        }
+        if (buffer.length - position < MAX_LONG_LENGTH) {
+            makeRoom(MAX_LONG_LENGTH);
+        }
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int numDigits = 1;
+        for (long remaining = value / 10; remaining > 0; remaining /= 10) {
+            numDigits++;
+        }
+        for (int i = position + numDigits - 1; i >= position; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        position += numDigits;
+    }
+
+    /**
+     * Makes room in the buffer, either by writing it out or, for an
+     * in-memory emitter, by growing it.
+     *
+     * @param numChars The number of characters that are about to be appended
+     */
+    private void makeRoom(int numChars) {
+        if (channel == null) {
+            int newLength = Math.max(buffer.length * 2, position + numChars);
+            buffer = Arrays.copyOf(buffer, newLength);
+        } else {
+            flush();
+        }
+    }
+
+    /**
+     * Encodes the buffer as UTF-8 and writes it to the channel.
+     *
+     * A surrogate pair can be split across two flushes, in which case the
+     * first half is left at the start of the buffer until the next flush.
+     *
+     * @param endOfInput Whether this is the final flush
+     */
+    private void writeToChannel(boolean endOfInput) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(buffer, 0, position);
+        while (true) {
+            boolean overflow = encoder.encode(chars, byteBuffer, endOfInput).isOverflow();
+            if (endOfInput && !overflow) {
+                overflow = encoder.flush(byteBuffer).isOverflow();
+            }
+            byteBuffer.flip();
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+            byteBuffer.clear();
+            if (!overflow) {
+                break;
+            }
+        }
+        int remaining = chars.remaining();
+        System.arraycopy(buffer, chars.position(), buffer, 0, remaining);
+        position = remaining;
     }
 }
@@ -3,6 +3,7 @@ package codegen;
 import ast.structure.ClassMethod;
 import ast.structure.MethodParameter;
 import ast.types.HeapObjectReference;
+import ast.types.JavaClass;
 import ast.types.PrimitiveType;
 import ast.types.Type;
 import errors.InvalidClassNameException;
@@ -84,6 +85,18 @@ public class CodeGenUtil {
      */
     public static String getFunctionNameForOutput(ClassMethod method,
                                                   FunctionTable functionTable) {
+        return getFunctionNameForOutput(getFunctionTableEntry(method, functionTable), functionTable);
+    }
+
+    /**
+     * Looks up the function table entry of a method.
+     *
+     * @param method The method
+     * @param functionTable The function table
+     * @return The entry for the method
+     */
+    public static FunctionTableEntry getFunctionTableEntry(ClassMethod method,
+                                                           FunctionTable functionTable) {
         List<Type> parameterTypes = method.getParams().stream()
                 .map(MethodParameter::getType)
                 .collect(Collectors.toList());
@@ -95,7 +108,7 @@ public class CodeGenUtil {
             ErrorReporting.reportError(e.getMessage());
         }
         assert functionTableEntry != null;
-        return getFunctionNameForOutput(functionTableEntry, functionTable);
+        return functionTableEntry;
     }
 
     /**
@@ -105,29 +118,49 @@ public class CodeGenUtil {
      * be used. If there are multiple overloaded methods with this name, then
      * name mangling with the types will be applied.
      *
+     * The name is only worked out once for each function, and is then kept
+     * in its function table entry, since it is needed for every call to the
+     * function and every virtual table entry. This relies on the set of
+     * static functions being fixed once the function table has been built,
+     * which holds since generic instantiations only add non-static methods
+     * and constructors.
+     *
      * @param entry The function table entry for the method under compilation
      * @param functionTable The function table
      * @return The name to be emitted
      */
     public static String getFunctionNameForOutput(FunctionTableEntry entry,
                                                   FunctionTable functionTable) {
-        String delimiter = "_";
-        String className;
-        if (entry.getContainingClass().getGenericClass() != null) {
-            className = entry.getContainingClass().getGenericClass().toString();
-        } else {
-            className = entry.getContainingClass().toString();
+        // Several threads may work out the same name at once, but they will
+        // all arrive at the same answer
+        String outputName = entry.getOutputName();
+        if (outputName == null) {
+            outputName = buildFunctionNameForOutput(entry, functionTable);
+            entry.setOutputName(outputName);
+        }
+        return outputName;
+    }
+
+    private static String buildFunctionNameForOutput(FunctionTableEntry entry,
+                                                     FunctionTable functionTable) {
+        char delimiter = '_';
+        JavaClass containingClass = entry.getContainingClass();
+        if (containingClass.getGenericClass() != null) {
+            containingClass = containingClass.getGenericClass();
         }
         String functionName = entry.getFunctionName();
-        String namespacedName = className + delimiter + functionName;
-        List<Type> parameterTypes = entry.getParameterTypes();
-        if (functionTable.getNumberOfFunctionsWithName(functionName) <= 1) {
-            return namespacedName;
-        } else {
-            List<String> typeNames = parameterTypes.stream()
-                    .map(Object::toString)
-                    .collect(Collectors.toList());
-            return namespacedName + delimiter + String.join(delimiter, typeNames);
+        StringBuilder name = new StringBuilder();
+        name.append(containingClass).append(delimiter).append(functionName);
+        if (functionTable.getNumberOfFunctionsWithName(functionName) > 1) {
+            List<Type> parameterTypes = entry.getParameterTypes();
+            name.append(delimiter);
+            for (int i = 0; i < parameterTypes.size(); i++) {
+                if (i > 0) {
+                    name.append(delimiter);
+                }
+                name.append(parameterTypes.get(i));
+            }
         }
+        return name.toString();
     }
 }
@@ -0,0 +1,16 @@
+package codegen;
+
+/**
+ * The formats in which the compiled module can be written.
+ */
+public enum OutputFormat {
+    /**
+     * The WebAssembly text format (.wat)
+     */
+    WAT,
+
+    /**
+     * The WebAssembly binary format (.wasm)
+     */
+    WASM
+}
@@ -0,0 +1,172 @@
+package codegen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Builds the runtime library as a WebAssembly module of its own.
+ *
+ * Normally the allocator, garbage collector and array functions are copied
+ * into every module that the compiler generates. When many small programs
+ * are loaded, that means compiling the same runtime code over and over
+ * again. Instead, the runtime module can be loaded once, and program
+ * modules can import its memory, globals and functions, so that engines
+ * only compile and cache the runtime once.
+ *
+ * The functions and globals are imported in the order that the runtime
+ * library defines them, so every function of a program module has the same
+ * index as it would if the runtime library were included in the module.
+ */
+public class RuntimeModule {
+
+    /**
+     * The name under which program modules import the runtime module
+     */
+    public static final String IMPORT_MODULE_NAME = "runtime";
+
+    private static final Pattern MEMORY_PATTERN = Pattern.compile("^\\(memory \\(export \"memory\"\\) (\\d+)\\)");
+    private static final Pattern GLOBAL_PATTERN = Pattern.compile("^\\(global \\$(\\S+) (\\(mut \\w+\\)|\\w+)");
+    private static final Pattern FUNCTION_PATTERN = Pattern.compile("^\\(func \\$(\\S+)(.*)$");
+
+    /**
+     * The declarations of the runtime library, which are only worked out
+     * once per process
+     */
+    private static volatile Declarations declarations;
+
+    /**
+     * Emits the runtime library as a module on its own, exporting its
+     * memory and every one of its functions and globals.
+     *
+     * @param emitter The code emitter
+     */
+    public static void emitRuntimeModule(CodeEmitter emitter) {
+        Declarations declarations = getDeclarations();
+        emitter.emitLine("(module");
+        emitter.increaseIndentationLevel();
+        getRuntimeCode()
+                .filter(line -> !line.trim().startsWith("(export"))
+                .forEach(emitter::emitLine);
+        for (Declaration global : declarations.globals) {
+            emitter.emitLine("(export \"" + global.name + "\" (global $" + global.name + "))");
+        }
+        for (Declaration function : declarations.functions) {
+            emitter.emitLine("(export \"" + function.name + "\" (func $" + function.name + "))");
+        }
+        emitter.decreaseIndentationLevel();
+        emitter.emitLine(")");
+    }
+
+    /**
+     * Emits the imports through which a program module uses the runtime
+     * module, in place of the runtime library itself.
+     *
+     * The program module also re-exports everything that it would have
+     * exported from its own copy of the runtime library, so that the code
+     * that loads it does not need to change.
+     *
+     * @param emitter The code emitter
+     */
+    public static void emitImports(CodeEmitter emitter) {
+        Declarations declarations = getDeclarations();
+        String importPrefix = "(import \"" + IMPORT_MODULE_NAME + "\" \"";
+        emitter.emitLine(importPrefix + "memory\" (memory " + declarations.memoryPages + "))");
+        for (Declaration global : declarations.globals) {
+            emitter.emitLine(importPrefix + global.name + "\" (global $" + global.name + " " + global.type + "))");
+        }
+        for (Declaration function : declarations.functions) {
+            emitter.emitLine(importPrefix + function.name + "\" (func $" + function.name + function.type + "))");
+        }
+        emitter.emitLine("(export \"memory\" (memory 0))");
+        declarations.exports.forEach(emitter::emitLine);
+    }
+
+    private static Stream<String> getRuntimeCode() {
+        return Stream.of(
+                WasmLibReader.getGlobalsCode(),
+                WasmLibReader.getAllocationCode(),
+                WasmLibReader.getArraysCode(),
+                WasmLibReader.getGarbageCollectionCode())
+                .flatMap(lines -> lines);
+    }
+
+    private static Declarations getDeclarations() {
+        Declarations result = declarations;
+        if (result == null) {
+            result = findDeclarations(getRuntimeCode().collect(Collectors.toList()));
+            declarations = result;
+        }
+        return result;
+    }
+
+    /**
+     * Finds the memory, globals and functions that the runtime library
+     * defines, and the type of each one.
+     *
+     * The type of a function is taken from its (param ...) and (result ...)
+     * lists, which the library always writes at the start of the function.
+     *
+     * @param lines The code of the runtime library, without comments
+     * @return The declarations
+     */
+    private static Declarations findDeclarations(List<String> lines) {
+        Declarations result = new Declarations();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            Matcher memory = MEMORY_PATTERN.matcher(line);
+            Matcher global = GLOBAL_PATTERN.matcher(line);
+            Matcher function = FUNCTION_PATTERN.matcher(line);
+            if (memory.find()) {
+                result.memoryPages = Integer.parseInt(memory.group(1));
+            } else if (global.find()) {
+                result.globals.add(new Declaration(global.group(1), global.group(2)));
+            } else if (function.find()) {
+                StringBuilder type = new StringBuilder(function.group(2));
+                while (i + 1 < lines.size() && isFunctionTypeLine(lines.get(i + 1))) {
+                    type.append(' ').append(lines.get(++i).trim());
+                }
+                result.functions.add(new Declaration(function.group(1), type.toString()));
+            } else if (line.startsWith("(export")) {
+                result.exports.add(line);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isFunctionTypeLine(String line) {
+        String trimmed = line.trim();
+        return trimmed.startsWith("(param") || trimmed.startsWith("(result");
+    }
+
+    /**
+     * The declarations of the runtime library.
+     */
+    private static class Declarations {
+        int memoryPages = 1;
+        List<Declaration> globals = new ArrayList<>();
+        List<Declaration> functions = new ArrayList<>();
+
+        /**
+         * The exports that the runtime library declares itself
+         */
+        List<String> exports = new ArrayList<>();
+    }
+
+    /**
+     * The name of a global or function, and its type as written in an
+     * import.
+     */
+    private static class Declaration {
+        String name;
+        String type;
+
+        Declaration(String name, String type) {
+            this.name = name;
+            this.type = type;
+        }
+    }
+}
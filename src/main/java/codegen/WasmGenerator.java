@@ -6,39 +6,174 @@ import ast.types.AccessModifier;
 import ast.types.PrimitiveType;
 import ast.types.Type;
 import ast.types.VoidType;
-import codegen.generators.ExpressionGenerator;
-import codegen.generators.LiteralGenerator;
+import codegen.binary.WatAssembler;
+import codegen.generators.IRGenerator;
 import codegen.generators.StatementGenerator;
+import errors.IRVerificationException;
+import errors.WatAssemblyException;
+import ir.IRBuilder;
+import ir.IRFunction;
+import ir.IRPrinter;
+import ir.IRVerifier;
+import ir.passes.PassManager;
 import util.ClassTable;
+import util.ErrorReporting;
 import util.FunctionTable;
 import util.FunctionTableEntry;
 import util.VirtualTable;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 
 public class WasmGenerator {
 
-    private static int emittedMethods = 30;
-    private static boolean debug;
+    /**
+     * The number given to the first compiled method in debug mode. The
+     * functions from the hand-written library come before it.
+     */
+    private static final int FIRST_METHOD_NUMBER = 30;
 
-    public static void compile(List<ClassMethod> methods,
-                               CodeEmitter emitter,
-                               FunctionTable functionTable,
-                               ClassTable classTable,
-                               VirtualTable virtualTable,
-                               boolean debug) {
+    /**
+     * The indentation level at which methods are emitted within the module.
+     */
+    private static final int METHOD_INDENTATION_LEVEL = 1;
 
-        WasmGenerator.debug = debug;
+    /**
+     * Compiles each method into a separate fragment of code, optionally
+     * going through the intermediate representation.
+     *
+     * The methods are independent of each other so they are compiled in
+     * parallel, each into its own buffer.
+     *
+     * @param methods The methods to compile
+     * @param functionTable The function table
+     * @param classTable The class table
+     * @param virtualTable The combined virtual table
+     * @param passManager The optimisation passes to run over the
+     *                    intermediate representation of each method, or
+     *                    null to generate code straight from the AST of
+     *                    each method instead
+     * @param irDumps A list to which the textual form of the intermediate
+     *                representation of each method is added, in order, or
+     *                null if it is not needed. This is the final form of
+     *                each method, unless the pass manager was asked to print
+     *                it after a pass. It is only used with a pass manager.
+     * @param exportedFunctions The output names of the functions to export,
+     *                          or null to export every public method
+     * @return The code for each method, in the same order as methods
+     */
+    public static List<String> compileMethods(List<ClassMethod> methods,
+                                              FunctionTable functionTable,
+                                              ClassTable classTable,
+                                              VirtualTable virtualTable,
+                                              PassManager passManager,
+                                              List<String> irDumps,
+                                              Set<String> exportedFunctions) {
+        if (passManager == null) {
+            return IntStream.range(0, methods.size())
+                    .parallel()
+                    .mapToObj(i -> compileMethodToString(methods.get(i), functionTable,
+                            classTable, virtualTable, exportedFunctions, METHOD_INDENTATION_LEVEL))
+                    .collect(Collectors.toList());
+        }
+        String[] dumps = new String[methods.size()];
+        List<String> compiledMethods = IntStream.range(0, methods.size())
+                .parallel()
+                .mapToObj(i -> {
+                    IRFunction function = buildIR(methods.get(i), functionTable);
+                    if (exportedFunctions != null) {
+                        function.setExported(exportedFunctions.contains(function.getName()));
+                    }
+                    String printed = passManager.run(function);
+                    if (passManager.hasPasses()) {
+                        verifyIR(function);
+                    }
+                    if (irDumps != null) {
+                        dumps[i] = (printed != null) ? printed : IRPrinter.print(function);
+                    }
+                    return compileFunctionToString(function, virtualTable, METHOD_INDENTATION_LEVEL);
+                })
+                .collect(Collectors.toList());
+        if (irDumps != null) {
+            irDumps.addAll(Arrays.asList(dumps));
+        }
+        return compiledMethods;
+    }
 
-        // Notify generators of required state
-        ExpressionGenerator.getInstance().setCodeEmitter(emitter);
-        ExpressionGenerator.getInstance().setTables(functionTable, classTable, virtualTable);
-        StatementGenerator.getInstance().setCodeEmitter(emitter);
-        StatementGenerator.getInstance().setTables(functionTable, classTable, virtualTable);
-        LiteralGenerator.getInstance().setCodeEmitter(emitter);
+    /**
+     * Lowers a method into the intermediate representation, and checks that
+     * the result is well formed.
+     *
+     * @param method The method
+     * @param functionTable The function table
+     * @return The function
+     */
+    public static IRFunction buildIR(ClassMethod method, FunctionTable functionTable) {
+        IRFunction function = new IRBuilder(functionTable).build(method);
+        verifyIR(function);
+        return function;
+    }
+
+    /**
+     * Checks that a function in the intermediate representation is well
+     * formed, stopping the compilation if it is not, since that can only be
+     * caused by a bug in the compiler.
+     *
+     * @param function The function
+     */
+    private static void verifyIR(IRFunction function) {
+        try {
+            IRVerifier.verify(function);
+        } catch (IRVerificationException e) {
+            ErrorReporting.reportError("Internal compiler error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Emits a complete module, splicing in the code of methods that have
+     * already been compiled by compileMethods. The emitter is not flushed or
+     * closed.
+     *
+     * @param compiledMethods The code for each method, in output order
+     * @param emitter The code emitter
+     * @param functionTable The function table
+     * @param virtualTable The combined virtual table
+     * @param debug Whether to include debugging functions
+     * @param sharedRuntime Whether to import the runtime library from the
+     *                      runtime module rather than including it
+     */
+    public static void emitModule(List<String> compiledMethods,
+                                  CodeEmitter emitter,
+                                  FunctionTable functionTable,
+                                  VirtualTable virtualTable,
+                                  boolean debug,
+                                  boolean sharedRuntime) {
+        emitModuleStart(emitter, debug, sharedRuntime);
+        for (int i = 0; i < compiledMethods.size(); i++) {
+            emitMethod(compiledMethods.get(i), i, emitter, debug);
+        }
+        emitModuleEnd(emitter, functionTable, virtualTable);
+    }
+
+    /**
+     * Emits the start of a module, up to where the compiled methods go.
+     *
+     * Together with emitMethod and emitModuleEnd, this allows a module to be
+     * written out while its methods are still being compiled. Nothing that
+     * is emitted before the methods depends on the program being compiled.
+     *
+     * @param emitter The code emitter
+     * @param debug Whether to include debugging functions
+     * @param sharedRuntime Whether to import the runtime library from the
+     *                      runtime module rather than including it
+     */
+    public static void emitModuleStart(CodeEmitter emitter, boolean debug, boolean sharedRuntime) {
 
         // Emit start of module
         emitter.emitLine("(module");
@@ -49,30 +184,103 @@ public class WasmGenerator {
             emitter.emitLine("(import \"console\" \"log\" (func $log (param i32)))");
         }
 
-        // Emit the list of function types
-        emitFunctionTypes(emitter, functionTable);
-
-        // Emit virtual tables
-        emitVirtualTables(emitter, functionTable, virtualTable);
-
-        // Emit hand-coded WebAssembly functions
-        WasmLibReader.getGlobalsCode().forEach(emitter::emitLine);
-        WasmLibReader.getAllocationCode().forEach(emitter::emitLine);
-        WasmLibReader.getArraysCode().forEach(emitter::emitLine);
-        WasmLibReader.getGarbageCollectionCode().forEach(emitter::emitLine);
+        // Emit hand-coded WebAssembly functions, or import them
+        if (sharedRuntime) {
+            RuntimeModule.emitImports(emitter);
+        } else {
+            WasmLibReader.getGlobalsCode().forEach(emitter::emitLine);
+            WasmLibReader.getAllocationCode().forEach(emitter::emitLine);
+            WasmLibReader.getArraysCode().forEach(emitter::emitLine);
+            WasmLibReader.getGarbageCollectionCode().forEach(emitter::emitLine);
+        }
         if (debug) {
             WasmLibReader.getDebugCode().forEach(emitter::emitLine);
         }
+    }
+
+    /**
+     * Splices the code of a compiled method into a module.
+     *
+     * @param compiledMethod The code for the method
+     * @param position The position of the method in the output order
+     * @param emitter The code emitter
+     * @param debug Whether to include debugging functions
+     */
+    public static void emitMethod(String compiledMethod, int position, CodeEmitter emitter, boolean debug) {
 
-        // Now compile each method
-        for (ClassMethod method : methods) {
-            compileMethod(method, functionTable, emitter);
+        // If we're in debug mode then emit the function number so that it
+        // can be quickly looked up from error messages.
+        if (debug) {
+            emitter.emitLine(";; FUNCTION NUMBER: " + (FIRST_METHOD_NUMBER + position));
         }
 
+        emitter.emitRaw(compiledMethod);
+    }
+
+    /**
+     * Emits the end of a module, once every method has been emitted.
+     *
+     * The function types and virtual tables come after the methods, since
+     * the function types include those of generic instantiations, which are
+     * only known once every method has been compiled. The emitter is not
+     * closed.
+     *
+     * @param emitter The code emitter
+     * @param functionTable The function table
+     * @param virtualTable The combined virtual table
+     */
+    public static void emitModuleEnd(CodeEmitter emitter,
+                                     FunctionTable functionTable,
+                                     VirtualTable virtualTable) {
+
+        // Emit the list of function types
+        emitFunctionTypes(emitter, functionTable, virtualTable);
+
+        // Emit virtual tables
+        emitVirtualTables(emitter, functionTable, virtualTable);
+
         // End the module
         emitter.decreaseIndentationLevel();
         emitter.emitLine(")");
-        emitter.close();
+    }
+
+    /**
+     * Builds a complete module in the binary format, splicing in the code of
+     * methods that have already been compiled by compileMethods.
+     *
+     * The module is first emitted as text into memory, exactly as
+     * emitModule would write it, and is then assembled so that the text
+     * never needs to be written out.
+     *
+     * @param compiledMethods The code for each method, in output order
+     * @param functionTable The function table
+     * @param virtualTable The combined virtual table
+     * @param debug Whether to include debugging functions and function names
+     * @param sharedRuntime Whether to import the runtime library from the
+     *                      runtime module rather than including it
+     * @return The binary module
+     * @throws WatAssemblyException If the generated code cannot be assembled
+     */
+    public static byte[] assembleModule(List<String> compiledMethods,
+                                        FunctionTable functionTable,
+                                        VirtualTable virtualTable,
+                                        boolean debug,
+                                        boolean sharedRuntime) throws WatAssemblyException {
+        CodeEmitter emitter = new CodeEmitter();
+        emitModule(compiledMethods, emitter, functionTable, virtualTable, debug, sharedRuntime);
+        return WatAssembler.assemble(emitter.getEmittedCode(), debug);
+    }
+
+    /**
+     * Builds the runtime module in the binary format.
+     *
+     * @return The binary module
+     * @throws WatAssemblyException If the runtime library cannot be assembled
+     */
+    public static byte[] assembleRuntimeModule() throws WatAssemblyException {
+        CodeEmitter emitter = new CodeEmitter();
+        RuntimeModule.emitRuntimeModule(emitter);
+        return WatAssembler.assemble(emitter.getEmittedCode(), false);
     }
 
     /**
@@ -83,20 +291,30 @@ public class WasmGenerator {
      *
      * @param emitter The code emitter
      * @param functionTable The function table
+     * @param virtualTable The virtual table through which the functions are
+     *                     called
      */
     private static void emitFunctionTypes(CodeEmitter emitter,
-                                          FunctionTable functionTable) {
+                                          FunctionTable functionTable,
+                                          VirtualTable virtualTable) {
 
+        // If it is known which functions are called indirectly, only their
+        // types are needed, and each is only emitted once
+        Set<String> functionTypes = virtualTable.getFunctionTypes();
+        Set<String> emitted = new HashSet<>();
         for (FunctionTableEntry entry : functionTable.getFunctions()) {
 
             // No need to emit types for static methods since they will never
             // be called indirectly.
             if (entry.getIsStatic()) continue;
 
+            String functionName = CodeGenUtil.getFunctionNameForOutput(entry, functionTable);
+            if (functionTypes != null && (!functionTypes.contains(functionName) || !emitted.add(functionName))) {
+                continue;
+            }
+
             // Build up a string for the type for this function.
-            String typeString = "(type $func_"
-                    + CodeGenUtil.getFunctionNameForOutput(entry, functionTable)
-                    + " (func ";
+            String typeString = "(type $func_" + functionName + " (func ";
 
             // Emit each parameter
             String parameters = entry.getParameterTypes()
@@ -133,6 +351,16 @@ public class WasmGenerator {
                                           FunctionTable functionTable,
                                           VirtualTable virtualTable) {
 
+        // Slots whose methods can never be called are filled with a
+        // function that traps
+        if (virtualTable.hasUnusedEntries()) {
+            emitter.emitLine("(func $" + VirtualTable.UNUSED_ENTRY_FUNCTION_NAME);
+            emitter.increaseIndentationLevel();
+            emitter.emitLine("unreachable");
+            emitter.emitLine(")");
+            emitter.decreaseIndentationLevel();
+        }
+
         int numEntries = virtualTable.getEntries().size();
         emitter.emitLine("(table " + numEntries + " anyfunc)");
         emitter.increaseIndentationLevel();
@@ -146,15 +374,58 @@ public class WasmGenerator {
         emitter.decreaseIndentationLevel();
     }
 
+    /**
+     * Compiles a method into an in-memory buffer.
+     *
+     * A fresh set of generators is used for every method so that several
+     * methods can be compiled at the same time.
+     *
+     * @param method The method to compile
+     * @param functionTable The function table
+     * @param classTable The class table
+     * @param virtualTable The combined virtual table
+     * @param exportedFunctions The output names of the functions to export,
+     *                          or null to export every public method
+     * @param indentationLevel The indentation level to start at
+     * @return The code for the method
+     */
+    private static String compileMethodToString(ClassMethod method,
+                                                FunctionTable functionTable,
+                                                ClassTable classTable,
+                                                VirtualTable virtualTable,
+                                                Set<String> exportedFunctions,
+                                                int indentationLevel) {
+        CodeEmitter emitter = new CodeEmitter();
+        emitter.setIndentationLevel(indentationLevel);
+        StatementGenerator statementGenerator =
+                new StatementGenerator(emitter, functionTable, classTable, virtualTable);
+        compileMethod(method, functionTable, exportedFunctions, emitter, statementGenerator);
+        return emitter.getEmittedCode();
+    }
+
+    /**
+     * Generates the code for a function in the intermediate representation
+     * into an in-memory buffer.
+     *
+     * @param function The function, which must have been verified
+     * @param virtualTable The combined virtual table
+     * @param indentationLevel The indentation level to start at
+     * @return The code for the function
+     */
+    private static String compileFunctionToString(IRFunction function,
+                                                  VirtualTable virtualTable,
+                                                  int indentationLevel) {
+        CodeEmitter emitter = new CodeEmitter();
+        emitter.setIndentationLevel(indentationLevel);
+        new IRGenerator(emitter, virtualTable).compileFunction(function);
+        return emitter.getEmittedCode();
+    }
+
     private static void compileMethod(ClassMethod method,
                                       FunctionTable functionTable,
-                                      CodeEmitter emitter) {
-
-        // If we're in debug mode then emit the function number so that it can be quickly
-        // looked up from error messages.
-        if (debug) {
-            emitter.emitLine(";; FUNCTION NUMBER: " + emittedMethods++);
-        }
+                                      Set<String> exportedFunctions,
+                                      CodeEmitter emitter,
+                                      StatementGenerator statementGenerator) {
 
         // Emit the function declaration
         String functionName = CodeGenUtil.getFunctionNameForOutput(method, functionTable);
@@ -188,14 +459,18 @@ public class WasmGenerator {
         emitter.emitLine("(local $saved_stack_frame_start i32)");
 
         // Now compile the body of the function
-        StatementGenerator.getInstance().compileCodeBlock(method.getBody());
+        statementGenerator.compileCodeBlock(method.getBody());
 
         // End the body
         emitter.emitLine(")");
         emitter.decreaseIndentationLevel();
 
-        // Export the function if it's declared public
-        if (method.getAccessModifier() == AccessModifier.PUBLIC) {
+        // Export the function if it's declared public, or if it's one of
+        // the functions that were asked for
+        boolean exported = (exportedFunctions != null)
+                ? exportedFunctions.contains(functionName)
+                : method.getAccessModifier() == AccessModifier.PUBLIC;
+        if (exported) {
             emitter.emitLine("(export \"" + functionName + "\" (func $" + functionName + "))");
         }
     }
@@ -1,19 +1,33 @@
 package codegen;
 
+import util.ErrorReporting;
+
 import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
  * Contains static methods for reading hand-written .wat files so that they
  * can be included in the generated source code.
+ *
+ * The files are packaged as resources, so the compiler can be run from any
+ * directory. Each file is only read once per process: the cleaned lines are
+ * kept in memory so that later compilations (for example in server mode) can
+ * reuse them.
  */
 public class WasmLibReader {
 
+    private static final String RESOURCE_DIRECTORY = "/wasm-lib/";
+
+    private static final Map<String, List<String>> cleanedFiles = new ConcurrentHashMap<>();
+
     public static Stream<String> getGlobalsCode() {
         return readCleanedWasmCode("globals.wat");
     }
@@ -42,29 +56,33 @@ public class WasmLibReader {
      * @return A filtered stream with the unneeded lines removed
      */
     private static Stream<String> readCleanedWasmCode(String fileName) {
-        return readLinesFromFile(fileName)
-                .filter(line -> line.trim().length() > 0)        // Remove empty lines
-                .filter(line -> !line.trim().startsWith(";;"));  // Remove comments
+        return cleanedFiles.computeIfAbsent(fileName, name ->
+                readLinesFromResource(name).stream()
+                        .filter(line -> line.trim().length() > 0)        // Remove empty lines
+                        .filter(line -> !line.trim().startsWith(";;"))   // Remove comments
+                        .collect(Collectors.toList()))
+                .stream();
     }
 
     /**
-     * Reads a file and outputs the lines in a stream.
+     * Reads all the lines of one of the library files, which are packaged
+     * as resources alongside the compiler's classes.
      *
      * @param fileName The name of the file to read
-     * @return A stream containing the lines from the file
+     * @return The lines from the file
      */
-    private static Stream<String> readLinesFromFile(String fileName) {
-        Path currentPath = Paths.get(System.getProperty("user.dir"));
-        Path filePath = Paths.get(currentPath.toString(), "src", "main", "wasm-lib", fileName);
-        File file = new File(filePath.toString());
-        BufferedReader reader = null;
-        try {
-            reader = new BufferedReader(new FileReader(file));
+    private static List<String> readLinesFromResource(String fileName) {
+        String resourceName = RESOURCE_DIRECTORY + fileName;
+        InputStream stream = WasmLibReader.class.getResourceAsStream(resourceName);
+        if (stream == null) {
+            ErrorReporting.reportError("Unable to find runtime library file " + resourceName);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.toList());
         } catch (IOException e) {
-            e.printStackTrace();
+            ErrorReporting.reportError("Unable to read runtime library file " + resourceName);
+            return null;
         }
-        assert reader != null;
-        return reader.lines();
     }
 
 }
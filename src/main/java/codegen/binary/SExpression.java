@@ -0,0 +1,117 @@
+package codegen.binary;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * A node of a parsed WebAssembly text file: either an atom (a keyword,
+ * identifier or number), a string literal, or a parenthesised list.
+ */
+public class SExpression {
+
+    private String atom;
+    private byte[] stringBytes;
+    private List<SExpression> children;
+    private int line;
+
+    private SExpression(String atom, byte[] stringBytes, List<SExpression> children, int line) {
+        this.atom = atom;
+        this.stringBytes = stringBytes;
+        this.children = children;
+        this.line = line;
+    }
+
+    public static SExpression atom(String atom, int line) {
+        return new SExpression(atom, null, null, line);
+    }
+
+    public static SExpression string(byte[] stringBytes, int line) {
+        return new SExpression(null, stringBytes, null, line);
+    }
+
+    public static SExpression list(List<SExpression> children, int line) {
+        return new SExpression(null, null, children, line);
+    }
+
+    public boolean isAtom() {
+        return atom != null;
+    }
+
+    public boolean isString() {
+        return stringBytes != null;
+    }
+
+    public boolean isList() {
+        return children != null;
+    }
+
+    /**
+     * Determines whether this is an atom with the given text.
+     *
+     * @param text The text to compare against
+     * @return true if this is an atom matching the text
+     */
+    public boolean isAtom(String text) {
+        return text.equals(atom);
+    }
+
+    /**
+     * Determines whether this is an identifier, such as $alloc.
+     *
+     * @return true if this is an identifier
+     */
+    public boolean isIdentifier() {
+        return atom != null && atom.startsWith("$");
+    }
+
+    /**
+     * Determines whether this is a list whose first element is the given
+     * keyword, such as (param i32).
+     *
+     * @param keyword The keyword to look for
+     * @return true if this is a list starting with the keyword
+     */
+    public boolean isList(String keyword) {
+        return children != null && !children.isEmpty() && children.get(0).isAtom(keyword);
+    }
+
+    public String getAtom() {
+        return atom;
+    }
+
+    public byte[] getStringBytes() {
+        return stringBytes;
+    }
+
+    public List<SExpression> getChildren() {
+        return children;
+    }
+
+    /**
+     * @return The keyword at the start of this list, or null if there is none
+     */
+    public String getHead() {
+        if (children == null || children.isEmpty() || !children.get(0).isAtom()) {
+            return null;
+        }
+        return children.get(0).getAtom();
+    }
+
+    /**
+     * @return The line of the source file on which this node starts
+     */
+    public int getLine() {
+        return line;
+    }
+
+    @Override
+    public String toString() {
+        if (atom != null) {
+            return atom;
+        } else if (stringBytes != null) {
+            return "\"" + new String(stringBytes, StandardCharsets.UTF_8) + "\"";
+        } else {
+            return "(" + (getHead() != null ? getHead() + " ..." : "...") + ")";
+        }
+    }
+}
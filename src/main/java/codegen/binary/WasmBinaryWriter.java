@@ -0,0 +1,153 @@
+package codegen.binary;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A growable buffer of bytes, with methods for writing the encodings used by
+ * the WebAssembly binary format.
+ *
+ * All integers are written using LEB128 encoding, and all floating point
+ * numbers are written in little-endian IEEE 754 format.
+ */
+public class WasmBinaryWriter {
+
+    private ByteArrayOutputStream bytes;
+
+    public WasmBinaryWriter() {
+        bytes = new ByteArrayOutputStream();
+    }
+
+    /**
+     * Writes a single byte.
+     *
+     * @param value The byte to write, in its lowest 8 bits
+     */
+    public void writeByte(int value) {
+        bytes.write(value);
+    }
+
+    /**
+     * Writes a sequence of bytes, with no length prefix.
+     *
+     * @param values The bytes to write
+     */
+    public void writeBytes(byte[] values) {
+        bytes.write(values, 0, values.length);
+    }
+
+    /**
+     * Writes an unsigned integer using unsigned LEB128 encoding.
+     *
+     * @param value The value to write, which is treated as unsigned
+     */
+    public void writeUnsignedLeb128(long value) {
+        do {
+            int b = (int) (value & 0x7f);
+            value >>>= 7;
+            if (value != 0) {
+                b |= 0x80;
+            }
+            bytes.write(b);
+        } while (value != 0);
+    }
+
+    /**
+     * Writes a signed integer using signed LEB128 encoding.
+     *
+     * @param value The value to write
+     */
+    public void writeSignedLeb128(long value) {
+        while (true) {
+            int b = (int) (value & 0x7f);
+            value >>= 7;
+            boolean done = (value == 0 && (b & 0x40) == 0)
+                    || (value == -1 && (b & 0x40) != 0);
+            if (!done) {
+                b |= 0x80;
+            }
+            bytes.write(b);
+            if (done) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes a 32-bit floating point number.
+     *
+     * @param value The value to write
+     */
+    public void writeFloat32(float value) {
+        writeLittleEndian(Float.floatToRawIntBits(value), 4);
+    }
+
+    /**
+     * Writes a 64-bit floating point number.
+     *
+     * @param value The value to write
+     */
+    public void writeFloat64(double value) {
+        writeLittleEndian(Double.doubleToRawLongBits(value), 8);
+    }
+
+    /**
+     * Writes a sequence of bytes prefixed with its length, as used for names.
+     *
+     * @param name The bytes of the name
+     */
+    public void writeName(byte[] name) {
+        writeUnsignedLeb128(name.length);
+        writeBytes(name);
+    }
+
+    /**
+     * Writes a name prefixed with its length.
+     *
+     * @param name The name, which is encoded as UTF-8
+     */
+    public void writeName(String name) {
+        writeName(name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the contents of another writer prefixed with their length.
+     *
+     * @param contents The writer whose contents to write
+     */
+    public void writeSized(WasmBinaryWriter contents) {
+        writeUnsignedLeb128(contents.size());
+        writeBytes(contents.toByteArray());
+    }
+
+    /**
+     * Writes a section of a module.
+     *
+     * @param id The section ID
+     * @param contents The contents of the section
+     */
+    public void writeSection(int id, WasmBinaryWriter contents) {
+        writeByte(id);
+        writeSized(contents);
+    }
+
+    /**
+     * @return The number of bytes written so far
+     */
+    public int size() {
+        return bytes.size();
+    }
+
+    /**
+     * @return A copy of the bytes written so far
+     */
+    public byte[] toByteArray() {
+        return bytes.toByteArray();
+    }
+
+    private void writeLittleEndian(long value, int numBytes) {
+        for (int i = 0; i < numBytes; i++) {
+            bytes.write((int) (value >>> (8 * i)) & 0xff);
+        }
+    }
+}
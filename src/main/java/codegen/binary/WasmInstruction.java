@@ -0,0 +1,273 @@
+package codegen.binary;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The opcode table for the WebAssembly MVP instruction set.
+ *
+ * Each instruction records its opcode, the kind of immediate operand that
+ * follows it, and for memory instructions the natural alignment (as a power
+ * of 2) that is used when no align= is given.
+ */
+public class WasmInstruction {
+
+    /**
+     * The kinds of immediate operand that can follow an opcode.
+     */
+    public enum Immediate {
+        NONE,
+        BLOCK,
+        LABEL,
+        LABEL_TABLE,
+        FUNCTION,
+        INDIRECT,
+        LOCAL,
+        GLOBAL,
+        MEMORY,
+        MEMORY_INDEX,
+        I32,
+        I64,
+        F32,
+        F64
+    }
+
+    private static final Map<String, WasmInstruction> instructions = new HashMap<>();
+
+    static {
+        add("unreachable", 0x00, Immediate.NONE);
+        add("nop", 0x01, Immediate.NONE);
+        add("block", 0x02, Immediate.BLOCK);
+        add("loop", 0x03, Immediate.BLOCK);
+        add("if", 0x04, Immediate.BLOCK);
+        add("else", 0x05, Immediate.NONE);
+        add("end", 0x0b, Immediate.NONE);
+        add("br", 0x0c, Immediate.LABEL);
+        add("br_if", 0x0d, Immediate.LABEL);
+        add("br_table", 0x0e, Immediate.LABEL_TABLE);
+        add("return", 0x0f, Immediate.NONE);
+        add("call", 0x10, Immediate.FUNCTION);
+        add("call_indirect", 0x11, Immediate.INDIRECT);
+        add("drop", 0x1a, Immediate.NONE);
+        add("select", 0x1b, Immediate.NONE);
+        add("local.get", 0x20, Immediate.LOCAL);
+        add("local.set", 0x21, Immediate.LOCAL);
+        add("local.tee", 0x22, Immediate.LOCAL);
+        add("global.get", 0x23, Immediate.GLOBAL);
+        add("global.set", 0x24, Immediate.GLOBAL);
+        add("i32.load", 0x28, Immediate.MEMORY, 2);
+        add("i64.load", 0x29, Immediate.MEMORY, 3);
+        add("f32.load", 0x2a, Immediate.MEMORY, 2);
+        add("f64.load", 0x2b, Immediate.MEMORY, 3);
+        add("i32.load8_s", 0x2c, Immediate.MEMORY, 0);
+        add("i32.load8_u", 0x2d, Immediate.MEMORY, 0);
+        add("i32.load16_s", 0x2e, Immediate.MEMORY, 1);
+        add("i32.load16_u", 0x2f, Immediate.MEMORY, 1);
+        add("i64.load8_s", 0x30, Immediate.MEMORY, 0);
+        add("i64.load8_u", 0x31, Immediate.MEMORY, 0);
+        add("i64.load16_s", 0x32, Immediate.MEMORY, 1);
+        add("i64.load16_u", 0x33, Immediate.MEMORY, 1);
+        add("i64.load32_s", 0x34, Immediate.MEMORY, 2);
+        add("i64.load32_u", 0x35, Immediate.MEMORY, 2);
+        add("i32.store", 0x36, Immediate.MEMORY, 2);
+        add("i64.store", 0x37, Immediate.MEMORY, 3);
+        add("f32.store", 0x38, Immediate.MEMORY, 2);
+        add("f64.store", 0x39, Immediate.MEMORY, 3);
+        add("i32.store8", 0x3a, Immediate.MEMORY, 0);
+        add("i32.store16", 0x3b, Immediate.MEMORY, 1);
+        add("i64.store8", 0x3c, Immediate.MEMORY, 0);
+        add("i64.store16", 0x3d, Immediate.MEMORY, 1);
+        add("i64.store32", 0x3e, Immediate.MEMORY, 2);
+        add("memory.size", 0x3f, Immediate.MEMORY_INDEX);
+        add("memory.grow", 0x40, Immediate.MEMORY_INDEX);
+        add("i32.const", 0x41, Immediate.I32);
+        add("i64.const", 0x42, Immediate.I64);
+        add("f32.const", 0x43, Immediate.F32);
+        add("f64.const", 0x44, Immediate.F64);
+        add("i32.eqz", 0x45, Immediate.NONE);
+        add("i32.eq", 0x46, Immediate.NONE);
+        add("i32.ne", 0x47, Immediate.NONE);
+        add("i32.lt_s", 0x48, Immediate.NONE);
+        add("i32.lt_u", 0x49, Immediate.NONE);
+        add("i32.gt_s", 0x4a, Immediate.NONE);
+        add("i32.gt_u", 0x4b, Immediate.NONE);
+        add("i32.le_s", 0x4c, Immediate.NONE);
+        add("i32.le_u", 0x4d, Immediate.NONE);
+        add("i32.ge_s", 0x4e, Immediate.NONE);
+        add("i32.ge_u", 0x4f, Immediate.NONE);
+        add("i64.eqz", 0x50, Immediate.NONE);
+        add("i64.eq", 0x51, Immediate.NONE);
+        add("i64.ne", 0x52, Immediate.NONE);
+        add("i64.lt_s", 0x53, Immediate.NONE);
+        add("i64.lt_u", 0x54, Immediate.NONE);
+        add("i64.gt_s", 0x55, Immediate.NONE);
+        add("i64.gt_u", 0x56, Immediate.NONE);
+        add("i64.le_s", 0x57, Immediate.NONE);
+        add("i64.le_u", 0x58, Immediate.NONE);
+        add("i64.ge_s", 0x59, Immediate.NONE);
+        add("i64.ge_u", 0x5a, Immediate.NONE);
+        add("f32.eq", 0x5b, Immediate.NONE);
+        add("f32.ne", 0x5c, Immediate.NONE);
+        add("f32.lt", 0x5d, Immediate.NONE);
+        add("f32.gt", 0x5e, Immediate.NONE);
+        add("f32.le", 0x5f, Immediate.NONE);
+        add("f32.ge", 0x60, Immediate.NONE);
+        add("f64.eq", 0x61, Immediate.NONE);
+        add("f64.ne", 0x62, Immediate.NONE);
+        add("f64.lt", 0x63, Immediate.NONE);
+        add("f64.gt", 0x64, Immediate.NONE);
+        add("f64.le", 0x65, Immediate.NONE);
+        add("f64.ge", 0x66, Immediate.NONE);
+        add("i32.clz", 0x67, Immediate.NONE);
+        add("i32.ctz", 0x68, Immediate.NONE);
+        add("i32.popcnt", 0x69, Immediate.NONE);
+        add("i32.add", 0x6a, Immediate.NONE);
+        add("i32.sub", 0x6b, Immediate.NONE);
+        add("i32.mul", 0x6c, Immediate.NONE);
+        add("i32.div_s", 0x6d, Immediate.NONE);
+        add("i32.div_u", 0x6e, Immediate.NONE);
+        add("i32.rem_s", 0x6f, Immediate.NONE);
+        add("i32.rem_u", 0x70, Immediate.NONE);
+        add("i32.and", 0x71, Immediate.NONE);
+        add("i32.or", 0x72, Immediate.NONE);
+        add("i32.xor", 0x73, Immediate.NONE);
+        add("i32.shl", 0x74, Immediate.NONE);
+        add("i32.shr_s", 0x75, Immediate.NONE);
+        add("i32.shr_u", 0x76, Immediate.NONE);
+        add("i32.rotl", 0x77, Immediate.NONE);
+        add("i32.rotr", 0x78, Immediate.NONE);
+        add("i64.clz", 0x79, Immediate.NONE);
+        add("i64.ctz", 0x7a, Immediate.NONE);
+        add("i64.popcnt", 0x7b, Immediate.NONE);
+        add("i64.add", 0x7c, Immediate.NONE);
+        add("i64.sub", 0x7d, Immediate.NONE);
+        add("i64.mul", 0x7e, Immediate.NONE);
+        add("i64.div_s", 0x7f, Immediate.NONE);
+        add("i64.div_u", 0x80, Immediate.NONE);
+        add("i64.rem_s", 0x81, Immediate.NONE);
+        add("i64.rem_u", 0x82, Immediate.NONE);
+        add("i64.and", 0x83, Immediate.NONE);
+        add("i64.or", 0x84, Immediate.NONE);
+        add("i64.xor", 0x85, Immediate.NONE);
+        add("i64.shl", 0x86, Immediate.NONE);
+        add("i64.shr_s", 0x87, Immediate.NONE);
+        add("i64.shr_u", 0x88, Immediate.NONE);
+        add("i64.rotl", 0x89, Immediate.NONE);
+        add("i64.rotr", 0x8a, Immediate.NONE);
+        add("f32.abs", 0x8b, Immediate.NONE);
+        add("f32.neg", 0x8c, Immediate.NONE);
+        add("f32.ceil", 0x8d, Immediate.NONE);
+        add("f32.floor", 0x8e, Immediate.NONE);
+        add("f32.trunc", 0x8f, Immediate.NONE);
+        add("f32.nearest", 0x90, Immediate.NONE);
+        add("f32.sqrt", 0x91, Immediate.NONE);
+        add("f32.add", 0x92, Immediate.NONE);
+        add("f32.sub", 0x93, Immediate.NONE);
+        add("f32.mul", 0x94, Immediate.NONE);
+        add("f32.div", 0x95, Immediate.NONE);
+        add("f32.min", 0x96, Immediate.NONE);
+        add("f32.max", 0x97, Immediate.NONE);
+        add("f32.copysign", 0x98, Immediate.NONE);
+        add("f64.abs", 0x99, Immediate.NONE);
+        add("f64.neg", 0x9a, Immediate.NONE);
+        add("f64.ceil", 0x9b, Immediate.NONE);
+        add("f64.floor", 0x9c, Immediate.NONE);
+        add("f64.trunc", 0x9d, Immediate.NONE);
+        add("f64.nearest", 0x9e, Immediate.NONE);
+        add("f64.sqrt", 0x9f, Immediate.NONE);
+        add("f64.add", 0xa0, Immediate.NONE);
+        add("f64.sub", 0xa1, Immediate.NONE);
+        add("f64.mul", 0xa2, Immediate.NONE);
+        add("f64.div", 0xa3, Immediate.NONE);
+        add("f64.min", 0xa4, Immediate.NONE);
+        add("f64.max", 0xa5, Immediate.NONE);
+        add("f64.copysign", 0xa6, Immediate.NONE);
+        add("i32.wrap_i64", 0xa7, Immediate.NONE);
+        add("i32.trunc_f32_s", 0xa8, Immediate.NONE);
+        add("i32.trunc_f32_u", 0xa9, Immediate.NONE);
+        add("i32.trunc_f64_s", 0xaa, Immediate.NONE);
+        add("i32.trunc_f64_u", 0xab, Immediate.NONE);
+        add("i64.extend_i32_s", 0xac, Immediate.NONE);
+        add("i64.extend_i32_u", 0xad, Immediate.NONE);
+        add("i64.trunc_f32_s", 0xae, Immediate.NONE);
+        add("i64.trunc_f32_u", 0xaf, Immediate.NONE);
+        add("i64.trunc_f64_s", 0xb0, Immediate.NONE);
+        add("i64.trunc_f64_u", 0xb1, Immediate.NONE);
+        add("f32.convert_i32_s", 0xb2, Immediate.NONE);
+        add("f32.convert_i32_u", 0xb3, Immediate.NONE);
+        add("f32.convert_i64_s", 0xb4, Immediate.NONE);
+        add("f32.convert_i64_u", 0xb5, Immediate.NONE);
+        add("f32.demote_f64", 0xb6, Immediate.NONE);
+        add("f64.convert_i32_s", 0xb7, Immediate.NONE);
+        add("f64.convert_i32_u", 0xb8, Immediate.NONE);
+        add("f64.convert_i64_s", 0xb9, Immediate.NONE);
+        add("f64.convert_i64_u", 0xba, Immediate.NONE);
+        add("f64.promote_f32", 0xbb, Immediate.NONE);
+        add("i32.reinterpret_f32", 0xbc, Immediate.NONE);
+        add("i64.reinterpret_f64", 0xbd, Immediate.NONE);
+        add("f32.reinterpret_i32", 0xbe, Immediate.NONE);
+        add("f64.reinterpret_i64", 0xbf, Immediate.NONE);
+
+        // Names used by older versions of the text format
+        addAlias("get_local", "local.get");
+        addAlias("set_local", "local.set");
+        addAlias("tee_local", "local.tee");
+        addAlias("get_global", "global.get");
+        addAlias("set_global", "global.set");
+        addAlias("current_memory", "memory.size");
+        addAlias("grow_memory", "memory.grow");
+    }
+
+    private String name;
+    private int opcode;
+    private Immediate immediate;
+    private int naturalAlignment;
+
+    private WasmInstruction(String name, int opcode, Immediate immediate, int naturalAlignment) {
+        this.name = name;
+        this.opcode = opcode;
+        this.immediate = immediate;
+        this.naturalAlignment = naturalAlignment;
+    }
+
+    /**
+     * Looks up an instruction by its name in the text format.
+     *
+     * @param name The name of the instruction, such as i32.add
+     * @return The instruction, or null if there is no such instruction
+     */
+    public static WasmInstruction lookup(String name) {
+        return instructions.get(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getOpcode() {
+        return opcode;
+    }
+
+    public Immediate getImmediate() {
+        return immediate;
+    }
+
+    /**
+     * @return The natural alignment of a memory access, as a power of 2
+     */
+    public int getNaturalAlignment() {
+        return naturalAlignment;
+    }
+
+    private static void add(String name, int opcode, Immediate immediate) {
+        add(name, opcode, immediate, 0);
+    }
+
+    private static void add(String name, int opcode, Immediate immediate, int naturalAlignment) {
+        instructions.put(name, new WasmInstruction(name, opcode, immediate, naturalAlignment));
+    }
+
+    private static void addAlias(String alias, String name) {
+        instructions.put(alias, instructions.get(name));
+    }
+}
@@ -0,0 +1,1175 @@
+package codegen.binary;
+
+import errors.WatAssemblyException;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Encodes a module written in the WebAssembly text format into the binary
+ * format.
+ *
+ * This supports the subset of the text format that is produced by the code
+ * generator and used by the hand-written runtime library: the MVP instruction
+ * set in both flat and folded form, symbolic or numeric indices, inline
+ * exports, and the type, import, function, table, memory, global, export,
+ * start, element, code and data sections.
+ */
+public class WatAssembler {
+
+    private static final byte[] MAGIC = {0x00, 0x61, 0x73, 0x6d};
+    private static final int VERSION = 1;
+
+    private static final int CUSTOM_SECTION = 0;
+    private static final int TYPE_SECTION = 1;
+    private static final int IMPORT_SECTION = 2;
+    private static final int FUNCTION_SECTION = 3;
+    private static final int TABLE_SECTION = 4;
+    private static final int MEMORY_SECTION = 5;
+    private static final int GLOBAL_SECTION = 6;
+    private static final int EXPORT_SECTION = 7;
+    private static final int START_SECTION = 8;
+    private static final int ELEMENT_SECTION = 9;
+    private static final int CODE_SECTION = 10;
+    private static final int DATA_SECTION = 11;
+
+    private static final int FUNCTION_KIND = 0x00;
+    private static final int TABLE_KIND = 0x01;
+    private static final int MEMORY_KIND = 0x02;
+    private static final int GLOBAL_KIND = 0x03;
+
+    private static final int FUNCTION_TYPE = 0x60;
+    private static final int FUNCREF = 0x70;
+    private static final int EMPTY_BLOCK_TYPE = 0x40;
+    private static final int END = 0x0b;
+
+    private static final int FUNCTION_NAMES_SUBSECTION = 1;
+
+    private boolean includeNames;
+
+    private List<FunctionType> types;
+    private Map<FunctionType, Integer> typeIndices;
+    private Map<String, Integer> typeNames;
+    private Map<String, Integer> functionNames;
+    private Map<String, Integer> tableNames;
+    private Map<String, Integer> memoryNames;
+    private Map<String, Integer> globalNames;
+
+    private List<SExpression> fields;
+    private List<SExpression> imports;
+    private List<SExpression> functions;
+    private List<Integer> functionTypes;
+    private List<SExpression> tables;
+    private List<SExpression> memories;
+    private List<SExpression> globals;
+    private List<SExpression> elements;
+    private List<SExpression> dataSegments;
+    private SExpression start;
+
+    private int numImportedFunctions;
+    private int numImportedTables;
+    private int numImportedMemories;
+    private int numImportedGlobals;
+
+    /**
+     * The names of the locals of the function currently being assembled
+     */
+    private Map<String, Integer> localNames;
+
+    /**
+     * The labels of the blocks enclosing the current instruction, innermost
+     * first. Blocks without a label are recorded as an empty string.
+     */
+    private Deque<String> labels;
+
+    private WatAssembler(List<SExpression> fields, boolean includeNames) {
+        this.fields = fields;
+        this.includeNames = includeNames;
+        types = new ArrayList<>();
+        typeIndices = new HashMap<>();
+        typeNames = new HashMap<>();
+        functionNames = new HashMap<>();
+        tableNames = new HashMap<>();
+        memoryNames = new HashMap<>();
+        globalNames = new HashMap<>();
+        imports = new ArrayList<>();
+        functions = new ArrayList<>();
+        functionTypes = new ArrayList<>();
+        tables = new ArrayList<>();
+        memories = new ArrayList<>();
+        globals = new ArrayList<>();
+        elements = new ArrayList<>();
+        dataSegments = new ArrayList<>();
+        localNames = new HashMap<>();
+        labels = new ArrayDeque<>();
+    }
+
+    /**
+     * Assembles a module into the binary format.
+     *
+     * @param wat The module in the text format. This can either be a single
+     *            (module ...) expression or just the fields of a module.
+     * @param includeNames Whether to include a "name" section giving the
+     *                     names of functions, which debuggers can display
+     * @return The binary module
+     * @throws WatAssemblyException If the text is not a valid module
+     */
+    public static byte[] assemble(String wat, boolean includeNames) throws WatAssemblyException {
+        List<SExpression> fields = WatParser.parse(wat);
+        if (fields.size() == 1 && fields.get(0).isList("module")) {
+            List<SExpression> moduleChildren = fields.get(0).getChildren();
+            int start = 1;
+            if (moduleChildren.size() > 1 && moduleChildren.get(1).isIdentifier()) {
+                start = 2;
+            }
+            fields = moduleChildren.subList(start, moduleChildren.size());
+        }
+        return new WatAssembler(fields, includeNames).assembleModule();
+    }
+
+    private byte[] assembleModule() throws WatAssemblyException {
+        collectFields();
+        assignIndices();
+
+        WasmBinaryWriter module = new WasmBinaryWriter();
+        module.writeBytes(MAGIC);
+        module.writeBytes(new byte[]{VERSION, 0, 0, 0});
+
+        // The code is assembled before the type section is written, since
+        // call_indirect instructions may add new types
+        WasmBinaryWriter codeSection = assembleCodeSection();
+        WasmBinaryWriter importSection = assembleImportSection();
+        WasmBinaryWriter globalSection = assembleGlobalSection();
+        WasmBinaryWriter elementSection = assembleElementSection();
+        WasmBinaryWriter dataSection = assembleDataSection();
+
+        writeSectionIfNotEmpty(module, TYPE_SECTION, assembleTypeSection(), types.size());
+        writeSectionIfNotEmpty(module, IMPORT_SECTION, importSection, imports.size());
+        writeSectionIfNotEmpty(module, FUNCTION_SECTION, assembleFunctionSection(), functions.size());
+        writeSectionIfNotEmpty(module, TABLE_SECTION, assembleTableSection(), tables.size());
+        writeSectionIfNotEmpty(module, MEMORY_SECTION, assembleMemorySection(), memories.size());
+        writeSectionIfNotEmpty(module, GLOBAL_SECTION, globalSection, globals.size());
+        WasmBinaryWriter exportSection = new WasmBinaryWriter();
+        int numExports = assembleExportSection(exportSection);
+        writeSectionIfNotEmpty(module, EXPORT_SECTION, exportSection, numExports);
+        if (start != null) {
+            WasmBinaryWriter startSection = new WasmBinaryWriter();
+            startSection.writeUnsignedLeb128(
+                    resolve(start.getChildren().get(1), functionNames, "function"));
+            module.writeSection(START_SECTION, startSection);
+        }
+        writeSectionIfNotEmpty(module, ELEMENT_SECTION, elementSection, elements.size());
+        writeSectionIfNotEmpty(module, CODE_SECTION, codeSection, functions.size());
+        writeSectionIfNotEmpty(module, DATA_SECTION, dataSection, dataSegments.size());
+        if (includeNames) {
+            module.writeSection(CUSTOM_SECTION, assembleNameSection());
+        }
+
+        return module.toByteArray();
+    }
+
+    /**
+     * Sorts the fields of the module by kind, and records the types that are
+     * declared explicitly.
+     */
+    private void collectFields() throws WatAssemblyException {
+        for (SExpression field : fields) {
+            String head = field.getHead();
+            if (head == null) {
+                throw error(field, "Expected a module field but found " + field);
+            }
+            switch (head) {
+                case "type":
+                    defineType(field);
+                    break;
+                case "import":
+                    imports.add(field);
+                    break;
+                case "func":
+                    functions.add(field);
+                    break;
+                case "table":
+                    tables.add(field);
+                    break;
+                case "memory":
+                    memories.add(field);
+                    break;
+                case "global":
+                    globals.add(field);
+                    break;
+                case "elem":
+                    elements.add(field);
+                    break;
+                case "data":
+                    dataSegments.add(field);
+                    break;
+                case "start":
+                    start = field;
+                    break;
+                case "export":
+                    // Handled once all indices are known
+                    break;
+                default:
+                    throw error(field, "Unknown module field " + head);
+            }
+        }
+    }
+
+    /**
+     * Gives every function, table, memory and global its index. Imports come
+     * first in each index space.
+     */
+    private void assignIndices() throws WatAssemblyException {
+        for (SExpression importField : imports) {
+            List<SExpression> children = importField.getChildren();
+            if (children.size() != 4 || !children.get(1).isString() || !children.get(2).isString()
+                    || !children.get(3).isList()) {
+                throw error(importField, "Malformed import");
+            }
+            SExpression descriptor = children.get(3);
+            String name = getOptionalName(descriptor);
+            String kind = descriptor.getHead();
+            if ("func".equals(kind)) {
+                addName(functionNames, name, numImportedFunctions++, descriptor);
+            } else if ("table".equals(kind)) {
+                addName(tableNames, name, numImportedTables++, descriptor);
+            } else if ("memory".equals(kind)) {
+                addName(memoryNames, name, numImportedMemories++, descriptor);
+            } else if ("global".equals(kind)) {
+                addName(globalNames, name, numImportedGlobals++, descriptor);
+            } else {
+                throw error(descriptor, "Unknown import kind " + kind);
+            }
+        }
+        for (int i = 0; i < functions.size(); i++) {
+            SExpression function = functions.get(i);
+            addName(functionNames, getOptionalName(function), numImportedFunctions + i, function);
+            functionTypes.add(getTypeUse(function.getChildren(), skipNameAndExports(function)));
+        }
+        for (int i = 0; i < tables.size(); i++) {
+            addName(tableNames, getOptionalName(tables.get(i)), numImportedTables + i, tables.get(i));
+        }
+        for (int i = 0; i < memories.size(); i++) {
+            addName(memoryNames, getOptionalName(memories.get(i)), numImportedMemories + i, memories.get(i));
+        }
+        for (int i = 0; i < globals.size(); i++) {
+            addName(globalNames, getOptionalName(globals.get(i)), numImportedGlobals + i, globals.get(i));
+        }
+    }
+
+    private WasmBinaryWriter assembleTypeSection() {
+        WasmBinaryWriter section = new WasmBinaryWriter();
+        section.writeUnsignedLeb128(types.size());
+        for (FunctionType type : types) {
+            section.writeByte(FUNCTION_TYPE);
+            section.writeUnsignedLeb128(type.getParameters().size());
+            type.getParameters().forEach(section::writeByte);
+            section.writeUnsignedLeb128(type.getResults().size());
+            type.getResults().forEach(section::writeByte);
+        }
+        return section;
+    }
+
+    private WasmBinaryWriter assembleImportSection() throws WatAssemblyException {
+        WasmBinaryWriter section = new WasmBinaryWriter();
+        section.writeUnsignedLeb128(imports.size());
+        for (SExpression importField : imports) {
+            List<SExpression> children = importField.getChildren();
+            section.writeName(children.get(1).getStringBytes());
+            section.writeName(children.get(2).getStringBytes());
+            SExpression descriptor = children.get(3);
+            List<SExpression> descriptorChildren = descriptor.getChildren();
+            int position = getOptionalName(descriptor) == null ? 1 : 2;
+            switch (descriptor.getHead()) {
+                case "func":
+                    section.writeByte(FUNCTION_KIND);
+                    section.writeUnsignedLeb128(getTypeUse(descriptorChildren, position));
+                    break;
+                case "table":
+                    section.writeByte(TABLE_KIND);
+                    writeTableType(section, descriptor, position);
+                    break;
+                case "memory":
+                    section.writeByte(MEMORY_KIND);
+                    writeLimits(section, descriptor, position);
+                    break;
+                default:
+                    section.writeByte(GLOBAL_KIND);
+                    writeGlobalType(section, descriptor, position);
+            }
+        }
+        return section;
+    }
+
+    private WasmBinaryWriter assembleFunctionSection() {
+        WasmBinaryWriter section = new WasmBinaryWriter();
+        section.writeUnsignedLeb128(functions.size());
+        for (int typeIndex : functionTypes) {
+            section.writeUnsignedLeb128(typeIndex);
+        }
+        return section;
+    }
+
+    private WasmBinaryWriter assembleTableSection() throws WatAssemblyException {
+        WasmBinaryWriter section = new WasmBinaryWriter();
+        section.writeUnsignedLeb128(tables.size());
+        for (SExpression table : tables) {
+            writeTableType(section, table, skipNameAndExports(table));
+        }
+        return section;
+    }
+
+    private WasmBinaryWriter assembleMemorySection() throws WatAssemblyException {
+        WasmBinaryWriter section = new WasmBinaryWriter();
+        section.writeUnsignedLeb128(memories.size());
+        for (SExpression memory : memories) {
+            writeLimits(section, memory, skipNameAndExports(memory));
+        }
+        return section;
+    }
+
+    private WasmBinaryWriter assembleGlobalSection() throws WatAssemblyException {
+        WasmBinaryWriter section = new WasmBinaryWriter();
+        section.writeUnsignedLeb128(globals.size());
+        for (SExpression global : globals) {
+            int position = skipNameAndExports(global);
+            writeGlobalType(section, global, position);
+            startFunction();
+            writeInstructions(section, global.getChildren(), position + 1);
+            section.writeByte(END);
+        }
+        return section;
+    }
+
+    /**
+     * Writes every export, both those declared separately and those declared
+     * inline, in the order they appear.
+     *
+     * @param section The writer to write the exports to
+     * @return The number of exports written
+     */
+    private int assembleExportSection(WasmBinaryWriter section) throws WatAssemblyException {
+        WasmBinaryWriter entries = new WasmBinaryWriter();
+        int numExports = 0;
+        int numFunctions = 0, numTables = 0, numMemories = 0, numGlobals = 0;
+        for (SExpression field : fields) {
+            String head = field.getHead();
+            if ("export".equals(head)) {
+                List<SExpression> children = field.getChildren();
+                if (children.size() != 3 || !children.get(1).isString() || !children.get(2).isList()
+                        || children.get(2).getChildren().size() != 2) {
+                    throw error(field, "Malformed export");
+                }
+                SExpression descriptor = children.get(2);
+                SExpression reference = descriptor.getChildren().get(1);
+                entries.writeName(children.get(1).getStringBytes());
+                switch (descriptor.getHead()) {
+                    case "func":
+                        entries.writeByte(FUNCTION_KIND);
+                        entries.writeUnsignedLeb128(resolve(reference, functionNames, "function"));
+                        break;
+                    case "table":
+                        entries.writeByte(TABLE_KIND);
+                        entries.writeUnsignedLeb128(resolve(reference, tableNames, "table"));
+                        break;
+                    case "memory":
+                        entries.writeByte(MEMORY_KIND);
+                        entries.writeUnsignedLeb128(resolve(reference, memoryNames, "memory"));
+                        break;
+                    case "global":
+                        entries.writeByte(GLOBAL_KIND);
+                        entries.writeUnsignedLeb128(resolve(reference, globalNames, "global"));
+                        break;
+                    default:
+                        throw error(descriptor, "Unknown export kind " + descriptor.getHead());
+                }
+                numExports++;
+            } else if ("func".equals(head)) {
+                numExports += writeInlineExports(entries, field, FUNCTION_KIND,
+                        numImportedFunctions + numFunctions++);
+            } else if ("table".equals(head)) {
+                numExports += writeInlineExports(entries, field, TABLE_KIND,
+                        numImportedTables + numTables++);
+            } else if ("memory".equals(head)) {
+                numExports += writeInlineExports(entries, field, MEMORY_KIND,
+                        numImportedMemories + numMemories++);
+            } else if ("global".equals(head)) {
+                numExports += writeInlineExports(entries, field, GLOBAL_KIND,
+                        numImportedGlobals + numGlobals++);
+            }
+        }
+        section.writeUnsignedLeb128(numExports);
+        section.writeBytes(entries.toByteArray());
+        return numExports;
+    }
+
+    private int writeInlineExports(WasmBinaryWriter entries, SExpression field, int kind, int index) {
+        int numExports = 0;
+        for (SExpression child : field.getChildren()) {
+            if (child.isList("export") && child.getChildren().size() == 2
+                    && child.getChildren().get(1).isString()) {
+                entries.writeName(child.getChildren().get(1).getStringBytes());
+                entries.writeByte(kind);
+                entries.writeUnsignedLeb128(index);
+                numExports++;
+            }
+        }
+        return numExports;
+    }
+
+    private WasmBinaryWriter assembleElementSection() throws WatAssemblyException {
+        WasmBinaryWriter section = new WasmBinaryWriter();
+        section.writeUnsignedLeb128(elements.size());
+        for (SExpression element : elements) {
+            List<SExpression> children = element.getChildren();
+            int position = 1;
+            int tableIndex = 0;
+            if (position < children.size() && children.get(position).isAtom()) {
+                tableIndex = resolve(children.get(position), tableNames, "table");
+                position++;
+            }
+            if (tableIndex != 0) {
+                throw error(element, "Only table 0 can be initialised");
+            }
+            section.writeUnsignedLeb128(tableIndex);
+            position = writeOffset(section, element, position);
+            if (position < children.size() && children.get(position).isAtom("func")) {
+                position++;
+            }
+            section.writeUnsignedLeb128(children.size() - position);
+            for (int i = position; i < children.size(); i++) {
+                section.writeUnsignedLeb128(resolve(children.get(i), functionNames, "function"));
+            }
+        }
+        return section;
+    }
+
+    private WasmBinaryWriter assembleDataSection() throws WatAssemblyException {
+        WasmBinaryWriter section = new WasmBinaryWriter();
+        section.writeUnsignedLeb128(dataSegments.size());
+        for (SExpression segment : dataSegments) {
+            List<SExpression> children = segment.getChildren();
+            int position = 1;
+            int memoryIndex = 0;
+            if (position < children.size() && children.get(position).isAtom()) {
+                memoryIndex = resolve(children.get(position), memoryNames, "memory");
+                position++;
+            }
+            if (memoryIndex != 0) {
+                throw error(segment, "Only memory 0 can be initialised");
+            }
+            section.writeUnsignedLeb128(memoryIndex);
+            position = writeOffset(section, segment, position);
+            WasmBinaryWriter contents = new WasmBinaryWriter();
+            for (int i = position; i < children.size(); i++) {
+                if (!children.get(i).isString()) {
+                    throw error(children.get(i), "Expected a string in data segment");
+                }
+                contents.writeBytes(children.get(i).getStringBytes());
+            }
+            section.writeSized(contents);
+        }
+        return section;
+    }
+
+    private WasmBinaryWriter assembleCodeSection() throws WatAssemblyException {
+        WasmBinaryWriter section = new WasmBinaryWriter();
+        section.writeUnsignedLeb128(functions.size());
+        for (SExpression function : functions) {
+            section.writeSized(assembleFunctionBody(function));
+        }
+        return section;
+    }
+
+    /**
+     * Builds the "name" custom section, which records the name of every
+     * function that was given one.
+     */
+    private WasmBinaryWriter assembleNameSection() {
+        SortedMap<Integer, String> namesByIndex = new TreeMap<>();
+        functionNames.forEach((name, index) -> namesByIndex.put(index, name.substring(1)));
+
+        WasmBinaryWriter functionNamesSubsection = new WasmBinaryWriter();
+        functionNamesSubsection.writeUnsignedLeb128(namesByIndex.size());
+        namesByIndex.forEach((index, name) -> {
+            functionNamesSubsection.writeUnsignedLeb128(index);
+            functionNamesSubsection.writeName(name);
+        });
+
+        WasmBinaryWriter section = new WasmBinaryWriter();
+        section.writeName("name");
+        section.writeByte(FUNCTION_NAMES_SUBSECTION);
+        section.writeSized(functionNamesSubsection);
+        return section;
+    }
+
+    private WasmBinaryWriter assembleFunctionBody(SExpression function) throws WatAssemblyException {
+        List<SExpression> children = function.getChildren();
+        startFunction();
+
+        // Skip over the type use, naming the parameters as we go
+        int position = skipNameAndExports(function);
+        Map<String, Integer> parameterNames = new HashMap<>();
+        int numParameters = countParameters(children, position, parameterNames);
+        localNames.putAll(parameterNames);
+        while (position < children.size()
+                && (children.get(position).isList("type") || children.get(position).isList("param")
+                    || children.get(position).isList("result"))) {
+            position++;
+        }
+
+        // Declare the locals, grouping together consecutive locals of the
+        // same type
+        List<Integer> localTypes = new ArrayList<>();
+        while (position < children.size() && children.get(position).isList("local")) {
+            SExpression local = children.get(position);
+            List<SExpression> localChildren = local.getChildren();
+            if (localChildren.size() == 3 && localChildren.get(1).isIdentifier()) {
+                addName(localNames, localChildren.get(1).getAtom(), numParameters + localTypes.size(), local);
+                localTypes.add(parseValueType(localChildren.get(2)));
+            } else {
+                for (int i = 1; i < localChildren.size(); i++) {
+                    localTypes.add(parseValueType(localChildren.get(i)));
+                }
+            }
+            position++;
+        }
+
+        WasmBinaryWriter body = new WasmBinaryWriter();
+        List<int[]> localGroups = new ArrayList<>();
+        for (int type : localTypes) {
+            if (!localGroups.isEmpty() && localGroups.get(localGroups.size() - 1)[1] == type) {
+                localGroups.get(localGroups.size() - 1)[0]++;
+            } else {
+                localGroups.add(new int[]{1, type});
+            }
+        }
+        body.writeUnsignedLeb128(localGroups.size());
+        for (int[] group : localGroups) {
+            body.writeUnsignedLeb128(group[0]);
+            body.writeByte(group[1]);
+        }
+
+        writeInstructions(body, children, position);
+        body.writeByte(END);
+        return body;
+    }
+
+    /**
+     * Resets the per-function state before assembling a function body or a
+     * constant expression.
+     */
+    private void startFunction() {
+        localNames = new HashMap<>();
+        labels = new ArrayDeque<>();
+    }
+
+    /**
+     * Writes a sequence of instructions, which may be in flat or folded
+     * form.
+     *
+     * @param writer The writer to write the instructions to
+     * @param items The list containing the instructions
+     * @param position The position of the first instruction in the list
+     */
+    private void writeInstructions(WasmBinaryWriter writer, List<SExpression> items, int position)
+            throws WatAssemblyException {
+        while (position < items.size()) {
+            SExpression item = items.get(position);
+            if (item.isList()) {
+                writeFoldedInstruction(writer, item);
+                position++;
+            } else if (item.isAtom()) {
+                position = writePlainInstruction(writer, items, position);
+            } else {
+                throw error(item, "Unexpected string " + item);
+            }
+        }
+    }
+
+    /**
+     * Writes a single instruction in flat form, together with its immediate
+     * operands.
+     *
+     * @param writer The writer to write the instruction to
+     * @param items The list containing the instruction
+     * @param position The position of the instruction in the list
+     * @return The position just after the instruction and its immediates
+     */
+    private int writePlainInstruction(WasmBinaryWriter writer, List<SExpression> items, int position)
+            throws WatAssemblyException {
+        SExpression item = items.get(position);
+        WasmInstruction instruction = WasmInstruction.lookup(item.getAtom());
+        if (instruction == null) {
+            throw error(item, "Unknown instruction " + item.getAtom());
+        }
+        position++;
+        writer.writeByte(instruction.getOpcode());
+
+        switch (instruction.getImmediate()) {
+            case BLOCK:
+                String label = null;
+                if (position < items.size() && items.get(position).isIdentifier()) {
+                    label = items.get(position++).getAtom();
+                }
+                position = writeBlockType(writer, items, position);
+                labels.push(label == null ? "" : label);
+                break;
+            case LABEL:
+                writer.writeUnsignedLeb128(resolveLabel(getImmediate(items, position++, item)));
+                break;
+            case LABEL_TABLE:
+                List<Integer> targets = new ArrayList<>();
+                while (position < items.size() && isIndex(items.get(position))) {
+                    targets.add(resolveLabel(items.get(position++)));
+                }
+                if (targets.isEmpty()) {
+                    throw error(item, "br_table needs at least one label");
+                }
+                writer.writeUnsignedLeb128(targets.size() - 1);
+                targets.forEach(writer::writeUnsignedLeb128);
+                break;
+            case FUNCTION:
+                writer.writeUnsignedLeb128(resolve(getImmediate(items, position++, item), functionNames, "function"));
+                break;
+            case INDIRECT:
+                int typeIndex = getTypeUse(items, position);
+                while (position < items.size() && (items.get(position).isList("type")
+                        || items.get(position).isList("param") || items.get(position).isList("result"))) {
+                    position++;
+                }
+                writer.writeUnsignedLeb128(typeIndex);
+                writer.writeByte(0x00);
+                break;
+            case LOCAL:
+                writer.writeUnsignedLeb128(resolve(getImmediate(items, position++, item), localNames, "local"));
+                break;
+            case GLOBAL:
+                writer.writeUnsignedLeb128(resolve(getImmediate(items, position++, item), globalNames, "global"));
+                break;
+            case MEMORY:
+                long offset = 0;
+                int alignment = instruction.getNaturalAlignment();
+                while (position < items.size() && items.get(position).isAtom()) {
+                    String argument = items.get(position).getAtom();
+                    if (argument.startsWith("offset=")) {
+                        offset = parseInteger(argument.substring(7), items.get(position)).longValue();
+                    } else if (argument.startsWith("align=")) {
+                        int bytes = parseInteger(argument.substring(6), items.get(position)).intValue();
+                        if (Integer.bitCount(bytes) != 1) {
+                            throw error(items.get(position), "Alignment must be a power of 2");
+                        }
+                        alignment = Integer.numberOfTrailingZeros(bytes);
+                    } else {
+                        break;
+                    }
+                    position++;
+                }
+                writer.writeUnsignedLeb128(alignment);
+                writer.writeUnsignedLeb128(offset);
+                break;
+            case MEMORY_INDEX:
+                writer.writeByte(0x00);
+                break;
+            case I32:
+                SExpression i32 = getImmediate(items, position++, item);
+                writer.writeSignedLeb128((int) parseIntegerInRange(i32, 32));
+                break;
+            case I64:
+                SExpression i64 = getImmediate(items, position++, item);
+                writer.writeSignedLeb128(parseIntegerInRange(i64, 64));
+                break;
+            case F32:
+                writer.writeFloat32(parseFloat32(getImmediate(items, position++, item)));
+                break;
+            case F64:
+                writer.writeFloat64(parseFloat64(getImmediate(items, position++, item)));
+                break;
+            default:
+                if (instruction.getOpcode() == END) {
+                    if (labels.isEmpty()) {
+                        throw error(item, "Unexpected end");
+                    }
+                    labels.pop();
+                }
+                // else and end may repeat the label of their block
+                if ((instruction.getOpcode() == END || instruction.getName().equals("else"))
+                        && position < items.size() && items.get(position).isIdentifier()) {
+                    position++;
+                }
+        }
+        return position;
+    }
+
+    /**
+     * Writes an instruction in folded form, such as (i32.add (local.get 0)
+     * (i32.const 1)). The operands are written before the instruction itself.
+     *
+     * @param writer The writer to write the instruction to
+     * @param expression The folded instruction
+     */
+    private void writeFoldedInstruction(WasmBinaryWriter writer, SExpression expression)
+            throws WatAssemblyException {
+        List<SExpression> children = expression.getChildren();
+        String head = expression.getHead();
+        if (head == null) {
+            throw error(expression, "Expected an instruction");
+        }
+        WasmInstruction instruction = WasmInstruction.lookup(head);
+        if (instruction == null) {
+            throw error(expression, "Unknown instruction " + head);
+        }
+
+        if (head.equals("block") || head.equals("loop")) {
+            int position = writePlainInstruction(writer, children, 0);
+            writeInstructions(writer, children, position);
+            writer.writeByte(END);
+            labels.pop();
+        } else if (head.equals("if")) {
+            // The condition comes before the if, and outside its block
+            int position = 1;
+            String label = null;
+            if (position < children.size() && children.get(position).isIdentifier()) {
+                label = children.get(position++).getAtom();
+            }
+            WasmBinaryWriter blockType = new WasmBinaryWriter();
+            position = writeBlockType(blockType, children, position);
+            while (position < children.size()
+                    && !children.get(position).isList("then") && !children.get(position).isList("else")) {
+                writeFoldedInstruction(writer, children.get(position++));
+            }
+            writer.writeByte(instruction.getOpcode());
+            writer.writeBytes(blockType.toByteArray());
+            labels.push(label == null ? "" : label);
+            for (; position < children.size(); position++) {
+                SExpression branch = children.get(position);
+                if (branch.isList("else")) {
+                    writer.writeByte(WasmInstruction.lookup("else").getOpcode());
+                } else if (!branch.isList("then")) {
+                    throw error(branch, "Expected then or else");
+                }
+                writeInstructions(writer, branch.getChildren(), 1);
+            }
+            writer.writeByte(END);
+            labels.pop();
+        } else {
+            WasmBinaryWriter plain = new WasmBinaryWriter();
+            int position = writePlainInstruction(plain, children, 0);
+            writeInstructions(writer, children, position);
+            writer.writeBytes(plain.toByteArray());
+        }
+    }
+
+    /**
+     * Writes the result type of a block, if it has one.
+     *
+     * @return The position just after the block type
+     */
+    private int writeBlockType(WasmBinaryWriter writer, List<SExpression> items, int position)
+            throws WatAssemblyException {
+        if (position < items.size() && items.get(position).isList("result")) {
+            SExpression result = items.get(position);
+            if (result.getChildren().size() != 2) {
+                throw error(result, "Blocks can have at most one result");
+            }
+            writer.writeByte(parseValueType(result.getChildren().get(1)));
+            return position + 1;
+        }
+        writer.writeByte(EMPTY_BLOCK_TYPE);
+        return position;
+    }
+
+    /**
+     * Writes the offset expression of an element or data segment.
+     *
+     * @return The position just after the offset
+     */
+    private int writeOffset(WasmBinaryWriter writer, SExpression segment, int position)
+            throws WatAssemblyException {
+        List<SExpression> children = segment.getChildren();
+        if (position >= children.size() || !children.get(position).isList()) {
+            throw error(segment, "Expected an offset");
+        }
+        SExpression offset = children.get(position);
+        startFunction();
+        if (offset.isList("offset")) {
+            writeInstructions(writer, offset.getChildren(), 1);
+        } else {
+            writeFoldedInstruction(writer, offset);
+        }
+        writer.writeByte(END);
+        return position + 1;
+    }
+
+    private void writeTableType(WasmBinaryWriter writer, SExpression table, int position)
+            throws WatAssemblyException {
+        List<SExpression> children = table.getChildren();
+        SExpression elementType = children.get(children.size() - 1);
+        if (!elementType.isAtom("funcref") && !elementType.isAtom("anyfunc")) {
+            throw error(table, "Tables must contain functions");
+        }
+        writer.writeByte(FUNCREF);
+        writeLimits(writer, children.subList(0, children.size() - 1), position, table);
+    }
+
+    private void writeLimits(WasmBinaryWriter writer, SExpression field, int position)
+            throws WatAssemblyException {
+        writeLimits(writer, field.getChildren(), position, field);
+    }
+
+    private void writeLimits(WasmBinaryWriter writer, List<SExpression> items, int position, SExpression field)
+            throws WatAssemblyException {
+        int numLimits = items.size() - position;
+        for (int i = position; i < items.size(); i++) {
+            if (!items.get(i).isAtom()) {
+                throw error(field, "Expected limits");
+            }
+        }
+        if (numLimits == 1) {
+            writer.writeByte(0x00);
+            writer.writeUnsignedLeb128(parseInteger(items.get(position).getAtom(), field).longValue());
+        } else if (numLimits == 2) {
+            writer.writeByte(0x01);
+            writer.writeUnsignedLeb128(parseInteger(items.get(position).getAtom(), field).longValue());
+            writer.writeUnsignedLeb128(parseInteger(items.get(position + 1).getAtom(), field).longValue());
+        } else {
+            throw error(field, "Expected limits");
+        }
+    }
+
+    private void writeGlobalType(WasmBinaryWriter writer, SExpression global, int position)
+            throws WatAssemblyException {
+        List<SExpression> children = global.getChildren();
+        if (position >= children.size()) {
+            throw error(global, "Expected a global type");
+        }
+        SExpression type = children.get(position);
+        if (type.isList("mut") && type.getChildren().size() == 2) {
+            writer.writeByte(parseValueType(type.getChildren().get(1)));
+            writer.writeByte(0x01);
+        } else {
+            writer.writeByte(parseValueType(type));
+            writer.writeByte(0x00);
+        }
+    }
+
+    private void writeSectionIfNotEmpty(WasmBinaryWriter module, int id, WasmBinaryWriter section,
+                                        int numEntries) {
+        if (numEntries > 0) {
+            module.writeSection(id, section);
+        }
+    }
+
+    private void defineType(SExpression field) throws WatAssemblyException {
+        List<SExpression> children = field.getChildren();
+        SExpression function = children.get(children.size() - 1);
+        if (!function.isList("func")) {
+            throw error(field, "Expected a function type");
+        }
+        int index = internType(parseFunctionType(function.getChildren(), 1));
+        if (children.size() == 3 && children.get(1).isIdentifier()) {
+            typeNames.put(children.get(1).getAtom(), index);
+        }
+    }
+
+    /**
+     * Determines the type index referred to by a type use: an optional
+     * (type ...) followed by optional (param ...) and (result ...) lists.
+     *
+     * @param items The list containing the type use
+     * @param position The position of the type use in the list
+     * @return The index of the type
+     */
+    private int getTypeUse(List<SExpression> items, int position)
+            throws WatAssemblyException {
+        if (position < items.size() && items.get(position).isList("type")) {
+            SExpression typeUse = items.get(position);
+            if (typeUse.getChildren().size() != 2) {
+                throw error(typeUse, "Malformed type use");
+            }
+            return resolve(typeUse.getChildren().get(1), typeNames, "type");
+        }
+        return internType(parseFunctionType(items, position));
+    }
+
+    /**
+     * Parses the (param ...) and (result ...) lists of a function type.
+     */
+    private FunctionType parseFunctionType(List<SExpression> items, int position)
+            throws WatAssemblyException {
+        List<Integer> parameters = new ArrayList<>();
+        List<Integer> results = new ArrayList<>();
+        while (position < items.size() && items.get(position).isList("param")) {
+            List<SExpression> children = items.get(position++).getChildren();
+            int first = children.size() > 1 && children.get(1).isIdentifier() ? 2 : 1;
+            for (int i = first; i < children.size(); i++) {
+                parameters.add(parseValueType(children.get(i)));
+            }
+        }
+        while (position < items.size() && items.get(position).isList("result")) {
+            List<SExpression> children = items.get(position++).getChildren();
+            for (int i = 1; i < children.size(); i++) {
+                results.add(parseValueType(children.get(i)));
+            }
+        }
+        return new FunctionType(parameters, results);
+    }
+
+    /**
+     * Counts the parameters of a function, recording the names of any named
+     * parameters.
+     */
+    private int countParameters(List<SExpression> items, int position, Map<String, Integer> names)
+            throws WatAssemblyException {
+        if (position < items.size() && items.get(position).isList("type")) {
+            int typeIndex = getTypeUse(items, position);
+            if (position + 1 >= items.size() || !items.get(position + 1).isList("param")) {
+                return types.get(typeIndex).getParameters().size();
+            }
+            position++;
+        }
+        int numParameters = 0;
+        while (position < items.size() && items.get(position).isList("param")) {
+            SExpression parameter = items.get(position++);
+            List<SExpression> children = parameter.getChildren();
+            if (children.size() == 3 && children.get(1).isIdentifier()) {
+                addName(names, children.get(1).getAtom(), numParameters++, parameter);
+            } else {
+                numParameters += children.size() - 1;
+            }
+        }
+        return numParameters;
+    }
+
+    private int internType(FunctionType type) {
+        Integer index = typeIndices.get(type);
+        if (index == null) {
+            index = types.size();
+            types.add(type);
+            typeIndices.put(type, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return The name given to a module field, or null if it has none
+     */
+    private String getOptionalName(SExpression field) {
+        List<SExpression> children = field.getChildren();
+        if (children.size() > 1 && children.get(1).isIdentifier()) {
+            return children.get(1).getAtom();
+        }
+        return null;
+    }
+
+    /**
+     * @return The position of the first child of a module field after its
+     *         name and any inline exports
+     */
+    private int skipNameAndExports(SExpression field) {
+        List<SExpression> children = field.getChildren();
+        int position = getOptionalName(field) == null ? 1 : 2;
+        while (position < children.size() && children.get(position).isList("export")) {
+            position++;
+        }
+        return position;
+    }
+
+    private void addName(Map<String, Integer> names, String name, int index, SExpression location)
+            throws WatAssemblyException {
+        if (name != null && names.put(name, index) != null) {
+            throw error(location, "Duplicate name " + name);
+        }
+    }
+
+    private SExpression getImmediate(List<SExpression> items, int position, SExpression instruction)
+            throws WatAssemblyException {
+        if (position >= items.size() || !items.get(position).isAtom()) {
+            throw error(instruction, "Missing operand for " + instruction.getAtom());
+        }
+        return items.get(position);
+    }
+
+    /**
+     * Resolves a reference to a function, local, global, etc. which may be
+     * either a name or a numeric index.
+     */
+    private int resolve(SExpression reference, Map<String, Integer> names, String kind)
+            throws WatAssemblyException {
+        if (reference.isIdentifier()) {
+            Integer index = names.get(reference.getAtom());
+            if (index == null) {
+                throw error(reference, "Unknown " + kind + " " + reference.getAtom());
+            }
+            return index;
+        }
+        if (!isIndex(reference)) {
+            throw error(reference, "Expected a " + kind + " but found " + reference);
+        }
+        return parseInteger(reference.getAtom(), reference).intValue();
+    }
+
+    /**
+     * Converts a label reference into the number of blocks to break out of.
+     */
+    private int resolveLabel(SExpression reference) throws WatAssemblyException {
+        if (reference.isIdentifier()) {
+            int depth = 0;
+            for (String label : labels) {
+                if (label.equals(reference.getAtom())) {
+                    return depth;
+                }
+                depth++;
+            }
+            throw error(reference, "Unknown label " + reference.getAtom());
+        }
+        return parseInteger(reference.getAtom(), reference).intValue();
+    }
+
+    private boolean isIndex(SExpression item) {
+        return item.isIdentifier() || (item.isAtom() && item.getAtom().matches("[0-9][0-9_]*|0x[0-9a-fA-F_]+"));
+    }
+
+    private int parseValueType(SExpression type) throws WatAssemblyException {
+        if (type.isAtom()) {
+            switch (type.getAtom()) {
+                case "i32":
+                    return 0x7f;
+                case "i64":
+                    return 0x7e;
+                case "f32":
+                    return 0x7d;
+                case "f64":
+                    return 0x7c;
+            }
+        }
+        throw error(type, "Unknown value type " + type);
+    }
+
+    private BigInteger parseInteger(String text, SExpression location) throws WatAssemblyException {
+        String digits = text.replace("_", "");
+        boolean negative = false;
+        if (digits.startsWith("-") || digits.startsWith("+")) {
+            negative = digits.startsWith("-");
+            digits = digits.substring(1);
+        }
+        try {
+            BigInteger value;
+            if (digits.startsWith("0x")) {
+                value = new BigInteger(digits.substring(2), 16);
+            } else {
+                value = new BigInteger(digits);
+            }
+            return negative ? value.negate() : value;
+        } catch (NumberFormatException e) {
+            throw error(location, "Invalid integer " + text);
+        }
+    }
+
+    /**
+     * Parses an integer constant, which may be given either as a signed or as
+     * an unsigned value.
+     *
+     * @param literal The literal to parse
+     * @param bits The number of bits in the integer type
+     * @return The value, sign-extended from the given number of bits
+     */
+    private long parseIntegerInRange(SExpression literal, int bits) throws WatAssemblyException {
+        BigInteger value = parseInteger(literal.getAtom(), literal);
+        BigInteger minimum = BigInteger.ONE.shiftLeft(bits - 1).negate();
+        BigInteger maximum = BigInteger.ONE.shiftLeft(bits).subtract(BigInteger.ONE);
+        if (value.compareTo(minimum) < 0 || value.compareTo(maximum) > 0) {
+            throw error(literal, "Constant " + literal.getAtom() + " out of range");
+        }
+        return bits == 32 ? value.intValue() : value.longValue();
+    }
+
+    private float parseFloat32(SExpression literal) throws WatAssemblyException {
+        String text = literal.getAtom().replace("_", "");
+        String unsigned = text.startsWith("-") || text.startsWith("+") ? text.substring(1) : text;
+        boolean negative = text.startsWith("-");
+        if (unsigned.startsWith("nan")) {
+            int payload = unsigned.equals("nan")
+                    ? 0x00400000
+                    : parseInteger(unsigned.substring(4), literal).intValue();
+            int bits = 0x7f800000 | payload | (negative ? 0x80000000 : 0);
+            return Float.intBitsToFloat(bits);
+        }
+        try {
+            return Float.parseFloat(toJavaFloatSyntax(text, unsigned, negative));
+        } catch (NumberFormatException e) {
+            throw error(literal, "Invalid floating point number " + literal.getAtom());
+        }
+    }
+
+    private double parseFloat64(SExpression literal) throws WatAssemblyException {
+        String text = literal.getAtom().replace("_", "");
+        String unsigned = text.startsWith("-") || text.startsWith("+") ? text.substring(1) : text;
+        boolean negative = text.startsWith("-");
+        if (unsigned.startsWith("nan")) {
+            long payload = unsigned.equals("nan")
+                    ? 0x0008000000000000L
+                    : parseInteger(unsigned.substring(4), literal).longValue();
+            long bits = 0x7ff0000000000000L | payload | (negative ? 0x8000000000000000L : 0);
+            return Double.longBitsToDouble(bits);
+        }
+        try {
+            return Double.parseDouble(toJavaFloatSyntax(text, unsigned, negative));
+        } catch (NumberFormatException e) {
+            throw error(literal, "Invalid floating point number " + literal.getAtom());
+        }
+    }
+
+    /**
+     * Converts the spellings of infinity and hexadecimal numbers that are
+     * allowed in the text format into ones that Java can parse.
+     */
+    private String toJavaFloatSyntax(String text, String unsigned, boolean negative) {
+        if (unsigned.equals("inf")) {
+            return (negative ? "-" : "") + "Infinity";
+        } else if (unsigned.startsWith("0x") && !unsigned.contains("p") && !unsigned.contains("P")) {
+            return text + "p0";
+        }
+        return text;
+    }
+
+    private WatAssemblyException error(SExpression location, String message) {
+        return new WatAssemblyException(message + " (line " + location.getLine() + ")");
+    }
+
+    /**
+     * The signature of a function: its parameter types and result types.
+     */
+    private static class FunctionType {
+
+        private List<Integer> parameters;
+        private List<Integer> results;
+
+        FunctionType(List<Integer> parameters, List<Integer> results) {
+            this.parameters = parameters;
+            this.results = results;
+        }
+
+        List<Integer> getParameters() {
+            return parameters;
+        }
+
+        List<Integer> getResults() {
+            return results;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            FunctionType that = (FunctionType) o;
+            return parameters.equals(that.parameters) && results.equals(that.results);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(parameters, results);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package codegen.binary;
+
+import errors.WatAssemblyException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Splits WebAssembly text into a tree of S-expressions.
+ *
+ * Line comments (;; ...) and block comments ((; ... ;)) are discarded.
+ */
+public class WatParser {
+
+    private String text;
+    private int position;
+    private int line;
+
+    private WatParser(String text) {
+        this.text = text;
+        position = 0;
+        line = 1;
+    }
+
+    /**
+     * Parses WebAssembly text.
+     *
+     * @param text The text to parse
+     * @return The top-level expressions in the text, in order
+     * @throws WatAssemblyException If the text is not well-formed
+     */
+    public static List<SExpression> parse(String text) throws WatAssemblyException {
+        return new WatParser(text).parseAll();
+    }
+
+    private List<SExpression> parseAll() throws WatAssemblyException {
+        Deque<List<SExpression>> openLists = new ArrayDeque<>();
+        Deque<Integer> openLines = new ArrayDeque<>();
+        List<SExpression> current = new ArrayList<>();
+
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c == '\n') {
+                line++;
+                position++;
+            } else if (Character.isWhitespace(c)) {
+                position++;
+            } else if (text.startsWith(";;", position)) {
+                skipLineComment();
+            } else if (text.startsWith("(;", position)) {
+                skipBlockComment();
+            } else if (c == '(') {
+                openLists.push(current);
+                openLines.push(line);
+                current = new ArrayList<>();
+                position++;
+            } else if (c == ')') {
+                if (openLists.isEmpty()) {
+                    throw new WatAssemblyException("Unexpected ')' on line " + line);
+                }
+                SExpression list = SExpression.list(current, openLines.pop());
+                current = openLists.pop();
+                current.add(list);
+                position++;
+            } else if (c == '"') {
+                current.add(SExpression.string(readString(), line));
+            } else {
+                current.add(SExpression.atom(readAtom(), line));
+            }
+        }
+
+        if (!openLists.isEmpty()) {
+            throw new WatAssemblyException("Unclosed '(' opened on line " + openLines.peek());
+        }
+        return current;
+    }
+
+    private void skipLineComment() {
+        while (position < text.length() && text.charAt(position) != '\n') {
+            position++;
+        }
+    }
+
+    private void skipBlockComment() throws WatAssemblyException {
+        int startLine = line;
+        int depth = 0;
+        while (position < text.length()) {
+            if (text.startsWith("(;", position)) {
+                depth++;
+                position += 2;
+            } else if (text.startsWith(";)", position)) {
+                depth--;
+                position += 2;
+                if (depth == 0) {
+                    return;
+                }
+            } else {
+                if (text.charAt(position) == '\n') {
+                    line++;
+                }
+                position++;
+            }
+        }
+        throw new WatAssemblyException("Unclosed block comment starting on line " + startLine);
+    }
+
+    private String readAtom() {
+        int start = position;
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (Character.isWhitespace(c) || c == '(' || c == ')' || c == '"') {
+                break;
+            }
+            position++;
+        }
+        return text.substring(start, position);
+    }
+
+    /**
+     * Reads a string literal, decoding any escape sequences.
+     *
+     * @return The bytes of the string
+     * @throws WatAssemblyException If the string is not terminated
+     */
+    private byte[] readString() throws WatAssemblyException {
+        int startLine = line;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        position++;
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c == '"') {
+                position++;
+                return bytes.toByteArray();
+            } else if (c == '\\' && position + 1 < text.length()) {
+                char escaped = text.charAt(position + 1);
+                position += 2;
+                switch (escaped) {
+                    case 'n':
+                        bytes.write('\n');
+                        break;
+                    case 't':
+                        bytes.write('\t');
+                        break;
+                    case 'r':
+                        bytes.write('\r');
+                        break;
+                    case '\\':
+                    case '\'':
+                    case '"':
+                        bytes.write(escaped);
+                        break;
+                    default:
+                        // Two hexadecimal digits giving a raw byte
+                        if (position < text.length()) {
+                            String hex = "" + escaped + text.charAt(position);
+                            try {
+                                bytes.write(Integer.parseInt(hex, 16));
+                            } catch (NumberFormatException e) {
+                                throw new WatAssemblyException("Invalid escape sequence \\" + hex
+                                        + " on line " + line);
+                            }
+                            position++;
+                        }
+                }
+            } else {
+                if (c == '\n') {
+                    line++;
+                }
+                int codePoint = text.codePointAt(position);
+                byte[] encoded = new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8);
+                bytes.write(encoded, 0, encoded.length);
+                position += Character.charCount(codePoint);
+            }
+        }
+        throw new WatAssemblyException("Unterminated string starting on line " + startLine);
+    }
+}
@@ -20,35 +20,25 @@ import java.util.List;
 
 public class ExpressionGenerator {
 
-    private static ExpressionGenerator INSTANCE;
-
-    public static ExpressionGenerator getInstance() {
-        if (INSTANCE == null)
-            INSTANCE = new ExpressionGenerator();
-        return INSTANCE;
-    }
-
     private CodeEmitter emitter;
     private FunctionTable functionTable;
     private ClassTable classTable;
     private VirtualTable virtualTable;
 
-    private ExpressionGenerator() {
-        emitter = null;
-        functionTable = null;
-        classTable = null;
-    }
+    private StatementGenerator statementGenerator;
+    private LiteralGenerator literalGenerator;
 
-    public void setCodeEmitter(CodeEmitter emitter) {
+    public ExpressionGenerator(CodeEmitter emitter,
+                               FunctionTable functionTable,
+                               ClassTable classTable,
+                               VirtualTable virtualTable,
+                               StatementGenerator statementGenerator) {
         this.emitter = emitter;
-    }
-
-    public void setTables(FunctionTable functionTable,
-                          ClassTable classTable,
-                          VirtualTable virtualTable) {
         this.functionTable = functionTable;
         this.classTable = classTable;
         this.virtualTable = virtualTable;
+        this.statementGenerator = statementGenerator;
+        literalGenerator = new LiteralGenerator(emitter);
     }
 
     public void compileExpression(Expression expression, VariableScope scope) {
@@ -59,7 +49,7 @@ public class ExpressionGenerator {
         } else if (expression instanceof AttributeNameExpression) {
             compileAttributeNameExpression((AttributeNameExpression) expression, scope);
         } else if (expression instanceof LiteralValue) {
-            LiteralGenerator.getInstance().compileLiteralValue((LiteralValue) expression);
+            literalGenerator.compileLiteralValue((LiteralValue) expression);
         } else if (expression instanceof FunctionCall) {
             compileFunctionCallExpression((FunctionCall) expression, scope);
         } else if (expression instanceof MethodCall) {
@@ -91,19 +81,19 @@ public class ExpressionGenerator {
         WasmType wasmType = CodeGenUtil.getWasmType(expressionType);
         switch (bopExpression.getOp()) {
             case Add:
-                emitter.emitLine(wasmType + ".add");
+                emitter.emitInstruction(wasmType, "add");
                 break;
             case Subtract:
-                emitter.emitLine(wasmType + ".sub");
+                emitter.emitInstruction(wasmType, "sub");
                 break;
             case Multiply:
-                emitter.emitLine(wasmType + ".mul");
+                emitter.emitInstruction(wasmType, "mul");
                 break;
             case Divide:
                 if (primitiveType.isIntegralType()) {
-                    emitter.emitLine(wasmType + ".div_s");
+                    emitter.emitInstruction(wasmType, "div_s");
                 } else {
-                    emitter.emitLine(wasmType + ".div");
+                    emitter.emitInstruction(wasmType, "div");
                 }
                 break;
             case LogicalAnd:
@@ -113,37 +103,37 @@ public class ExpressionGenerator {
                 emitter.emitLine("i32.or");
                 break;
             case EqualTo:
-                emitter.emitLine(wasmType + ".eq");
+                emitter.emitInstruction(wasmType, "eq");
                 break;
             case NotEqualTo:
-                emitter.emitLine(wasmType + ".ne");
+                emitter.emitInstruction(wasmType, "ne");
                 break;
             case LessThan:
                 if (primitiveType.isIntegralType()) {
-                    emitter.emitLine(wasmType + ".lt_s");
+                    emitter.emitInstruction(wasmType, "lt_s");
                 } else {
-                    emitter.emitLine(wasmType + ".lt");
+                    emitter.emitInstruction(wasmType, "lt");
                 }
                 break;
             case LessThanOrEqualTo:
                 if (primitiveType.isIntegralType()) {
-                    emitter.emitLine(wasmType + ".le_s");
+                    emitter.emitInstruction(wasmType, "le_s");
                 } else {
-                    emitter.emitLine(wasmType + ".le");
+                    emitter.emitInstruction(wasmType, "le");
                 }
                 break;
             case GreaterThan:
                 if (primitiveType.isIntegralType()) {
-                    emitter.emitLine(wasmType + ".gt_s");
+                    emitter.emitInstruction(wasmType, "gt_s");
                 } else {
-                    emitter.emitLine(wasmType + ".gt");
+                    emitter.emitInstruction(wasmType, "gt");
                 }
                 break;
             case GreaterThanOrEqualTo:
                 if (primitiveType.isIntegralType()) {
-                    emitter.emitLine(wasmType + ".ge_s");
+                    emitter.emitInstruction(wasmType, "ge_s");
                 } else {
-                    emitter.emitLine(wasmType + ".ge");
+                    emitter.emitInstruction(wasmType, "ge");
                 }
         }
         CodeGenUtil.emitRangeRestrictionCode(expressionType, emitter);
@@ -154,8 +144,7 @@ public class ExpressionGenerator {
         compileExpression(negateExpression.getExpression(), scope);
         PrimitiveType type = negateExpression.getType();
         WasmType wasmType = CodeGenUtil.getWasmType(type);
-        String signedSuffix = type.isIntegralType() ? "_s" : "";
-        emitter.emitLine(wasmType + ".neg" + signedSuffix);
+        emitter.emitInstruction(wasmType, type.isIntegralType() ? "neg_s" : "neg");
     }
 
     private void compileNotExpression(NotExpression notExpression,
@@ -167,8 +156,8 @@ public class ExpressionGenerator {
 
     private void compileVariableIncrementExpression(VariableIncrementExpression expression,
                                                     VariableScope scope) {
-        String variableName = expression.getLocalVariableExpression().getVariableName();
-        VariableScope.LocalVariableAllocation allocation = (VariableScope.LocalVariableAllocation) scope.getVariableWithName(variableName);
+        int variableNameId = expression.getLocalVariableExpression().getVariableNameId();
+        VariableScope.LocalVariableAllocation allocation = (VariableScope.LocalVariableAllocation) scope.getVariableWithId(variableNameId);
         int registerNumber = allocation.getLocalVariableIndex();
         Expression varNameExpr = expression.getLocalVariableExpression();
         Expression one;
@@ -196,26 +185,26 @@ public class ExpressionGenerator {
                 case PRE_INCREMENT:
                     bopExpr = new BinaryOperatorExpression(varNameExpr, one, BinaryOp.Add);
                     assignment = new Assignment(expression.getLocalVariableExpression(), bopExpr);
-                    StatementGenerator.getInstance().compileStatement(assignment, scope);
-                    emitter.emitLine("local.get " + registerNumber);
+                    statementGenerator.compileStatement(assignment, scope);
+                    emitter.emitInstruction("local.get", registerNumber);
                     break;
                 case PRE_DECREMENT:
                     bopExpr = new BinaryOperatorExpression(varNameExpr, one, BinaryOp.Subtract);
                     assignment = new Assignment(expression.getLocalVariableExpression(), bopExpr);
-                    StatementGenerator.getInstance().compileStatement(assignment, scope);
-                    emitter.emitLine("local.get " + registerNumber);
+                    statementGenerator.compileStatement(assignment, scope);
+                    emitter.emitInstruction("local.get", registerNumber);
                     break;
                 case POST_INCREMENT:
-                    emitter.emitLine("local.get " + registerNumber);
+                    emitter.emitInstruction("local.get", registerNumber);
                     bopExpr = new BinaryOperatorExpression(varNameExpr, one, BinaryOp.Add);
                     assignment = new Assignment(expression.getLocalVariableExpression(), bopExpr);
-                    StatementGenerator.getInstance().compileStatement(assignment, scope);
+                    statementGenerator.compileStatement(assignment, scope);
                     break;
                 case POST_DECREMENT:
-                    emitter.emitLine("local.get " + registerNumber);
+                    emitter.emitInstruction("local.get", registerNumber);
                     bopExpr = new BinaryOperatorExpression(varNameExpr, one, BinaryOp.Subtract);
                     assignment = new Assignment(expression.getLocalVariableExpression(), bopExpr);
-                    StatementGenerator.getInstance().compileStatement(assignment, scope);
+                    statementGenerator.compileStatement(assignment, scope);
             }
         } catch (IncorrectTypeException e) {
             e.printStackTrace();
@@ -224,12 +213,12 @@ public class ExpressionGenerator {
 
     private void compileLocalVariableNameExpression(LocalVariableExpression expression,
                                                     VariableScope variableScope) {
-        VariableScope.Allocation allocation = variableScope.getVariableWithName(expression.getVariableName());
+        VariableScope.Allocation allocation = variableScope.getVariableWithId(expression.getVariableNameId());
         if (allocation instanceof VariableScope.LocalVariableAllocation) {
             // It's a WebAssembly local variable
             VariableScope.LocalVariableAllocation localAllocation = (VariableScope.LocalVariableAllocation) allocation;
             int index = localAllocation.getLocalVariableIndex();
-            emitter.emitLine("local.get " + index);
+            emitter.emitInstruction("local.get", index);
         } else {
             // It's a stack variable
             VariableScope.StackOffsetAllocation stackAllocation = (VariableScope.StackOffsetAllocation) allocation;
@@ -237,7 +226,7 @@ public class ExpressionGenerator {
             emitter.emitLine("global.get $stack_base");
             emitter.emitLine("global.get $stack_frame_start");
             emitter.emitLine("i32.add");
-            emitter.emitLine("i32.load offset=" + stackFrameOffset);
+            emitter.emitMemoryInstruction(WasmType.Int32, "load", stackFrameOffset);
         }
     }
 
@@ -262,7 +251,7 @@ public class ExpressionGenerator {
         emitter.emitLine("global.get $temp_heap_address");
 
         // Look up the value at the offset for the requested attribute
-        emitter.emitLine(wasmType + ".load offset=" + attributeOffset);
+        emitter.emitMemoryInstruction(wasmType, "load", attributeOffset);
     }
 
     private void compileFunctionCallExpression(FunctionCall functionCall,
@@ -270,8 +259,7 @@ public class ExpressionGenerator {
         List<Expression> arguments = functionCall.getArguments();
         FunctionTableEntry tableEntry = functionCall.getFunctionTableEntry();
         String functionName = CodeGenUtil.getFunctionNameForOutput(tableEntry, functionTable);
-        String functionCallString = "call $" + functionName;
-        saveStateAndCallFunction(functionCallString, arguments, scope, null, null, false);
+        saveStateAndCallFunction(functionName, arguments, scope, null, null, false);
     }
 
     private void compileMethodCallExpression(MethodCall methodCall,
@@ -286,27 +274,29 @@ public class ExpressionGenerator {
         // Calculate the method to call
         int vtableOffset = methodCall.getVirtualTableOffset();
         String fullMethodName = CodeGenUtil.getFunctionNameForOutput(methodCall.getStaticFunctionEntry(), functionTable);
-        String typeAnnotation = "(type $func_" + fullMethodName + ")";
-        String functionCallString = "call_indirect " + typeAnnotation;
 
         // Make the call
-        saveStateAndCallFunction(functionCallString, arguments, scope, methodCall.getLocalVariable(), vtableOffset, false);
+        saveStateAndCallFunction(fullMethodName, arguments, scope, methodCall.getLocalVariable(), vtableOffset, false);
     }
 
     private void compileNewObjectExpression(NewObjectExpression newObjectExpression,
                                             VariableScope scope) {
 
         JavaClass javaClass = newObjectExpression.getType();
-        int numAttributeBytes = javaClass.getNumAttributeBytes();
-        int totalSize = javaClass.getHeapSize();
-        int vtablePointer = virtualTable.getVirtualTablePosition(javaClass);
-        List<Integer> pointerInformation = javaClass.getEncodedPointersDescription();
-        int pointerInfoStart = javaClass.getPointerInfoStartOffset();
+        ClassLayout layout = javaClass.getLayout();
+        int numAttributeBytes = layout.getNumAttributeBytes();
+        int totalSize = layout.getHeapSize();
+        List<Integer> pointerInformation = layout.getEncodedPointersDescription();
+        int pointerInfoStart = layout.getPointerInfoStartOffset();
 
         // Allocate the memory
-        emitter.emitLine("i32.const " + totalSize);
-        emitter.emitLine("i32.const " + numAttributeBytes);
-        emitter.emitLine("i32.const " + vtablePointer);
+        emitter.emitInstruction("i32.const", totalSize);
+        emitter.emitInstruction("i32.const", numAttributeBytes);
+        if (virtualTable.isRelocatable()) {
+            emitter.emitSymbolicInstruction("i32.const", VirtualTable.getVirtualTableSymbol(javaClass));
+        } else {
+            emitter.emitInstruction("i32.const", virtualTable.getVirtualTablePosition(javaClass));
+        }
         emitter.emitLine("call $alloc_object");
 
         // Save object reference
@@ -316,8 +306,8 @@ public class ExpressionGenerator {
         int currentPosition = pointerInfoStart;
         for (int pointerInfoWord : pointerInformation) {
             emitter.emitLine("global.get $temp_heap_address");
-            emitter.emitLine("i32.const " + pointerInfoWord);
-            emitter.emitLine("i32.store offset=" + currentPosition + " align=2");
+            emitter.emitInstruction("i32.const", pointerInfoWord);
+            emitter.emitMemoryInstruction(WasmType.Int32, "store", currentPosition, 2);
             currentPosition += 4;
         }
 
@@ -326,15 +316,28 @@ public class ExpressionGenerator {
             List<Expression> arguments = newObjectExpression.getArguments();
             FunctionTableEntry entry = newObjectExpression.getConstructor();
             String functionName = CodeGenUtil.getFunctionNameForOutput(entry, functionTable);
-            String functionCallString = "call $" + functionName;
-            saveStateAndCallFunction(functionCallString, arguments, scope, null, null, true);
+            saveStateAndCallFunction(functionName, arguments, scope, null, null, true);
         }
 
         // Leave a reference to the object on the stack
         emitter.emitLine("global.get $temp_heap_address");
     }
 
-    private void saveStateAndCallFunction(String functionCallString,
+    /**
+     * Calls a function, passing heap pointers on the shadow stack.
+     *
+     * @param functionName The name of the function to call. For a method
+     *                     call this is the method whose type should be used
+     *                     for the indirect call.
+     * @param arguments The arguments to pass
+     * @param scope The scope of the call
+     * @param objectForVtable The object to look up the method in for a
+     *                        method call, or null for a direct call
+     * @param vtableOffset The offset of the method in the virtual table
+     * @param includeThisArgument Whether to pass $temp_heap_address as a
+     *                            final argument
+     */
+    private void saveStateAndCallFunction(String functionName,
                                           List<Expression> arguments,
                                           VariableScope scope,
                                           Expression objectForVtable,
@@ -353,7 +356,7 @@ public class ExpressionGenerator {
                 emitter.emitLine("global.get $stack_pointer");
                 emitter.emitLine("i32.add");
                 compileExpression(expression, scope);
-                emitter.emitLine("i32.store offset=" + offset + " align=2");
+                emitter.emitMemoryInstruction(WasmType.Int32, "store", offset, 2);
                 offset += 4;
             }
         }
@@ -368,15 +371,15 @@ public class ExpressionGenerator {
             emitter.emitLine("global.get $stack_pointer");
             emitter.emitLine("i32.add");
             emitter.emitLine("global.get $temp_heap_address");
-            emitter.emitLine("i32.store offset=" + offset + " align=2");
+            emitter.emitMemoryInstruction(WasmType.Int32, "store", offset, 2);
             offset += 4;
         }
 
         // If this is a method call, put the vtable index on the stack
         if (objectForVtable != null) {
             compileExpression(objectForVtable, scope);
-            emitter.emitLine("i32.load offset=" + Constants.VTABLE_POINTER_POS + " align=2");
-            emitter.emitLine("i32.const " + vtableOffset);
+            emitter.emitMemoryInstruction(WasmType.Int32, "load", Constants.VTABLE_POINTER_POS, 2);
+            emitter.emitInstruction("i32.const", vtableOffset);
             emitter.emitLine("i32.add");
         }
 
@@ -390,12 +393,16 @@ public class ExpressionGenerator {
 
         // Bump up the stack pointer
         emitter.emitLine("global.get $stack_pointer");
-        emitter.emitLine("i32.const " + offset);
+        emitter.emitInstruction("i32.const", offset);
         emitter.emitLine("i32.add");
         emitter.emitLine("global.set $stack_pointer");
 
         // Make the function call
-        emitter.emitLine(functionCallString);
+        if (objectForVtable != null) {
+            emitter.emitIndirectCall("func_" + functionName);
+        } else {
+            emitter.emitSymbolicInstruction("call", functionName);
+        }
 
         // Restore the previous stack pointer
         emitter.emitLine("global.get $stack_frame_start");
@@ -417,11 +424,11 @@ public class ExpressionGenerator {
         compileExpression(lengthExpression, scope);
 
         // Multiply by element size to get the actual size
-        emitter.emitLine("i32.const " + elementSize);
+        emitter.emitInstruction("i32.const", elementSize);
         emitter.emitLine("i32.mul");
 
         // Pass in bit for whether the array contains pointers
-        emitter.emitLine("i32.const " + containsPointersBit);
+        emitter.emitInstruction("i32.const", containsPointersBit);
 
         // Now allocate the memory, leaving the address on the stack
         emitter.emitLine("call $alloc_array");
@@ -0,0 +1,475 @@
+package codegen.generators;
+
+import ast.types.ClassLayout;
+import ast.types.JavaClass;
+import codegen.CodeEmitter;
+import codegen.Constants;
+import codegen.WasmType;
+import ir.BasicBlock;
+import ir.ControlFlowGraph;
+import ir.IRFunction;
+import ir.IRLocal;
+import ir.IRType;
+import ir.expressions.*;
+import ir.statements.*;
+import util.VirtualTable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates WebAssembly from a function in the intermediate representation.
+ *
+ * WebAssembly has no goto, so the control flow graph has to be turned back
+ * into nested blocks, loops and if statements. This follows Ramsey's
+ * "Beyond Relooper" method, which walks the dominator tree of the graph:
+ *  - a block that is the target of a back edge is wrapped in a loop, so
+ *    that jumping back to it is a br to the loop
+ *  - a block that can be reached by more than one forward edge is placed
+ *    straight after a block that wraps the code that jumps to it, so that
+ *    jumping to it is a br out of that block
+ *  - any other block only has one predecessor, so it is placed where that
+ *    predecessor jumps to it
+ * This gives structured code for any reducible graph without ever copying a
+ * block. The code for a function generated from the IR of an unoptimised
+ * method does the same thing as the code that StatementGenerator generates
+ * from its AST.
+ *
+ * A generator holds the state of the function being generated, so a
+ * separate one should be used for each function that is generated
+ * concurrently.
+ */
+public class IRGenerator {
+
+    private CodeEmitter emitter;
+    private VirtualTable virtualTable;
+
+    private ControlFlowGraph graph;
+
+    /**
+     * The constructs that enclose the code being generated, innermost last,
+     * which is needed to work out the label of each br
+     */
+    private List<EnclosingConstruct> enclosingConstructs;
+
+    /**
+     * Whether the last instruction emitted never lets control carry on to
+     * the next one
+     */
+    private boolean lastInstructionTransfersControl;
+
+    public IRGenerator(CodeEmitter emitter, VirtualTable virtualTable) {
+        this.emitter = emitter;
+        this.virtualTable = virtualTable;
+    }
+
+    /**
+     * Generates a function, followed by its export if it is exported.
+     *
+     * @param function The function, which must have been verified
+     */
+    public void compileFunction(IRFunction function) {
+        String functionName = function.getName();
+        emitter.emitLine("(func $" + functionName);
+        emitter.increaseIndentationLevel();
+
+        // Declare the parameters, the return type and the locals
+        for (IRLocal local : function.getLocals()) {
+            if (local.isParameter()) {
+                emitter.emitLine("(param " + local.getType().getWasmType() + ")");
+            }
+        }
+        if (function.getReturnType() != IRType.Void) {
+            emitter.emitLine("(result " + function.getReturnType().getWasmType() + ")");
+        }
+        for (IRLocal local : function.getLocals()) {
+            if (!local.isParameter()) {
+                emitter.emitLine("(local " + local.getType().getWasmType() + ")");
+            }
+        }
+        emitter.emitLine("(local $saved_stack_frame_start i32)");
+
+        // Generate the body, starting from the root of the dominator tree
+        graph = new ControlFlowGraph(function);
+        enclosingConstructs = new ArrayList<>();
+        lastInstructionTransfersControl = false;
+        compileSubtree(function.getEntryBlock());
+
+        // The validator cannot tell that control never reaches the end of a
+        // non-void function whose last instruction ends a block
+        if (function.getReturnType() != IRType.Void && !lastInstructionTransfersControl) {
+            emitter.emitLine("unreachable");
+        }
+
+        emitter.emitLine(")");
+        emitter.decreaseIndentationLevel();
+
+        if (function.isExported()) {
+            emitter.emitLine("(export \"" + functionName + "\" (func $" + functionName + "))");
+        }
+    }
+
+    /**
+     * Generates a block, followed by every block that it immediately
+     * dominates and that more than one forward edge goes to.
+     *
+     * @param block The root of the subtree of the dominator tree
+     */
+    private void compileSubtree(BasicBlock block) {
+        List<BasicBlock> mergeNodes = new ArrayList<>();
+        for (BasicBlock child : graph.getDominatorTreeChildren(block)) {
+            if (graph.isMergeNode(child)) {
+                // The merge node that comes last goes on the outside
+                mergeNodes.add(0, child);
+            }
+        }
+        if (graph.isLoopHeader(block)) {
+            openConstruct("loop", new EnclosingConstruct(block, true));
+            compileWithin(block, mergeNodes, 0);
+            closeConstruct();
+        } else {
+            compileWithin(block, mergeNodes, 0);
+        }
+    }
+
+    /**
+     * Generates a block inside a nest of blocks, one for each of its merge
+     * nodes from the given position onwards, placing each merge node
+     * straight after its block.
+     */
+    private void compileWithin(BasicBlock block, List<BasicBlock> mergeNodes, int position) {
+        if (position < mergeNodes.size()) {
+            BasicBlock mergeNode = mergeNodes.get(position);
+            openConstruct("block", new EnclosingConstruct(mergeNode, false));
+            compileWithin(block, mergeNodes, position + 1);
+            closeConstruct();
+            compileSubtree(mergeNode);
+            return;
+        }
+
+        for (IRStatement statement : block.getStatements()) {
+            compileStatement(statement);
+        }
+        Terminator terminator = block.getTerminator();
+        if (terminator instanceof Jump) {
+            compileBranch(block, ((Jump) terminator).getTarget());
+        } else if (terminator instanceof Branch) {
+            Branch branch = (Branch) terminator;
+            compileExpression(branch.getCondition());
+            openConstruct("if", new EnclosingConstruct(null, false));
+            compileBranch(block, branch.getIfTrue());
+            emitter.decreaseIndentationLevel();
+            emitter.emitLine("else");
+            emitter.increaseIndentationLevel();
+            compileBranch(block, branch.getIfFalse());
+            closeConstruct();
+        } else if (terminator instanceof Return) {
+            Return returnStatement = (Return) terminator;
+            if (returnStatement.hasValue()) {
+                compileExpression(returnStatement.getValue());
+            }
+            emitControlTransfer("return");
+        } else {
+            emitControlTransfer("unreachable");
+        }
+    }
+
+    /**
+     * Generates the code that sends control along an edge.
+     *
+     * @param source The block that the edge comes from
+     * @param target The block that the edge goes to
+     */
+    private void compileBranch(BasicBlock source, BasicBlock target) {
+        if (graph.isBackEdge(source, target)) {
+            emitControlTransfer("br " + getLabel(target, true));
+        } else if (graph.isMergeNode(target)) {
+            emitControlTransfer("br " + getLabel(target, false));
+        } else {
+            compileSubtree(target);
+        }
+    }
+
+    private int getLabel(BasicBlock target, boolean isLoop) {
+        for (int i = enclosingConstructs.size() - 1; i >= 0; i--) {
+            EnclosingConstruct construct = enclosingConstructs.get(i);
+            if (construct.target == target && construct.isLoop == isLoop) {
+                return enclosingConstructs.size() - 1 - i;
+            }
+        }
+        throw new IllegalStateException("No enclosing construct for " + target);
+    }
+
+    private void openConstruct(String instruction, EnclosingConstruct construct) {
+        emitter.emitLine(instruction);
+        emitter.increaseIndentationLevel();
+        enclosingConstructs.add(construct);
+    }
+
+    private void closeConstruct() {
+        enclosingConstructs.remove(enclosingConstructs.size() - 1);
+        emitter.decreaseIndentationLevel();
+        emitter.emitLine("end");
+        lastInstructionTransfersControl = false;
+    }
+
+    private void emitControlTransfer(String instruction) {
+        emitter.emitLine(instruction);
+        lastInstructionTransfersControl = true;
+    }
+
+    private void compileStatement(IRStatement statement) {
+        lastInstructionTransfersControl = false;
+        if (statement instanceof SetLocal) {
+            SetLocal setLocal = (SetLocal) statement;
+            compileExpression(setLocal.getValue());
+            emitter.emitInstruction("local.set", setLocal.getLocal().getIndex());
+        } else if (statement instanceof FrameStore) {
+            FrameStore frameStore = (FrameStore) statement;
+            compileExpression(frameStore.getValue());
+            emitter.emitInstruction("i32.const", frameStore.getOffset());
+            emitter.emitLine("call $set_at_stack_frame_offset");
+        } else if (statement instanceof Store) {
+            Store store = (Store) statement;
+            compileExpression(store.getAddress());
+            compileExpression(store.getValue());
+            emitter.emitMemoryInstruction(store.getType().getWasmType(), "store", store.getOffset(), 2);
+        } else if (statement instanceof ArrayStore) {
+            ArrayStore arrayStore = (ArrayStore) statement;
+            compileExpression(arrayStore.getValue());
+            compileExpression(arrayStore.getArray());
+            compileExpression(arrayStore.getIndex());
+            emitter.emitLine("call $array_write_" + arrayStore.getElementType().getWasmType());
+        } else if (statement instanceof Evaluate) {
+            IRExpression expression = ((Evaluate) statement).getExpression();
+            compileExpression(expression);
+            if (expression.getType() != IRType.Void) {
+                emitter.emitLine("drop");
+            }
+        }
+    }
+
+    private void compileExpression(IRExpression expression) {
+        if (expression instanceof Constant) {
+            compileConstant((Constant) expression);
+        } else if (expression instanceof LocalGet) {
+            emitter.emitInstruction("local.get", ((LocalGet) expression).getLocal().getIndex());
+        } else if (expression instanceof FrameLoad) {
+            emitter.emitLine("global.get $stack_base");
+            emitter.emitLine("global.get $stack_frame_start");
+            emitter.emitLine("i32.add");
+            emitter.emitMemoryInstruction(WasmType.Int32, "load", ((FrameLoad) expression).getOffset());
+        } else if (expression instanceof Load) {
+            Load load = (Load) expression;
+            compileExpression(load.getAddress());
+            emitter.emitMemoryInstruction(load.getType().getWasmType(), "load", load.getOffset());
+        } else if (expression instanceof NullCheck) {
+            compileExpression(((NullCheck) expression).getReference());
+            emitter.emitLine("global.set $temp_heap_address");
+            emitter.emitLine("global.get $temp_heap_address");
+            emitter.emitLine("i32.const 0");
+            emitter.emitLine("i32.eq");
+            emitter.emitLine("if");
+            emitter.increaseIndentationLevel();
+            emitter.emitLine("unreachable");
+            emitter.decreaseIndentationLevel();
+            emitter.emitLine("end");
+            emitter.emitLine("global.get $temp_heap_address");
+        } else if (expression instanceof BinaryOperation) {
+            BinaryOperation operation = (BinaryOperation) expression;
+            compileExpression(operation.getLeft());
+            compileExpression(operation.getRight());
+            emitter.emitInstruction(operation.getOperandType().getWasmType(),
+                    operation.getOperator().getInstruction());
+        } else if (expression instanceof Negate) {
+            compileExpression(((Negate) expression).getValue());
+            emitter.emitInstruction(expression.getType().getWasmType(), "neg");
+        } else if (expression instanceof Call) {
+            Call call = (Call) expression;
+            compileCall(call.getOperands(), false, null, call.getFunctionName());
+        } else if (expression instanceof VirtualCall) {
+            VirtualCall call = (VirtualCall) expression;
+            compileCall(call.getOperands(), false, call, call.getFunctionName());
+        } else if (expression instanceof NewObject) {
+            compileNewObject((NewObject) expression);
+        } else if (expression instanceof NewArray) {
+            NewArray newArray = (NewArray) expression;
+            IRType elementType = newArray.getElementType();
+            compileExpression(newArray.getLength());
+            emitter.emitInstruction("i32.const", elementType.getWasmType().getSize());
+            emitter.emitLine("i32.mul");
+            emitter.emitInstruction("i32.const", elementType == IRType.Reference ? 1 : 0);
+            emitter.emitLine("call $alloc_array");
+        } else if (expression instanceof ArrayLoad) {
+            ArrayLoad arrayLoad = (ArrayLoad) expression;
+            compileExpression(arrayLoad.getArray());
+            compileExpression(arrayLoad.getIndex());
+            emitter.emitLine("call $array_read_" + arrayLoad.getType().getWasmType());
+        } else if (expression instanceof Sequence) {
+            Sequence sequence = (Sequence) expression;
+            for (IRStatement statement : sequence.getStatements()) {
+                compileStatement(statement);
+            }
+            compileExpression(sequence.getValue());
+        }
+    }
+
+    private void compileConstant(Constant constant) {
+        Number value = constant.getValue();
+        switch (constant.getType()) {
+            case Int64:
+                emitter.emitInstruction("i64.const", value.longValue());
+                break;
+            case Float32:
+                emitter.emitLine("f32.const " + formatFloat(value.floatValue()));
+                break;
+            case Float64:
+                emitter.emitLine("f64.const " + formatFloat(value.doubleValue()));
+                break;
+            default:
+                emitter.emitInstruction("i32.const", value.intValue());
+        }
+    }
+
+    /**
+     * Writes a floating point constant in the syntax of the text format,
+     * which spells infinity and NaN differently from Java.
+     */
+    private static String formatFloat(double value) {
+        if (Double.isNaN(value)) {
+            return "nan";
+        } else if (Double.isInfinite(value)) {
+            return (value > 0) ? "inf" : "-inf";
+        }
+        return Double.toString(value);
+    }
+
+    private static String formatFloat(float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            return formatFloat((double) value);
+        }
+        return Float.toString(value);
+    }
+
+    private void compileNewObject(NewObject newObject) {
+        JavaClass javaClass = newObject.getJavaClass();
+        ClassLayout layout = javaClass.getLayout();
+
+        // Allocate the memory
+        emitter.emitInstruction("i32.const", layout.getHeapSize());
+        emitter.emitInstruction("i32.const", layout.getNumAttributeBytes());
+        if (virtualTable.isRelocatable()) {
+            emitter.emitSymbolicInstruction("i32.const", VirtualTable.getVirtualTableSymbol(javaClass));
+        } else {
+            emitter.emitInstruction("i32.const", virtualTable.getVirtualTablePosition(javaClass));
+        }
+        emitter.emitLine("call $alloc_object");
+        emitter.emitLine("global.set $temp_heap_address");
+
+        // Write pointer information
+        int currentPosition = layout.getPointerInfoStartOffset();
+        for (int pointerInfoWord : layout.getEncodedPointersDescription()) {
+            emitter.emitLine("global.get $temp_heap_address");
+            emitter.emitInstruction("i32.const", pointerInfoWord);
+            emitter.emitMemoryInstruction(WasmType.Int32, "store", currentPosition, 2);
+            currentPosition += 4;
+        }
+
+        // The arguments to the constructor are only evaluated once the
+        // object has been allocated
+        if (newObject.usesConstructor()) {
+            compileCall(newObject.getOperands(), true, null, newObject.getConstructorName());
+        }
+
+        emitter.emitLine("global.get $temp_heap_address");
+    }
+
+    /**
+     * Calls a function, passing references on the shadow stack, in the same
+     * way as ExpressionGenerator.
+     *
+     * @param arguments The arguments to pass
+     * @param passNewObject Whether to pass $temp_heap_address as a final
+     *                      argument, for a constructor
+     * @param virtualCall The call if it is made through a virtual table, or
+     *                    null for a direct call
+     * @param functionName The name of the function to call, or of the
+     *                     function whose type should be used for the
+     *                     indirect call
+     */
+    private void compileCall(List<IRExpression> arguments,
+                             boolean passNewObject,
+                             VirtualCall virtualCall,
+                             String functionName) {
+        int offset = 0;
+        for (IRExpression argument : arguments) {
+            if (argument.getType() != IRType.Reference) {
+                compileExpression(argument);
+            } else {
+                emitter.emitLine("global.get $stack_base");
+                emitter.emitLine("global.get $stack_pointer");
+                emitter.emitLine("i32.add");
+                compileExpression(argument);
+                emitter.emitMemoryInstruction(WasmType.Int32, "store", offset, 2);
+                offset += 4;
+            }
+        }
+        if (passNewObject) {
+            emitter.emitLine("global.get $stack_base");
+            emitter.emitLine("global.get $stack_pointer");
+            emitter.emitLine("i32.add");
+            emitter.emitLine("global.get $temp_heap_address");
+            emitter.emitMemoryInstruction(WasmType.Int32, "store", offset, 2);
+            offset += 4;
+        }
+
+        // Look up the method in the virtual table of the object
+        if (virtualCall != null) {
+            compileExpression(virtualCall.getReceiver());
+            emitter.emitMemoryInstruction(WasmType.Int32, "load", Constants.VTABLE_POINTER_POS, 2);
+            emitter.emitInstruction("i32.const", virtualCall.getVirtualTableOffset());
+            emitter.emitLine("i32.add");
+        }
+
+        // Start a new stack frame for the call
+        emitter.emitLine("global.get $stack_frame_start");
+        emitter.emitLine("local.set $saved_stack_frame_start");
+        emitter.emitLine("global.get $stack_pointer");
+        emitter.emitLine("global.set $stack_frame_start");
+        emitter.emitLine("global.get $stack_pointer");
+        emitter.emitInstruction("i32.const", offset);
+        emitter.emitLine("i32.add");
+        emitter.emitLine("global.set $stack_pointer");
+
+        if (virtualCall != null) {
+            emitter.emitIndirectCall("func_" + functionName);
+        } else {
+            emitter.emitSymbolicInstruction("call", functionName);
+        }
+
+        // Restore the previous stack frame
+        emitter.emitLine("global.get $stack_frame_start");
+        emitter.emitLine("global.set $stack_pointer");
+        emitter.emitLine("local.get $saved_stack_frame_start");
+        emitter.emitLine("global.set $stack_frame_start");
+    }
+
+    /**
+     * A block, loop or if that encloses the code being generated.
+     */
+    private static class EnclosingConstruct {
+
+        /**
+         * The block that a br to this construct goes to: the loop header
+         * for a loop, or the block that follows a block. This is null for
+         * an if, which is never the target of a br.
+         */
+        BasicBlock target;
+        boolean isLoop;
+
+        EnclosingConstruct(BasicBlock target, boolean isLoop) {
+            this.target = target;
+            this.isLoop = isLoop;
+        }
+    }
+}
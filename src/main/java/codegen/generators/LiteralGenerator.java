@@ -5,19 +5,9 @@ import codegen.CodeEmitter;
 
 public class LiteralGenerator {
 
-    private static LiteralGenerator INSTANCE;
-
-    public static LiteralGenerator getInstance() {
-        if (INSTANCE == null)
-            INSTANCE = new LiteralGenerator();
-        return INSTANCE;
-    }
-
     private CodeEmitter emitter;
 
-    private LiteralGenerator() {}
-
-    public void setCodeEmitter(CodeEmitter emitter) {
+    public LiteralGenerator(CodeEmitter emitter) {
         this.emitter = emitter;
     }
 
@@ -44,19 +34,19 @@ public class LiteralGenerator {
     }
 
     private void compileIntLiteral(IntLiteral literal) {
-        emitter.emitLine("i32.const " + literal.getValue());
+        emitter.emitInstruction("i32.const", literal.getValue());
     }
 
     private void compileShortLiteral(ShortLiteral literal) {
-        emitter.emitLine("i32.const " + literal.getValue());
+        emitter.emitInstruction("i32.const", literal.getValue());
     }
 
     private void compileByteLiteral(ByteLiteral literal) {
-        emitter.emitLine("i32.const " + literal.getValue());
+        emitter.emitInstruction("i32.const", literal.getValue());
     }
 
     private void compileLongLiteral(LongLiteral literal) {
-        emitter.emitLine("i64.const " + literal.getValue());
+        emitter.emitInstruction("i64.const", literal.getValue());
     }
 
     private void compileFloatLiteral(FloatLiteral literal) {
@@ -69,11 +59,11 @@ public class LiteralGenerator {
 
     private void compileBooleanLiteral(BooleanLiteral literal) {
         int value = literal.getValue() ? 1 : 0;
-        emitter.emitLine("i32.const " + value);
+        emitter.emitInstruction("i32.const", value);
     }
 
     private void compileCharLiteral(CharLiteral literal) {
-        emitter.emitLine("i32.const " + literal.getValue());
+        emitter.emitInstruction("i32.const", literal.getValue());
     }
 
     private void compileNullLiteral() {
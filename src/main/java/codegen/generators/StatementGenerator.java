@@ -17,31 +17,35 @@ import util.VirtualTable;
 
 public class StatementGenerator {
 
-    private static StatementGenerator INSTANCE;
-
-    public static StatementGenerator getInstance() {
-        if (INSTANCE == null)
-            INSTANCE = new StatementGenerator();
-        return INSTANCE;
-    }
-
     private CodeEmitter emitter;
     private FunctionTable functionTable;
     private ClassTable classTable;
     private VirtualTable virtualTable;
 
-    private StatementGenerator() {}
-
-    public void setCodeEmitter(CodeEmitter emitter) {
+    private ExpressionGenerator expressionGenerator;
+
+    /**
+     * Creates a statement generator, along with the expression generator it
+     * uses, that emits code to the given emitter.
+     *
+     * Generators hold per-method state, so a separate pair should be created
+     * for each method that is compiled concurrently.
+     *
+     * @param emitter The emitter to write code to
+     * @param functionTable The function table
+     * @param classTable The class table
+     * @param virtualTable The combined virtual table
+     */
+    public StatementGenerator(CodeEmitter emitter,
+                              FunctionTable functionTable,
+                              ClassTable classTable,
+                              VirtualTable virtualTable) {
         this.emitter = emitter;
-    }
-
-    public void setTables(FunctionTable functionTable,
-                          ClassTable classTable,
-                          VirtualTable virtualTable) {
         this.functionTable = functionTable;
         this.classTable = classTable;
         this.virtualTable = virtualTable;
+        expressionGenerator = new ExpressionGenerator(
+                emitter, functionTable, classTable, virtualTable, this);
     }
 
     public void compileStatement(Statement statement,
@@ -57,7 +61,7 @@ public class StatementGenerator {
         } else if (statement instanceof ForLoop) {
             compileForLoop((ForLoop) statement);
         } else if (statement instanceof VariableIncrementExpression) {
-            ExpressionGenerator.getInstance().compileExpression((VariableIncrementExpression) statement, scope);
+            expressionGenerator.compileExpression((VariableIncrementExpression) statement, scope);
         } else if (statement instanceof FunctionCall) {
             compileFunctionCallStatement((FunctionCall) statement, scope);
         } else if (statement instanceof MethodCall) {
@@ -68,7 +72,7 @@ public class StatementGenerator {
     private void compileReturnStatement(ReturnStatement returnStatement,
                                         VariableScope scope) {
         Expression expression = returnStatement.getExpression();
-        ExpressionGenerator.getInstance().compileExpression(expression, scope);
+        expressionGenerator.compileExpression(expression, scope);
         emitter.emitLine("return");
     }
 
@@ -88,17 +92,17 @@ public class StatementGenerator {
     private void compileLocalVariableAssignment(LocalVariableExpression localVariable,
                                                 Expression value,
                                                 VariableScope scope) {
-        VariableScope.Allocation allocation = scope.getVariableWithName(localVariable.getVariableName());
+        VariableScope.Allocation allocation = scope.getVariableWithId(localVariable.getVariableNameId());
         if (allocation instanceof VariableScope.LocalVariableAllocation) {
             VariableScope.LocalVariableAllocation localVarAllocation = (VariableScope.LocalVariableAllocation) allocation;
             int localVariableIndex = localVarAllocation.getLocalVariableIndex();
-            ExpressionGenerator.getInstance().compileExpression(value, scope);
-            emitter.emitLine("local.set " + localVariableIndex);
+            expressionGenerator.compileExpression(value, scope);
+            emitter.emitInstruction("local.set", localVariableIndex);
         } else {
             VariableScope.StackOffsetAllocation stackOffsetAllocation = (VariableScope.StackOffsetAllocation) allocation;
             int stackOffset = stackOffsetAllocation.getStackFrameOffset();
-            ExpressionGenerator.getInstance().compileExpression(value, scope);
-            emitter.emitLine("i32.const " + stackOffset);
+            expressionGenerator.compileExpression(value, scope);
+            emitter.emitInstruction("i32.const", stackOffset);
             emitter.emitLine("call $set_at_stack_frame_offset");
         }
     }
@@ -113,13 +117,13 @@ public class StatementGenerator {
         WasmType wasmType = CodeGenUtil.getWasmType(attributeType);
 
         // Put the object address on the stack
-        ExpressionGenerator.getInstance().compileExpression(localVariable, scope);
+        expressionGenerator.compileExpression(localVariable, scope);
 
         // Put the value to save on the stack
-        ExpressionGenerator.getInstance().compileExpression(value, scope);
+        expressionGenerator.compileExpression(value, scope);
 
         // Save the value
-        emitter.emitLine(wasmType + ".store offset=" + offset + " align=2");
+        emitter.emitMemoryInstruction(wasmType, "store", offset, 2);
     }
 
     private void compileArrayIndexAssignment(ArrayIndexExpression arrayIndexExpression,
@@ -130,9 +134,9 @@ public class StatementGenerator {
         Expression indexExpression = arrayIndexExpression.getIndexExpression();
         WasmType valueType = CodeGenUtil.getWasmType(valueExpression.getType());
 
-        ExpressionGenerator.getInstance().compileExpression(valueExpression, scope);
-        ExpressionGenerator.getInstance().compileExpression(arrayExpression, scope);
-        ExpressionGenerator.getInstance().compileExpression(indexExpression, scope);
+        expressionGenerator.compileExpression(valueExpression, scope);
+        expressionGenerator.compileExpression(arrayExpression, scope);
+        expressionGenerator.compileExpression(indexExpression, scope);
         emitter.emitLine("call $array_write_" + valueType);
     }
 
@@ -140,7 +144,7 @@ public class StatementGenerator {
                                          VariableScope scope) {
         // We assume that type checking has already been done and that we are
         // sure that the expression is of type boolean.
-        ExpressionGenerator.getInstance().compileExpression(chain.getCondition(), scope);
+        expressionGenerator.compileExpression(chain.getCondition(), scope);
         emitter.emitLine("if");
         emitter.increaseIndentationLevel();
         compileCodeBlock(chain.getIfBlock());
@@ -174,7 +178,7 @@ public class StatementGenerator {
         } catch (IncorrectTypeException e) {
             e.printStackTrace();
         }
-        ExpressionGenerator.getInstance().compileExpression(notExpression, scope);
+        expressionGenerator.compileExpression(notExpression, scope);
 
         // If not(condition) is true then condition is false, so exit the loop
         emitter.emitLine("br_if 1");
@@ -214,7 +218,7 @@ public class StatementGenerator {
         } catch (IncorrectTypeException e) {
             e.printStackTrace();
         }
-        ExpressionGenerator.getInstance().compileExpression(notExpression, headerScope);
+        expressionGenerator.compileExpression(notExpression, headerScope);
         emitter.emitLine("br_if 1");
 
         // Now compile the actual code block
@@ -224,7 +228,7 @@ public class StatementGenerator {
         // doesn't matter if this leaves anything on the stack because we are
         // about to jump back to the start of the loop, unwinding the stack
         // anyway.
-        ExpressionGenerator.getInstance().compileExpression(forLoop.getUpdater(), headerScope);
+        expressionGenerator.compileExpression(forLoop.getUpdater(), headerScope);
 
         // Branch back to the start of the loop
         emitter.emitLine("br 0");
@@ -239,7 +243,7 @@ public class StatementGenerator {
     private void compileFunctionCallStatement(FunctionCall functionCall, VariableScope scope) {
 
         // Emit the function call.
-        ExpressionGenerator.getInstance().compileExpression(functionCall, scope);
+        expressionGenerator.compileExpression(functionCall, scope);
 
         // If it's not a void type then we need to remove its return value
         // from the stack.
@@ -251,7 +255,7 @@ public class StatementGenerator {
     private void compileMethodCallStatement(MethodCall methodCall, VariableScope scope) {
 
         // Emit the method call.
-        ExpressionGenerator.getInstance().compileExpression(methodCall, scope);
+        expressionGenerator.compileExpression(methodCall, scope);
 
         // Like with function calls, if it's not a void type then we need to
         // remove the return value from the stack.
@@ -0,0 +1,14 @@
+package errors;
+
+/**
+ * Thrown when an error is reported that prevents compilation from
+ * continuing.
+ *
+ * Unlike JavAssemblerException, this is unchecked: it unwinds all the way out
+ * of the compiler, to the code that started the compilation.
+ */
+public class CompilationAbortedException extends RuntimeException {
+    public CompilationAbortedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package errors;
+
+public class IRVerificationException extends JavAssemblerException {
+    public IRVerificationException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package errors;
+
+public class InvalidObjectModuleException extends JavAssemblerException {
+    public InvalidObjectModuleException(String message) {
+        super(message);
+    }
+}
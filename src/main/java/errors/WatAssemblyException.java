@@ -0,0 +1,7 @@
+package errors;
+
+public class WatAssemblyException extends JavAssemblerException {
+    public WatAssemblyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,65 @@
+package ir;
+
+import ir.statements.IRStatement;
+import ir.statements.Terminator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A straight-line sequence of statements, ended by a terminator that says
+ * where control goes next.
+ */
+public class BasicBlock {
+
+    private int id;
+    private List<IRStatement> statements;
+    private Terminator terminator;
+
+    public BasicBlock(int id) {
+        this.id = id;
+        statements = new ArrayList<>();
+        terminator = null;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the statements of the block, not including its terminator.
+     * The list may be changed in place.
+     *
+     * @return The statements of the block
+     */
+    public List<IRStatement> getStatements() {
+        return statements;
+    }
+
+    public void addStatement(IRStatement statement) {
+        statements.add(statement);
+    }
+
+    public Terminator getTerminator() {
+        return terminator;
+    }
+
+    public void setTerminator(Terminator terminator) {
+        this.terminator = terminator;
+    }
+
+    /**
+     * @return The blocks that control can go to after this one
+     */
+    public List<BasicBlock> getSuccessors() {
+        if (terminator == null) {
+            return new ArrayList<>();
+        }
+        return terminator.getSuccessors();
+    }
+
+    @Override
+    public String toString() {
+        return "bb" + id;
+    }
+}
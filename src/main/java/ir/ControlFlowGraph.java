@@ -0,0 +1,262 @@
+package ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Works out the shape of the control flow graph of a function: the order of
+ * its blocks, their predecessors, and which blocks dominate which.
+ *
+ * The analysis is a snapshot, so it must be built again once the blocks or
+ * their terminators have been changed. Blocks that cannot be reached from
+ * the entry block are ignored.
+ */
+public class ControlFlowGraph {
+
+    /**
+     * The reachable blocks in reverse postorder, so that every block comes
+     * before its successors except along back edges
+     */
+    private List<BasicBlock> reversePostorder;
+    private Map<BasicBlock, Integer> indices;
+    private List<List<BasicBlock>> predecessors;
+
+    /**
+     * The index of the immediate dominator of each block, where the entry
+     * block is its own immediate dominator
+     */
+    private int[] immediateDominators;
+    private List<List<BasicBlock>> dominatorTreeChildren;
+
+    public ControlFlowGraph(IRFunction function) {
+        findReversePostorder(function.getEntryBlock());
+        findPredecessors();
+        findDominators();
+    }
+
+    private void findReversePostorder(BasicBlock entry) {
+        // Depth-first search without recursion, since a long method can
+        // have many more blocks than the Java stack has room for
+        List<BasicBlock> postorder = new ArrayList<>();
+        Set<BasicBlock> visited = new HashSet<>();
+        Deque<BasicBlock> blocks = new ArrayDeque<>();
+        Deque<Integer> nextSuccessors = new ArrayDeque<>();
+        visited.add(entry);
+        blocks.push(entry);
+        nextSuccessors.push(0);
+        while (!blocks.isEmpty()) {
+            BasicBlock block = blocks.peek();
+            int next = nextSuccessors.pop();
+            List<BasicBlock> successors = block.getSuccessors();
+            if (next < successors.size()) {
+                nextSuccessors.push(next + 1);
+                BasicBlock successor = successors.get(next);
+                if (visited.add(successor)) {
+                    blocks.push(successor);
+                    nextSuccessors.push(0);
+                }
+            } else {
+                blocks.pop();
+                postorder.add(block);
+            }
+        }
+        Collections.reverse(postorder);
+        reversePostorder = Collections.unmodifiableList(postorder);
+        indices = new HashMap<>();
+        for (int i = 0; i < reversePostorder.size(); i++) {
+            indices.put(reversePostorder.get(i), i);
+        }
+    }
+
+    private void findPredecessors() {
+        predecessors = new ArrayList<>();
+        for (int i = 0; i < reversePostorder.size(); i++) {
+            predecessors.add(new ArrayList<>());
+        }
+        for (BasicBlock block : reversePostorder) {
+            for (BasicBlock successor : new LinkedHashSet<>(block.getSuccessors())) {
+                predecessors.get(indices.get(successor)).add(block);
+            }
+        }
+    }
+
+    /**
+     * Finds the immediate dominator of every block, using the iterative
+     * algorithm of Cooper, Harvey and Kennedy.
+     */
+    private void findDominators() {
+        int numBlocks = reversePostorder.size();
+        immediateDominators = new int[numBlocks];
+        for (int i = 1; i < numBlocks; i++) {
+            immediateDominators[i] = -1;
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < numBlocks; i++) {
+                int newDominator = -1;
+                for (BasicBlock predecessor : predecessors.get(i)) {
+                    int p = indices.get(predecessor);
+                    if (immediateDominators[p] == -1) {
+                        continue;
+                    }
+                    newDominator = (newDominator == -1) ? p : intersect(p, newDominator);
+                }
+                if (immediateDominators[i] != newDominator) {
+                    immediateDominators[i] = newDominator;
+                    changed = true;
+                }
+            }
+        }
+        dominatorTreeChildren = new ArrayList<>();
+        for (int i = 0; i < numBlocks; i++) {
+            dominatorTreeChildren.add(new ArrayList<>());
+        }
+        for (int i = 1; i < numBlocks; i++) {
+            dominatorTreeChildren.get(immediateDominators[i]).add(reversePostorder.get(i));
+        }
+    }
+
+    private int intersect(int first, int second) {
+        while (first != second) {
+            while (first > second) {
+                first = immediateDominators[first];
+            }
+            while (second > first) {
+                second = immediateDominators[second];
+            }
+        }
+        return first;
+    }
+
+    /**
+     * @return The reachable blocks in reverse postorder, starting with the
+     *         entry block
+     */
+    public List<BasicBlock> getBlocks() {
+        return reversePostorder;
+    }
+
+    public Set<BasicBlock> getReachableBlocks() {
+        return indices.keySet();
+    }
+
+    /**
+     * @param block A reachable block
+     * @return The position of the block in reverse postorder
+     */
+    public int getIndex(BasicBlock block) {
+        return indices.get(block);
+    }
+
+    /**
+     * @param block A reachable block
+     * @return The reachable blocks that have an edge to the block, each
+     *         listed once
+     */
+    public List<BasicBlock> getPredecessors(BasicBlock block) {
+        return predecessors.get(indices.get(block));
+    }
+
+    /**
+     * @param block A reachable block
+     * @return The immediate dominator of the block, or null for the entry
+     *         block
+     */
+    public BasicBlock getImmediateDominator(BasicBlock block) {
+        int index = indices.get(block);
+        return (index == 0) ? null : reversePostorder.get(immediateDominators[index]);
+    }
+
+    /**
+     * @param block A reachable block
+     * @return The blocks whose immediate dominator is the block, in reverse
+     *         postorder
+     */
+    public List<BasicBlock> getDominatorTreeChildren(BasicBlock block) {
+        return dominatorTreeChildren.get(indices.get(block));
+    }
+
+    /**
+     * Determines whether every path from the entry block to one block passes
+     * through another. Every block dominates itself.
+     *
+     * @param dominator The block that might dominate
+     * @param block The block that might be dominated
+     * @return true if dominator dominates block
+     */
+    public boolean dominates(BasicBlock dominator, BasicBlock block) {
+        int target = indices.get(dominator);
+        int index = indices.get(block);
+        while (index > target) {
+            index = immediateDominators[index];
+        }
+        return index == target;
+    }
+
+    /**
+     * An edge is a back edge if it goes to a block that does not come after
+     * its source in reverse postorder.
+     *
+     * @param from The source of the edge
+     * @param to The target of the edge
+     * @return true if the edge is a back edge
+     */
+    public boolean isBackEdge(BasicBlock from, BasicBlock to) {
+        return indices.get(to) <= indices.get(from);
+    }
+
+    /**
+     * @param block A reachable block
+     * @return true if the block is the target of a back edge
+     */
+    public boolean isLoopHeader(BasicBlock block) {
+        for (BasicBlock predecessor : getPredecessors(block)) {
+            if (isBackEdge(predecessor, block)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param block A reachable block
+     * @return true if the block can be reached by more than one forward edge
+     */
+    public boolean isMergeNode(BasicBlock block) {
+        int numForwardEdges = 0;
+        for (BasicBlock predecessor : getPredecessors(block)) {
+            if (!isBackEdge(predecessor, block)) {
+                numForwardEdges++;
+            }
+        }
+        return numForwardEdges > 1;
+    }
+
+    /**
+     * A graph is reducible if the target of every back edge dominates its
+     * source, so that every loop has a single entry. Only reducible graphs
+     * can be turned back into structured WebAssembly control flow without
+     * copying code.
+     *
+     * @return true if the graph is reducible
+     */
+    public boolean isReducible() {
+        for (BasicBlock block : reversePostorder) {
+            for (BasicBlock successor : block.getSuccessors()) {
+                if (isBackEdge(block, successor) && !dominates(successor, block)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,483 @@
+package ir;
+
+import ast.expressions.*;
+import ast.literals.*;
+import ast.statements.*;
+import ast.structure.ClassMethod;
+import ast.structure.CodeBlock;
+import ast.structure.MethodParameter;
+import ast.structure.VariableScope;
+import ast.types.AccessModifier;
+import ast.types.ItemArray;
+import ast.types.JavaClass;
+import ast.types.PrimitiveType;
+import ast.types.Type;
+import codegen.CodeGenUtil;
+import codegen.Constants;
+import ir.expressions.*;
+import ir.statements.*;
+import util.FunctionTable;
+import util.FunctionTableEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lowers the AST of a method into the intermediate representation.
+ *
+ * The lowering makes explicit everything that the code generator would
+ * otherwise do implicitly: which variables live in locals and which in the
+ * shadow stack, the null check before reading an attribute, the masking
+ * that keeps the result of arithmetic within the range of its type, and
+ * the control flow of if statements and loops.
+ *
+ * A builder holds the state of the method being lowered, so a separate one
+ * should be used for each method that is lowered concurrently.
+ */
+public class IRBuilder {
+
+    private FunctionTable functionTable;
+
+    private IRFunction function;
+    private BasicBlock currentBlock;
+
+    public IRBuilder(FunctionTable functionTable) {
+        this.functionTable = functionTable;
+    }
+
+    /**
+     * Lowers a method into the intermediate representation.
+     *
+     * @param method The method to lower
+     * @return The function
+     */
+    public IRFunction build(ClassMethod method) {
+        FunctionTableEntry entry = CodeGenUtil.getFunctionTableEntry(method, functionTable);
+        String name = CodeGenUtil.getFunctionNameForOutput(entry, functionTable);
+        boolean exported = method.getAccessModifier() == AccessModifier.PUBLIC;
+        function = new IRFunction(name, entry, exported, IRType.of(method.getReturnType()));
+
+        // The locals are numbered in the same way as the variable scope
+        // numbers them: primitive parameters first, then everything else
+        for (MethodParameter parameter : method.getParams()) {
+            if (parameter.getType() instanceof PrimitiveType) {
+                function.addParameter(IRType.of(parameter.getType()));
+            }
+        }
+        for (Type type : method.getBody().getVariableScope().getPrimitiveLocalVariableTypes()) {
+            function.addLocal(IRType.of(type));
+        }
+
+        currentBlock = function.newBlock();
+        lowerCodeBlock(method.getBody());
+
+        // Fall off the end of the method
+        if (function.getReturnType() == IRType.Void) {
+            terminate(new Return());
+        } else {
+            terminate(new Unreachable());
+        }
+
+        // Code after a return statement ends up in blocks that can never be
+        // reached
+        function.removeUnreachableBlocks();
+        return function;
+    }
+
+    /**
+     * Ends the current block, and starts a new one. Anything added before
+     * the new block is made the target of a jump can never be reached.
+     *
+     * @param terminator The terminator of the current block
+     */
+    private void terminate(Terminator terminator) {
+        currentBlock.setTerminator(terminator);
+        currentBlock = function.newBlock();
+    }
+
+    private void lowerCodeBlock(CodeBlock codeBlock) {
+        for (Statement statement : codeBlock.getStatements()) {
+            lowerStatement(statement, codeBlock.getVariableScope());
+        }
+    }
+
+    private void lowerStatement(Statement statement, VariableScope scope) {
+        if (statement instanceof Assignment) {
+            lowerAssignment((Assignment) statement, scope);
+        } else if (statement instanceof ReturnStatement) {
+            Expression value = ((ReturnStatement) statement).getExpression();
+            terminate(new Return(lowerExpression(value, scope)));
+        } else if (statement instanceof IfStatementChain) {
+            BasicBlock join = function.newBlock();
+            lowerIfStatementChain((IfStatementChain) statement, scope, join);
+            currentBlock = join;
+        } else if (statement instanceof WhileLoop) {
+            WhileLoop whileLoop = (WhileLoop) statement;
+            lowerLoop(whileLoop.getCondition(), null, whileLoop.getCodeBlock(), scope);
+        } else if (statement instanceof ForLoop) {
+            ForLoop forLoop = (ForLoop) statement;
+            VariableScope headerScope = forLoop.getCodeBlock().getVariableScope().getContainingScope();
+            lowerStatement(forLoop.getInitialiser(), headerScope);
+            lowerLoop(forLoop.getCondition(), forLoop.getUpdater(), forLoop.getCodeBlock(), headerScope);
+        } else if (statement instanceof Expression) {
+            lowerExpressionStatement((Expression) statement, scope);
+        }
+    }
+
+    private void lowerAssignment(Assignment assignment, VariableScope scope) {
+        Expression value = assignment.getExpression();
+        VariableExpression variableExpression = assignment.getVariableExpression();
+        if (variableExpression instanceof LocalVariableExpression) {
+            int nameId = ((LocalVariableExpression) variableExpression).getVariableNameId();
+            currentBlock.addStatement(assignVariable(scope.getVariableWithId(nameId), lowerExpression(value, scope)));
+        } else if (variableExpression instanceof AttributeNameExpression) {
+            AttributeNameExpression attribute = (AttributeNameExpression) variableExpression;
+            int offset = Constants.OBJECT_HEADER_LENGTH + attribute.getMemoryOffset();
+            IRExpression object = lowerExpression(attribute.getObject(), scope);
+            currentBlock.addStatement(new Store(IRType.of(attribute.getType()), offset,
+                    object, lowerExpression(value, scope)));
+        } else if (variableExpression instanceof ArrayIndexExpression) {
+            ArrayIndexExpression element = (ArrayIndexExpression) variableExpression;
+            IRExpression loweredValue = lowerExpression(value, scope);
+            IRExpression array = lowerExpression(element.getArrayExpression(), scope);
+            IRExpression index = lowerExpression(element.getIndexExpression(), scope);
+            currentBlock.addStatement(new ArrayStore(IRType.of(value.getType()), loweredValue, array, index));
+        }
+    }
+
+    private IRStatement assignVariable(VariableScope.Allocation allocation, IRExpression value) {
+        if (allocation instanceof VariableScope.LocalVariableAllocation) {
+            int index = ((VariableScope.LocalVariableAllocation) allocation).getLocalVariableIndex();
+            return new SetLocal(function.getLocal(index), value);
+        }
+        int offset = ((VariableScope.StackOffsetAllocation) allocation).getStackFrameOffset();
+        return new FrameStore(offset, value);
+    }
+
+    /**
+     * Lowers one link of an if statement chain, and the rest of the chain
+     * after it.
+     *
+     * @param chain The chain
+     * @param scope The scope of the chain
+     * @param join The block that control goes to after the chain
+     */
+    private void lowerIfStatementChain(IfStatementChain chain, VariableScope scope, BasicBlock join) {
+        BasicBlock ifBlock = function.newBlock();
+        BasicBlock elseBlock = (chain.hasNextIfStatementChain() || chain.hasElseBlock())
+                ? function.newBlock() : join;
+        terminate(new Branch(lowerExpression(chain.getCondition(), scope), ifBlock, elseBlock));
+
+        currentBlock = ifBlock;
+        lowerCodeBlock(chain.getIfBlock());
+        terminate(new Jump(join));
+
+        if (chain.hasNextIfStatementChain()) {
+            currentBlock = elseBlock;
+            lowerIfStatementChain(chain.getNextInChain(), scope, join);
+        } else if (chain.hasElseBlock()) {
+            currentBlock = elseBlock;
+            lowerCodeBlock(chain.getElseBlock());
+            terminate(new Jump(join));
+        }
+    }
+
+    /**
+     * Lowers a while loop, or the loop of a for loop once its initialiser
+     * has been lowered.
+     *
+     * @param condition The condition tested before each iteration
+     * @param updater The expression evaluated after each iteration, or null
+     * @param body The body of the loop
+     * @param scope The scope of the condition and updater
+     */
+    private void lowerLoop(Expression condition, Expression updater, CodeBlock body, VariableScope scope) {
+        BasicBlock header = function.newBlock();
+        BasicBlock bodyBlock = function.newBlock();
+        BasicBlock exit = function.newBlock();
+        terminate(new Jump(header));
+
+        currentBlock = header;
+        terminate(new Branch(lowerExpression(condition, scope), bodyBlock, exit));
+
+        currentBlock = bodyBlock;
+        lowerCodeBlock(body);
+        if (updater != null) {
+            lowerExpressionStatement(updater, scope);
+        }
+        terminate(new Jump(header));
+
+        currentBlock = exit;
+    }
+
+    /**
+     * Lowers an expression whose value is not used.
+     *
+     * @param expression The expression
+     * @param scope The scope of the expression
+     */
+    private void lowerExpressionStatement(Expression expression, VariableScope scope) {
+        if (expression instanceof VariableIncrementExpression) {
+            // Only the assignment is needed
+            VariableIncrementExpression increment = (VariableIncrementExpression) expression;
+            IRLocal local = getIncrementedLocal(increment, scope);
+            currentBlock.addStatement(new SetLocal(local, incrementedValue(increment, local)));
+        } else {
+            currentBlock.addStatement(new Evaluate(lowerExpression(expression, scope)));
+        }
+    }
+
+    private IRExpression lowerExpression(Expression expression, VariableScope scope) {
+        if (expression instanceof BinaryOperatorExpression) {
+            return lowerBinaryOperatorExpression((BinaryOperatorExpression) expression, scope);
+        } else if (expression instanceof LocalVariableExpression) {
+            int nameId = ((LocalVariableExpression) expression).getVariableNameId();
+            VariableScope.Allocation allocation = scope.getVariableWithId(nameId);
+            if (allocation instanceof VariableScope.LocalVariableAllocation) {
+                int index = ((VariableScope.LocalVariableAllocation) allocation).getLocalVariableIndex();
+                return new LocalGet(function.getLocal(index));
+            }
+            return new FrameLoad(((VariableScope.StackOffsetAllocation) allocation).getStackFrameOffset());
+        } else if (expression instanceof AttributeNameExpression) {
+            AttributeNameExpression attribute = (AttributeNameExpression) expression;
+            int offset = Constants.OBJECT_HEADER_LENGTH + attribute.getMemoryOffset();
+            IRExpression object = new NullCheck(lowerExpression(attribute.getObject(), scope));
+            return new Load(IRType.of(attribute.getType()), offset, object);
+        } else if (expression instanceof LiteralValue) {
+            return lowerLiteral((LiteralValue) expression);
+        } else if (expression instanceof FunctionCall) {
+            FunctionCall functionCall = (FunctionCall) expression;
+            FunctionTableEntry entry = functionCall.getFunctionTableEntry();
+            return new Call(entry, CodeGenUtil.getFunctionNameForOutput(entry, functionTable),
+                    lowerExpressions(functionCall.getArguments(), scope));
+        } else if (expression instanceof MethodCall) {
+            MethodCall methodCall = (MethodCall) expression;
+            FunctionTableEntry entry = methodCall.getStaticFunctionEntry();
+            List<IRExpression> arguments = lowerExpressions(methodCall.getArguments(), scope);
+            arguments.add(lowerExpression(methodCall.getLocalVariable(), scope));
+            Type receiverType = methodCall.getLocalVariable().getType();
+            JavaClass receiverClass = (receiverType instanceof JavaClass)
+                    ? (JavaClass) receiverType : entry.getContainingClass();
+            return new VirtualCall(entry, receiverClass, CodeGenUtil.getFunctionNameForOutput(entry, functionTable),
+                    methodCall.getVirtualTableOffset(), arguments);
+        } else if (expression instanceof NegateExpression) {
+            NegateExpression negateExpression = (NegateExpression) expression;
+            PrimitiveType type = negateExpression.getType();
+            IRExpression value = lowerExpression(negateExpression.getExpression(), scope);
+            if (type.isIntegralType()) {
+                IRType irType = IRType.of(type);
+                return restrictRange(new BinaryOperation(BinaryOperation.Operator.Subtract, irType,
+                        new Constant(irType, zero(irType)), value), type);
+            }
+            return new Negate(value);
+        } else if (expression instanceof NotExpression) {
+            IRExpression value = lowerExpression(((NotExpression) expression).getExpression(), scope);
+            return new BinaryOperation(BinaryOperation.Operator.Xor, IRType.Int32,
+                    new Constant(IRType.Int32, 1), value);
+        } else if (expression instanceof VariableIncrementExpression) {
+            return lowerIncrementExpression((VariableIncrementExpression) expression, scope);
+        } else if (expression instanceof NewObjectExpression) {
+            NewObjectExpression newObject = (NewObjectExpression) expression;
+            if (!newObject.usesConstructor()) {
+                return new NewObject(newObject.getType());
+            }
+            FunctionTableEntry constructor = newObject.getConstructor();
+            return new NewObject(newObject.getType(), constructor,
+                    CodeGenUtil.getFunctionNameForOutput(constructor, functionTable),
+                    lowerExpressions(newObject.getArguments(), scope));
+        } else if (expression instanceof NewArrayExpression) {
+            NewArrayExpression newArray = (NewArrayExpression) expression;
+            return new NewArray(IRType.of(newArray.getElementType()),
+                    lowerExpression(newArray.getLengthExpression(), scope));
+        } else if (expression instanceof ArrayIndexExpression) {
+            ArrayIndexExpression element = (ArrayIndexExpression) expression;
+            ItemArray arrayType = (ItemArray) element.getArrayExpression().getType();
+            return new ArrayLoad(IRType.of(arrayType.getElementType()),
+                    lowerExpression(element.getArrayExpression(), scope),
+                    lowerExpression(element.getIndexExpression(), scope));
+        }
+        throw new IllegalArgumentException("Cannot lower expression " + expression);
+    }
+
+    private List<IRExpression> lowerExpressions(List<Expression> expressions, VariableScope scope) {
+        List<IRExpression> result = new ArrayList<>();
+        for (Expression expression : expressions) {
+            result.add(lowerExpression(expression, scope));
+        }
+        return result;
+    }
+
+    private IRExpression lowerBinaryOperatorExpression(BinaryOperatorExpression expression,
+                                                       VariableScope scope) {
+        IRExpression left = lowerExpression(expression.getLeft(), scope);
+        IRExpression right = lowerExpression(expression.getRight(), scope);
+        Type underlyingType = expression.getUnderlyingType();
+        IRType operandType = IRType.of(underlyingType);
+        boolean integral = !(underlyingType instanceof PrimitiveType)
+                || ((PrimitiveType) underlyingType).isIntegralType();
+        BinaryOperation.Operator operator = null;
+        switch (expression.getOp()) {
+            case Add:
+                operator = BinaryOperation.Operator.Add;
+                break;
+            case Subtract:
+                operator = BinaryOperation.Operator.Subtract;
+                break;
+            case Multiply:
+                operator = BinaryOperation.Operator.Multiply;
+                break;
+            case Divide:
+                operator = integral ? BinaryOperation.Operator.SignedDivide : BinaryOperation.Operator.Divide;
+                break;
+            case LogicalAnd:
+                operator = BinaryOperation.Operator.And;
+                break;
+            case LogicalOr:
+                operator = BinaryOperation.Operator.Or;
+                break;
+            case EqualTo:
+                operator = BinaryOperation.Operator.EqualTo;
+                break;
+            case NotEqualTo:
+                operator = BinaryOperation.Operator.NotEqualTo;
+                break;
+            case LessThan:
+                operator = integral ? BinaryOperation.Operator.SignedLessThan
+                        : BinaryOperation.Operator.LessThan;
+                break;
+            case LessThanOrEqualTo:
+                operator = integral ? BinaryOperation.Operator.SignedLessThanOrEqualTo
+                        : BinaryOperation.Operator.LessThanOrEqualTo;
+                break;
+            case GreaterThan:
+                operator = integral ? BinaryOperation.Operator.SignedGreaterThan
+                        : BinaryOperation.Operator.GreaterThan;
+                break;
+            case GreaterThanOrEqualTo:
+                operator = integral ? BinaryOperation.Operator.SignedGreaterThanOrEqualTo
+                        : BinaryOperation.Operator.GreaterThanOrEqualTo;
+        }
+        BinaryOperation operation = new BinaryOperation(operator, operandType, left, right);
+
+        // Only arithmetic can leave the range of its type. Comparisons and
+        // logical operators always give 0 or 1.
+        if (operator.isComparison() || operator == BinaryOperation.Operator.And
+                || operator == BinaryOperation.Operator.Or) {
+            return operation;
+        }
+        return restrictRange(operation, underlyingType);
+    }
+
+    /**
+     * Lowers an increment whose value is used. A pre-increment gives the
+     * new value of the variable, and a post-increment gives the old value,
+     * which is kept in a temporary.
+     */
+    private IRExpression lowerIncrementExpression(VariableIncrementExpression increment,
+                                                  VariableScope scope) {
+        IRLocal local = getIncrementedLocal(increment, scope);
+        IRStatement assignment = new SetLocal(local, incrementedValue(increment, local));
+        switch (increment.getIncrementOp()) {
+            case PRE_INCREMENT:
+            case PRE_DECREMENT:
+                return new Sequence(Arrays.asList(assignment), new LocalGet(local));
+            default:
+                IRLocal oldValue = function.addLocal(local.getType());
+                IRStatement saveOldValue = new SetLocal(oldValue, new LocalGet(local));
+                return new Sequence(Arrays.asList(saveOldValue, assignment), new LocalGet(oldValue));
+        }
+    }
+
+    private IRLocal getIncrementedLocal(VariableIncrementExpression increment, VariableScope scope) {
+        int nameId = increment.getLocalVariableExpression().getVariableNameId();
+        VariableScope.LocalVariableAllocation allocation =
+                (VariableScope.LocalVariableAllocation) scope.getVariableWithId(nameId);
+        return function.getLocal(allocation.getLocalVariableIndex());
+    }
+
+    private static IRExpression incrementedValue(VariableIncrementExpression increment, IRLocal local) {
+        IRType type = local.getType();
+        BinaryOperation.Operator operator;
+        switch (increment.getIncrementOp()) {
+            case PRE_INCREMENT:
+            case POST_INCREMENT:
+                operator = BinaryOperation.Operator.Add;
+                break;
+            default:
+                operator = BinaryOperation.Operator.Subtract;
+        }
+        IRExpression value = new BinaryOperation(operator, type, new LocalGet(local), new Constant(type, one(type)));
+        return restrictRange(value, increment.getLocalVariableExpression().getType());
+    }
+
+    private static IRExpression lowerLiteral(LiteralValue literal) {
+        if (literal instanceof IntLiteral) {
+            return new Constant(IRType.Int32, ((IntLiteral) literal).getValue());
+        } else if (literal instanceof ShortLiteral) {
+            return new Constant(IRType.Int32, (int) ((ShortLiteral) literal).getValue());
+        } else if (literal instanceof ByteLiteral) {
+            return new Constant(IRType.Int32, (int) ((ByteLiteral) literal).getValue());
+        } else if (literal instanceof LongLiteral) {
+            return new Constant(IRType.Int64, ((LongLiteral) literal).getValue());
+        } else if (literal instanceof FloatLiteral) {
+            return new Constant(IRType.Float32, ((FloatLiteral) literal).getValue());
+        } else if (literal instanceof DoubleLiteral) {
+            return new Constant(IRType.Float64, ((DoubleLiteral) literal).getValue());
+        } else if (literal instanceof BooleanLiteral) {
+            return new Constant(IRType.Int32, ((BooleanLiteral) literal).getValue() ? 1 : 0);
+        } else if (literal instanceof CharLiteral) {
+            return new Constant(IRType.Int32, (int) ((CharLiteral) literal).getValue());
+        }
+        return new Constant(IRType.Reference, 0);
+    }
+
+    /**
+     * Masks the result of arithmetic so that it stays within the range of
+     * values that its Java type can take.
+     *
+     * @param value The result of the arithmetic
+     * @param type The Java type of the result
+     * @return The masked result
+     */
+    private static IRExpression restrictRange(IRExpression value, Type type) {
+        if (!(type instanceof PrimitiveType)) {
+            return value;
+        }
+        switch ((PrimitiveType) type) {
+            case Short:
+                return signExtend(value, 16);
+            case Byte:
+                return signExtend(value, 24);
+            case Char:
+                return new BinaryOperation(BinaryOperation.Operator.And, IRType.Int32, value,
+                        new Constant(IRType.Int32, 0xffff));
+            default:
+                return value;
+        }
+    }
+
+    private static IRExpression signExtend(IRExpression value, int shift) {
+        IRExpression shifted = new BinaryOperation(BinaryOperation.Operator.ShiftLeft, IRType.Int32,
+                value, new Constant(IRType.Int32, shift));
+        return new BinaryOperation(BinaryOperation.Operator.SignedShiftRight, IRType.Int32,
+                shifted, new Constant(IRType.Int32, shift));
+    }
+
+    private static Number zero(IRType type) {
+        return type == IRType.Int64 ? (Number) 0L : (Number) 0;
+    }
+
+    private static Number one(IRType type) {
+        switch (type) {
+            case Int64:
+                return 1L;
+            case Float32:
+                return 1.0f;
+            case Float64:
+                return 1.0;
+            default:
+                return 1;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package ir;
+
+import util.FunctionTableEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A method in the intermediate representation.
+ *
+ * The body is a control flow graph of basic blocks, the first of which is
+ * the entry block. Primitive values are kept in WebAssembly locals, and
+ * references are kept in the shadow stack frame of the method, exactly as
+ * the code generator lays them out.
+ */
+public class IRFunction {
+
+    private String name;
+    private FunctionTableEntry entry;
+    private boolean exported;
+    private IRType returnType;
+    private List<IRLocal> locals;
+    private List<BasicBlock> blocks;
+    private int nextBlockId;
+
+    /**
+     * Creates a function with no locals and no blocks.
+     *
+     * @param name The name of the function in the output
+     * @param entry The function table entry of the method
+     * @param exported Whether the function is exported from the module
+     * @param returnType The type of value that the function returns
+     */
+    public IRFunction(String name, FunctionTableEntry entry, boolean exported, IRType returnType) {
+        this.name = name;
+        this.entry = entry;
+        this.exported = exported;
+        this.returnType = returnType;
+        locals = new ArrayList<>();
+        blocks = new ArrayList<>();
+        nextBlockId = 0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public FunctionTableEntry getEntry() {
+        return entry;
+    }
+
+    public boolean isExported() {
+        return exported;
+    }
+
+    public void setExported(boolean exported) {
+        this.exported = exported;
+    }
+
+    public IRType getReturnType() {
+        return returnType;
+    }
+
+    /**
+     * Adds a parameter, which must come before every other local.
+     *
+     * @param type The type of the parameter
+     * @return The new parameter
+     */
+    public IRLocal addParameter(IRType type) {
+        IRLocal parameter = new IRLocal(locals.size(), type, true);
+        locals.add(parameter);
+        return parameter;
+    }
+
+    /**
+     * Adds a local variable, numbered after every existing local.
+     *
+     * @param type The type of the local
+     * @return The new local
+     */
+    public IRLocal addLocal(IRType type) {
+        IRLocal local = new IRLocal(locals.size(), type, false);
+        locals.add(local);
+        return local;
+    }
+
+    /**
+     * @return Every local of the function, including the parameters, in
+     *         index order
+     */
+    public List<IRLocal> getLocals() {
+        return locals;
+    }
+
+    public IRLocal getLocal(int index) {
+        return locals.get(index);
+    }
+
+    /**
+     * Creates a new, empty block and adds it to the function.
+     *
+     * @return The new block
+     */
+    public BasicBlock newBlock() {
+        BasicBlock block = new BasicBlock(nextBlockId++);
+        blocks.add(block);
+        return block;
+    }
+
+    /**
+     * Returns the blocks of the function, starting with the entry block.
+     * The list may be changed in place.
+     *
+     * @return The blocks of the function
+     */
+    public List<BasicBlock> getBlocks() {
+        return blocks;
+    }
+
+    public BasicBlock getEntryBlock() {
+        return blocks.get(0);
+    }
+
+    /**
+     * Removes every block that cannot be reached from the entry block.
+     *
+     * @return The number of blocks removed
+     */
+    public int removeUnreachableBlocks() {
+        Set<BasicBlock> reachable = new ControlFlowGraph(this).getReachableBlocks();
+        int numBlocks = blocks.size();
+        blocks.removeIf(block -> !reachable.contains(block));
+        return numBlocks - blocks.size();
+    }
+}
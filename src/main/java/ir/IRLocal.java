@@ -0,0 +1,40 @@
+package ir;
+
+/**
+ * A WebAssembly local variable of a function in the intermediate
+ * representation.
+ *
+ * Locals only ever hold primitive values. The primitive parameters come
+ * first, followed by the primitive local variables of the method in the
+ * order that they were allocated, followed by any temporaries introduced
+ * while building or optimising the function.
+ */
+public class IRLocal {
+
+    private int index;
+    private IRType type;
+    private boolean isParameter;
+
+    public IRLocal(int index, IRType type, boolean isParameter) {
+        this.index = index;
+        this.type = type;
+        this.isParameter = isParameter;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public IRType getType() {
+        return type;
+    }
+
+    public boolean isParameter() {
+        return isParameter;
+    }
+
+    @Override
+    public String toString() {
+        return "%" + index;
+    }
+}
@@ -0,0 +1,67 @@
+package ir;
+
+import ir.statements.IRStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a function in the intermediate representation as text, for
+ * debugging the compiler.
+ *
+ * For example:
+ * <pre>
+ *   function Main_sum(i32 %0) -&gt; i32 exported
+ *     locals: i32 %1, i32 %2
+ *   bb0:
+ *     %1 = i32 0
+ *     %2 = i32 0
+ *     jump bb1
+ *   bb1:
+ *     branch lt_s.i32(%2, %0), bb2, bb3
+ *   ...
+ * </pre>
+ *
+ * Primitive locals are written as %n, slots in the shadow stack frame as
+ * frame[offset], and blocks as bbn.
+ */
+public class IRPrinter {
+
+    /**
+     * Writes a function as text.
+     *
+     * @param function The function to write
+     * @return The text, ending with a newline
+     */
+    public static String print(IRFunction function) {
+        StringBuilder text = new StringBuilder();
+        List<String> parameters = new ArrayList<>();
+        List<String> locals = new ArrayList<>();
+        for (IRLocal local : function.getLocals()) {
+            String declaration = local.getType() + " " + local;
+            if (local.isParameter()) {
+                parameters.add(declaration);
+            } else {
+                locals.add(declaration);
+            }
+        }
+        text.append("function ").append(function.getName())
+                .append("(").append(String.join(", ", parameters)).append(")")
+                .append(" -> ").append(function.getReturnType());
+        if (function.isExported()) {
+            text.append(" exported");
+        }
+        text.append("\n");
+        if (!locals.isEmpty()) {
+            text.append("  locals: ").append(String.join(", ", locals)).append("\n");
+        }
+        for (BasicBlock block : function.getBlocks()) {
+            text.append(block).append(":\n");
+            for (IRStatement statement : block.getStatements()) {
+                text.append("  ").append(statement).append("\n");
+            }
+            text.append("  ").append(block.getTerminator()).append("\n");
+        }
+        return text.toString();
+    }
+}
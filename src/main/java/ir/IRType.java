@@ -0,0 +1,78 @@
+package ir;
+
+import ast.types.HeapObjectReference;
+import ast.types.PrimitiveType;
+import ast.types.Type;
+import codegen.WasmType;
+
+/**
+ * The types of values in the intermediate representation.
+ *
+ * These are the four WebAssembly value types, except that references into
+ * the heap are kept apart from other 32-bit integers. This lets the verifier
+ * check that references are only ever kept in the shadow stack, where the
+ * garbage collector can find them, and never in WebAssembly locals.
+ */
+public enum IRType {
+    Int32("i32", WasmType.Int32),
+    Int64("i64", WasmType.Int64),
+    Float32("f32", WasmType.Float32),
+    Float64("f64", WasmType.Float64),
+    Reference("ref", WasmType.Int32),
+    Void("void", null);
+
+    private String representation;
+    private WasmType wasmType;
+
+    IRType(String representation, WasmType wasmType) {
+        this.representation = representation;
+        this.wasmType = wasmType;
+    }
+
+    /**
+     * Returns the IR type used to hold values of a Java type.
+     *
+     * @param type The Java type
+     * @return The IR type
+     */
+    public static IRType of(Type type) {
+        if (type instanceof HeapObjectReference) {
+            return Reference;
+        }
+        if (!(type instanceof PrimitiveType)) {
+            return Void;
+        }
+        switch ((PrimitiveType) type) {
+            case Long:
+                return Int64;
+            case Float:
+                return Float32;
+            case Double:
+                return Float64;
+            default:
+                return Int32;
+        }
+    }
+
+    /**
+     * Returns the WebAssembly type that values of this type are represented
+     * by.
+     *
+     * @return The WebAssembly type, or null for the void type
+     */
+    public WasmType getWasmType() {
+        return wasmType;
+    }
+
+    /**
+     * @return true for the integer types, including references
+     */
+    public boolean isIntegral() {
+        return this == Int32 || this == Int64 || this == Reference;
+    }
+
+    @Override
+    public String toString() {
+        return representation;
+    }
+}
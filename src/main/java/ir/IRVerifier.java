@@ -0,0 +1,241 @@
+package ir;
+
+import ast.types.Type;
+import errors.IRVerificationException;
+import ir.expressions.*;
+import ir.statements.*;
+import util.FunctionTableEntry;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Checks that a function in the intermediate representation is well formed.
+ *
+ * This catches mistakes in the lowering and in optimisations before they
+ * turn into WebAssembly that fails to validate, or worse, that validates
+ * but does the wrong thing. A function is well formed if:
+ *  - every block has a terminator, and only jumps to blocks of the function
+ *  - the control flow graph is reducible
+ *  - every local used belongs to the function, and holds a primitive value
+ *  - the operands of every expression and statement have the right types
+ *  - calls are given the right number of arguments, of the right types
+ *  - every return matches the return type of the function
+ */
+public class IRVerifier {
+
+    private IRFunction function;
+    private Set<BasicBlock> blocks;
+
+    private IRVerifier(IRFunction function) {
+        this.function = function;
+        blocks = new HashSet<>(function.getBlocks());
+    }
+
+    /**
+     * Verifies a function.
+     *
+     * @param function The function to verify
+     * @throws IRVerificationException If the function is not well formed
+     */
+    public static void verify(IRFunction function) throws IRVerificationException {
+        new IRVerifier(function).verifyFunction();
+    }
+
+    private void verifyFunction() throws IRVerificationException {
+        if (function.getBlocks().isEmpty()) {
+            fail("has no blocks");
+        }
+        List<IRLocal> locals = function.getLocals();
+        for (int i = 0; i < locals.size(); i++) {
+            IRLocal local = locals.get(i);
+            if (local.getIndex() != i) {
+                fail("has local " + local + " at position " + i);
+            }
+            if (local.getType() == IRType.Reference || local.getType() == IRType.Void) {
+                fail("has local " + local + " of type " + local.getType());
+            }
+            if (local.isParameter() && i > 0 && !locals.get(i - 1).isParameter()) {
+                fail("has parameter " + local + " after a local that is not a parameter");
+            }
+        }
+        for (BasicBlock block : function.getBlocks()) {
+            for (IRStatement statement : block.getStatements()) {
+                if (statement instanceof Terminator) {
+                    fail("has a terminator in the middle of " + block);
+                }
+                verifyStatement(statement);
+            }
+            Terminator terminator = block.getTerminator();
+            if (terminator == null) {
+                fail("has no terminator at the end of " + block);
+            }
+            verifyTerminator(terminator);
+        }
+        if (!new ControlFlowGraph(function).isReducible()) {
+            fail("has an irreducible control flow graph");
+        }
+    }
+
+    private void verifyStatement(IRStatement statement) throws IRVerificationException {
+        for (IRExpression operand : statement.getOperands()) {
+            verifyExpression(operand);
+        }
+        if (statement instanceof SetLocal) {
+            SetLocal setLocal = (SetLocal) statement;
+            verifyLocal(setLocal.getLocal());
+            expectType(setLocal.getValue(), setLocal.getLocal().getType(), statement);
+        } else if (statement instanceof FrameStore) {
+            expectType(((FrameStore) statement).getValue(), IRType.Reference, statement);
+        } else if (statement instanceof Store) {
+            Store store = (Store) statement;
+            expectType(store.getAddress(), IRType.Reference, statement);
+            expectType(store.getValue(), store.getType(), statement);
+        } else if (statement instanceof ArrayStore) {
+            ArrayStore arrayStore = (ArrayStore) statement;
+            expectType(arrayStore.getValue(), arrayStore.getElementType(), statement);
+            expectType(arrayStore.getArray(), IRType.Reference, statement);
+            expectType(arrayStore.getIndex(), IRType.Int32, statement);
+        } else if (!(statement instanceof Evaluate)) {
+            fail("has an unknown statement " + statement);
+        }
+    }
+
+    private void verifyTerminator(Terminator terminator) throws IRVerificationException {
+        for (IRExpression operand : terminator.getOperands()) {
+            verifyExpression(operand);
+        }
+        for (BasicBlock successor : terminator.getSuccessors()) {
+            if (!blocks.contains(successor)) {
+                fail("jumps to " + successor + ", which is not one of its blocks");
+            }
+        }
+        if (terminator instanceof Branch) {
+            expectType(((Branch) terminator).getCondition(), IRType.Int32, terminator);
+        } else if (terminator instanceof Return) {
+            Return returnStatement = (Return) terminator;
+            if (function.getReturnType() == IRType.Void) {
+                if (returnStatement.hasValue()) {
+                    fail("returns a value from a void function");
+                }
+            } else if (!returnStatement.hasValue()) {
+                fail("returns without a value from a function of type " + function.getReturnType());
+            } else {
+                expectType(returnStatement.getValue(), function.getReturnType(), terminator);
+            }
+        }
+    }
+
+    private void verifyExpression(IRExpression expression) throws IRVerificationException {
+        for (IRExpression operand : expression.getOperands()) {
+            verifyExpression(operand);
+        }
+        if (expression instanceof LocalGet) {
+            verifyLocal(((LocalGet) expression).getLocal());
+        } else if (expression instanceof Constant) {
+            IRType type = expression.getType();
+            if (type == IRType.Void) {
+                fail("has a constant of type void");
+            }
+            if (type == IRType.Reference && ((Constant) expression).getValue().intValue() != 0) {
+                fail("has a reference constant that is not null");
+            }
+        } else if (expression instanceof Load) {
+            expectType(((Load) expression).getAddress(), IRType.Reference, expression);
+        } else if (expression instanceof NullCheck) {
+            expectType(((NullCheck) expression).getReference(), IRType.Reference, expression);
+        } else if (expression instanceof BinaryOperation) {
+            BinaryOperation operation = (BinaryOperation) expression;
+            expectType(operation.getLeft(), operation.getOperandType(), expression);
+            expectType(operation.getRight(), operation.getOperandType(), expression);
+            if (operation.getOperandType() == IRType.Reference
+                    && operation.getOperator() != BinaryOperation.Operator.EqualTo
+                    && operation.getOperator() != BinaryOperation.Operator.NotEqualTo) {
+                fail("can only compare references for equality, in " + expression);
+            }
+        } else if (expression instanceof Negate) {
+            IRType type = expression.getType();
+            if (type != IRType.Float32 && type != IRType.Float64) {
+                fail("negates a value of type " + type + ", in " + expression);
+            }
+        } else if (expression instanceof Call) {
+            Call call = (Call) expression;
+            List<IRExpression> arguments = call.getOperands();
+            if (call.getEntry().getIsStatic()) {
+                verifyArguments(call.getEntry(), arguments, arguments.size(), expression);
+            } else if (arguments.isEmpty()) {
+                fail("calls a method without an object, in " + expression);
+            } else {
+                verifyArguments(call.getEntry(), arguments, arguments.size() - 1, expression);
+                expectType(arguments.get(arguments.size() - 1), IRType.Reference, expression);
+            }
+        } else if (expression instanceof VirtualCall) {
+            VirtualCall call = (VirtualCall) expression;
+            List<IRExpression> arguments = call.getOperands();
+            if (arguments.isEmpty()) {
+                fail("calls a method without an object, in " + expression);
+            }
+            verifyArguments(call.getEntry(), arguments, arguments.size() - 1, expression);
+            expectType(call.getReceiver(), IRType.Reference, expression);
+            if (call.getReceiver().hasSideEffects()) {
+                fail("calls a method on an object with side effects, in " + expression);
+            }
+        } else if (expression instanceof NewObject) {
+            NewObject newObject = (NewObject) expression;
+            if (newObject.usesConstructor()) {
+                List<IRExpression> arguments = newObject.getOperands();
+                verifyArguments(newObject.getConstructor(), arguments, arguments.size(), expression);
+            } else if (!newObject.getOperands().isEmpty()) {
+                fail("passes arguments to an object without a constructor, in " + expression);
+            }
+        } else if (expression instanceof NewArray) {
+            expectType(((NewArray) expression).getLength(), IRType.Int32, expression);
+        } else if (expression instanceof ArrayLoad) {
+            ArrayLoad arrayLoad = (ArrayLoad) expression;
+            expectType(arrayLoad.getArray(), IRType.Reference, expression);
+            expectType(arrayLoad.getIndex(), IRType.Int32, expression);
+        } else if (expression instanceof Sequence) {
+            for (IRStatement statement : ((Sequence) expression).getStatements()) {
+                if (statement instanceof Terminator) {
+                    fail("has a terminator inside " + expression);
+                }
+                verifyStatement(statement);
+            }
+        } else if (!(expression instanceof FrameLoad)) {
+            fail("has an unknown expression " + expression);
+        }
+    }
+
+    private void verifyArguments(FunctionTableEntry entry,
+                                 List<IRExpression> arguments,
+                                 int numArguments,
+                                 IRExpression call) throws IRVerificationException {
+        List<Type> parameterTypes = entry.getParameterTypes();
+        if (parameterTypes.size() != numArguments) {
+            fail("passes " + numArguments + " arguments to a function with "
+                    + parameterTypes.size() + " parameters, in " + call);
+        }
+        for (int i = 0; i < numArguments; i++) {
+            expectType(arguments.get(i), IRType.of(parameterTypes.get(i)), call);
+        }
+    }
+
+    private void verifyLocal(IRLocal local) throws IRVerificationException {
+        List<IRLocal> locals = function.getLocals();
+        if (local.getIndex() >= locals.size() || locals.get(local.getIndex()) != local) {
+            fail("uses " + local + ", which is not one of its locals");
+        }
+    }
+
+    private void expectType(IRExpression operand, IRType type, Object user) throws IRVerificationException {
+        if (operand.getType() != type) {
+            fail("has an operand of type " + operand.getType() + " where " + type
+                    + " is needed, in " + user);
+        }
+    }
+
+    private void fail(String problem) throws IRVerificationException {
+        throw new IRVerificationException("Function " + function.getName() + " " + problem);
+    }
+}
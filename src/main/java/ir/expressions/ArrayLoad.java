@@ -0,0 +1,39 @@
+package ir.expressions;
+
+import ir.IRType;
+
+/**
+ * Reads an element of an array, trapping if the index is out of bounds.
+ */
+public class ArrayLoad extends IRExpression {
+
+    private IRType elementType;
+
+    public ArrayLoad(IRType elementType, IRExpression array, IRExpression index) {
+        super(array, index);
+        this.elementType = elementType;
+    }
+
+    public IRExpression getArray() {
+        return getOperand(0);
+    }
+
+    public IRExpression getIndex() {
+        return getOperand(1);
+    }
+
+    @Override
+    public IRType getType() {
+        return elementType;
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "array.load." + elementType + "(" + getArray() + ", " + getIndex() + ")";
+    }
+}
@@ -0,0 +1,99 @@
+package ir.expressions;
+
+import ir.IRType;
+
+/**
+ * Applies a WebAssembly binary operator to two operands of the same type.
+ */
+public class BinaryOperation extends IRExpression {
+
+    public enum Operator {
+        Add("add", false),
+        Subtract("sub", false),
+        Multiply("mul", false),
+        SignedDivide("div_s", false),
+        Divide("div", false),
+        And("and", false),
+        Or("or", false),
+        Xor("xor", false),
+        ShiftLeft("shl", false),
+        SignedShiftRight("shr_s", false),
+        EqualTo("eq", true),
+        NotEqualTo("ne", true),
+        SignedLessThan("lt_s", true),
+        LessThan("lt", true),
+        SignedLessThanOrEqualTo("le_s", true),
+        LessThanOrEqualTo("le", true),
+        SignedGreaterThan("gt_s", true),
+        GreaterThan("gt", true),
+        SignedGreaterThanOrEqualTo("ge_s", true),
+        GreaterThanOrEqualTo("ge", true);
+
+        private String instruction;
+        private boolean isComparison;
+
+        Operator(String instruction, boolean isComparison) {
+            this.instruction = instruction;
+            this.isComparison = isComparison;
+        }
+
+        /**
+         * @return The name of the WebAssembly instruction, without its type
+         */
+        public String getInstruction() {
+            return instruction;
+        }
+
+        /**
+         * @return true if the operator compares its operands, giving a
+         *         32-bit boolean
+         */
+        public boolean isComparison() {
+            return isComparison;
+        }
+    }
+
+    private Operator operator;
+    private IRType operandType;
+
+    public BinaryOperation(Operator operator, IRType operandType, IRExpression left, IRExpression right) {
+        super(left, right);
+        this.operator = operator;
+        this.operandType = operandType;
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    /**
+     * @return The type of both operands
+     */
+    public IRType getOperandType() {
+        return operandType;
+    }
+
+    public IRExpression getLeft() {
+        return getOperand(0);
+    }
+
+    public IRExpression getRight() {
+        return getOperand(1);
+    }
+
+    @Override
+    public IRType getType() {
+        return operator.isComparison() ? IRType.Int32 : operandType;
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        // Integer division traps when dividing by zero
+        return (operator == Operator.SignedDivide) || super.hasSideEffects();
+    }
+
+    @Override
+    public String toString() {
+        return operator.getInstruction() + "." + operandType + "(" + getLeft() + ", " + getRight() + ")";
+    }
+}
@@ -0,0 +1,55 @@
+package ir.expressions;
+
+import ir.IRType;
+import util.FunctionTableEntry;
+
+import java.util.List;
+
+/**
+ * Calls a function directly. Primitive arguments are passed as WebAssembly
+ * parameters, and references are passed in the shadow stack.
+ *
+ * A method that is not static is passed the object it is called on as the
+ * last argument, as in a VirtualCall.
+ */
+public class Call extends IRExpression {
+
+    private FunctionTableEntry entry;
+    private String functionName;
+
+    /**
+     * @param entry The function table entry of the function to call
+     * @param functionName The name of the function in the output
+     * @param arguments The arguments, in the order of the parameters,
+     *                  followed by the object for a method that is not
+     *                  static
+     */
+    public Call(FunctionTableEntry entry, String functionName, List<IRExpression> arguments) {
+        super(arguments);
+        this.entry = entry;
+        this.functionName = functionName;
+    }
+
+    public FunctionTableEntry getEntry() {
+        return entry;
+    }
+
+    public String getFunctionName() {
+        return functionName;
+    }
+
+    @Override
+    public IRType getType() {
+        return IRType.of(entry.getReturnType());
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "call " + functionName + "(" + formatOperands(getOperands()) + ")";
+    }
+}
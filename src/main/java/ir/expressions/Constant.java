@@ -0,0 +1,42 @@
+package ir.expressions;
+
+import ir.IRType;
+
+/**
+ * A constant value. A null reference is the constant 0 of reference type.
+ */
+public class Constant extends IRExpression {
+
+    private IRType type;
+    private Number value;
+
+    /**
+     * Creates a constant.
+     *
+     * @param type The type of the constant
+     * @param value The value, as an Integer for the 32-bit integer types and
+     *              references, a Long for 64-bit integers, and a Float or
+     *              Double for floating point types
+     */
+    public Constant(IRType type, Number value) {
+        this.type = type;
+        this.value = value;
+    }
+
+    @Override
+    public IRType getType() {
+        return type;
+    }
+
+    public Number getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        if (type == IRType.Reference && value.intValue() == 0) {
+            return "null";
+        }
+        return type + " " + value;
+    }
+}
@@ -0,0 +1,33 @@
+package ir.expressions;
+
+import ir.IRType;
+
+/**
+ * Reads a reference from a slot in the shadow stack frame of the current
+ * function.
+ */
+public class FrameLoad extends IRExpression {
+
+    private int offset;
+
+    /**
+     * @param offset The offset of the slot from the start of the frame
+     */
+    public FrameLoad(int offset) {
+        this.offset = offset;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    @Override
+    public IRType getType() {
+        return IRType.Reference;
+    }
+
+    @Override
+    public String toString() {
+        return "frame[" + offset + "]";
+    }
+}
@@ -0,0 +1,75 @@
+package ir.expressions;
+
+import ir.IRType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An expression in the intermediate representation, which computes a single
+ * value, or no value for a call to a void function.
+ *
+ * The operands of an expression are evaluated in order before the
+ * expression itself, and may be replaced in place by optimisations.
+ */
+public abstract class IRExpression {
+
+    private List<IRExpression> operands;
+
+    protected IRExpression(IRExpression... operands) {
+        this(Arrays.asList(operands));
+    }
+
+    protected IRExpression(List<IRExpression> operands) {
+        this.operands = new ArrayList<>(operands);
+    }
+
+    public abstract IRType getType();
+
+    public List<IRExpression> getOperands() {
+        return operands;
+    }
+
+    public IRExpression getOperand(int index) {
+        return operands.get(index);
+    }
+
+    public void setOperand(int index, IRExpression operand) {
+        operands.set(index, operand);
+    }
+
+    /**
+     * Determines whether evaluating the expression could do anything other
+     * than compute its value, such as writing to memory, calling a function
+     * or trapping. An expression without side effects can be removed if its
+     * value is not used.
+     *
+     * @return true if the expression might have side effects
+     */
+    public boolean hasSideEffects() {
+        for (IRExpression operand : operands) {
+            if (operand.hasSideEffects()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Formats a list of operands for the textual form of the IR.
+     *
+     * @param operands The operands to format
+     * @return The operands, separated by commas
+     */
+    protected static String formatOperands(List<IRExpression> operands) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < operands.size(); i++) {
+            if (i > 0) {
+                result.append(", ");
+            }
+            result.append(operands.get(i));
+        }
+        return result.toString();
+    }
+}
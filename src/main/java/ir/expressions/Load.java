@@ -0,0 +1,42 @@
+package ir.expressions;
+
+import ir.IRType;
+
+/**
+ * Reads a value from the heap, at a fixed offset from the address given by
+ * its operand.
+ */
+public class Load extends IRExpression {
+
+    private IRType type;
+    private int offset;
+
+    /**
+     * @param type The type of value to read
+     * @param offset The offset in bytes from the address
+     * @param address The address to read from
+     */
+    public Load(IRType type, int offset, IRExpression address) {
+        super(address);
+        this.type = type;
+        this.offset = offset;
+    }
+
+    @Override
+    public IRType getType() {
+        return type;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public IRExpression getAddress() {
+        return getOperand(0);
+    }
+
+    @Override
+    public String toString() {
+        return "load." + type + " " + offset + "(" + getAddress() + ")";
+    }
+}
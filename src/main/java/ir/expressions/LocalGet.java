@@ -0,0 +1,30 @@
+package ir.expressions;
+
+import ir.IRLocal;
+import ir.IRType;
+
+/**
+ * Reads a WebAssembly local.
+ */
+public class LocalGet extends IRExpression {
+
+    private IRLocal local;
+
+    public LocalGet(IRLocal local) {
+        this.local = local;
+    }
+
+    public IRLocal getLocal() {
+        return local;
+    }
+
+    @Override
+    public IRType getType() {
+        return local.getType();
+    }
+
+    @Override
+    public String toString() {
+        return local.toString();
+    }
+}
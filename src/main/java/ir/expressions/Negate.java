@@ -0,0 +1,28 @@
+package ir.expressions;
+
+import ir.IRType;
+
+/**
+ * Negates a floating point value. Integers are negated by subtracting them
+ * from zero, since WebAssembly has no integer negation instruction.
+ */
+public class Negate extends IRExpression {
+
+    public Negate(IRExpression value) {
+        super(value);
+    }
+
+    public IRExpression getValue() {
+        return getOperand(0);
+    }
+
+    @Override
+    public IRType getType() {
+        return getValue().getType();
+    }
+
+    @Override
+    public String toString() {
+        return "neg." + getType() + "(" + getValue() + ")";
+    }
+}
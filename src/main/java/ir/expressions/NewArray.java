@@ -0,0 +1,39 @@
+package ir.expressions;
+
+import ir.IRType;
+
+/**
+ * Allocates an array with a given number of elements.
+ */
+public class NewArray extends IRExpression {
+
+    private IRType elementType;
+
+    public NewArray(IRType elementType, IRExpression length) {
+        super(length);
+        this.elementType = elementType;
+    }
+
+    public IRType getElementType() {
+        return elementType;
+    }
+
+    public IRExpression getLength() {
+        return getOperand(0);
+    }
+
+    @Override
+    public IRType getType() {
+        return IRType.Reference;
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "new " + elementType + "[" + getLength() + "]";
+    }
+}
@@ -0,0 +1,79 @@
+package ir.expressions;
+
+import ast.types.JavaClass;
+import ir.IRType;
+import util.FunctionTableEntry;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Allocates an object, writes its pointer information and calls its
+ * constructor, if it has one.
+ */
+public class NewObject extends IRExpression {
+
+    private JavaClass javaClass;
+    private FunctionTableEntry constructor;
+    private String constructorName;
+
+    /**
+     * Creates an allocation of an object that has no constructor.
+     *
+     * @param javaClass The class of the object
+     */
+    public NewObject(JavaClass javaClass) {
+        this(javaClass, null, null, Collections.emptyList());
+    }
+
+    /**
+     * @param javaClass The class of the object
+     * @param constructor The function table entry of the constructor
+     * @param constructorName The name of the constructor in the output
+     * @param arguments The arguments to the constructor, not including the
+     *                  new object itself
+     */
+    public NewObject(JavaClass javaClass,
+                     FunctionTableEntry constructor,
+                     String constructorName,
+                     List<IRExpression> arguments) {
+        super(arguments);
+        this.javaClass = javaClass;
+        this.constructor = constructor;
+        this.constructorName = constructorName;
+    }
+
+    public JavaClass getJavaClass() {
+        return javaClass;
+    }
+
+    public boolean usesConstructor() {
+        return constructor != null;
+    }
+
+    public FunctionTableEntry getConstructor() {
+        return constructor;
+    }
+
+    public String getConstructorName() {
+        return constructorName;
+    }
+
+    @Override
+    public IRType getType() {
+        return IRType.Reference;
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        if (!usesConstructor()) {
+            return "new " + javaClass;
+        }
+        return "new " + javaClass + " " + constructorName + "(" + formatOperands(getOperands()) + ")";
+    }
+}
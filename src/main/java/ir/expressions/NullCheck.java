@@ -0,0 +1,32 @@
+package ir.expressions;
+
+import ir.IRType;
+
+/**
+ * Traps if a reference is null, and otherwise gives the reference.
+ */
+public class NullCheck extends IRExpression {
+
+    public NullCheck(IRExpression reference) {
+        super(reference);
+    }
+
+    public IRExpression getReference() {
+        return getOperand(0);
+    }
+
+    @Override
+    public IRType getType() {
+        return IRType.Reference;
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "nullcheck(" + getReference() + ")";
+    }
+}
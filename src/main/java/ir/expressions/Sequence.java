@@ -0,0 +1,51 @@
+package ir.expressions;
+
+import ir.IRType;
+import ir.statements.IRStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs some statements and then gives the value of an expression. This is
+ * used for expressions that also assign to a variable, such as increments.
+ */
+public class Sequence extends IRExpression {
+
+    private List<IRStatement> statements;
+
+    public Sequence(List<IRStatement> statements, IRExpression value) {
+        super(value);
+        this.statements = new ArrayList<>(statements);
+    }
+
+    /**
+     * @return The statements to run first, which may be changed in place
+     */
+    public List<IRStatement> getStatements() {
+        return statements;
+    }
+
+    public IRExpression getValue() {
+        return getOperand(0);
+    }
+
+    @Override
+    public IRType getType() {
+        return getValue().getType();
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return !statements.isEmpty() || super.hasSideEffects();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("{ ");
+        for (IRStatement statement : statements) {
+            result.append(statement).append("; ");
+        }
+        return result.append(getValue()).append(" }").toString();
+    }
+}
@@ -0,0 +1,78 @@
+package ir.expressions;
+
+import ast.types.JavaClass;
+import ir.IRType;
+import util.FunctionTableEntry;
+
+import java.util.List;
+
+/**
+ * Calls a method through the virtual table of the object it is called on.
+ *
+ * The object is passed as the last argument. It is evaluated a second time
+ * to look up the virtual table, so it must not have side effects.
+ */
+public class VirtualCall extends IRExpression {
+
+    private FunctionTableEntry entry;
+    private JavaClass receiverClass;
+    private String functionName;
+    private int virtualTableOffset;
+
+    /**
+     * @param entry The function table entry of the method in the static type
+     *              of the object, which gives the type of the call
+     * @param receiverClass The static type of the object
+     * @param functionName The name of that method in the output
+     * @param virtualTableOffset The offset of the method in the virtual table
+     *                           of the object
+     * @param arguments The arguments, followed by the object
+     */
+    public VirtualCall(FunctionTableEntry entry,
+                       JavaClass receiverClass,
+                       String functionName,
+                       int virtualTableOffset,
+                       List<IRExpression> arguments) {
+        super(arguments);
+        this.entry = entry;
+        this.receiverClass = receiverClass;
+        this.functionName = functionName;
+        this.virtualTableOffset = virtualTableOffset;
+    }
+
+    public FunctionTableEntry getEntry() {
+        return entry;
+    }
+
+    public JavaClass getReceiverClass() {
+        return receiverClass;
+    }
+
+    public String getFunctionName() {
+        return functionName;
+    }
+
+    public int getVirtualTableOffset() {
+        return virtualTableOffset;
+    }
+
+    public IRExpression getReceiver() {
+        return getOperand(getOperands().size() - 1);
+    }
+
+    @Override
+    public IRType getType() {
+        return IRType.of(entry.getReturnType());
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "call_virtual " + functionName + "[" + virtualTableOffset + "]("
+                + formatOperands(getOperands()) + ")";
+    }
+}
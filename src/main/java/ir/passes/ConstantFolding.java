@@ -0,0 +1,507 @@
+package ir.passes;
+
+import ir.BasicBlock;
+import ir.ControlFlowGraph;
+import ir.IRFunction;
+import ir.IRLocal;
+import ir.IRType;
+import ir.expressions.BinaryOperation;
+import ir.expressions.Constant;
+import ir.expressions.IRExpression;
+import ir.expressions.LocalGet;
+import ir.expressions.Negate;
+import ir.expressions.Sequence;
+import ir.statements.IRStatement;
+import ir.statements.SetLocal;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Evaluates expressions whose operands are known at compile time, and
+ * replaces uses of locals that are only ever assigned a constant with the
+ * constant itself.
+ *
+ * Every result is exactly what the generated code would have computed at
+ * run time: integer arithmetic wraps, shift counts are masked, and float
+ * arithmetic follows IEEE 754, just as in Java. Short, byte and char values
+ * are narrowed by the shifts and masks that the IR builder puts around
+ * them, so folding those gives the same narrowing as
+ * CodeGenUtil.emitRangeRestrictionCode. Division is left alone when it
+ * would trap, so that the trap still happens.
+ *
+ * A branch whose condition becomes a constant is turned into a jump by
+ * simplify-cfg, which runs afterwards.
+ */
+public class ConstantFolding implements Pass {
+
+    @Override
+    public String getName() {
+        return "constant-fold";
+    }
+
+    @Override
+    public void run(IRFunction function, PassStatistics statistics) {
+        Counts counts = new Counts();
+        boolean changed = true;
+        while (changed) {
+            long numChangesBefore = counts.numFolded + counts.numPropagated;
+            foldFunction(function, findConstantLocals(function), counts);
+            changed = counts.numFolded + counts.numPropagated > numChangesBefore;
+        }
+        statistics.increment("expressions folded", counts.numFolded);
+        statistics.increment("constants propagated", counts.numPropagated);
+    }
+
+    /**
+     * The changes made by one run of the pass.
+     */
+    private static class Counts {
+        long numFolded;
+        long numPropagated;
+    }
+
+    /**
+     * Where a local is assigned its only value, which is a constant.
+     */
+    private static class ConstantLocal {
+        BasicBlock block;
+        int position;
+        Constant value;
+    }
+
+    /**
+     * Finds the locals that are assigned exactly once in the whole function,
+     * to a constant, by a statement directly in a block.
+     *
+     * @param function The function
+     * @return Where each such local is assigned
+     */
+    private static Map<IRLocal, ConstantLocal> findConstantLocals(IRFunction function) {
+        Map<IRLocal, Integer> numAssignments = new HashMap<>();
+        Map<IRLocal, ConstantLocal> constantLocals = new HashMap<>();
+        for (BasicBlock block : function.getBlocks()) {
+            List<IRStatement> statements = block.getStatements();
+            for (int i = 0; i < statements.size(); i++) {
+                IRStatement statement = statements.get(i);
+                countAssignments(statement, numAssignments);
+                if (statement instanceof SetLocal && ((SetLocal) statement).getValue() instanceof Constant) {
+                    ConstantLocal constantLocal = new ConstantLocal();
+                    constantLocal.block = block;
+                    constantLocal.position = i;
+                    constantLocal.value = (Constant) ((SetLocal) statement).getValue();
+                    constantLocals.put(((SetLocal) statement).getLocal(), constantLocal);
+                }
+            }
+            countAssignments(block.getTerminator(), numAssignments);
+        }
+        // Parameters are assigned by the caller
+        constantLocals.keySet().removeIf(local -> local.isParameter() || numAssignments.get(local) != 1);
+        return constantLocals;
+    }
+
+    private static void countAssignments(IRStatement statement, Map<IRLocal, Integer> numAssignments) {
+        if (statement instanceof SetLocal) {
+            numAssignments.merge(((SetLocal) statement).getLocal(), 1, Integer::sum);
+        }
+        for (IRExpression operand : statement.getOperands()) {
+            countAssignments(operand, numAssignments);
+        }
+    }
+
+    private static void countAssignments(IRExpression expression, Map<IRLocal, Integer> numAssignments) {
+        if (expression instanceof Sequence) {
+            for (IRStatement statement : ((Sequence) expression).getStatements()) {
+                countAssignments(statement, numAssignments);
+            }
+        }
+        for (IRExpression operand : expression.getOperands()) {
+            countAssignments(operand, numAssignments);
+        }
+    }
+
+    /**
+     * Folds every expression in a function, replacing a use of a constant
+     * local only where its assignment is certain to have happened first.
+     * The compiler does not check that locals are assigned before they are
+     * used, so a use that is not dominated by the assignment could still
+     * see the initial value of zero.
+     *
+     * @param function The function
+     * @param constantLocals Where each constant local is assigned
+     * @param counts The counts to add the changes to
+     */
+    private static void foldFunction(IRFunction function,
+                                     Map<IRLocal, ConstantLocal> constantLocals,
+                                     Counts counts) {
+        ControlFlowGraph graph = new ControlFlowGraph(function);
+        Set<BasicBlock> reachable = graph.getReachableBlocks();
+        for (BasicBlock block : function.getBlocks()) {
+            Map<IRLocal, Constant> available = new HashMap<>();
+            Map<Integer, IRLocal> assignedHere = new HashMap<>();
+            for (Map.Entry<IRLocal, ConstantLocal> entry : constantLocals.entrySet()) {
+                ConstantLocal constantLocal = entry.getValue();
+                if (constantLocal.block == block) {
+                    assignedHere.put(constantLocal.position, entry.getKey());
+                } else if (reachable.contains(block) && graph.dominates(constantLocal.block, block)) {
+                    available.put(entry.getKey(), constantLocal.value);
+                }
+            }
+            List<IRStatement> statements = block.getStatements();
+            for (int i = 0; i < statements.size(); i++) {
+                foldStatement(statements.get(i), available, counts);
+                IRLocal local = assignedHere.get(i);
+                if (local != null) {
+                    available.put(local, constantLocals.get(local).value);
+                }
+            }
+            foldStatement(block.getTerminator(), available, counts);
+        }
+    }
+
+    private static void foldStatement(IRStatement statement, Map<IRLocal, Constant> available, Counts counts) {
+        List<IRExpression> operands = statement.getOperands();
+        for (int i = 0; i < operands.size(); i++) {
+            statement.setOperand(i, fold(operands.get(i), available, counts));
+        }
+    }
+
+    /**
+     * Folds an expression, starting with its operands.
+     *
+     * @param expression The expression
+     * @param available The constant value of each local that can be
+     *                  propagated into the expression
+     * @param counts The counts to add the changes to
+     * @return The folded expression, which may be the same expression with
+     *         its operands replaced
+     */
+    private static IRExpression fold(IRExpression expression, Map<IRLocal, Constant> available, Counts counts) {
+        if (expression instanceof LocalGet) {
+            Constant value = available.get(((LocalGet) expression).getLocal());
+            if (value == null) {
+                return expression;
+            }
+            counts.numPropagated++;
+            return new Constant(value.getType(), value.getValue());
+        }
+        if (expression instanceof Sequence) {
+            // The statements of a sequence may assign to locals, but never
+            // to constant locals, which are only assigned directly in blocks
+            for (IRStatement statement : ((Sequence) expression).getStatements()) {
+                foldStatement(statement, available, counts);
+            }
+        }
+        List<IRExpression> operands = expression.getOperands();
+        for (int i = 0; i < operands.size(); i++) {
+            expression.setOperand(i, fold(operands.get(i), available, counts));
+        }
+        IRExpression folded = expression;
+        if (expression instanceof BinaryOperation) {
+            folded = foldBinaryOperation((BinaryOperation) expression);
+        } else if (expression instanceof Negate && ((Negate) expression).getValue() instanceof Constant) {
+            folded = negate((Constant) ((Negate) expression).getValue());
+        }
+        if (folded != expression) {
+            counts.numFolded++;
+        }
+        return folded;
+    }
+
+    private static IRExpression foldBinaryOperation(BinaryOperation operation) {
+        BinaryOperation.Operator operator = operation.getOperator();
+        IRType type = operation.getOperandType();
+        IRExpression left = operation.getLeft();
+        IRExpression right = operation.getRight();
+        if (left instanceof Constant && right instanceof Constant) {
+            Constant result = evaluate(operator, type, (Constant) left, (Constant) right);
+            return (result != null) ? result : operation;
+        }
+        if (!type.isIntegral()) {
+            // Identities such as x + 0 == x do not hold for floats, since
+            // -0.0 + 0.0 is 0.0
+            return operation;
+        }
+
+        // Keep the constant on the right of commutative operators, so that
+        // only one form needs to be checked below
+        if (left instanceof Constant && isAssociative(operator)) {
+            IRExpression swapped = left;
+            left = right;
+            right = swapped;
+        }
+        if (!(right instanceof Constant)) {
+            return operation;
+        }
+        Constant constant = (Constant) right;
+
+        // Subtracting a constant is adding its negation, which wraps around
+        // in the same way
+        if (operator == BinaryOperation.Operator.Subtract) {
+            operator = BinaryOperation.Operator.Add;
+            constant = evaluate(BinaryOperation.Operator.Subtract, type, zero(type), constant);
+        }
+
+        // (x op c1) op c2 is x op (c1 op c2), since integer arithmetic wraps
+        if (isAssociative(operator) && left instanceof BinaryOperation) {
+            BinaryOperation inner = (BinaryOperation) left;
+            if (inner.getOperator() == operator && inner.getOperandType() == type
+                    && inner.getRight() instanceof Constant) {
+                left = inner.getLeft();
+                constant = evaluate(operator, type, (Constant) inner.getRight(), constant);
+            }
+        }
+
+        long value = constant.getValue().longValue();
+        switch (operator) {
+            case Add:
+            case Or:
+            case Xor:
+            case ShiftLeft:
+            case SignedShiftRight:
+                if (isShift(operator) ? (value & shiftMask(type)) == 0 : value == 0) {
+                    return left;
+                }
+                break;
+            case Multiply:
+                if (value == 1) {
+                    return left;
+                } else if (value == 0 && !left.hasSideEffects()) {
+                    return constant;
+                }
+                break;
+            case SignedDivide:
+                if (value == 1) {
+                    return left;
+                }
+                break;
+            case And:
+                if (value == -1) {
+                    return left;
+                } else if (value == 0 && !left.hasSideEffects()) {
+                    return constant;
+                }
+                break;
+        }
+        if (operator == operation.getOperator() && left == operation.getLeft() && constant == operation.getRight()) {
+            return operation;
+        }
+        return new BinaryOperation(operator, type, left, constant);
+    }
+
+    private static boolean isAssociative(BinaryOperation.Operator operator) {
+        switch (operator) {
+            case Add:
+            case Multiply:
+            case And:
+            case Or:
+            case Xor:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isShift(BinaryOperation.Operator operator) {
+        return operator == BinaryOperation.Operator.ShiftLeft
+                || operator == BinaryOperation.Operator.SignedShiftRight;
+    }
+
+    /**
+     * WebAssembly, like Java, only uses the low bits of a shift count.
+     */
+    private static long shiftMask(IRType type) {
+        return (type == IRType.Int64) ? 63 : 31;
+    }
+
+    private static Constant zero(IRType type) {
+        return (type == IRType.Int64) ? new Constant(type, 0L) : new Constant(type, 0);
+    }
+
+    private static Constant negate(Constant value) {
+        if (value.getType() == IRType.Float32) {
+            return new Constant(IRType.Float32, -value.getValue().floatValue());
+        }
+        return new Constant(IRType.Float64, -value.getValue().doubleValue());
+    }
+
+    /**
+     * Evaluates an operator on two constants.
+     *
+     * @param operator The operator
+     * @param type The type of both operands
+     * @param left The left operand
+     * @param right The right operand
+     * @return The result, or null if it cannot be worked out at compile time
+     *         because the operation would trap
+     */
+    private static Constant evaluate(BinaryOperation.Operator operator, IRType type, Constant left, Constant right) {
+        if (operator.isComparison()) {
+            Boolean result = compare(operator, type, left.getValue(), right.getValue());
+            return (result == null) ? null : new Constant(IRType.Int32, result ? 1 : 0);
+        }
+        switch (type) {
+            case Int32:
+                Integer intResult = evaluateInt(operator, left.getValue().intValue(), right.getValue().intValue());
+                return (intResult == null) ? null : new Constant(type, intResult);
+            case Int64:
+                Long longResult = evaluateLong(operator, left.getValue().longValue(), right.getValue().longValue());
+                return (longResult == null) ? null : new Constant(type, longResult);
+            case Float32:
+                Float floatResult = evaluateFloat(operator, left.getValue().floatValue(),
+                        right.getValue().floatValue());
+                return (floatResult == null) ? null : new Constant(type, floatResult);
+            case Float64:
+                Double doubleResult = evaluateDouble(operator, left.getValue().doubleValue(),
+                        right.getValue().doubleValue());
+                return (doubleResult == null) ? null : new Constant(type, doubleResult);
+            default:
+                return null;
+        }
+    }
+
+    private static Integer evaluateInt(BinaryOperation.Operator operator, int left, int right) {
+        switch (operator) {
+            case Add:
+                return left + right;
+            case Subtract:
+                return left - right;
+            case Multiply:
+                return left * right;
+            case SignedDivide:
+                // Both of these trap in WebAssembly
+                if (right == 0 || (left == Integer.MIN_VALUE && right == -1)) {
+                    return null;
+                }
+                return left / right;
+            case And:
+                return left & right;
+            case Or:
+                return left | right;
+            case Xor:
+                return left ^ right;
+            case ShiftLeft:
+                return left << right;
+            case SignedShiftRight:
+                return left >> right;
+            default:
+                return null;
+        }
+    }
+
+    private static Long evaluateLong(BinaryOperation.Operator operator, long left, long right) {
+        switch (operator) {
+            case Add:
+                return left + right;
+            case Subtract:
+                return left - right;
+            case Multiply:
+                return left * right;
+            case SignedDivide:
+                if (right == 0 || (left == Long.MIN_VALUE && right == -1)) {
+                    return null;
+                }
+                return left / right;
+            case And:
+                return left & right;
+            case Or:
+                return left | right;
+            case Xor:
+                return left ^ right;
+            case ShiftLeft:
+                return left << right;
+            case SignedShiftRight:
+                return left >> right;
+            default:
+                return null;
+        }
+    }
+
+    private static Float evaluateFloat(BinaryOperation.Operator operator, float left, float right) {
+        switch (operator) {
+            case Add:
+                return left + right;
+            case Subtract:
+                return left - right;
+            case Multiply:
+                return left * right;
+            case Divide:
+                return left / right;
+            default:
+                return null;
+        }
+    }
+
+    private static Double evaluateDouble(BinaryOperation.Operator operator, double left, double right) {
+        switch (operator) {
+            case Add:
+                return left + right;
+            case Subtract:
+                return left - right;
+            case Multiply:
+                return left * right;
+            case Divide:
+                return left / right;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Evaluates a comparison. Comparisons involving NaN are false, except
+     * for "not equal to", as in both Java and WebAssembly.
+     */
+    private static Boolean compare(BinaryOperation.Operator operator, IRType type, Number left, Number right) {
+        if (type == IRType.Float32 || type == IRType.Float64) {
+            double a = (type == IRType.Float32) ? left.floatValue() : left.doubleValue();
+            double b = (type == IRType.Float32) ? right.floatValue() : right.doubleValue();
+            switch (operator) {
+                case EqualTo:
+                    return a == b;
+                case NotEqualTo:
+                    return a != b;
+                case LessThan:
+                    return a < b;
+                case LessThanOrEqualTo:
+                    return a <= b;
+                case GreaterThan:
+                    return a > b;
+                case GreaterThanOrEqualTo:
+                    return a >= b;
+                default:
+                    return null;
+            }
+        }
+        long a = (type == IRType.Int64) ? left.longValue() : left.intValue();
+        long b = (type == IRType.Int64) ? right.longValue() : right.intValue();
+        int unsignedComparison = (type == IRType.Int64)
+                ? Long.compareUnsigned(a, b)
+                : Integer.compareUnsigned((int) a, (int) b);
+        switch (operator) {
+            case EqualTo:
+                return a == b;
+            case NotEqualTo:
+                return a != b;
+            case SignedLessThan:
+                return a < b;
+            case SignedLessThanOrEqualTo:
+                return a <= b;
+            case SignedGreaterThan:
+                return a > b;
+            case SignedGreaterThanOrEqualTo:
+                return a >= b;
+            case LessThan:
+                return unsignedComparison < 0;
+            case LessThanOrEqualTo:
+                return unsignedComparison <= 0;
+            case GreaterThan:
+                return unsignedComparison > 0;
+            case GreaterThanOrEqualTo:
+                return unsignedComparison >= 0;
+            default:
+                return null;
+        }
+    }
+}
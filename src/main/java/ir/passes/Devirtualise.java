@@ -0,0 +1,107 @@
+package ir.passes;
+
+import codegen.CodeGenUtil;
+import ir.BasicBlock;
+import ir.IRFunction;
+import ir.expressions.Call;
+import ir.expressions.IRExpression;
+import ir.expressions.NullCheck;
+import ir.expressions.Sequence;
+import ir.expressions.VirtualCall;
+import ir.statements.IRStatement;
+import util.ClassHierarchyAnalysis;
+import util.FunctionTable;
+import util.FunctionTableEntry;
+
+import java.util.List;
+
+/**
+ * Turns calls through a virtual table into direct calls, wherever class
+ * hierarchy analysis shows that no subclass of the object's class overrides
+ * the method that is called.
+ *
+ * The virtual table lookup needed the object to exist, so the object passed
+ * to a direct call is null checked instead.
+ */
+public class Devirtualise implements Pass {
+
+    public static final String NAME = "devirtualise";
+
+    private ClassHierarchyAnalysis hierarchy;
+    private FunctionTable functionTable;
+
+    /**
+     * @param hierarchy The class hierarchy of the whole program
+     * @param functionTable The function table
+     */
+    public Devirtualise(ClassHierarchyAnalysis hierarchy, FunctionTable functionTable) {
+        this.hierarchy = hierarchy;
+        this.functionTable = functionTable;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void run(IRFunction function, PassStatistics statistics) {
+        Counts counts = new Counts();
+        for (BasicBlock block : function.getBlocks()) {
+            for (IRStatement statement : block.getStatements()) {
+                devirtualiseStatement(statement, counts);
+            }
+            devirtualiseStatement(block.getTerminator(), counts);
+        }
+        statistics.increment("calls devirtualised", counts.numDevirtualised);
+        statistics.increment("virtual calls left", counts.numVirtual);
+    }
+
+    /**
+     * The calls found by one run of the pass.
+     */
+    private static class Counts {
+        long numDevirtualised;
+        long numVirtual;
+    }
+
+    private void devirtualiseStatement(IRStatement statement, Counts counts) {
+        List<IRExpression> operands = statement.getOperands();
+        for (int i = 0; i < operands.size(); i++) {
+            statement.setOperand(i, devirtualise(operands.get(i), counts));
+        }
+    }
+
+    /**
+     * Devirtualises the calls in an expression, starting with its operands.
+     *
+     * @param expression The expression
+     * @param counts The number of calls devirtualised and left virtual
+     * @return The expression, or the direct call that replaces it
+     */
+    private IRExpression devirtualise(IRExpression expression, Counts counts) {
+        if (expression instanceof Sequence) {
+            for (IRStatement statement : ((Sequence) expression).getStatements()) {
+                devirtualiseStatement(statement, counts);
+            }
+        }
+        List<IRExpression> operands = expression.getOperands();
+        for (int i = 0; i < operands.size(); i++) {
+            expression.setOperand(i, devirtualise(operands.get(i), counts));
+        }
+        if (!(expression instanceof VirtualCall)) {
+            return expression;
+        }
+        VirtualCall call = (VirtualCall) expression;
+        FunctionTableEntry target = hierarchy.getMonomorphicTarget(call.getReceiverClass(),
+                call.getVirtualTableOffset());
+        if (target == null) {
+            counts.numVirtual++;
+            return expression;
+        }
+        counts.numDevirtualised++;
+        List<IRExpression> arguments = call.getOperands();
+        arguments.set(arguments.size() - 1, new NullCheck(call.getReceiver()));
+        return new Call(target, CodeGenUtil.getFunctionNameForOutput(target, functionTable), arguments);
+    }
+}
@@ -0,0 +1,27 @@
+package ir.passes;
+
+import ir.IRFunction;
+
+/**
+ * An optimisation that transforms one function in the intermediate
+ * representation at a time.
+ *
+ * A pass is shared by every method being compiled, and methods are compiled
+ * in parallel, so a pass must not keep any state between calls to run.
+ */
+public interface Pass {
+
+    /**
+     * @return The name of the pass, as used by --print-after
+     */
+    String getName();
+
+    /**
+     * Optimises a function in place. The function must still be well formed
+     * afterwards.
+     *
+     * @param function The function to optimise
+     * @param statistics The statistics to add the pass's counters to
+     */
+    void run(IRFunction function, PassStatistics statistics);
+}
@@ -0,0 +1,176 @@
+package ir.passes;
+
+import ir.IRFunction;
+import ir.IRPrinter;
+import util.ClassHierarchyAnalysis;
+import util.FunctionTable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs an ordered list of optimisation passes over each function, timing
+ * every pass and collecting its counters.
+ *
+ * The passes that are run are chosen by an optimisation level:
+ *  - 0 runs no passes, and code is generated straight from the AST
+ *  - 1 folds and propagates constants, removes dead code and simplifies
+ *    the control flow graph
+ *  - 2 also removes stores to locals that are never read
+ *  - 3 runs the passes of level 2 twice, so that each pass can clean up
+ *    after the ones that ran after it in the first round
+ *
+ * At every level above 0, calls through a virtual table that can only reach
+ * one method are first made direct, if the class hierarchy of the whole
+ * program is known.
+ *
+ * A single pass manager is shared by every method of a compilation, and is
+ * safe to use from several threads at once.
+ */
+public class PassManager {
+
+    public static final int MAX_OPTIMISATION_LEVEL = 3;
+
+    private List<Pass> passes;
+
+    /**
+     * The statistics of each pass, in the order in which the passes are
+     * first run. A pass that is run more than once has a single entry.
+     */
+    private Map<String, PassStatistics> statistics;
+
+    /**
+     * The name of the pass after which to print each function, or null if
+     * the functions should not be printed
+     */
+    private String printAfter;
+
+    /**
+     * Creates a pass manager that runs the given passes in order.
+     *
+     * @param passes The passes to run
+     */
+    public PassManager(List<Pass> passes) {
+        this.passes = new ArrayList<>(passes);
+        statistics = new LinkedHashMap<>();
+        for (Pass pass : passes) {
+            statistics.putIfAbsent(pass.getName(), new PassStatistics(pass.getName()));
+        }
+        printAfter = null;
+    }
+
+    /**
+     * Creates a pass manager that runs the passes for an optimisation level.
+     *
+     * @param level The optimisation level, from 0 to MAX_OPTIMISATION_LEVEL
+     * @return The pass manager
+     */
+    public static PassManager forLevel(int level) {
+        return forLevel(level, null, null);
+    }
+
+    /**
+     * Creates a pass manager that runs the passes for an optimisation level,
+     * including devirtualisation.
+     *
+     * @param level The optimisation level, from 0 to MAX_OPTIMISATION_LEVEL
+     * @param hierarchy The class hierarchy of the whole program, or null if
+     *                  not every class is known, in which case calls are not
+     *                  devirtualised
+     * @param functionTable The function table
+     * @return The pass manager
+     */
+    public static PassManager forLevel(int level, ClassHierarchyAnalysis hierarchy, FunctionTable functionTable) {
+        List<Pass> passes = new ArrayList<>();
+        if (level >= 1 && hierarchy != null) {
+            passes.add(new Devirtualise(hierarchy, functionTable));
+        }
+        passes.addAll(getPasses(level));
+        return new PassManager(passes);
+    }
+
+    private static List<Pass> getPasses(int level) {
+        List<Pass> passes = new ArrayList<>();
+        int numRounds = (level >= 3) ? 2 : 1;
+        for (int round = 0; round < numRounds && level >= 1; round++) {
+            passes.add(new ConstantFolding());
+            if (level >= 2) {
+                passes.add(new RemoveDeadStores());
+            }
+            passes.add(new RemoveDeadCode());
+            passes.add(new SimplifyControlFlow());
+        }
+        return passes;
+    }
+
+    /**
+     * @return The names of every pass that some optimisation level runs
+     */
+    public static Set<String> getPassNames() {
+        Set<String> names = new LinkedHashSet<>();
+        names.add(Devirtualise.NAME);
+        for (Pass pass : getPasses(MAX_OPTIMISATION_LEVEL)) {
+            names.add(pass.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Asks for each function to be printed after a pass has run on it. If
+     * the pass is run more than once, the function is printed each time.
+     *
+     * @param passName The name of the pass, or null to print nothing
+     */
+    public void setPrintAfter(String passName) {
+        printAfter = passName;
+    }
+
+    public String getPrintAfter() {
+        return printAfter;
+    }
+
+    /**
+     * @param passName The name of a pass
+     * @return true if the pass is one of the passes that are run
+     */
+    public boolean runsPass(String passName) {
+        return statistics.containsKey(passName);
+    }
+
+    public boolean hasPasses() {
+        return !passes.isEmpty();
+    }
+
+    /**
+     * Runs every pass over a function, in order.
+     *
+     * @param function The function to optimise in place
+     * @return The function as printed after the pass given to setPrintAfter,
+     *         or null if no pass was given
+     */
+    public String run(IRFunction function) {
+        StringBuilder printed = (printAfter != null) ? new StringBuilder() : null;
+        for (Pass pass : passes) {
+            PassStatistics passStatistics = statistics.get(pass.getName());
+            long startNanos = System.nanoTime();
+            pass.run(function, passStatistics);
+            passStatistics.addRun(System.nanoTime() - startNanos);
+            if (pass.getName().equals(printAfter)) {
+                printed.append(IRPrinter.print(function));
+            }
+        }
+        return (printed != null) ? printed.toString() : null;
+    }
+
+    /**
+     * @return The statistics of each pass, in the order the passes are run
+     */
+    public List<PassStatistics> getStatistics() {
+        return Collections.unmodifiableList(new ArrayList<>(statistics.values()));
+    }
+}
@@ -0,0 +1,66 @@
+package ir.passes;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects how long one pass has taken and what it has done, across every
+ * function that it has been run on.
+ *
+ * Functions are optimised in parallel, so every method is synchronized.
+ */
+public class PassStatistics {
+
+    private String passName;
+    private long numRuns;
+    private long durationNanos;
+    private Map<String, Long> counters;
+
+    public PassStatistics(String passName) {
+        this.passName = passName;
+        numRuns = 0;
+        durationNanos = 0;
+        counters = new TreeMap<>();
+    }
+
+    public String getPassName() {
+        return passName;
+    }
+
+    /**
+     * Records that the pass has been run on one more function.
+     *
+     * @param durationNanos How long the run took
+     */
+    public synchronized void addRun(long durationNanos) {
+        numRuns++;
+        this.durationNanos += durationNanos;
+    }
+
+    /**
+     * Adds to one of the counters of the pass, such as the number of
+     * instructions it removed. A counter that is only ever increased by
+     * zero is still reported.
+     *
+     * @param counter What is being counted
+     * @param amount The amount to add
+     */
+    public synchronized void increment(String counter, long amount) {
+        counters.merge(counter, amount, Long::sum);
+    }
+
+    public synchronized long getNumRuns() {
+        return numRuns;
+    }
+
+    public synchronized long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return A copy of the counters, in alphabetical order
+     */
+    public synchronized Map<String, Long> getCounters() {
+        return new TreeMap<>(counters);
+    }
+}
@@ -0,0 +1,118 @@
+package ir.passes;
+
+import ir.BasicBlock;
+import ir.IRFunction;
+import ir.expressions.BinaryOperation;
+import ir.expressions.IRExpression;
+import ir.expressions.Load;
+import ir.expressions.Negate;
+import ir.expressions.Sequence;
+import ir.statements.Evaluate;
+import ir.statements.IRStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Removes expressions whose values are thrown away and that have no side
+ * effects, such as the arithmetic in a statement like "x + f();". Only the
+ * parts with side effects, here the call, are kept.
+ */
+public class RemoveDeadCode implements Pass {
+
+    @Override
+    public String getName() {
+        return "dead-code";
+    }
+
+    @Override
+    public void run(IRFunction function, PassStatistics statistics) {
+        long numInstructionsRemoved = 0;
+        for (BasicBlock block : function.getBlocks()) {
+            List<IRStatement> statements = new ArrayList<>();
+            for (IRStatement statement : block.getStatements()) {
+                if (statement instanceof Evaluate) {
+                    IRExpression expression = ((Evaluate) statement).getExpression();
+                    List<IRStatement> sideEffects = getSideEffects(expression);
+                    numInstructionsRemoved += countInstructions(statement) - countInstructions(sideEffects);
+                    statements.addAll(sideEffects);
+                } else {
+                    statements.add(statement);
+                }
+            }
+            block.getStatements().clear();
+            block.getStatements().addAll(statements);
+        }
+        statistics.increment("instructions removed", numInstructionsRemoved);
+    }
+
+    /**
+     * Finds the statements needed to evaluate an expression for its side
+     * effects alone, in the order that they happen.
+     *
+     * @param expression The expression whose value is not needed
+     * @return The statements, which are empty if the expression has no side
+     *         effects
+     */
+    static List<IRStatement> getSideEffects(IRExpression expression) {
+        List<IRStatement> sideEffects = new ArrayList<>();
+        if (!expression.hasSideEffects()) {
+            return sideEffects;
+        }
+        if (expression instanceof Sequence) {
+            Sequence sequence = (Sequence) expression;
+            sideEffects.addAll(sequence.getStatements());
+            sideEffects.addAll(getSideEffects(sequence.getValue()));
+        } else if (isPureOperation(expression)) {
+            // The operation itself does nothing, so only its operands need to
+            // be evaluated
+            for (IRExpression operand : expression.getOperands()) {
+                sideEffects.addAll(getSideEffects(operand));
+            }
+        } else {
+            sideEffects.add(new Evaluate(expression));
+        }
+        return sideEffects;
+    }
+
+    private static boolean isPureOperation(IRExpression expression) {
+        if (expression instanceof BinaryOperation) {
+            return ((BinaryOperation) expression).getOperator() != BinaryOperation.Operator.SignedDivide;
+        }
+        return expression instanceof Negate || expression instanceof Load;
+    }
+
+    /**
+     * Counts the statements and expressions that make up a statement,
+     * including those inside sequences.
+     *
+     * @param statement The statement
+     * @return The number of instructions
+     */
+    static long countInstructions(IRStatement statement) {
+        long count = 1;
+        for (IRExpression operand : statement.getOperands()) {
+            count += countInstructions(operand);
+        }
+        return count;
+    }
+
+    static long countInstructions(List<IRStatement> statements) {
+        long count = 0;
+        for (IRStatement statement : statements) {
+            count += countInstructions(statement);
+        }
+        return count;
+    }
+
+    static long countInstructions(IRExpression expression) {
+        long count = 1;
+        for (IRExpression operand : expression.getOperands()) {
+            count += countInstructions(operand);
+        }
+        if (expression instanceof Sequence) {
+            count += countInstructions(((Sequence) expression).getStatements());
+        }
+        return count;
+    }
+}
@@ -0,0 +1,89 @@
+package ir.passes;
+
+import ir.BasicBlock;
+import ir.IRFunction;
+import ir.IRLocal;
+import ir.expressions.IRExpression;
+import ir.expressions.LocalGet;
+import ir.expressions.Sequence;
+import ir.statements.IRStatement;
+import ir.statements.SetLocal;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes assignments to locals that are never read anywhere in the
+ * function, keeping any side effects of the values assigned.
+ *
+ * Removing one assignment can leave another local unread, so the pass
+ * repeats until there is nothing left to remove.
+ */
+public class RemoveDeadStores implements Pass {
+
+    @Override
+    public String getName() {
+        return "dead-stores";
+    }
+
+    @Override
+    public void run(IRFunction function, PassStatistics statistics) {
+        long numStoresRemoved = 0;
+        long numInstructionsRemoved = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Set<IRLocal> readLocals = new HashSet<>();
+            for (BasicBlock block : function.getBlocks()) {
+                findReadLocals(block.getStatements(), readLocals);
+                findReadLocals(block.getTerminator(), readLocals);
+            }
+            for (BasicBlock block : function.getBlocks()) {
+                List<IRStatement> statements = new ArrayList<>();
+                for (IRStatement statement : block.getStatements()) {
+                    if (statement instanceof SetLocal
+                            && !readLocals.contains(((SetLocal) statement).getLocal())) {
+                        List<IRStatement> sideEffects =
+                                RemoveDeadCode.getSideEffects(((SetLocal) statement).getValue());
+                        numInstructionsRemoved += RemoveDeadCode.countInstructions(statement)
+                                - RemoveDeadCode.countInstructions(sideEffects);
+                        numStoresRemoved++;
+                        statements.addAll(sideEffects);
+                        changed = true;
+                    } else {
+                        statements.add(statement);
+                    }
+                }
+                block.getStatements().clear();
+                block.getStatements().addAll(statements);
+            }
+        }
+        statistics.increment("stores removed", numStoresRemoved);
+        statistics.increment("instructions removed", numInstructionsRemoved);
+    }
+
+    private static void findReadLocals(List<IRStatement> statements, Set<IRLocal> readLocals) {
+        for (IRStatement statement : statements) {
+            findReadLocals(statement, readLocals);
+        }
+    }
+
+    private static void findReadLocals(IRStatement statement, Set<IRLocal> readLocals) {
+        for (IRExpression operand : statement.getOperands()) {
+            findReadLocals(operand, readLocals);
+        }
+    }
+
+    private static void findReadLocals(IRExpression expression, Set<IRLocal> readLocals) {
+        if (expression instanceof LocalGet) {
+            readLocals.add(((LocalGet) expression).getLocal());
+        } else if (expression instanceof Sequence) {
+            findReadLocals(((Sequence) expression).getStatements(), readLocals);
+        }
+        for (IRExpression operand : expression.getOperands()) {
+            findReadLocals(operand, readLocals);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package ir.passes;
+
+import ir.BasicBlock;
+import ir.ControlFlowGraph;
+import ir.IRFunction;
+import ir.expressions.Constant;
+import ir.expressions.IRExpression;
+import ir.statements.Branch;
+import ir.statements.Jump;
+import ir.statements.Terminator;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tidies up the control flow graph, mostly undoing the extra blocks that
+ * the IR builder creates for every if statement and loop:
+ *  - jumps to an empty block that only jumps on are sent straight to where
+ *    that block goes
+ *  - branches whose condition is a constant, or whose targets are the same,
+ *    become jumps
+ *  - blocks that can no longer be reached are removed
+ *  - a block that is only reached by a jump from one other block is merged
+ *    into it
+ */
+public class SimplifyControlFlow implements Pass {
+
+    @Override
+    public String getName() {
+        return "simplify-cfg";
+    }
+
+    @Override
+    public void run(IRFunction function, PassStatistics statistics) {
+        long numJumpsThreaded = 0;
+        long numBranchesSimplified = 0;
+        for (BasicBlock block : function.getBlocks()) {
+            Terminator terminator = block.getTerminator();
+            for (BasicBlock successor : new LinkedHashSet<>(terminator.getSuccessors())) {
+                BasicBlock target = skipEmptyBlocks(successor);
+                if (target != successor) {
+                    terminator.replaceSuccessor(successor, target);
+                    numJumpsThreaded++;
+                }
+            }
+            if (simplifyBranch(block)) {
+                numBranchesSimplified++;
+            }
+        }
+        long numBlocksRemoved = function.removeUnreachableBlocks();
+        numBlocksRemoved += mergeBlocks(function);
+        statistics.increment("jumps threaded", numJumpsThreaded);
+        statistics.increment("branches simplified", numBranchesSimplified);
+        statistics.increment("blocks removed", numBlocksRemoved);
+    }
+
+    /**
+     * Follows jumps through blocks that contain nothing but the jump.
+     *
+     * @param block The block to start from
+     * @return The first block reached that does something, or the starting
+     *         block if the empty blocks form an infinite loop
+     */
+    private static BasicBlock skipEmptyBlocks(BasicBlock block) {
+        Set<BasicBlock> visited = new HashSet<>();
+        BasicBlock current = block;
+        while (current.getStatements().isEmpty() && current.getTerminator() instanceof Jump) {
+            if (!visited.add(current)) {
+                return block;
+            }
+            current = ((Jump) current.getTerminator()).getTarget();
+        }
+        return current;
+    }
+
+    /**
+     * Replaces the terminator of a block with a jump if it is a branch that
+     * always goes the same way.
+     *
+     * @param block The block
+     * @return true if the branch was replaced
+     */
+    private static boolean simplifyBranch(BasicBlock block) {
+        if (!(block.getTerminator() instanceof Branch)) {
+            return false;
+        }
+        Branch branch = (Branch) block.getTerminator();
+        IRExpression condition = branch.getCondition();
+        BasicBlock target;
+        if (condition instanceof Constant) {
+            boolean value = ((Constant) condition).getValue().intValue() != 0;
+            target = value ? branch.getIfTrue() : branch.getIfFalse();
+        } else if (branch.getIfTrue() == branch.getIfFalse()) {
+            target = branch.getIfTrue();
+            block.getStatements().addAll(RemoveDeadCode.getSideEffects(condition));
+        } else {
+            return false;
+        }
+        block.setTerminator(new Jump(target));
+        return true;
+    }
+
+    /**
+     * Merges every block that is only reached by a jump from one other block
+     * into that block.
+     *
+     * @param function The function, which must have no unreachable blocks
+     * @return The number of blocks merged away
+     */
+    private static int mergeBlocks(IRFunction function) {
+        ControlFlowGraph graph = new ControlFlowGraph(function);
+        BasicBlock entry = function.getEntryBlock();
+        Set<BasicBlock> merged = new HashSet<>();
+        for (BasicBlock block : function.getBlocks()) {
+            if (merged.contains(block)) {
+                continue;
+            }
+            // Merging a block in does not change how many predecessors the
+            // blocks after it have, so the graph stays accurate enough
+            while (block.getTerminator() instanceof Jump) {
+                BasicBlock target = ((Jump) block.getTerminator()).getTarget();
+                List<BasicBlock> predecessors = graph.getPredecessors(target);
+                if (target == block || target == entry || predecessors.size() != 1) {
+                    break;
+                }
+                block.getStatements().addAll(target.getStatements());
+                block.setTerminator(target.getTerminator());
+                merged.add(target);
+            }
+        }
+        function.getBlocks().removeIf(merged::contains);
+        return merged.size();
+    }
+}
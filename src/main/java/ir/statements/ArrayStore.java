@@ -0,0 +1,39 @@
+package ir.statements;
+
+import ir.IRType;
+import ir.expressions.IRExpression;
+
+/**
+ * Writes an element of an array, trapping if the index is out of bounds.
+ * The value is evaluated first, then the array, then the index.
+ */
+public class ArrayStore extends IRStatement {
+
+    private IRType elementType;
+
+    public ArrayStore(IRType elementType, IRExpression value, IRExpression array, IRExpression index) {
+        super(value, array, index);
+        this.elementType = elementType;
+    }
+
+    public IRType getElementType() {
+        return elementType;
+    }
+
+    public IRExpression getValue() {
+        return getOperand(0);
+    }
+
+    public IRExpression getArray() {
+        return getOperand(1);
+    }
+
+    public IRExpression getIndex() {
+        return getOperand(2);
+    }
+
+    @Override
+    public String toString() {
+        return "array.store." + elementType + "(" + getArray() + ", " + getIndex() + ") = " + getValue();
+    }
+}
@@ -0,0 +1,55 @@
+package ir.statements;
+
+import ir.BasicBlock;
+import ir.expressions.IRExpression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Goes to one of two blocks depending on a 32-bit condition.
+ */
+public class Branch extends Terminator {
+
+    private BasicBlock ifTrue;
+    private BasicBlock ifFalse;
+
+    public Branch(IRExpression condition, BasicBlock ifTrue, BasicBlock ifFalse) {
+        super(condition);
+        this.ifTrue = ifTrue;
+        this.ifFalse = ifFalse;
+    }
+
+    public IRExpression getCondition() {
+        return getOperand(0);
+    }
+
+    public BasicBlock getIfTrue() {
+        return ifTrue;
+    }
+
+    public BasicBlock getIfFalse() {
+        return ifFalse;
+    }
+
+    @Override
+    public List<BasicBlock> getSuccessors() {
+        return new ArrayList<>(Arrays.asList(ifTrue, ifFalse));
+    }
+
+    @Override
+    public void replaceSuccessor(BasicBlock oldTarget, BasicBlock newTarget) {
+        if (ifTrue == oldTarget) {
+            ifTrue = newTarget;
+        }
+        if (ifFalse == oldTarget) {
+            ifFalse = newTarget;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "branch " + getCondition() + ", " + ifTrue + ", " + ifFalse;
+    }
+}
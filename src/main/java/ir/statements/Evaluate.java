@@ -0,0 +1,22 @@
+package ir.statements;
+
+import ir.expressions.IRExpression;
+
+/**
+ * Evaluates an expression for its side effects, discarding its value.
+ */
+public class Evaluate extends IRStatement {
+
+    public Evaluate(IRExpression expression) {
+        super(expression);
+    }
+
+    public IRExpression getExpression() {
+        return getOperand(0);
+    }
+
+    @Override
+    public String toString() {
+        return "eval " + getExpression();
+    }
+}
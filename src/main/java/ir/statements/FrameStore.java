@@ -0,0 +1,34 @@
+package ir.statements;
+
+import ir.expressions.IRExpression;
+
+/**
+ * Writes a reference to a slot in the shadow stack frame of the current
+ * function.
+ */
+public class FrameStore extends IRStatement {
+
+    private int offset;
+
+    /**
+     * @param offset The offset of the slot from the start of the frame
+     * @param value The reference to write
+     */
+    public FrameStore(int offset, IRExpression value) {
+        super(value);
+        this.offset = offset;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public IRExpression getValue() {
+        return getOperand(0);
+    }
+
+    @Override
+    public String toString() {
+        return "frame[" + offset + "] = " + getValue();
+    }
+}
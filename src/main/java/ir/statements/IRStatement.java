@@ -0,0 +1,33 @@
+package ir.statements;
+
+import ir.expressions.IRExpression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A statement in the intermediate representation. Its operands are
+ * evaluated in order before the statement itself, and may be replaced in
+ * place by optimisations.
+ */
+public abstract class IRStatement {
+
+    private List<IRExpression> operands;
+
+    protected IRStatement(IRExpression... operands) {
+        this.operands = new ArrayList<>(Arrays.asList(operands));
+    }
+
+    public List<IRExpression> getOperands() {
+        return operands;
+    }
+
+    public IRExpression getOperand(int index) {
+        return operands.get(index);
+    }
+
+    public void setOperand(int index, IRExpression operand) {
+        operands.set(index, operand);
+    }
+}
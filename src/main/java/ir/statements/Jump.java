@@ -0,0 +1,40 @@
+package ir.statements;
+
+import ir.BasicBlock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Always goes to the same block.
+ */
+public class Jump extends Terminator {
+
+    private BasicBlock target;
+
+    public Jump(BasicBlock target) {
+        this.target = target;
+    }
+
+    public BasicBlock getTarget() {
+        return target;
+    }
+
+    @Override
+    public List<BasicBlock> getSuccessors() {
+        return new ArrayList<>(Collections.singletonList(target));
+    }
+
+    @Override
+    public void replaceSuccessor(BasicBlock oldTarget, BasicBlock newTarget) {
+        if (target == oldTarget) {
+            target = newTarget;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "jump " + target;
+    }
+}
@@ -0,0 +1,46 @@
+package ir.statements;
+
+import ir.BasicBlock;
+import ir.expressions.IRExpression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Returns from the function, with a value unless the function is void.
+ */
+public class Return extends Terminator {
+
+    /**
+     * Creates a return from a void function.
+     */
+    public Return() {
+        super();
+    }
+
+    public Return(IRExpression value) {
+        super(value);
+    }
+
+    public boolean hasValue() {
+        return !getOperands().isEmpty();
+    }
+
+    public IRExpression getValue() {
+        return hasValue() ? getOperand(0) : null;
+    }
+
+    @Override
+    public List<BasicBlock> getSuccessors() {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void replaceSuccessor(BasicBlock oldTarget, BasicBlock newTarget) {
+    }
+
+    @Override
+    public String toString() {
+        return hasValue() ? "return " + getValue() : "return";
+    }
+}
@@ -0,0 +1,30 @@
+package ir.statements;
+
+import ir.IRLocal;
+import ir.expressions.IRExpression;
+
+/**
+ * Writes a value to a WebAssembly local.
+ */
+public class SetLocal extends IRStatement {
+
+    private IRLocal local;
+
+    public SetLocal(IRLocal local, IRExpression value) {
+        super(value);
+        this.local = local;
+    }
+
+    public IRLocal getLocal() {
+        return local;
+    }
+
+    public IRExpression getValue() {
+        return getOperand(0);
+    }
+
+    @Override
+    public String toString() {
+        return local + " = " + getValue();
+    }
+}
@@ -0,0 +1,41 @@
+package ir.statements;
+
+import ir.IRType;
+import ir.expressions.IRExpression;
+
+/**
+ * Writes a value to the heap, at a fixed offset from an address. The
+ * address is evaluated before the value.
+ */
+public class Store extends IRStatement {
+
+    private IRType type;
+    private int offset;
+
+    public Store(IRType type, int offset, IRExpression address, IRExpression value) {
+        super(address, value);
+        this.type = type;
+        this.offset = offset;
+    }
+
+    public IRType getType() {
+        return type;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public IRExpression getAddress() {
+        return getOperand(0);
+    }
+
+    public IRExpression getValue() {
+        return getOperand(1);
+    }
+
+    @Override
+    public String toString() {
+        return "store." + type + " " + offset + "(" + getAddress() + ") = " + getValue();
+    }
+}
@@ -0,0 +1,30 @@
+package ir.statements;
+
+import ir.BasicBlock;
+import ir.expressions.IRExpression;
+
+import java.util.List;
+
+/**
+ * The statement at the end of a basic block, which decides where control
+ * goes next.
+ */
+public abstract class Terminator extends IRStatement {
+
+    protected Terminator(IRExpression... operands) {
+        super(operands);
+    }
+
+    /**
+     * @return The blocks that control can go to next
+     */
+    public abstract List<BasicBlock> getSuccessors();
+
+    /**
+     * Sends every edge to one block to another block instead.
+     *
+     * @param oldTarget The block that edges currently go to
+     * @param newTarget The block that they should go to
+     */
+    public abstract void replaceSuccessor(BasicBlock oldTarget, BasicBlock newTarget);
+}
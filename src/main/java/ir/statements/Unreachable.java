@@ -0,0 +1,27 @@
+package ir.statements;
+
+import ir.BasicBlock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Marks the end of a path that control can never reach, such as the end of
+ * a non-void function in which every path returns.
+ */
+public class Unreachable extends Terminator {
+
+    @Override
+    public List<BasicBlock> getSuccessors() {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void replaceSuccessor(BasicBlock oldTarget, BasicBlock newTarget) {
+    }
+
+    @Override
+    public String toString() {
+        return "unreachable";
+    }
+}
@@ -10,6 +10,7 @@ import ast.types.*;
 import errors.IncorrectTypeException;
 import errors.JavAssemblerException;
 import errors.MultipleVariableDeclarationException;
+import errors.SyntaxErrorException;
 import org.antlr.v4.runtime.Token;
 import util.ClassTable;
 import util.ErrorReporting;
@@ -29,18 +30,24 @@ public class ASTBuilder extends JavaFileBaseVisitor<ASTNode> {
     private ExpressionVisitor expressionVisitor;
     private TypeVisitor typeVisitor;
     private AccessModifierVisitor accessModifierVisitor;
+    private ParserWrapper parserWrapper;
 
-    public ASTBuilder(FunctionTable functionTable, ClassTable classTable) {
+    public ASTBuilder(FunctionTable functionTable,
+                      ClassTable classTable,
+                      GenericClassInstantiationCache instantiationCache,
+                      ParserWrapper parserWrapper) {
         currentClass = null;
         variableScopeStack = new Stack<>();
+        this.parserWrapper = parserWrapper;
 
-        typeVisitor = new TypeVisitor(classTable);
+        typeVisitor = new TypeVisitor(classTable, instantiationCache);
         expressionVisitor = new ExpressionVisitor(functionTable, classTable, typeVisitor);
         accessModifierVisitor = new AccessModifierVisitor();
     }
 
     public ClassMethod visitSubroutine(SubroutineToCompile subroutine, JavaClass containingClass) {
         this.currentClass = containingClass;
+        typeVisitor.clearGenericInstantiationsUsed();
         expressionVisitor.setCurrentClass(currentClass);
         typeVisitor.setCurrentClass(containingClass);
         if (containingClass instanceof GenericJavaClass) {
@@ -56,6 +63,16 @@ public class ASTBuilder extends JavaFileBaseVisitor<ASTNode> {
         }
     }
 
+    /**
+     * Returns the generic class instantiations that the most recently visited
+     * subroutine refers to.
+     *
+     * @return The instantiations, in the order they were resolved
+     */
+    public List<GenericInstantiation> getGenericInstantiationsUsed() {
+        return typeVisitor.getGenericInstantiationsUsed();
+    }
+
     @Override
     public ClassMethod visitMethodDefinition(JavaFileParser.MethodDefinitionContext ctx) {
         AccessModifier modifier = accessModifierVisitor.visitAccessModifier(ctx.accessModifier());
@@ -82,7 +99,7 @@ public class ASTBuilder extends JavaFileBaseVisitor<ASTNode> {
 
         // Now visit the body of the method
         currentFunctionReturnType = returnType;
-        CodeBlock body = (CodeBlock) visit(ctx.codeBlock());
+        CodeBlock body = visitSubroutineBody(ctx.codeBlock());
 
         // Pop the scope that was created to contain the parameters
         popVariableScope(false);
@@ -115,7 +132,7 @@ public class ASTBuilder extends JavaFileBaseVisitor<ASTNode> {
 
         // Visit the body of the method
         currentFunctionReturnType = returnType;
-        CodeBlock body = (CodeBlock) visit(ctx.codeBlock());
+        CodeBlock body = visitSubroutineBody(ctx.codeBlock());
 
         // Pop the variable scope of the parameters from the stack
         popVariableScope(false);
@@ -125,6 +142,23 @@ public class ASTBuilder extends JavaFileBaseVisitor<ASTNode> {
                 paramsList, body, currentClass);
     }
 
+    /**
+     * Visits the body of a method or constructor, first parsing it if it was
+     * skipped by ParserWrapper.parseDeclarations().
+     *
+     * @param ctx The body of the subroutine
+     * @return The code block that was built
+     */
+    private CodeBlock visitSubroutineBody(JavaFileParser.CodeBlockContext ctx) {
+        JavaFileParser.CodeBlockContext body = ctx;
+        try {
+            body = parserWrapper.parseCodeBlock(ctx);
+        } catch (SyntaxErrorException e) {
+            ErrorReporting.reportError(e.getMessage());
+        }
+        return (CodeBlock) visit(body);
+    }
+
     @Override
     public ASTNode visitDeclarationStatement(JavaFileParser.DeclarationStatementContext ctx) {
         return visit(ctx.variableDeclaration());
@@ -0,0 +1,598 @@
+package parser;
+
+import org.antlr.v4.runtime.RuntimeMetaData;
+import org.antlr.v4.runtime.atn.*;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Saves the DFA states that ANTLR learns while parsing to a file, and loads
+ * them again in a later run.
+ *
+ * The parser and lexer make predictions by simulating the ATN of the
+ * grammar, and record each prediction as a DFA state so that the same
+ * lookahead is cheap the next time it is seen. These DFAs start off empty in
+ * every new JVM, which makes the first few thousand lines of a compilation
+ * very slow to parse. Loading the states learned by earlier runs means that
+ * short-lived compilations can parse at close to the speed of a warm
+ * compiler.
+ *
+ * A cache file is only used if it was written for exactly the same grammar
+ * and version of ANTLR. Otherwise, as with a file that cannot be read, it is
+ * ignored and the parser starts cold.
+ *
+ * Each compilation uses its own DFACache, which remembers how many states
+ * there were when it loaded or saved the file. ANTLR shares the DFAs between
+ * every parser in the JVM, though, so the states are loaded at most once per
+ * JVM, and only before the first lexer or parser is created. ParserWrapper
+ * calls beforeParsing() before creating each lexer, which waits for a load
+ * that is in progress to finish.
+ */
+public class DFACache {
+
+    private static final int MAGIC_NUMBER = 0x4A444641;
+
+    /**
+     * Increment this whenever the format of the file changes.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int NO_STATE = -1;
+    private static final int ERROR_STATE = -2;
+    private static final int NO_CONTEXT = -1;
+    private static final int NO_ACTIONS = -1;
+    private static final int NO_PREDICATES = -1;
+    private static final int NOT_INDEXED = -1;
+
+    private static final byte SEMANTIC_CONTEXT_NONE = 0;
+    private static final byte SEMANTIC_CONTEXT_PREDICATE = 1;
+    private static final byte SEMANTIC_CONTEXT_PRECEDENCE = 2;
+    private static final byte SEMANTIC_CONTEXT_AND = 3;
+    private static final byte SEMANTIC_CONTEXT_OR = 4;
+
+    /**
+     * Held while the cache is loaded, and by the first lexer to be created
+     */
+    private static final Object LOAD_LOCK = new Object();
+
+    /**
+     * Whether a lexer or parser has been created in this JVM, after which the
+     * shared DFAs may be in use and can no longer be replaced. This is only
+     * set once a load has finished, so that a lexer created during a load
+     * waits for the lock.
+     */
+    private static volatile boolean parsingStarted = false;
+
+    private String path;
+
+    /**
+     * The total number of DFA states when this cache was last loaded or
+     * saved, so that the file is only rewritten if something new has been
+     * learned.
+     */
+    private int numStatesAtLastSync;
+
+    /**
+     * @param path The file to load from and save to
+     */
+    public DFACache(String path) {
+        this.path = path;
+        numStatesAtLastSync = 0;
+    }
+
+    /**
+     * Loads the DFA states saved in the file, unless a lexer or parser has
+     * already been created in this JVM.
+     *
+     * This should be called before the compilation creates any parsers. The
+     * number of states is recorded even if nothing is loaded, so that save()
+     * only rewrites the file if this compilation learns something new.
+     *
+     * @return true if the states were loaded; false if the file does not
+     *         exist, could not be used, or parsing has already started
+     */
+    public boolean load() {
+        synchronized (LOAD_LOCK) {
+            numStatesAtLastSync = countAllStates();
+            if (parsingStarted) {
+                return false;
+            }
+            try {
+                if (!Files.exists(Paths.get(path))) {
+                    return false;
+                }
+
+                // Read everything before replacing any DFAs, so that a
+                // corrupt file leaves the parser as it was
+                LoadedDFAs loaded;
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                        Files.newInputStream(Paths.get(path))))) {
+                    loaded = read(in);
+                } catch (IOException | RuntimeException e) {
+                    return false;
+                }
+
+                DFA[] parserDFAs = JavaFileParser._decisionToDFA;
+                DFA[] lexerDFAs = JavaFileLexer._decisionToDFA;
+                System.arraycopy(loaded.parserDFAs, 0, parserDFAs, 0, parserDFAs.length);
+                System.arraycopy(loaded.lexerDFAs, 0, lexerDFAs, 0, lexerDFAs.length);
+                numStatesAtLastSync = countAllStates();
+                return true;
+            } finally {
+                parsingStarted = true;
+            }
+        }
+    }
+
+    /**
+     * Saves the DFA states learned so far, if any new ones have been learned
+     * since this cache was last loaded or saved.
+     *
+     * The file is written to a temporary file first and then moved into
+     * place, so that several compilations can safely share a cache file.
+     * Other compilations may carry on parsing while the states are saved, in
+     * which case states that they learn in the meantime may be left out.
+     *
+     * @throws IOException If the file cannot be written
+     */
+    public void save() throws IOException {
+        int numStates = countAllStates();
+        if (numStates == numStatesAtLastSync) {
+            return;
+        }
+
+        Path target = Paths.get(path).toAbsolutePath();
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporary)))) {
+            write(out);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        numStatesAtLastSync = numStates;
+    }
+
+    /**
+     * Called before each lexer is created. Once a load has finished, or if
+     * none has been started, this returns without taking the lock.
+     */
+    static void beforeParsing() {
+        if (!parsingStarted) {
+            synchronized (LOAD_LOCK) {
+                parsingStarted = true;
+            }
+        }
+    }
+
+    /**
+     * Writes the header and the states of the shared DFAs of the parser and
+     * lexer.
+     */
+    static void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC_NUMBER);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(getGrammarFingerprint());
+        writeDFAs(out, JavaFileParser._decisionToDFA, JavaFileParser._ATN, false);
+        writeDFAs(out, JavaFileLexer._decisionToDFA, JavaFileLexer._ATN, true);
+    }
+
+    /**
+     * Reads the states written by write(), into new DFAs that are not yet
+     * used by any parser.
+     *
+     * @throws IOException If the file is not a complete cache for this
+     *                     grammar and version of ANTLR
+     */
+    static LoadedDFAs read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC_NUMBER
+                || in.readInt() != FORMAT_VERSION
+                || !in.readUTF().equals(getGrammarFingerprint())) {
+            throw new IOException("Not a parser cache for this grammar");
+        }
+        DFA[] parserDFAs = readDFAs(in, JavaFileParser._decisionToDFA, JavaFileParser._ATN, false,
+                JavaFileParser._sharedContextCache);
+        DFA[] lexerDFAs = readDFAs(in, JavaFileLexer._decisionToDFA, JavaFileLexer._ATN, true,
+                JavaFileLexer._sharedContextCache);
+        return new LoadedDFAs(parserDFAs, lexerDFAs);
+    }
+
+    /**
+     * Identifies the grammar and the ANTLR runtime, since the states refer to
+     * the ATN by state number and are only valid for the same ATN.
+     */
+    private static String getGrammarFingerprint() {
+        return RuntimeMetaData.VERSION
+                + ":" + Integer.toHexString(JavaFileParser._serializedATN.hashCode())
+                + ":" + Integer.toHexString(JavaFileLexer._serializedATN.hashCode());
+    }
+
+    private static int countAllStates() {
+        return countStates(JavaFileParser._decisionToDFA) + countStates(JavaFileLexer._decisionToDFA);
+    }
+
+    private static int countStates(DFA[] dfas) {
+        int count = 0;
+        for (DFA dfa : dfas) {
+            synchronized (dfa.states) {
+                count += dfa.states.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes the states of every DFA of a recognizer.
+     *
+     * The prediction contexts of the configurations are shared between
+     * states, so they are written first, as a table in which every context
+     * comes after its parents. Similarly, the edges of each DFA are written
+     * after all of its states.
+     */
+    private static void writeDFAs(DataOutputStream out, DFA[] dfas, ATN atn, boolean isLexer)
+            throws IOException {
+        List<List<DFAState>> statesOfEachDFA = new ArrayList<>();
+        Map<PredictionContext, Integer> contextIds = new IdentityHashMap<>();
+        List<PredictionContext> contexts = new ArrayList<>();
+        for (DFA dfa : dfas) {
+            // Other compilations may be adding states at the same time, so
+            // take a snapshot under the same lock that ANTLR uses
+            List<DFAState> states;
+            synchronized (dfa.states) {
+                states = dfa.getStates();
+            }
+            statesOfEachDFA.add(states);
+            for (DFAState state : states) {
+                for (ATNConfig config : state.configs) {
+                    numberContext(config.context, contextIds, contexts);
+                }
+            }
+        }
+
+        out.writeInt(dfas.length);
+        out.writeInt(contexts.size());
+        for (PredictionContext context : contexts) {
+            out.writeInt(context.size());
+            for (int i = 0; i < context.size(); i++) {
+                out.writeInt(getContextId(context.getParent(i), contextIds));
+                out.writeInt(context.getReturnState(i));
+            }
+        }
+
+        for (int i = 0; i < dfas.length; i++) {
+            List<DFAState> states = statesOfEachDFA.get(i);
+            Map<DFAState, Integer> stateIndices = new IdentityHashMap<>();
+            for (DFAState state : states) {
+                stateIndices.put(state, stateIndices.size());
+            }
+            out.writeInt(states.size());
+            for (DFAState state : states) {
+                writeState(out, state, atn, isLexer, contextIds);
+            }
+            for (DFAState state : states) {
+                writeEdges(out, state.edges, stateIndices);
+            }
+            if (dfas[i].isPrecedenceDfa()) {
+                writeEdges(out, dfas[i].s0.edges, stateIndices);
+            } else {
+                out.writeInt(getStateIndex(dfas[i].s0, stateIndices));
+            }
+        }
+    }
+
+    private static DFA[] readDFAs(DataInputStream in, DFA[] currentDFAs, ATN atn, boolean isLexer,
+                                  PredictionContextCache contextCache) throws IOException {
+        if (in.readInt() != currentDFAs.length) {
+            throw new IOException("Wrong number of decisions");
+        }
+        int numContexts = in.readInt();
+        List<PredictionContext> contexts = new ArrayList<>(numContexts);
+        for (int i = 0; i < numContexts; i++) {
+            int size = in.readInt();
+            PredictionContext[] parents = new PredictionContext[size];
+            int[] returnStates = new int[size];
+            for (int j = 0; j < size; j++) {
+                parents[j] = getContext(in.readInt(), contexts);
+                returnStates[j] = in.readInt();
+            }
+            PredictionContext context = (size == 1)
+                    ? SingletonPredictionContext.create(parents[0], returnStates[0])
+                    : new ArrayPredictionContext(parents, returnStates);
+            contexts.add(context.isEmpty() ? context : contextCache.add(context));
+        }
+
+        DFA[] dfas = new DFA[currentDFAs.length];
+        for (int i = 0; i < dfas.length; i++) {
+            DFA dfa = new DFA(currentDFAs[i].atnStartState, currentDFAs[i].decision);
+            int numStates = in.readInt();
+            List<DFAState> states = new ArrayList<>(numStates);
+            for (int j = 0; j < numStates; j++) {
+                states.add(readState(in, atn, isLexer, contexts));
+            }
+            for (DFAState state : states) {
+                state.edges = readEdges(in, states);
+                dfa.states.put(state, state);
+            }
+            if (dfa.isPrecedenceDfa()) {
+                DFAState[] startStates = readEdges(in, states);
+                for (int precedence = 0; startStates != null && precedence < startStates.length; precedence++) {
+                    if (startStates[precedence] != null) {
+                        dfa.setPrecedenceStartState(precedence, startStates[precedence]);
+                    }
+                }
+            } else {
+                dfa.s0 = getState(in.readInt(), states);
+            }
+            dfas[i] = dfa;
+        }
+        return dfas;
+    }
+
+    private static void numberContext(PredictionContext context,
+                                      Map<PredictionContext, Integer> contextIds,
+                                      List<PredictionContext> contexts) {
+        if (context == null || contextIds.containsKey(context)) {
+            return;
+        }
+        for (int i = 0; i < context.size(); i++) {
+            numberContext(context.getParent(i), contextIds, contexts);
+        }
+        contextIds.put(context, contexts.size());
+        contexts.add(context);
+    }
+
+    private static int getContextId(PredictionContext context, Map<PredictionContext, Integer> contextIds) {
+        return (context == null) ? NO_CONTEXT : contextIds.get(context);
+    }
+
+    private static PredictionContext getContext(int id, List<PredictionContext> contexts) throws IOException {
+        if (id == NO_CONTEXT) {
+            return null;
+        } else if (id < 0 || id >= contexts.size()) {
+            throw new IOException("Invalid prediction context " + id);
+        }
+        return contexts.get(id);
+    }
+
+    private static void writeState(DataOutputStream out, DFAState state, ATN atn, boolean isLexer,
+                                   Map<PredictionContext, Integer> contextIds) throws IOException {
+        out.writeInt(state.stateNumber);
+        out.writeBoolean(state.configs.fullCtx);
+        out.writeInt(state.configs.uniqueAlt);
+        out.writeInt(state.configs.size());
+        for (ATNConfig config : state.configs) {
+            out.writeInt(config.state.stateNumber);
+            out.writeInt(config.alt);
+            out.writeInt(getContextId(config.context, contextIds));
+            writeSemanticContext(out, config.semanticContext);
+            out.writeInt(config.reachesIntoOuterContext);
+            if (isLexer) {
+                LexerATNConfig lexerConfig = (LexerATNConfig) config;
+                if (lexerConfig.hasPassedThroughNonGreedyDecision()) {
+                    // This cannot be recreated through the public API
+                    throw new IOException("Lexer states with non-greedy decisions cannot be saved");
+                }
+                writeLexerActions(out, lexerConfig.getLexerActionExecutor(), atn);
+            }
+        }
+        out.writeBoolean(state.isAcceptState);
+        out.writeInt(state.prediction);
+        out.writeBoolean(state.requiresFullContext);
+        writeLexerActions(out, state.lexerActionExecutor, atn);
+        if (state.predicates == null) {
+            out.writeInt(NO_PREDICATES);
+        } else {
+            out.writeInt(state.predicates.length);
+            for (DFAState.PredPrediction predicate : state.predicates) {
+                writeSemanticContext(out, predicate.pred);
+                out.writeInt(predicate.alt);
+            }
+        }
+    }
+
+    private static DFAState readState(DataInputStream in, ATN atn, boolean isLexer,
+                                      List<PredictionContext> contexts) throws IOException {
+        int stateNumber = in.readInt();
+        boolean fullContext = in.readBoolean();
+        int uniqueAlt = in.readInt();
+        int numConfigs = in.readInt();
+        ATNConfigSet configs = isLexer ? new OrderedATNConfigSet() : new ATNConfigSet(fullContext);
+        for (int i = 0; i < numConfigs; i++) {
+            ATNState atnState = atn.states.get(in.readInt());
+            int alt = in.readInt();
+            PredictionContext context = getContext(in.readInt(), contexts);
+            SemanticContext semanticContext = readSemanticContext(in);
+            int reachesIntoOuterContext = in.readInt();
+            ATNConfig config;
+            if (isLexer) {
+                config = new LexerATNConfig(atnState, alt, context, readLexerActions(in, atn));
+            } else {
+                config = new ATNConfig(atnState, alt, context, semanticContext);
+            }
+            config.reachesIntoOuterContext = reachesIntoOuterContext;
+            configs.add(config);
+        }
+        configs.uniqueAlt = uniqueAlt;
+        configs.setReadonly(true);
+
+        DFAState state = new DFAState(configs);
+        state.stateNumber = stateNumber;
+        state.isAcceptState = in.readBoolean();
+        state.prediction = in.readInt();
+        state.requiresFullContext = in.readBoolean();
+        state.lexerActionExecutor = readLexerActions(in, atn);
+        int numPredicates = in.readInt();
+        if (numPredicates != NO_PREDICATES) {
+            state.predicates = new DFAState.PredPrediction[numPredicates];
+            for (int i = 0; i < numPredicates; i++) {
+                SemanticContext predicate = readSemanticContext(in);
+                state.predicates[i] = new DFAState.PredPrediction(predicate, in.readInt());
+            }
+        }
+        return state;
+    }
+
+    private static void writeEdges(DataOutputStream out, DFAState[] edges,
+                                   Map<DFAState, Integer> stateIndices) throws IOException {
+        if (edges == null) {
+            out.writeInt(NO_STATE);
+            return;
+        }
+        out.writeInt(edges.length);
+        for (DFAState target : edges) {
+            out.writeInt(getStateIndex(target, stateIndices));
+        }
+    }
+
+    private static DFAState[] readEdges(DataInputStream in, List<DFAState> states) throws IOException {
+        int numEdges = in.readInt();
+        if (numEdges == NO_STATE) {
+            return null;
+        }
+        DFAState[] edges = new DFAState[numEdges];
+        for (int i = 0; i < numEdges; i++) {
+            edges[i] = getState(in.readInt(), states);
+        }
+        return edges;
+    }
+
+    private static int getStateIndex(DFAState state, Map<DFAState, Integer> stateIndices) {
+        if (state == ATNSimulator.ERROR) {
+            return ERROR_STATE;
+        }
+        // A state that is not in the DFA is simply not saved; the edge will
+        // be recomputed if it is needed
+        return stateIndices.getOrDefault(state, NO_STATE);
+    }
+
+    private static DFAState getState(int index, List<DFAState> states) throws IOException {
+        if (index == NO_STATE) {
+            return null;
+        } else if (index == ERROR_STATE) {
+            return ATNSimulator.ERROR;
+        } else if (index < 0 || index >= states.size()) {
+            throw new IOException("Invalid DFA state " + index);
+        }
+        return states.get(index);
+    }
+
+    private static void writeSemanticContext(DataOutputStream out, SemanticContext context) throws IOException {
+        if (context == SemanticContext.NONE) {
+            out.writeByte(SEMANTIC_CONTEXT_NONE);
+        } else if (context instanceof SemanticContext.Predicate) {
+            SemanticContext.Predicate predicate = (SemanticContext.Predicate) context;
+            out.writeByte(SEMANTIC_CONTEXT_PREDICATE);
+            out.writeInt(predicate.ruleIndex);
+            out.writeInt(predicate.predIndex);
+            out.writeBoolean(predicate.isCtxDependent);
+        } else if (context instanceof SemanticContext.PrecedencePredicate) {
+            out.writeByte(SEMANTIC_CONTEXT_PRECEDENCE);
+            out.writeInt(((SemanticContext.PrecedencePredicate) context).precedence);
+        } else if (context instanceof SemanticContext.AND) {
+            out.writeByte(SEMANTIC_CONTEXT_AND);
+            writeSemanticContexts(out, ((SemanticContext.AND) context).opnds);
+        } else if (context instanceof SemanticContext.OR) {
+            out.writeByte(SEMANTIC_CONTEXT_OR);
+            writeSemanticContexts(out, ((SemanticContext.OR) context).opnds);
+        } else {
+            throw new IOException("Unknown semantic context " + context);
+        }
+    }
+
+    private static void writeSemanticContexts(DataOutputStream out, SemanticContext[] contexts)
+            throws IOException {
+        out.writeInt(contexts.length);
+        for (SemanticContext context : contexts) {
+            writeSemanticContext(out, context);
+        }
+    }
+
+    private static SemanticContext readSemanticContext(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        switch (kind) {
+            case SEMANTIC_CONTEXT_NONE:
+                return SemanticContext.NONE;
+            case SEMANTIC_CONTEXT_PREDICATE:
+                return new SemanticContext.Predicate(in.readInt(), in.readInt(), in.readBoolean());
+            case SEMANTIC_CONTEXT_PRECEDENCE:
+                return new SemanticContext.PrecedencePredicate(in.readInt());
+            case SEMANTIC_CONTEXT_AND:
+            case SEMANTIC_CONTEXT_OR:
+                int numOperands = in.readInt();
+                SemanticContext combined = readSemanticContext(in);
+                for (int i = 1; i < numOperands; i++) {
+                    SemanticContext operand = readSemanticContext(in);
+                    combined = (kind == SEMANTIC_CONTEXT_AND)
+                            ? SemanticContext.and(combined, operand)
+                            : SemanticContext.or(combined, operand);
+                }
+                return combined;
+            default:
+                throw new IOException("Unknown semantic context kind " + kind);
+        }
+    }
+
+    /**
+     * Writes the actions of a lexer action executor as indices into the
+     * actions of the ATN.
+     */
+    private static void writeLexerActions(DataOutputStream out, LexerActionExecutor executor, ATN atn)
+            throws IOException {
+        if (executor == null) {
+            out.writeInt(NO_ACTIONS);
+            return;
+        }
+        LexerAction[] actions = executor.getLexerActions();
+        out.writeInt(actions.length);
+        for (LexerAction action : actions) {
+            if (action instanceof LexerIndexedCustomAction) {
+                LexerIndexedCustomAction indexedAction = (LexerIndexedCustomAction) action;
+                out.writeInt(indexedAction.getOffset());
+                action = indexedAction.getAction();
+            } else {
+                out.writeInt(NOT_INDEXED);
+            }
+            int index = Arrays.asList(atn.lexerActions).indexOf(action);
+            if (index < 0) {
+                throw new IOException("Unknown lexer action " + action);
+            }
+            out.writeInt(index);
+        }
+    }
+
+    private static LexerActionExecutor readLexerActions(DataInputStream in, ATN atn) throws IOException {
+        int numActions = in.readInt();
+        if (numActions == NO_ACTIONS) {
+            return null;
+        }
+        LexerAction[] actions = new LexerAction[numActions];
+        for (int i = 0; i < numActions; i++) {
+            int offset = in.readInt();
+            LexerAction action = atn.lexerActions[in.readInt()];
+            actions[i] = (offset == NOT_INDEXED) ? action : new LexerIndexedCustomAction(offset, action);
+        }
+        return new LexerActionExecutor(actions);
+    }
+
+    /**
+     * The DFAs of the parser and lexer read from a cache file.
+     */
+    static class LoadedDFAs {
+
+        final DFA[] parserDFAs;
+        final DFA[] lexerDFAs;
+
+        LoadedDFAs(DFA[] parserDFAs, DFA[] lexerDFAs) {
+            this.parserDFAs = parserDFAs;
+            this.lexerDFAs = lexerDFAs;
+        }
+    }
+}
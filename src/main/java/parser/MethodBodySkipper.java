@@ -0,0 +1,116 @@
+package parser;
+
+import org.antlr.v4.runtime.*;
+
+/**
+ * Filters the tokens of a file so that the body of every method and
+ * constructor appears to be empty.
+ *
+ * The grammar only allows one class per file, and nothing inside a class
+ * body other than a method or constructor body contains braces. Every brace
+ * opened directly inside the class body therefore starts the body of a
+ * subroutine. Each such body is replaced by a SkippedMethodBodyToken, which
+ * takes the place of its opening brace and records where the body ends, so
+ * that the body can be parsed later if it is needed.
+ */
+class MethodBodySkipper implements TokenSource {
+
+    private TokenSource source;
+
+    /**
+     * How many braces are open at the current position
+     */
+    private int depth;
+
+    /**
+     * A token that has already been read, and is the next to return
+     */
+    private Token pendingToken;
+
+    MethodBodySkipper(TokenSource source) {
+        this.source = source;
+        depth = 0;
+        pendingToken = null;
+    }
+
+    @Override
+    public Token nextToken() {
+        if (pendingToken != null) {
+            Token token = pendingToken;
+            pendingToken = null;
+            return token;
+        }
+        Token token = source.nextToken();
+        if (token.getType() == JavaFileLexer.LBRACE) {
+            if (depth == 1) {
+                return skipBody(token);
+            }
+            depth++;
+        } else if (token.getType() == JavaFileLexer.RBRACE) {
+            depth--;
+        }
+        return token;
+    }
+
+    /**
+     * Reads the tokens of a subroutine body up to and including its closing
+     * brace, which is the next token returned after the skipped body. The
+     * other tokens of the body are discarded.
+     *
+     * If the end of the file is reached first, then the end of file token is
+     * returned next instead, which will cause a syntax error.
+     *
+     * @param openingBrace The opening brace of the body
+     * @return A token that takes the place of the opening brace
+     */
+    private Token skipBody(Token openingBrace) {
+        int bodyStopIndex = openingBrace.getStopIndex();
+        int numOpenBraces = 1;
+        while (true) {
+            Token token = source.nextToken();
+            if (token.getType() == Token.EOF) {
+                pendingToken = token;
+                break;
+            }
+            bodyStopIndex = token.getStopIndex();
+            if (token.getType() == JavaFileLexer.LBRACE) {
+                numOpenBraces++;
+            } else if (token.getType() == JavaFileLexer.RBRACE && --numOpenBraces == 0) {
+                pendingToken = token;
+                break;
+            }
+        }
+        return new SkippedMethodBodyToken(openingBrace, bodyStopIndex);
+    }
+
+    @Override
+    public int getLine() {
+        return source.getLine();
+    }
+
+    @Override
+    public int getCharPositionInLine() {
+        return source.getCharPositionInLine();
+    }
+
+    @Override
+    public CharStream getInputStream() {
+        return source.getInputStream();
+    }
+
+    @Override
+    public String getSourceName() {
+        return source.getSourceName();
+    }
+
+    @Override
+    public void setTokenFactory(TokenFactory<?> factory) {
+        source.setTokenFactory(factory);
+    }
+
+    @Override
+    public TokenFactory<?> getTokenFactory() {
+        return source.getTokenFactory();
+    }
+
+}
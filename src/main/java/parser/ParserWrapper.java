@@ -1,34 +1,283 @@
 package parser;
 
 import errors.SyntaxErrorException;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
- * Encapsulates invoking the parser
+ * Encapsulates invoking the parser.
+ *
+ * Each compilation uses its own ParserWrapper, which counts the parses run
+ * for that compilation. The methods are safe to call from several threads at
+ * once.
  */
 public class ParserWrapper {
 
     /**
-     * Parses the given file
-     * @param filename The name of the file to parse
+     * The number of parses that have been run, and the number of those for
+     * which the fast SLL parse failed so that the input was parsed again in
+     * LL mode.
+     */
+    private AtomicLong numParses;
+    private AtomicLong numLLFallbacks;
+
+    public ParserWrapper() {
+        numParses = new AtomicLong();
+        numLLFallbacks = new AtomicLong();
+    }
+
+    /**
+     * Parses every source in the list, using the fork-join pool to parse
+     * several sources at once.
+     *
+     * The parse trees are returned in the same order as the sources, and if
+     * any sources fail to parse then the error from the first such source in
+     * the list is the one thrown, regardless of the order in which the
+     * sources were actually processed.
+     *
+     * @param sources The sources to parse, each named after its file
+     * @return The ParseTrees that were generated, in the order of sources
+     * @throws SyntaxErrorException If one of the sources has a syntax error
+     */
+    public List<JavaFileParser.FileContext> parseAll(List<CharStream> sources) throws SyntaxErrorException {
+        return parseAll(sources, false);
+    }
+
+    /**
+     * Parses the declarations in every source in the list, in the same way
+     * as parseAll(). The bodies of the methods and constructors are not
+     * parsed until they are passed to parseCodeBlock().
+     *
+     * @param sources The sources to parse, each named after its file
+     * @return The ParseTrees that were generated, in the order of sources
+     * @throws SyntaxErrorException If one of the sources has a syntax error
+     *                              outside of a method or constructor body
+     */
+    public List<JavaFileParser.FileContext> parseAllDeclarations(List<CharStream> sources)
+            throws SyntaxErrorException {
+        return parseAll(sources, true);
+    }
+
+    private List<JavaFileParser.FileContext> parseAll(List<CharStream> sources, boolean declarationsOnly)
+            throws SyntaxErrorException {
+        List<ParseResult> results = sources.stream()
+                .parallel()
+                .map(source -> tryParse(source, declarationsOnly))
+                .collect(Collectors.toList());
+        List<JavaFileParser.FileContext> parseTrees = new ArrayList<>();
+        for (ParseResult result : results) {
+            if (result.syntaxErrorException != null) {
+                throw result.syntaxErrorException;
+            }
+            parseTrees.add(result.parseTree);
+        }
+        return parseTrees;
+    }
+
+    /**
+     * Parses the given source.
+     *
+     * @param source The source to parse, named after its file
      * @return The ParseTree that was generated
-     * @throws IOException If there is an error accessing the file
+     * @throws SyntaxErrorException If the source has a syntax error
      */
-    public static JavaFileParser.FileContext parse(String filename)
-            throws IOException, SyntaxErrorException {
-        CharStream charStream = CharStreams.fromFileName(filename);
-        JavaFileLexer lexer = new JavaFileLexer(charStream);
-        CommonTokenStream tokenStream = new CommonTokenStream(lexer);
-        JavaFileParser parser = new JavaFileParser(tokenStream);
-        JavaFileParser.FileContext file = parser.file();
-        if (parser.getNumberOfSyntaxErrors() > 0) {
-            throw new SyntaxErrorException("Syntax error in file " + filename);
+    public JavaFileParser.FileContext parse(CharStream source) throws SyntaxErrorException {
+        SyntaxErrorCollector errorCollector = new SyntaxErrorCollector();
+        JavaFileLexer lexer = createLexer(source, errorCollector);
+        JavaFileParser.FileContext file = parseWithFallback(
+                new CommonTokenStream(lexer), errorCollector, JavaFileParser::file);
+        checkForErrors(source.getSourceName(), errorCollector);
+        return file;
+    }
+
+    /**
+     * Parses the given source, except for the bodies of its methods and
+     * constructors.
+     *
+     * Each body is parsed as an empty code block, whose opening brace records
+     * where the real body ends so that parseCodeBlock() can parse it when it
+     * is needed. The bodies are still read by the lexer, so the source text
+     * and positions of every part of the file are available as normal, but
+     * their tokens are not kept.
+     *
+     * If the source has a syntax error, it is parsed again in full so that
+     * the errors are reported exactly as parse() would report them.
+     *
+     * @param source The source to parse, named after its file
+     * @return The ParseTree that was generated
+     * @throws SyntaxErrorException If the source has a syntax error outside
+     *                              of a method or constructor body
+     */
+    public JavaFileParser.FileContext parseDeclarations(CharStream source) throws SyntaxErrorException {
+        SyntaxErrorCollector errorCollector = new SyntaxErrorCollector();
+        JavaFileLexer lexer = createLexer(source, errorCollector);
+        TokenStream tokenStream = new CommonTokenStream(new MethodBodySkipper(lexer));
+        JavaFileParser.FileContext file = parseWithFallback(tokenStream, errorCollector, JavaFileParser::file);
+        if (errorCollector.hasErrors()) {
+            return parse(source);
         }
         return file;
     }
 
+    /**
+     * Parses the body of a method or constructor that was skipped by
+     * parseDeclarations(). Code blocks that were parsed in full are returned
+     * unchanged.
+     *
+     * @param codeBlock The code block to parse
+     * @return The code block with all of its statements
+     * @throws SyntaxErrorException If the code block has a syntax error
+     */
+    public JavaFileParser.CodeBlockContext parseCodeBlock(JavaFileParser.CodeBlockContext codeBlock)
+            throws SyntaxErrorException {
+        if (!(codeBlock.getStart() instanceof SkippedMethodBodyToken)) {
+            return codeBlock;
+        }
+        SkippedMethodBodyToken skippedBody = (SkippedMethodBodyToken) codeBlock.getStart();
+
+        // The body is lexed again from its text, starting the lexer at the
+        // position of the opening brace so that errors are reported at the
+        // right line and column
+        String sourceName = skippedBody.getTokenSource().getSourceName();
+        SyntaxErrorCollector errorCollector = new SyntaxErrorCollector();
+        JavaFileLexer lexer = createLexer(CharStreams.fromString(skippedBody.getBodyText(), sourceName),
+                errorCollector);
+        lexer.setLine(skippedBody.getLine());
+        lexer.setCharPositionInLine(skippedBody.getCharPositionInLine());
+        TokenStream tokenStream = new CommonTokenStream(lexer);
+        JavaFileParser.CodeBlockContext parsedBlock = parseWithFallback(
+                tokenStream, errorCollector, JavaFileParser::codeBlock);
+        if (!errorCollector.hasErrors() && tokenStream.LA(1) != Token.EOF) {
+            // The code block ended before its last token
+            Token extraToken = tokenStream.LT(1);
+            errorCollector.syntaxError(null, extraToken, extraToken.getLine(),
+                    extraToken.getCharPositionInLine(), "extraneous input '" + extraToken.getText() + "'", null);
+        }
+        checkForErrors(sourceName, errorCollector);
+        return parsedBlock;
+    }
+
+    /**
+     * Runs a parser rule over a token stream.
+     *
+     * The input is first parsed using SLL prediction, which is much faster
+     * than full LL prediction but can fail on some valid inputs. If the SLL
+     * parse fails, the input is parsed again in LL mode, which is also the
+     * parse that reports syntax errors. This means that exactly the same
+     * programs are accepted as if LL mode were always used.
+     *
+     * @param tokenStream The tokens to parse
+     * @param errorCollector The listener to which syntax errors are reported
+     * @param rule The parser rule to run
+     * @return The ParseTree that was generated
+     */
+    private <T extends ParserRuleContext> T parseWithFallback(TokenStream tokenStream,
+                                                              SyntaxErrorCollector errorCollector,
+                                                              Function<JavaFileParser, T> rule) {
+        JavaFileParser parser = new JavaFileParser(tokenStream);
+        numParses.incrementAndGet();
+
+        // First try SLL, giving up at the first error without reporting it
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        try {
+            return rule.apply(parser);
+        } catch (ParseCancellationException e) {
+            // Fall back to LL, which either succeeds or reports the real
+            // syntax errors
+            numLLFallbacks.incrementAndGet();
+            parser.reset();
+            parser.addErrorListener(errorCollector);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            return rule.apply(parser);
+        }
+    }
+
+    private static JavaFileLexer createLexer(CharStream source, SyntaxErrorCollector errorCollector) {
+        // The source may already have been read by an earlier parse
+        source.seek(0);
+        DFACache.beforeParsing();
+        JavaFileLexer lexer = new JavaFileLexer(source);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(errorCollector);
+        return lexer;
+    }
+
+    private static void checkForErrors(String filename, SyntaxErrorCollector errorCollector)
+            throws SyntaxErrorException {
+        if (errorCollector.hasErrors()) {
+            String message = "Syntax error in file " + filename + ":\n"
+                    + String.join("\n", errorCollector.getMessages());
+            throw new SyntaxErrorException(message);
+        }
+    }
+
+    /**
+     * Returns the number of times the parser has been run. This counts each
+     * file, and also each method or constructor body that was parsed
+     * separately.
+     *
+     * @return The number of parses
+     */
+    public long getNumParses() {
+        return numParses.get();
+    }
+
+    /**
+     * Returns the number of parses for which the SLL parse failed, so that
+     * the input had to be parsed again in LL mode.
+     *
+     * This includes inputs with syntax errors. If this is a large fraction of
+     * getNumParses() for valid programs, the grammar is likely to need
+     * changing so that SLL prediction suffices.
+     *
+     * @return The number of times that parsing fell back to LL mode
+     */
+    public long getNumLLFallbacks() {
+        return numLLFallbacks.get();
+    }
+
+    /**
+     * Parses a source, capturing any error rather than throwing it so that
+     * the source can be parsed as a task on another thread.
+     *
+     * @param source The source to parse
+     * @param declarationsOnly Whether to skip method and constructor bodies
+     * @return The result of parsing the source
+     */
+    private ParseResult tryParse(CharStream source, boolean declarationsOnly) {
+        ParseResult result = new ParseResult();
+        try {
+            result.parseTree = declarationsOnly ? parseDeclarations(source) : parse(source);
+        } catch (SyntaxErrorException e) {
+            result.syntaxErrorException = e;
+        }
+        return result;
+    }
+
+    /**
+     * Holds either the parse tree of a source or the error that prevented it
+     * from being parsed.
+     */
+    private static class ParseResult {
+        JavaFileParser.FileContext parseTree;
+        SyntaxErrorException syntaxErrorException;
+    }
+
 }
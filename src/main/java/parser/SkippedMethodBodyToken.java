@@ -0,0 +1,36 @@
+package parser;
+
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
+
+/**
+ * The opening brace of a subroutine body that was skipped by
+ * MethodBodySkipper, which records where the body ends so that it can be
+ * parsed later.
+ *
+ * Only the position of the body is kept, rather than its tokens, so that the
+ * bodies of methods that have not been parsed yet take up no memory beyond
+ * the source text itself.
+ */
+class SkippedMethodBodyToken extends CommonToken {
+
+    /**
+     * The index in the source of the last character of the body
+     */
+    private int bodyStopIndex;
+
+    SkippedMethodBodyToken(Token openingBrace, int bodyStopIndex) {
+        super(openingBrace);
+        this.bodyStopIndex = bodyStopIndex;
+    }
+
+    /**
+     * @return The text of the body, from its opening brace to its closing
+     *         brace inclusive
+     */
+    String getBodyText() {
+        return getInputStream().getText(Interval.of(getStartIndex(), bodyStopIndex));
+    }
+
+}
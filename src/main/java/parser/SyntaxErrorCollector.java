@@ -0,0 +1,49 @@
+package parser;
+
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the syntax errors reported while lexing and parsing a single file.
+ *
+ * ANTLR's default listener prints errors straight to the console, which gives
+ * an interleaved and unpredictable output when several files are parsed at
+ * the same time. Collecting the messages instead means that they can be
+ * reported later, in the same order that the files were given.
+ */
+public class SyntaxErrorCollector extends BaseErrorListener {
+
+    private List<String> messages;
+
+    public SyntaxErrorCollector() {
+        messages = new ArrayList<>();
+    }
+
+    @Override
+    public void syntaxError(Recognizer<?, ?> recognizer,
+                            Object offendingSymbol,
+                            int line,
+                            int charPositionInLine,
+                            String msg,
+                            RecognitionException e) {
+        messages.add("line " + line + ":" + charPositionInLine + " " + msg);
+    }
+
+    /**
+     * @return Whether any syntax errors have been recorded
+     */
+    public boolean hasErrors() {
+        return !messages.isEmpty();
+    }
+
+    /**
+     * @return The recorded error messages, in the order they were reported
+     */
+    public List<String> getMessages() {
+        return messages;
+    }
+}
@@ -9,6 +9,7 @@ import util.ErrorReporting;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * Builds a Type object from an AST node.
@@ -34,23 +35,34 @@ public class TypeVisitor extends JavaFileBaseVisitor<Type> {
     }
 
     private ClassTable classTable;
+    private GenericClassInstantiationCache instantiationCache;
     private Mode mode;
     private JavaClass currentClass;
 
     private Map<String, Integer> genericTypesIndexMap;
 
-    public TypeVisitor(ClassTable classTable) {
+    /**
+     * Records every generic class instantiation that has been resolved, in
+     * the order they were resolved.
+     */
+    private List<GenericInstantiation> genericInstantiationsUsed;
+
+    public TypeVisitor(ClassTable classTable, GenericClassInstantiationCache instantiationCache) {
         this.classTable = classTable;
+        this.instantiationCache = instantiationCache;
         mode = Mode.Validated;
         currentClass = null;
         genericTypesIndexMap = null;
+        genericInstantiationsUsed = new ArrayList<>();
     }
 
     public TypeVisitor() {
         this.classTable = null;
+        this.instantiationCache = null;
         mode = Mode.Unvalidated;
         currentClass = null;
         genericTypesIndexMap = null;
+        genericInstantiationsUsed = new ArrayList<>();
     }
 
     /**
@@ -72,6 +84,23 @@ public class TypeVisitor extends JavaFileBaseVisitor<Type> {
         genericTypesIndexMap = null;
     }
 
+    /**
+     * Returns the generic class instantiations resolved since the list was
+     * last cleared.
+     *
+     * @return The instantiations, in the order they were resolved
+     */
+    public List<GenericInstantiation> getGenericInstantiationsUsed() {
+        return genericInstantiationsUsed;
+    }
+
+    /**
+     * Empties the list of generic class instantiations resolved so far.
+     */
+    public void clearGenericInstantiationsUsed() {
+        genericInstantiationsUsed = new ArrayList<>();
+    }
+
     @Override
     public Type visitArrayType(JavaFileParser.ArrayTypeContext ctx) {
         Type elementType = visit(ctx.type());
@@ -138,9 +167,13 @@ public class TypeVisitor extends JavaFileBaseVisitor<Type> {
                             + " type arguments but got " + typeArguments.size();
                     ErrorReporting.reportError(message, ctx, currentClass.toString());
                 }
-                return GenericClassInstantiationCache
-                        .getInstance()
-                        .getActualClass(genericJavaClass, typeArguments);
+                List<String> typeArgumentNames = typeArguments
+                        .stream()
+                        .map(Object::toString)
+                        .collect(Collectors.toList());
+                genericInstantiationsUsed.add(new GenericInstantiation(
+                        genericJavaClass.getName(), typeArgumentNames));
+                return instantiationCache.getActualClass(genericJavaClass, typeArguments);
             } else {
                 if (!typeArguments.isEmpty()) {
                     String message = "The class " + objectType +
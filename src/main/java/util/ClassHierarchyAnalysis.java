@@ -0,0 +1,101 @@
+package util;
+
+import ast.types.JavaClass;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Works out which method calls can only ever reach one method, from the
+ * class hierarchy of the whole program.
+ *
+ * A call through slot k of the virtual table of a class can reach the
+ * method in slot k of that class or of any of its subclasses. If none of
+ * the subclasses puts a different method in that slot, then the call always
+ * reaches the same method and can be made directly.
+ *
+ * This is only sound when every subclass is known, so it must not be used
+ * for code that may later be linked with other classes. Instantiations of a
+ * generic class share the virtual table and the code of the generic class,
+ * so they are treated as the generic class.
+ */
+public class ClassHierarchyAnalysis {
+
+    /**
+     * The method in each slot of the virtual table of each class
+     */
+    private Map<JavaClass, List<FunctionTableEntry>> virtualTables;
+
+    /**
+     * The slots of the virtual table of each class that some subclass
+     * overrides
+     */
+    private Map<JavaClass, boolean[]> overriddenSlots;
+
+    public ClassHierarchyAnalysis(ClassTable classTable, FunctionTable functionTable) {
+        virtualTables = new HashMap<>();
+        overriddenSlots = new HashMap<>();
+        for (JavaClass javaClass : classTable.getClasses()) {
+            List<FunctionTableEntry> entries = new ArrayList<>();
+            for (int index : javaClass.getVirtualTable()) {
+                entries.add(functionTable.getEntry(index));
+            }
+            virtualTables.put(javaClass, entries);
+            overriddenSlots.put(javaClass, new boolean[entries.size()]);
+        }
+
+        // A method of an instantiation of a generic class shares the code of
+        // the method of the generic class, so it is replaced by that method
+        for (List<FunctionTableEntry> entries : virtualTables.values()) {
+            for (int offset = 0; offset < entries.size(); offset++) {
+                JavaClass genericClass = entries.get(offset).getContainingClass().getGenericClass();
+                List<FunctionTableEntry> genericEntries = (genericClass != null) ? virtualTables.get(genericClass) : null;
+                if (genericEntries != null && offset < genericEntries.size()) {
+                    entries.set(offset, genericEntries.get(offset));
+                }
+            }
+        }
+
+        // Compare each class with every one of its ancestors
+        for (JavaClass javaClass : classTable.getClasses()) {
+            List<FunctionTableEntry> entries = virtualTables.get(javaClass);
+            for (JavaClass ancestor = javaClass.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+                JavaClass ancestorClass = getVirtualTableClass(ancestor);
+                List<FunctionTableEntry> ancestorEntries = virtualTables.get(ancestorClass);
+                if (ancestorEntries == null) {
+                    continue;
+                }
+                boolean[] overridden = overriddenSlots.get(ancestorClass);
+                for (int offset = 0; offset < ancestorEntries.size(); offset++) {
+                    if (offset >= entries.size() || entries.get(offset) != ancestorEntries.get(offset)) {
+                        overridden[offset] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the only method that a method call can reach.
+     *
+     * @param receiverClass The static class of the object the method is
+     *                      called on
+     * @param virtualTableOffset The offset of the method in the virtual table
+     * @return The function table entry of the method, or null if the call
+     *         could reach more than one method
+     */
+    public FunctionTableEntry getMonomorphicTarget(JavaClass receiverClass, int virtualTableOffset) {
+        JavaClass tableClass = getVirtualTableClass(receiverClass);
+        boolean[] overridden = overriddenSlots.get(tableClass);
+        if (overridden == null || virtualTableOffset >= overridden.length || overridden[virtualTableOffset]) {
+            return null;
+        }
+        return virtualTables.get(tableClass).get(virtualTableOffset);
+    }
+
+    private static JavaClass getVirtualTableClass(JavaClass javaClass) {
+        return (javaClass.getGenericClass() != null) ? javaClass.getGenericClass() : javaClass;
+    }
+}
@@ -5,17 +5,20 @@ import errors.DuplicateClassDefinitionException;
 import errors.UnknownClassException;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ClassTable {
 
     private List<JavaClass> classes;
     private Map<String, JavaClass> classesNameMap;
     private Map<GenericJavaClass, Set<JavaClass>> instantiations;
+    private Map<String, JavaClass> instantiationsNameMap;
 
     public ClassTable() {
         classes = new ArrayList<>();
         classesNameMap = new HashMap<>();
         instantiations = new HashMap<>();
+        instantiationsNameMap = new ConcurrentHashMap<>();
     }
 
     public void registerClass(String name, JavaClass javaClass) throws DuplicateClassDefinitionException {
@@ -27,12 +30,22 @@ public class ClassTable {
         classesNameMap.put(name, javaClass);
     }
 
-    public void registerInstantiation(GenericJavaClass genericClass, JavaClass instantiation) {
+    /**
+     * Records that a generic class has been instantiated.
+     *
+     * Generic classes can be instantiated by several threads at once while
+     * the ASTs are built, so this is synchronised.
+     *
+     * @param genericClass The generic class
+     * @param instantiation The class that was instantiated from it
+     */
+    public synchronized void registerInstantiation(GenericJavaClass genericClass, JavaClass instantiation) {
         if (!instantiations.containsKey(genericClass)) {
             instantiations.put(genericClass, new HashSet<>());
         }
         Set<JavaClass> set = instantiations.get(genericClass);
         set.add(instantiation);
+        instantiationsNameMap.put(instantiation.toString(), instantiation);
     }
 
     public JavaClass lookupClass(String name) throws UnknownClassException {
@@ -44,6 +57,40 @@ public class ClassTable {
         return javaClass;
     }
 
+    /**
+     * Looks up an instantiation of a generic class from its full name, for
+     * example "GenericContainer<Integer>".
+     *
+     * @param name The name of the instantiation
+     * @return The instantiated class, or null if there is no such
+     *         instantiation
+     */
+    public JavaClass lookupInstantiation(String name) {
+        return instantiationsNameMap.get(name);
+    }
+
+    /**
+     * @return The number of distinct instantiations of generic classes
+     */
+    public int getNumInstantiations() {
+        return instantiationsNameMap.size();
+    }
+
+    /**
+     * @return Every distinct instantiation of a generic class
+     */
+    public Collection<JavaClass> getInstantiations() {
+        return instantiationsNameMap.values();
+    }
+
+    /**
+     * @return All classes defined in the program, in the order they were
+     *         registered
+     */
+    public List<JavaClass> getClasses() {
+        return classes;
+    }
+
     /**
      * Forces all classes in the table to validate any unchecked class
      * references.
@@ -52,6 +99,13 @@ public class ClassTable {
         for (JavaClass javaClass : classes) {
             javaClass.validateAllAttributeTypes(this);
         }
+
+        // Now that the attribute types are known, lay out each class. The
+        // layouts of generic instantiations are built when they are first
+        // needed.
+        for (JavaClass javaClass : classes) {
+            javaClass.getLayout();
+        }
     }
 
     public Type validateType(Type toValidate) {
@@ -75,21 +129,18 @@ public class ClassTable {
     /**
      * Builds a virtual table by concatenating the virtual table of every class.
      *
+     * Instantiations of a generic class share the virtual table of the
+     * generic class, so the table only depends on the classes that were
+     * declared and can be built before any generic class is instantiated.
+     *
      * @return The combined virtual table
      */
     public VirtualTable buildCombinedVirtualTable() {
         List<Integer> table = new ArrayList<>();
         Map<JavaClass, Integer> startIndexMap = new HashMap<>();
         for (JavaClass javaClass : classes) {
-            List<Integer> virtualTable = javaClass.getVirtualTable();
-            int startIndex = table.size();
-            startIndexMap.put(javaClass, startIndex);
-            if (javaClass instanceof GenericJavaClass) {
-                for (JavaClass instantiation : instantiations.get(javaClass)) {
-                    startIndexMap.put(instantiation, startIndex);
-                }
-            }
-            table.addAll(virtualTable);
+            startIndexMap.put(javaClass, table.size());
+            table.addAll(javaClass.getVirtualTable());
         }
         return new VirtualTable(table, startIndexMap);
     }
@@ -2,80 +2,1127 @@ package util;
 
 import ast.structure.ClassMethod;
 import ast.types.GenericClassInstantiationCache;
+import ast.types.GenericInstantiation;
 import ast.types.JavaClass;
 import codegen.CodeEmitter;
+import codegen.CodeGenUtil;
+import codegen.OutputFormat;
+import codegen.RuntimeModule;
 import codegen.WasmGenerator;
+import codegen.binary.WatAssembler;
+import errors.CompilationAbortedException;
+import errors.InvalidObjectModuleException;
 import errors.SyntaxErrorException;
+import errors.UnknownClassException;
+import errors.WatAssemblyException;
+import ir.passes.PassManager;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.misc.Interval;
 import parser.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+/**
+ * A single compilation of a set of sources into a WebAssembly module.
+ *
+ * The sources are given as strings or streams, and the module and any
+ * diagnostics are returned in memory or the module is written to a stream,
+ * so that the compiler can be embedded in another program.
+ *
+ * A Compilation holds all of the state of the compiler, so any number of
+ * compilations can run at the same time in one JVM. The only state shared
+ * between them is the runtime library, which never changes, and the
+ * parser's DFA states, which ANTLR shares between all parsers.
+ *
+ * For example:
+ * <pre>
+ *   Compilation compilation = new Compilation(new CompilerOptions());
+ *   compilation.addSource("Main.java", code);
+ *   CompilationResult result = compilation.compile();
+ * </pre>
+ *
+ * Parts of a program can also be compiled separately. With the compile-only
+ * option, the sources are compiled into an ObjectModule rather than a
+ * complete module, and object modules added with addObjectModule() are
+ * linked with the sources, so that only the classes that have changed need
+ * to be compiled again.
+ */
 public class Compilation {
 
+    /**
+     * The number of methods compiled at once in streaming mode. This is
+     * enough to keep several threads busy, while bounding the number of
+     * parse trees, ASTs and compiled methods held in memory at any time.
+     */
+    private static final int STREAMING_BATCH_SIZE = 64;
+
+    private CompilerOptions options;
+    private List<CharStream> sources;
+
+    /**
+     * The classes defined by the object modules that have been added
+     */
+    private List<ImportedClass> importedClasses;
+
+    /**
+     * Warnings reported by the current call to compile()
+     */
+    private List<String> diagnostics;
+
+    /**
+     * The state of the current call to compile(), which is shared by each
+     * batch of methods that is compiled
+     */
+    private ParserWrapper parserWrapper;
+    private DFACache parserCache;
+    private ClassTable classTable;
+    private FunctionTable functionTable;
+    private GenericClassInstantiationCache instantiationCache;
+    private CompilationCache cache;
+    private VirtualTable virtualTable;
+    private int numMethodsBuilt;
+
+    /**
+     * The optimisation passes run by the current call to compile(), or null
+     * if code is generated straight from the AST of each method
+     */
+    private PassManager passManager;
+
+    /**
+     * The intermediate representation of each method built by the current
+     * call to compile(), or null if it is not being written out
+     */
+    private List<String> irDumps;
+
+    /**
+     * The intermediate representation to return in the result of the
+     * current call to compile(), when it is not written to a file
+     */
+    private String printedIR;
+
+    /**
+     * The state used to link the methods from object modules, during the
+     * current call to compile()
+     */
+    private Map<SubroutineToCompile, ImportedMethod> importedMethods;
+    private Map<String, String> linkedFunctionNames;
+    private int numFunctionsLinked;
+    private int numMethodsLinked;
+
+    public Compilation(CompilerOptions options) {
+        this.options = options;
+        sources = new ArrayList<>();
+        importedClasses = new ArrayList<>();
+        diagnostics = new ArrayList<>();
+    }
+
+    /**
+     * Adds the code of one class to be compiled.
+     *
+     * @param name The name of the file that the code came from, which is used
+     *             in error messages
+     * @param code The source code
+     */
+    public void addSource(String name, String code) {
+        sources.add(CharStreams.fromString(code, name));
+    }
+
+    /**
+     * Adds the code of one class to be compiled, read from a stream in UTF-8.
+     * The stream is read immediately, but is not closed.
+     *
+     * @param name The name of the file that the code came from, which is used
+     *             in error messages
+     * @param stream The stream to read the source code from
+     * @throws IOException If the stream cannot be read
+     */
+    public void addSource(String name, InputStream stream) throws IOException {
+        Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8);
+        sources.add(CharStreams.fromReader(reader, name));
+    }
+
+    /**
+     * Adds an object module to be linked with the sources, read from a
+     * stream. The stream is read immediately, but is not closed.
+     *
+     * @param name The name of the file that the module came from, which is
+     *             used in error messages
+     * @param stream The stream to read the module from
+     * @throws IOException If the stream cannot be read
+     * @throws InvalidObjectModuleException If the stream does not contain a
+     *                                      valid object module
+     */
+    public void addObjectModule(String name, InputStream stream)
+            throws IOException, InvalidObjectModuleException {
+        ObjectModule module = ObjectModule.read(name, stream);
+        for (ObjectModule.ExportedClass export : module.getExports()) {
+            CharStream declarations = CharStreams.fromString(export.getDeclarations(), export.getFileName());
+            importedClasses.add(new ImportedClass(name, module, export, declarations));
+        }
+    }
+
+    /**
+     * Compiles the sources that have been added.
+     *
+     * Errors in the program are reported through the result rather than
+     * thrown, along with any warnings.
+     *
+     * @return The result of the compilation
+     */
+    public CompilationResult compile() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CompilationResult result = compileTo(output);
+        byte[] module = result.isSuccessful() ? output.toByteArray() : null;
+        return new CompilationResult(result.isSuccessful(), module, result.getDiagnostics(), result.getTimings(),
+                result.getPrintedIR());
+    }
+
+    /**
+     * Compiles the sources that have been added, writing the module to a
+     * stream rather than returning it.
+     *
+     * In streaming mode, the text of each method is written as soon as it
+     * has been compiled, so if the compilation fails then part of a module
+     * may already have been written. The stream is not closed.
+     *
+     * @param output The stream to write the module to
+     * @return The result of the compilation, without the module
+     */
+    public CompilationResult compileTo(OutputStream output) {
+        diagnostics = new ArrayList<>();
+        printedIR = null;
+        CompilationTimings timings = new CompilationTimings();
+        boolean successful = false;
+        try {
+            compile(timings, output);
+            successful = true;
+        } catch (CompilationAbortedException e) {
+            diagnostics.add(e.getMessage());
+        } catch (IOException e) {
+            diagnostics.add("Unable to write module: " + e.getMessage());
+        } catch (UncheckedIOException e) {
+            diagnostics.add("Unable to write module: " + e.getCause().getMessage());
+        }
+        return new CompilationResult(successful, null, diagnostics, timings, printedIR);
+    }
+
+    /**
+     * Builds the runtime module, which programs compiled with the shared
+     * runtime option import the runtime library from.
+     *
+     * @param format The format to build the module in
+     * @return The runtime module
+     * @throws CompilationAbortedException If the module cannot be assembled
+     */
+    public static byte[] buildRuntimeModule(OutputFormat format) {
+        if (format == OutputFormat.WASM) {
+            try {
+                return WasmGenerator.assembleRuntimeModule();
+            } catch (WatAssemblyException e) {
+                ErrorReporting.reportError("Unable to encode binary module: " + e.getMessage());
+            }
+        }
+        CodeEmitter emitter = new CodeEmitter();
+        RuntimeModule.emitRuntimeModule(emitter);
+        return emitter.getEmittedCode().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compiles a set of files, writing the module to a file. This is
+     * equivalent to compileFiles(fileNames, outputFileName, options) with
+     * only the debug option set, and is kept for existing callers.
+     *
+     * @param fileNames The files to compile
+     * @param outputFileName The file to write the module to
+     * @param debug Whether to include debugging functions
+     * @throws IOException If the module cannot be written
+     * @throws CompilationAbortedException If the program cannot be compiled
+     */
     public static void compileFiles(String[] fileNames, String outputFileName, boolean debug) throws IOException {
+        CompilerOptions options = new CompilerOptions();
+        options.setDebug(debug);
+        compileFiles(fileNames, outputFileName, options);
+    }
 
-        // First use ANTLR to generate a parse tree for every file.
-        List<JavaFileParser.FileContext> parseTrees = new ArrayList<>();
+    /**
+     * Compiles a set of files, writing the module to a file. Files with the
+     * object module extension are linked with the others.
+     *
+     * The module is written to a temporary file, which replaces the output
+     * file once the compilation has succeeded, so the output file is never
+     * left incomplete.
+     *
+     * Warnings, the intermediate representation after a pass and the
+     * timings, if they were requested, are printed to standard error.
+     *
+     * @param fileNames The files to compile
+     * @param outputFileName The file to write the module to
+     * @param options The options for the compilation
+     * @throws IOException If the module cannot be written
+     * @throws CompilationAbortedException If the program cannot be compiled
+     */
+    public static void compileFiles(String[] fileNames, String outputFileName, CompilerOptions options)
+            throws IOException {
+        Compilation compilation = new Compilation(options);
         for (String fileName : fileNames) {
-            try {
-                parseTrees.add(ParserWrapper.parse(fileName));
-            } catch (SyntaxErrorException e) {
-                ErrorReporting.reportError(e.getMessage());
+            try (InputStream stream = Files.newInputStream(Paths.get(fileName))) {
+                if (fileName.endsWith(ObjectModule.FILE_EXTENSION)) {
+                    compilation.addObjectModule(fileName, stream);
+                } else {
+                    compilation.addSource(fileName, stream);
+                }
             } catch (IOException e) {
                 ErrorReporting.reportError("Unable to read file " + fileName);
+            } catch (InvalidObjectModuleException e) {
+                ErrorReporting.reportError(e.getMessage());
             }
         }
 
+        Path outputPath = Paths.get(outputFileName).toAbsolutePath();
+        Path temporaryPath = Files.createTempFile(outputPath.getParent(), outputPath.getFileName().toString(), ".tmp");
+        CompilationResult result;
+        try {
+            // The text of the module is encoded and written straight to the
+            // file's channel, so the stream is not buffered
+            try (OutputStream output = new FileOutputStream(temporaryPath.toFile())) {
+                result = compilation.compileTo(output);
+            }
+            if (result.isSuccessful()) {
+                Files.move(temporaryPath, outputPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+
+        // If the compilation failed, the error is the last diagnostic
+        List<String> diagnostics = result.getDiagnostics();
+        int numWarnings = result.isSuccessful() ? diagnostics.size() : diagnostics.size() - 1;
+        for (String warning : diagnostics.subList(0, numWarnings)) {
+            System.err.println(warning);
+        }
+        if (result.getPrintedIR() != null) {
+            System.err.print(result.getPrintedIR());
+        }
+        if (!result.isSuccessful()) {
+            throw new CompilationAbortedException(diagnostics.get(numWarnings));
+        }
+        if (options.getTimingsFormat() != null) {
+            System.err.println(result.getTimings().format(options.getTimingsFormat()));
+        }
+    }
+
+    /**
+     * Runs each phase of the compiler in turn.
+     *
+     * @param timings The timings to record each phase in
+     * @param output The stream to write the module to
+     * @throws IOException If the module cannot be written
+     * @throws CompilationAbortedException If the program cannot be compiled
+     */
+    private void compile(CompilationTimings timings, OutputStream output) throws IOException {
+        // Only the code that can be reached from the entry points is kept,
+        // which needs the AST of every method in the program at once
+        boolean eliminatesDeadCode = !options.getEntryPoints().isEmpty();
+        if (eliminatesDeadCode && options.getCompileOnly()) {
+            ErrorReporting.reportError("Entry points cannot be given when compiling an object module");
+        }
+        if (eliminatesDeadCode && options.getStreaming()) {
+            ErrorReporting.reportError("Entry points cannot be given in streaming mode");
+        }
+        if (eliminatesDeadCode && !importedClasses.isEmpty()) {
+            ErrorReporting.reportError("Entry points cannot be given when linking object modules");
+        }
+
+        // First use ANTLR to generate a parse tree for every file. The files
+        // are parsed in parallel, but the trees come back in the same order
+        // as the file names. Method bodies are skipped here, and are only
+        // parsed when their ASTs are built, so that the bodies of methods
+        // loaded from the cache are never parsed at all.
+        // The declarations of the classes from object modules are parsed
+        // along with the sources.
+        timings.startPhase("parse");
+        List<CharStream> allSources = new ArrayList<>(sources);
+        for (ImportedClass importedClass : importedClasses) {
+            allSources.add(importedClass.declarations);
+        }
+        timings.setCount("files", allSources.size());
+        if (options.getParserCacheFile() != null) {
+            parserCache = new DFACache(options.getParserCacheFile());
+            parserCache.load();
+        }
+        parserWrapper = new ParserWrapper();
+        List<JavaFileParser.FileContext> parseTrees = new ArrayList<>();
+        try {
+            parseTrees = parserWrapper.parseAllDeclarations(allSources);
+        } catch (SyntaxErrorException e) {
+            ErrorReporting.reportError(e.getMessage());
+        }
+        timings.endPhase(allSources.size(), "files");
+
         // First determine the class hierarchy so that we can derive an order
         // for visiting each class.
+        timings.startPhase("class hierarchy");
         ClassHierarchyBuilder hierarchyBuilder = new ClassHierarchyBuilder();
         for (JavaFileParser.FileContext parseTree : parseTrees) {
             hierarchyBuilder.visit(parseTree);
         }
         List<JavaFileParser.ClassDefinitionContext> classes =
                 hierarchyBuilder.getSerialClassOrdering();
+        timings.endPhase(classes.size(), "classes");
 
         // Now that we have a serial ordering, build up a memory representation
         // of each class.
+        timings.startPhase("tables");
         FunctionAndClassTableBuilder functionAndClassTableBuilder = new FunctionAndClassTableBuilder();
         for (JavaFileParser.ClassDefinitionContext classDefinitionContext : classes) {
             functionAndClassTableBuilder.visit(classDefinitionContext);
         }
-        ClassTable classTable = functionAndClassTableBuilder.getClassTable();
+        classTable = functionAndClassTableBuilder.getClassTable();
+        functionTable = functionAndClassTableBuilder.getFunctionTable();
+        timings.endPhase(functionTable.getFunctions().size(), "functions");
 
         // Now that we have built a memory representation of all types in the
         // program, we can update any class attributes that have not yet been
         // checked to ensure that they reference a type that actually exists.
+        timings.startPhase("validate types");
         classTable.validateAllTypes();
 
-        // Now build a function table
-        FunctionTable functionTable = functionAndClassTableBuilder.getFunctionTable();
-        GenericClassInstantiationCache.getInstance().setFunctionTable(functionTable);
-        GenericClassInstantiationCache.getInstance().setClassTable(classTable);
+        // Now validate the function table
+        instantiationCache = new GenericClassInstantiationCache(functionTable, classTable);
         functionTable.validateAllTypes(classTable);
+        timings.endPhase(classTable.getClasses().size(), "classes");
+
+        // If caching is enabled, open the cache now that the declarations it
+        // depends on are known. Object modules are always compiled from
+        // scratch, since their code refers to virtual tables by name, and so
+        // is every method when its intermediate representation is written
+        // out or when unreachable methods are to be left out.
+        passManager = null;
+        if (usesIR()) {
+            // Calls can only be devirtualised when every subclass is known,
+            // which is not the case for an object module
+            ClassHierarchyAnalysis hierarchy = options.getCompileOnly()
+                    ? null : new ClassHierarchyAnalysis(classTable, functionTable);
+            passManager = PassManager.forLevel(options.getOptimisationLevel(), hierarchy, functionTable);
+            String printAfterPass = options.getPrintAfterPass();
+            passManager.setPrintAfter(printAfterPass);
+            if (printAfterPass != null && !passManager.runsPass(printAfterPass)) {
+                diagnostics.add("Warning: the pass " + printAfterPass + " is not run at -O"
+                        + options.getOptimisationLevel());
+            }
+        }
+        cache = null;
+        boolean dumpsIR = options.getIRDumpFile() != null || options.getPrintAfterPass() != null;
+        irDumps = dumpsIR ? new ArrayList<>() : null;
+        if (options.getCacheDirectory() != null && !options.getCompileOnly() && irDumps == null
+                && !eliminatesDeadCode) {
+            try {
+                String codeGenerationSettings = usesIR() ? "ir-O" + options.getOptimisationLevel() : "ast";
+                cache = new CompilationCache(options.getCacheDirectory(), codeGenerationSettings,
+                        classTable, functionTable);
+            } catch (IOException e) {
+                ErrorReporting.reportError("Unable to open cache directory "
+                        + options.getCacheDirectory());
+            }
+        }
+
+        // Build a virtual table now that all classes have been seen. Generic
+        // instantiations share the virtual table of their generic class, so
+        // this does not need to wait for the methods that use them.
+        timings.startPhase("virtual table");
+        virtualTable = classTable.buildCombinedVirtualTable();
+        virtualTable.setRelocatable(options.getCompileOnly());
+        timings.endPhase(virtualTable.getEntries().size(), "entries");
 
-        // Convert the parse tree of each method into an AST
-        ASTBuilder astBuilder = new ASTBuilder(functionTable, classTable);
         List<SubroutineToCompile> subroutines = functionAndClassTableBuilder.getSubroutines();
         List<JavaClass> containingClasses = functionAndClassTableBuilder.getContainingClasses();
-        List<ClassMethod> methodASTs = new ArrayList<>();
+        int numFunctionsBeforeASTs = functionTable.getFunctions().size();
+        List<List<GenericInstantiation>> instantiationsUsed = new ArrayList<>();
+        numMethodsBuilt = 0;
+
+        // Check that every object module was compiled against the classes
+        // that it is now being linked with, and find the code of each method
+        // that comes from an object module
+        timings.startPhase("check object modules");
+        Map<CharStream, List<SubroutineToCompile>> subroutinesBySource = new IdentityHashMap<>();
+        for (CharStream source : allSources) {
+            subroutinesBySource.put(source, new ArrayList<>());
+        }
+        for (SubroutineToCompile subroutine : subroutines) {
+            subroutinesBySource.get(subroutine.getSource()).add(subroutine);
+        }
+        Map<String, String> declarationsHashes = new HashMap<>();
+        for (int i = 0; i < sources.size(); i++) {
+            CharStream source = sources.get(i);
+            String declarations = getDeclarations(source, subroutinesBySource.get(source));
+            declarationsHashes.put(getClassName(parseTrees.get(i)),
+                    ObjectModule.getDeclarationsHash(declarations));
+        }
+        for (ImportedClass importedClass : importedClasses) {
+            declarationsHashes.put(importedClass.export.getClassName(),
+                    ObjectModule.getDeclarationsHash(importedClass.export.getDeclarations()));
+        }
+        importedMethods = new IdentityHashMap<>();
+        linkedFunctionNames = new HashMap<>();
+        numFunctionsLinked = 0;
+        numMethodsLinked = 0;
+        for (ImportedClass importedClass : importedClasses) {
+            checkImports(importedClass, declarationsHashes);
+            findImportedMethods(importedClass, subroutinesBySource.get(importedClass.declarations));
+        }
+        timings.endPhase(importedClasses.size(), "classes");
+
+        if (options.getCompileOnly()) {
+            compileObjectModule(parseTrees, subroutines, containingClasses, numFunctionsBeforeASTs,
+                    subroutinesBySource, output, timings);
+        } else if (options.getStreaming()) {
+            compileStreaming(subroutines, containingClasses, numFunctionsBeforeASTs, instantiationsUsed,
+                    output, timings);
+        } else {
+            // Compile every method at once
+            List<String> compiledMethods = compileSubroutines(subroutines, containingClasses,
+                    instantiationsUsed, timings);
+            sortInstantiatedFunctions(numFunctionsBeforeASTs, instantiationsUsed);
+
+            // Finally, emit the module
+            timings.startPhase("emit module");
+            if (options.getOutputFormat() == OutputFormat.WASM) {
+                try {
+                    output.write(WasmGenerator.assembleModule(compiledMethods, functionTable, virtualTable,
+                            options.getDebug(), options.getSharedRuntime()));
+                } catch (WatAssemblyException e) {
+                    ErrorReporting.reportError("Unable to encode binary module: " + e.getMessage());
+                }
+            } else {
+                // Write the text straight to the stream as it is emitted
+                CodeEmitter emitter = new CodeEmitter(Channels.newChannel(output));
+                WasmGenerator.emitModule(compiledMethods, emitter, functionTable, virtualTable,
+                        options.getDebug(), options.getSharedRuntime());
+                emitter.flush();
+            }
+            timings.endPhase(compiledMethods.size(), "methods");
+        }
+        timings.setCount("parses retried in LL mode", parserWrapper.getNumLLFallbacks());
+
+        if (passManager != null) {
+            timings.setPasses(passManager.getStatistics());
+        }
+
+        // Write out the intermediate representation, or return it in the
+        // result if it was only asked for after a pass
+        if (irDumps != null && options.getIRDumpFile() != null) {
+            try {
+                Files.write(Paths.get(options.getIRDumpFile()),
+                        String.join("\n", irDumps).getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                diagnostics.add("Warning: unable to write intermediate representation: " + e.getMessage());
+            }
+        } else if (irDumps != null) {
+            printedIR = String.join("\n", irDumps);
+        }
+
+        // Save the parser's state only once the method bodies have also been
+        // parsed
+        if (parserCache != null) {
+            try {
+                parserCache.save();
+            } catch (IOException e) {
+                diagnostics.add("Warning: unable to write parser cache: " + e.getMessage());
+            }
+        }
+
+        timings.setCount("classes", classTable.getClasses().size());
+        timings.setCount("methods", subroutines.size());
+        timings.setCount("methods linked from object modules", numMethodsLinked);
+        timings.setCount("methods loaded from cache", subroutines.size() - numMethodsBuilt - numMethodsLinked);
+        timings.setCount("generic instantiations", classTable.getNumInstantiations());
+    }
+
+    /**
+     * Compiles the methods a batch at a time, writing out the code of each
+     * batch before the next is built.
+     *
+     * The parse tree of a method body, its AST and its code can then be
+     * garbage collected as soon as its batch has been written, so the memory
+     * used grows with the size of the largest methods rather than with the
+     * size of the whole program. Only the class and function tables are kept
+     * until the end, from which the function types and virtual tables are
+     * emitted after the last method.
+     *
+     * A binary module can only be assembled once all of its text is known,
+     * so with the WASM output format the text is collected in memory and
+     * only the parse trees and ASTs are released early.
+     *
+     * @param subroutines The subroutines to compile
+     * @param containingClasses The class containing each subroutine
+     * @param numFunctionsBeforeASTs The number of functions in the function
+     *                               table before any method was built
+     * @param instantiationsUsed A list to which the generic instantiations
+     *                           used by each subroutine are added, in order
+     * @param output The stream to write the module to
+     * @param timings The timings to record each phase in
+     * @throws IOException If the module cannot be written
+     */
+    private void compileStreaming(List<SubroutineToCompile> subroutines,
+                                  List<JavaClass> containingClasses,
+                                  int numFunctionsBeforeASTs,
+                                  List<List<GenericInstantiation>> instantiationsUsed,
+                                  OutputStream output,
+                                  CompilationTimings timings) throws IOException {
+        timings.startPhase("compile methods");
+        boolean binary = options.getOutputFormat() == OutputFormat.WASM;
+        CodeEmitter emitter = binary ? new CodeEmitter() : new CodeEmitter(Channels.newChannel(output));
+        WasmGenerator.emitModuleStart(emitter, options.getDebug(), options.getSharedRuntime());
+        for (int start = 0; start < subroutines.size(); start += STREAMING_BATCH_SIZE) {
+            int end = Math.min(start + STREAMING_BATCH_SIZE, subroutines.size());
+            List<String> compiledMethods = compileSubroutines(subroutines.subList(start, end),
+                    containingClasses.subList(start, end), instantiationsUsed, null);
+            for (int i = 0; i < compiledMethods.size(); i++) {
+                WasmGenerator.emitMethod(compiledMethods.get(i), start + i, emitter, options.getDebug());
+            }
+        }
+        timings.endPhase(subroutines.size(), "methods");
+
+        // Now that every generic instantiation is known, emit the rest of
+        // the module
+        timings.startPhase("emit module");
+        sortInstantiatedFunctions(numFunctionsBeforeASTs, instantiationsUsed);
+        WasmGenerator.emitModuleEnd(emitter, functionTable, virtualTable);
+        if (binary) {
+            try {
+                output.write(WatAssembler.assemble(emitter.getEmittedCode(), options.getDebug()));
+            } catch (WatAssemblyException e) {
+                ErrorReporting.reportError("Unable to encode binary module: " + e.getMessage());
+            }
+        } else {
+            emitter.flush();
+        }
+        timings.endPhase(subroutines.size(), "methods");
+    }
 
-        // Parse each method, also passing in the containing class
+    /**
+     * Compiles a list of subroutines into WebAssembly, using the code from an
+     * object module or the cached version of each one if there is one, and
+     * storing the others in the cache once they have been compiled.
+     *
+     * @param subroutines The subroutines to compile
+     * @param containingClasses The class containing each subroutine
+     * @param instantiationsUsed A list to which the generic instantiations
+     *                           used by each subroutine are added, in order
+     * @param timings The timings to record each phase in, or null if the
+     *                caller times the whole list as one phase
+     * @return The code for each subroutine, in order
+     */
+    private List<String> compileSubroutines(List<SubroutineToCompile> subroutines,
+                                            List<JavaClass> containingClasses,
+                                            List<List<GenericInstantiation>> instantiationsUsed,
+                                            CompilationTimings timings) {
+        // Convert the parse tree of each method into an AST
+        if (timings != null) {
+            timings.startPhase("build ASTs");
+        }
+
+        // Track which methods were loaded from the cache, and the details
+        // needed to store the others once they have been compiled
+        int firstPosition = instantiationsUsed.size();
+        List<String> compiledMethods = new ArrayList<>();
+        List<Integer> builtMethodPositions = new ArrayList<>();
+        List<String> builtMethodKeys = new ArrayList<>();
+        List<SubroutineToCompile> subroutinesToBuild = new ArrayList<>();
+        List<JavaClass> classesToBuild = new ArrayList<>();
+
+        // Use the code from an object module or the cached version of each
+        // method if there is one, replaying any generic instantiations so
+        // that the function table ends up the same as if the method had been
+        // built from scratch
         for (int i = 0; i < subroutines.size(); i++) {
             SubroutineToCompile subroutine = subroutines.get(i);
             JavaClass containingClass = containingClasses.get(i);
-            ClassMethod methodAST = astBuilder.visitSubroutine(subroutine, containingClass);
-            methodASTs.add(methodAST);
+            ImportedMethod importedMethod = importedMethods.get(subroutine);
+            if (importedMethod != null) {
+                List<GenericInstantiation> instantiations = importedMethod.method.getGenericInstantiations();
+                CompilationCache.replayInstantiations(instantiations, classTable, instantiationCache);
+                compiledMethods.add(linkMethod(importedMethod));
+                instantiationsUsed.add(instantiations);
+                numMethodsLinked++;
+                continue;
+            }
+            String key = null;
+            if (cache != null) {
+                key = cache.getKey(subroutine, containingClass);
+                CompilationCache.CachedMethod cachedMethod = cache.lookup(key);
+                if (cachedMethod != null) {
+                    CompilationCache.replayInstantiations(cachedMethod, classTable, instantiationCache);
+                    compiledMethods.add(cachedMethod.getCode());
+                    instantiationsUsed.add(cachedMethod.getGenericInstantiations());
+                    continue;
+                }
+            }
+            compiledMethods.add(null);
+            instantiationsUsed.add(null);
+            builtMethodPositions.add(i);
+            builtMethodKeys.add(key);
+            subroutinesToBuild.add(subroutine);
+            classesToBuild.add(containingClass);
+        }
+
+        // Build the rest in parallel
+        List<List<GenericInstantiation>> builtMethodInstantiations = new ArrayList<>();
+        List<ClassMethod> methodASTs = buildASTs(subroutinesToBuild, classesToBuild, functionTable,
+                classTable, instantiationCache, parserWrapper, builtMethodInstantiations);
+        for (int i = 0; i < builtMethodPositions.size(); i++) {
+            instantiationsUsed.set(firstPosition + builtMethodPositions.get(i), builtMethodInstantiations.get(i));
+        }
+        numMethodsBuilt += methodASTs.size();
+        if (timings != null) {
+            timings.endPhase(methodASTs.size(), "methods");
+        }
+
+        // If entry points were given, every method has been built, so the
+        // ones that cannot be reached from them can now be left out
+        Set<String> exportedFunctions = null;
+        if (!options.getEntryPoints().isEmpty()) {
+            ReachabilityAnalysis reachability = eliminateDeadCode(methodASTs, timings);
+            exportedFunctions = reachability.getEntryPoints();
+            for (int i = methodASTs.size() - 1; i >= 0; i--) {
+                if (!reachability.isReachable(methodASTs.get(i))) {
+                    methodASTs.remove(i);
+                    builtMethodPositions.remove(i);
+                    builtMethodKeys.remove(i);
+                    builtMethodInstantiations.remove(i);
+                }
+            }
+        }
+
+        // Compile each AST into WebAssembly, filling in the gaps left by the
+        // methods that were loaded from the cache
+        if (timings != null) {
+            timings.startPhase("generate code");
+        }
+        List<String> builtMethods = WasmGenerator.compileMethods(
+                methodASTs, functionTable, classTable, virtualTable, passManager, irDumps, exportedFunctions);
+        if (timings != null) {
+            timings.endPhase(builtMethods.size(), "methods");
+        }
+
+        // Splice the newly compiled methods in, storing them in the cache
+        if (timings != null) {
+            timings.startPhase("store in cache");
+        }
+        for (int i = 0; i < builtMethods.size(); i++) {
+            compiledMethods.set(builtMethodPositions.get(i), builtMethods.get(i));
+            if (cache != null) {
+                try {
+                    cache.store(builtMethodKeys.get(i), builtMethodInstantiations.get(i), builtMethods.get(i));
+                } catch (IOException e) {
+                    diagnostics.add("Warning: unable to write to cache: " + e.getMessage());
+                }
+            }
+        }
+        if (timings != null) {
+            timings.endPhase(cache != null ? builtMethods.size() : 0, "methods");
+        }
+
+        // Close the gaps left by the methods that were not reachable
+        if (exportedFunctions != null) {
+            compiledMethods.removeIf(Objects::isNull);
+        }
+        return compiledMethods;
+    }
+
+    /**
+     * Finds the methods that can be reached from the entry points, and
+     * replaces the virtual table with one that only holds the classes that
+     * are instantiated and the methods that are reachable.
+     *
+     * @param methodASTs The AST of every method in the program
+     * @param timings The timings to record the phase in
+     * @return The result of the analysis
+     */
+    private ReachabilityAnalysis eliminateDeadCode(List<ClassMethod> methodASTs, CompilationTimings timings) {
+        timings.startPhase("eliminate dead code");
+        ReachabilityAnalysis reachability = new ReachabilityAnalysis(methodASTs, functionTable, classTable);
+        reachability.analyse(options.getEntryPoints());
+        int numEntriesBefore = virtualTable.getEntries().size();
+        virtualTable = reachability.buildVirtualTable();
+        int numEntriesAfter = (int) virtualTable.getEntries().stream()
+                .filter(index -> index != VirtualTable.UNUSED_ENTRY)
+                .count();
+        int numReachable = (int) methodASTs.stream().filter(reachability::isReachable).count();
+        long numFunctionTypesBefore = functionTable.getFunctions().stream()
+                .filter(entry -> !entry.getIsStatic())
+                .map(entry -> CodeGenUtil.getFunctionNameForOutput(entry, functionTable))
+                .distinct()
+                .count();
+        timings.endPhase(methodASTs.size(), "methods");
+
+        timings.setCount("methods removed", methodASTs.size() - numReachable);
+        timings.setCount("generic instantiations removed", reachability.getNumUnusedInstantiations());
+        timings.setCount("function types removed", numFunctionTypesBefore - reachability.getFunctionTypes().size());
+        timings.setCount("virtual table entries removed", numEntriesBefore - numEntriesAfter);
+        return reachability;
+    }
+
+    /**
+     * Code is generated through the intermediate representation if it was
+     * asked for, if it is to be optimised, or if the intermediate
+     * representation is to be written out.
+     *
+     * @return Whether to generate code through the intermediate
+     *         representation
+     */
+    private boolean usesIR() {
+        return options.getUseIR() || options.getOptimisationLevel() > 0
+                || options.getIRDumpFile() != null || options.getPrintAfterPass() != null;
+    }
+
+    /**
+     * Compiles the methods of the sources into an object module, leaving out
+     * the classes that come from other object modules.
+     *
+     * @param parseTrees The parse tree of every source, in order
+     * @param subroutines The subroutines of the whole program
+     * @param containingClasses The class containing each subroutine
+     * @param numFunctionsBeforeASTs The number of functions in the function
+     *                               table before any method was built
+     * @param subroutinesBySource The subroutines read from each source
+     * @param output The stream to write the object module to
+     * @param timings The timings to record each phase in
+     * @throws IOException If the object module cannot be written
+     */
+    private void compileObjectModule(List<JavaFileParser.FileContext> parseTrees,
+                                     List<SubroutineToCompile> subroutines,
+                                     List<JavaClass> containingClasses,
+                                     int numFunctionsBeforeASTs,
+                                     Map<CharStream, List<SubroutineToCompile>> subroutinesBySource,
+                                     OutputStream output,
+                                     CompilationTimings timings) throws IOException {
+        List<SubroutineToCompile> ownSubroutines = new ArrayList<>();
+        List<JavaClass> ownContainingClasses = new ArrayList<>();
+        for (int i = 0; i < subroutines.size(); i++) {
+            if (!importedMethods.containsKey(subroutines.get(i))) {
+                ownSubroutines.add(subroutines.get(i));
+                ownContainingClasses.add(containingClasses.get(i));
+            }
+        }
+        List<List<GenericInstantiation>> instantiationsUsed = new ArrayList<>();
+        List<String> compiledMethods = compileSubroutines(ownSubroutines, ownContainingClasses,
+                instantiationsUsed, timings);
+        sortInstantiatedFunctions(numFunctionsBeforeASTs, instantiationsUsed);
+
+        timings.startPhase("emit object module");
+        ObjectModule module = new ObjectModule();
+        Map<CharStream, String> classNames = new IdentityHashMap<>();
+        for (int i = 0; i < sources.size(); i++) {
+            CharStream source = sources.get(i);
+            String className = getClassName(parseTrees.get(i));
+            classNames.put(source, className);
+            module.addExport(className, source.getSourceName(),
+                    getDeclarations(source, subroutinesBySource.get(source)));
+        }
+        for (ImportedClass importedClass : importedClasses) {
+            module.addImport(importedClass.export.getClassName(),
+                    ObjectModule.getDeclarationsHash(importedClass.export.getDeclarations()));
+        }
+
+        // Record which function each name in the code refers to, so that it
+        // can be renamed when the module is linked
+        Set<String> referencedNames = new TreeSet<>();
+        for (int i = 0; i < compiledMethods.size(); i++) {
+            String className = classNames.get(ownSubroutines.get(i).getSource());
+            module.addMethod(className, instantiationsUsed.get(i), compiledMethods.get(i));
+            referencedNames.addAll(ObjectModule.findReferencedNames(compiledMethods.get(i)));
+        }
+        for (FunctionTableEntry entry : functionTable.getFunctions()) {
+            String name = CodeGenUtil.getFunctionNameForOutput(entry, functionTable);
+            if (referencedNames.contains(name)) {
+                module.addSymbol(name, ObjectModule.describeFunction(entry));
+            }
+        }
+        module.write(output);
+        timings.endPhase(compiledMethods.size(), "methods");
+    }
+
+    /**
+     * Checks that an object module was compiled against the same
+     * declarations of each class that it is now being linked with.
+     *
+     * @param importedClass A class from the object module
+     * @param declarationsHashes The hash of the declarations of every class
+     *                           in the program, keyed by class name
+     */
+    private static void checkImports(ImportedClass importedClass, Map<String, String> declarationsHashes) {
+        for (Map.Entry<String, String> entry : importedClass.module.getImports().entrySet()) {
+            String declarationsHash = declarationsHashes.get(entry.getKey());
+            if (declarationsHash == null) {
+                ErrorReporting.reportError("Object module " + importedClass.moduleName
+                        + " depends on class " + entry.getKey() + ", which is not part of the program");
+            } else if (!declarationsHash.equals(entry.getValue())) {
+                ErrorReporting.reportError("Object module " + importedClass.moduleName
+                        + " was compiled against a different version of class " + entry.getKey()
+                        + " and must be recompiled");
+            }
+        }
+    }
+
+    /**
+     * Matches up the subroutines of a class from an object module with their
+     * code in the module.
+     *
+     * @param importedClass The class from the object module
+     * @param classSubroutines The subroutines parsed from the declarations of
+     *                         the class, in order
+     */
+    private void findImportedMethods(ImportedClass importedClass, List<SubroutineToCompile> classSubroutines) {
+        String className = importedClass.export.getClassName();
+        List<ObjectModule.CompiledMethod> methods = new ArrayList<>();
+        for (ObjectModule.CompiledMethod method : importedClass.module.getMethods()) {
+            if (method.getClassName().equals(className)) {
+                methods.add(method);
+            }
+        }
+        if (methods.size() != classSubroutines.size()) {
+            ErrorReporting.reportError("Object module " + importedClass.moduleName
+                    + " does not contain the code of every method of class " + className);
+        }
+        for (int i = 0; i < methods.size(); i++) {
+            importedMethods.put(classSubroutines.get(i), new ImportedMethod(importedClass, methods.get(i)));
+        }
+    }
+
+    /**
+     * Resolves the names in the code of a method from an object module
+     * against the rest of the program.
+     *
+     * The generic instantiations that the method refers to must already have
+     * been replayed, so that every function it calls is in the function
+     * table.
+     *
+     * @param importedMethod The method from the object module
+     * @return The code of the method, ready to be placed in the module
+     */
+    private String linkMethod(ImportedMethod importedMethod) {
+        String moduleName = importedMethod.importedClass.moduleName;
+        Map<String, String> symbols = importedMethod.importedClass.module.getSymbols();
+        return ObjectModule.relink(importedMethod.method.getCode(), name -> {
+            String descriptor = symbols.get(name);
+            if (descriptor == null) {
+                return null;
+            }
+            String linkedName = lookupLinkedFunctionName(descriptor);
+            if (linkedName == null) {
+                ErrorReporting.reportError("Object module " + moduleName + " refers to function "
+                        + descriptor + ", which is not part of the program");
+            }
+            return linkedName;
+        }, className -> {
+            int position = -1;
+            try {
+                position = virtualTable.getVirtualTablePosition(classTable.lookupClass(className));
+            } catch (UnknownClassException e) {
+                ErrorReporting.reportError("Object module " + moduleName + " refers to unknown class "
+                        + className);
+            }
+            return position;
+        });
+    }
+
+    /**
+     * Looks up the name in the output of a function, from its description.
+     *
+     * Functions are only ever added to the end of the function table while
+     * the methods are being compiled, so only the functions added since the
+     * last lookup need to be described.
+     *
+     * @param descriptor The description of the function
+     * @return The name of the function, or null if there is no such function
+     */
+    private String lookupLinkedFunctionName(String descriptor) {
+        List<FunctionTableEntry> functions = functionTable.getFunctions();
+        for (; numFunctionsLinked < functions.size(); numFunctionsLinked++) {
+            FunctionTableEntry entry = functions.get(numFunctionsLinked);
+            linkedFunctionNames.putIfAbsent(ObjectModule.describeFunction(entry),
+                    CodeGenUtil.getFunctionNameForOutput(entry, functionTable));
+        }
+        return linkedFunctionNames.get(descriptor);
+    }
+
+    /**
+     * Builds the declarations of a class from its source code, by leaving the
+     * body of every subroutine empty.
+     *
+     * @param source The source code of the class
+     * @param sourceSubroutines The subroutines read from the source, in order
+     * @return The declarations
+     */
+    private static String getDeclarations(CharStream source, List<SubroutineToCompile> sourceSubroutines) {
+        StringBuilder declarations = new StringBuilder();
+        int copiedUpTo = 0;
+        for (SubroutineToCompile subroutine : sourceSubroutines) {
+            JavaFileParser.CodeBlockContext body = subroutine.getBody();
+            declarations.append(source.getText(Interval.of(copiedUpTo, body.start.getStartIndex() - 1)));
+            declarations.append("{}");
+            copiedUpTo = body.stop.getStopIndex() + 1;
+        }
+        declarations.append(source.getText(Interval.of(copiedUpTo, source.size() - 1)));
+        return declarations.toString();
+    }
+
+    private static String getClassName(JavaFileParser.FileContext parseTree) {
+        return parseTree.classDefinition().className.getText();
+    }
+
+    /**
+     * Puts the functions of generic instantiations into the order in which
+     * building the methods one at a time would have registered them.
+     *
+     * The threads that build the ASTs instantiate generic classes in
+     * whatever order they reach them, so this keeps the output deterministic.
+     *
+     * @param numFunctionsBeforeASTs The number of functions in the function
+     *                               table before any method was built
+     * @param instantiationsUsed The generic instantiations used by each
+     *                           method, in output order
+     */
+    private void sortInstantiatedFunctions(int numFunctionsBeforeASTs,
+                                           List<List<GenericInstantiation>> instantiationsUsed) {
+        List<JavaClass> instantiationOrder = new ArrayList<>();
+        for (List<GenericInstantiation> instantiations : instantiationsUsed) {
+            for (GenericInstantiation instantiation : instantiations) {
+                instantiationOrder.add(classTable.lookupInstantiation(instantiation.getInstantiatedClassName()));
+            }
+        }
+        functionTable.sortFunctionsByClass(numFunctionsBeforeASTs, instantiationOrder);
+    }
+
+    /**
+     * Builds the AST of each subroutine, using the fork-join pool to build
+     * several at once.
+     *
+     * Each subroutine is given its own ASTBuilder, so that the only state
+     * shared between threads is the class and function tables and the
+     * generic class instantiation cache. If any subroutine has an error,
+     * the error from the first such subroutine in the list is the one
+     * reported, regardless of the order in which they were processed.
+     *
+     * @param subroutines The subroutines to build
+     * @param containingClasses The class containing each subroutine
+     * @param functionTable The function table
+     * @param classTable The class table
+     * @param instantiationCache The generic class instantiation cache
+     * @param parserWrapper The parser with which to parse method bodies
+     * @param instantiationsUsed A list to which the generic instantiations
+     *                           used by each subroutine are added, in order
+     * @return The AST of each subroutine, in order
+     */
+    static List<ClassMethod> buildASTs(List<SubroutineToCompile> subroutines,
+                                       List<JavaClass> containingClasses,
+                                       FunctionTable functionTable,
+                                       ClassTable classTable,
+                                       GenericClassInstantiationCache instantiationCache,
+                                       ParserWrapper parserWrapper,
+                                       List<List<GenericInstantiation>> instantiationsUsed) {
+        List<ASTResult> results = IntStream.range(0, subroutines.size())
+                .parallel()
+                .mapToObj(i -> tryBuildAST(subroutines.get(i), containingClasses.get(i), functionTable,
+                        classTable, instantiationCache, parserWrapper))
+                .collect(Collectors.toList());
+        List<ClassMethod> methodASTs = new ArrayList<>();
+        for (ASTResult result : results) {
+            if (result.error != null) {
+                throw result.error;
+            }
+            methodASTs.add(result.methodAST);
+            instantiationsUsed.add(result.instantiationsUsed);
+        }
+        return methodASTs;
+    }
+
+    /**
+     * Builds the AST of a subroutine, capturing any error rather than
+     * throwing it so that the subroutine can be built as a task on another
+     * thread.
+     */
+    private static ASTResult tryBuildAST(SubroutineToCompile subroutine,
+                                         JavaClass containingClass,
+                                         FunctionTable functionTable,
+                                         ClassTable classTable,
+                                         GenericClassInstantiationCache instantiationCache,
+                                         ParserWrapper parserWrapper) {
+        ASTResult result = new ASTResult();
+        try {
+            ASTBuilder astBuilder = new ASTBuilder(functionTable, classTable, instantiationCache, parserWrapper);
+            result.methodAST = astBuilder.visitSubroutine(subroutine, containingClass);
+            result.instantiationsUsed = astBuilder.getGenericInstantiationsUsed();
+        } catch (CompilationAbortedException e) {
+            result.error = e;
         }
+        return result;
+    }
 
-        // Build a virtual table now that all classes have been seen
-        VirtualTable virtualTable = classTable.buildCombinedVirtualTable();
+    /**
+     * A class from an object module, along with the declarations that are
+     * parsed in its place.
+     */
+    private static class ImportedClass {
+        String moduleName;
+        ObjectModule module;
+        ObjectModule.ExportedClass export;
+        CharStream declarations;
 
-        // Finally, compile each AST into WebAssembly
-        CodeEmitter emitter = new CodeEmitter(outputFileName);
-        WasmGenerator.compile(methodASTs, emitter, functionTable, classTable, virtualTable, debug);
+        ImportedClass(String moduleName, ObjectModule module, ObjectModule.ExportedClass export,
+                      CharStream declarations) {
+            this.moduleName = moduleName;
+            this.module = module;
+            this.export = export;
+            this.declarations = declarations;
+        }
+    }
+
+    /**
+     * The code of a subroutine from an object module.
+     */
+    private static class ImportedMethod {
+        ImportedClass importedClass;
+        ObjectModule.CompiledMethod method;
+
+        ImportedMethod(ImportedClass importedClass, ObjectModule.CompiledMethod method) {
+            this.importedClass = importedClass;
+            this.method = method;
+        }
+    }
 
+    /**
+     * Holds either the AST of a subroutine and the generic instantiations it
+     * uses, or the error that prevented it from being built.
+     */
+    private static class ASTResult {
+        ClassMethod methodAST;
+        List<GenericInstantiation> instantiationsUsed;
+        CompilationAbortedException error;
     }
 }
@@ -0,0 +1,287 @@
+package util;
+
+import ast.types.*;
+import errors.UnknownClassException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An on-disk cache of compiled methods, used to avoid rebuilding and
+ * recompiling methods that have not changed since a previous run.
+ *
+ * Each entry is keyed by a hash of the source code of the method, the class
+ * that contains it, and a summary of the class and function tables. The
+ * summary covers everything the generated code depends on from outside the
+ * method (function names, attribute offsets, object layouts and virtual table
+ * positions), so a change to any declaration invalidates every entry.
+ *
+ * Building the AST of a method can instantiate generic classes, which adds
+ * entries to the function table. Each entry therefore also records the
+ * generic instantiations that the method refers to, so that they can be
+ * replayed in the same order when the method is loaded from the cache.
+ */
+public class CompilationCache {
+
+    /**
+     * Increment this whenever the format of the generated code changes, so
+     * that entries written by older versions of the compiler are ignored.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String INSTANTIATION_SEPARATOR = "\t";
+
+    private Path directory;
+    private String tablesHash;
+
+    /**
+     * Opens a cache, creating the directory if it does not already exist.
+     *
+     * The class and function tables must already have been validated.
+     *
+     * @param directory The directory in which to store the cache entries
+     * @param codeGenerationSettings A description of the settings that
+     *                               change the code generated for a method,
+     *                               so that code generated with different
+     *                               settings is cached separately
+     * @param classTable The class table
+     * @param functionTable The function table
+     * @throws IOException If the directory cannot be created
+     */
+    public CompilationCache(String directory,
+                            String codeGenerationSettings,
+                            ClassTable classTable,
+                            FunctionTable functionTable) throws IOException {
+        this.directory = Paths.get(directory);
+        Files.createDirectories(this.directory);
+        tablesHash = hash(codeGenerationSettings + "\n" + summariseTables(classTable, functionTable));
+    }
+
+    /**
+     * Computes the key under which a subroutine is cached.
+     *
+     * @param subroutine The subroutine
+     * @param containingClass The class that contains the subroutine
+     * @return The key for the subroutine
+     */
+    public String getKey(SubroutineToCompile subroutine, JavaClass containingClass) {
+        return hash(FORMAT_VERSION + "\n"
+                + tablesHash + "\n"
+                + containingClass + "\n"
+                + subroutine.getSourceText());
+    }
+
+    /**
+     * Looks up a compiled method.
+     *
+     * Entries that cannot be read are treated as missing, so that a corrupt
+     * cache can never prevent a successful compilation.
+     *
+     * @param key The key of the method
+     * @return The cached method, or null if there is no usable entry
+     */
+    public CachedMethod lookup(String key) {
+        Path path = directory.resolve(key);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            String contents = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            int headerEnd = contents.indexOf('\n');
+            int numInstantiations = Integer.parseInt(contents.substring(0, headerEnd));
+            List<GenericInstantiation> instantiations = new ArrayList<>();
+            int lineStart = headerEnd + 1;
+            for (int i = 0; i < numInstantiations; i++) {
+                int lineEnd = contents.indexOf('\n', lineStart);
+                String[] parts = contents.substring(lineStart, lineEnd).split(INSTANTIATION_SEPARATOR);
+                List<String> typeArgumentNames = Arrays.asList(parts).subList(1, parts.length);
+                instantiations.add(new GenericInstantiation(parts[0], typeArgumentNames));
+                lineStart = lineEnd + 1;
+            }
+            String code = contents.substring(lineStart);
+            return new CachedMethod(instantiations, code);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stores a compiled method.
+     *
+     * The entry is written to a temporary file first and then moved into
+     * place, so that several compilations can safely share a cache.
+     *
+     * @param key The key of the method
+     * @param instantiations The generic instantiations the method refers to
+     * @param code The compiled code of the method
+     * @throws IOException If the entry cannot be written
+     */
+    public void store(String key, List<GenericInstantiation> instantiations, String code) throws IOException {
+        StringBuilder contents = new StringBuilder();
+        contents.append(instantiations.size()).append('\n');
+        for (GenericInstantiation instantiation : instantiations) {
+            contents.append(instantiation.getGenericClassName());
+            for (String typeArgumentName : instantiation.getTypeArgumentNames()) {
+                contents.append(INSTANTIATION_SEPARATOR).append(typeArgumentName);
+            }
+            contents.append('\n');
+        }
+        contents.append(code);
+        Path temporary = Files.createTempFile(directory, key, ".tmp");
+        Files.write(temporary, contents.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, directory.resolve(key),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Instantiates the generic classes that a cached method refers to, exactly
+     * as building its AST would have done.
+     *
+     * @param cachedMethod The method loaded from the cache
+     * @param classTable The class table
+     * @param instantiationCache The generic class instantiation cache
+     */
+    public static void replayInstantiations(CachedMethod cachedMethod,
+                                            ClassTable classTable,
+                                            GenericClassInstantiationCache instantiationCache) {
+        replayInstantiations(cachedMethod.getGenericInstantiations(), classTable, instantiationCache);
+    }
+
+    /**
+     * Instantiates a list of generic classes, exactly as building the AST of
+     * the method that referred to them would have done.
+     *
+     * @param instantiations The generic instantiations, in order
+     * @param classTable The class table
+     * @param instantiationCache The generic class instantiation cache
+     */
+    public static void replayInstantiations(List<GenericInstantiation> instantiations,
+                                            ClassTable classTable,
+                                            GenericClassInstantiationCache instantiationCache) {
+        for (GenericInstantiation instantiation : instantiations) {
+            try {
+                JavaClass genericClass = classTable.lookupClass(instantiation.getGenericClassName());
+                List<HeapObjectReference> typeArguments = new ArrayList<>();
+                for (String typeArgumentName : instantiation.getTypeArgumentNames()) {
+                    JavaClass typeArgument = classTable.lookupInstantiation(typeArgumentName);
+                    if (typeArgument == null) {
+                        typeArgument = classTable.lookupClass(typeArgumentName);
+                    }
+                    typeArguments.add(typeArgument);
+                }
+                instantiationCache.getActualClass((GenericJavaClass) genericClass, typeArguments);
+            } catch (UnknownClassException e) {
+                ErrorReporting.reportError(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Builds a textual summary of every declaration that compiled methods can
+     * depend on.
+     *
+     * @param classTable The class table
+     * @param functionTable The function table
+     * @return The summary
+     */
+    private static String summariseTables(ClassTable classTable, FunctionTable functionTable) {
+        StringBuilder summary = new StringBuilder();
+        for (JavaClass javaClass : classTable.getClasses()) {
+            summary.append("class ").append(javaClass)
+                    .append(" extends ").append(javaClass.getParent())
+                    .append(" generic ").append(javaClass instanceof GenericJavaClass)
+                    .append(" size ").append(javaClass.getNumAttributeBytes())
+                    .append('\n');
+            for (JavaClass.AllocatedClassAttribute attribute : javaClass.getAllocatedAttributes()) {
+                summary.append("  attribute ").append(attribute.getName())
+                        .append(' ').append(describeType(attribute.getType()))
+                        .append(' ').append(attribute.getAccessModifier())
+                        .append(' ').append(attribute.getMemoryOffset())
+                        .append('\n');
+            }
+            summary.append("  vtable ").append(javaClass.getVirtualTable()).append('\n');
+        }
+        for (FunctionTableEntry entry : functionTable.getFunctions()) {
+            summary.append("function ").append(entry.getIndex())
+                    .append(' ').append(entry.getQualifiedName())
+                    .append(' ').append(entry.getIsStatic())
+                    .append(' ').append(entry.getAccessModifier())
+                    .append(' ').append(describeType(entry.getReturnType()));
+            for (Type parameterType : entry.getParameterTypes()) {
+                summary.append(' ').append(describeType(parameterType));
+            }
+            summary.append('\n');
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Describes a type in a way that is stable between runs of the compiler.
+     *
+     * Not every type overrides toString(), so that cannot be used directly.
+     *
+     * @param type The type to describe
+     * @return The description
+     */
+    static String describeType(Type type) {
+        if (type instanceof GenericType) {
+            return "generic " + ((GenericType) type).getName();
+        } else if (type instanceof ItemArray) {
+            return describeType(((ItemArray) type).getElementType()) + "[]";
+        } else if (type instanceof VoidType) {
+            return "void";
+        } else {
+            return type.toString();
+        }
+    }
+
+    /**
+     * Computes the SHA-256 hash of a string.
+     *
+     * @param input The string to hash
+     * @return The hash as a hexadecimal string
+     */
+    static String hash(String input) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        byte[] hashBytes = digest.digest(input.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : hashBytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * A method loaded from the cache.
+     */
+    public static class CachedMethod {
+
+        private List<GenericInstantiation> genericInstantiations;
+        private String code;
+
+        public CachedMethod(List<GenericInstantiation> genericInstantiations, String code) {
+            this.genericInstantiations = genericInstantiations;
+            this.code = code;
+        }
+
+        public List<GenericInstantiation> getGenericInstantiations() {
+            return genericInstantiations;
+        }
+
+        public String getCode() {
+            return code;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * The outcome of a Compilation: the compiled module if it succeeded, along
+ * with any errors and warnings and the time spent in each phase.
+ */
+public class CompilationResult {
+
+    private boolean successful;
+
+    /**
+     * The compiled module, in the requested output format, or null if the
+     * compilation failed or the module was written to a stream
+     */
+    private byte[] module;
+
+    /**
+     * The warnings and errors, in the order they were reported. The compiler
+     * stops at the first error, so there is at most one.
+     */
+    private List<String> diagnostics;
+
+    private CompilationTimings timings;
+
+    /**
+     * The intermediate representation of every method after the pass named
+     * by the print after option, or null if it was not asked for or was
+     * written to the IR dump file instead
+     */
+    private String printedIR;
+
+    public CompilationResult(boolean successful,
+                             byte[] module,
+                             List<String> diagnostics,
+                             CompilationTimings timings) {
+        this(successful, module, diagnostics, timings, null);
+    }
+
+    public CompilationResult(boolean successful,
+                             byte[] module,
+                             List<String> diagnostics,
+                             CompilationTimings timings,
+                             String printedIR) {
+        this.successful = successful;
+        this.module = module;
+        this.diagnostics = diagnostics;
+        this.timings = timings;
+        this.printedIR = printedIR;
+    }
+
+    /**
+     * @return Whether the compilation succeeded, in which case the module is
+     *         available or has been written out
+     */
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    /**
+     * Returns the compiled module: the binary module if the output format
+     * was WASM, or the UTF-8 encoded text of the module if it was WAT.
+     *
+     * @return The compiled module, or null if the compilation failed or the
+     *         module was written to a stream by Compilation.compileTo()
+     */
+    public byte[] getModule() {
+        return module;
+    }
+
+    /**
+     * @return The text of the compiled module, if the output format was WAT
+     */
+    public String getModuleText() {
+        return (module == null) ? null : new String(module, StandardCharsets.UTF_8);
+    }
+
+    public List<String> getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * @return The time spent in each phase, up to the point at which the
+     *         compilation finished or failed
+     */
+    public CompilationTimings getTimings() {
+        return timings;
+    }
+
+    /**
+     * Returns the intermediate representation of every method after the
+     * pass given by CompilerOptions.setPrintAfterPass(), which the command
+     * line compiler prints to standard error.
+     *
+     * @return The intermediate representation, or null if it was not asked
+     *         for or was written to the IR dump file
+     */
+    public String getPrintedIR() {
+        return printedIR;
+    }
+}
@@ -0,0 +1,289 @@
+package util;
+
+import ir.passes.PassStatistics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records how long each phase of a compilation takes, how much memory it
+ * allocates, and how many items it processes.
+ *
+ * Every phase is also recorded as a CompilerPhaseEvent, so that it shows up
+ * in Java Flight Recorder recordings.
+ *
+ * Allocation is measured on the thread that runs the compilation, so that
+ * compilations running at the same time do not count each other's
+ * allocations. Work that a phase hands to the common fork-join pool is
+ * therefore not counted.
+ *
+ * The optimisation passes run inside the phase that compiles the methods,
+ * so they are reported separately, with the total time each pass took
+ * across every method.
+ */
+public class CompilationTimings {
+
+    /**
+     * The formats in which the timings can be printed
+     */
+    public enum Format {
+        TABLE,
+        JSON
+    }
+
+    private List<PhaseTiming> phases;
+    private Map<String, Long> counts;
+    private List<PassStatistics> passes;
+
+    private String currentPhase;
+    private long phaseStartNanos;
+    private long phaseStartAllocatedBytes;
+    private CompilerPhaseEvent currentEvent;
+
+    public CompilationTimings() {
+        phases = new ArrayList<>();
+        counts = new LinkedHashMap<>();
+        passes = new ArrayList<>();
+    }
+
+    /**
+     * Starts timing a phase.
+     *
+     * @param name The name of the phase
+     */
+    public void startPhase(String name) {
+        currentPhase = name;
+        currentEvent = new CompilerPhaseEvent();
+        phaseStartAllocatedBytes = getAllocatedBytes();
+        phaseStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Finishes timing the phase that was most recently started.
+     *
+     * @param numItems The number of items processed in the phase
+     * @param itemKind What the items are, for example "files"
+     */
+    public void endPhase(long numItems, String itemKind) {
+        long durationNanos = System.nanoTime() - phaseStartNanos;
+        long allocatedBytes = getAllocatedBytes();
+        if (allocatedBytes >= 0 && phaseStartAllocatedBytes >= 0) {
+            allocatedBytes -= phaseStartAllocatedBytes;
+        } else {
+            allocatedBytes = -1;
+        }
+        phases.add(new PhaseTiming(currentPhase, durationNanos, allocatedBytes, numItems, itemKind));
+
+        currentEvent.end(currentPhase, numItems, itemKind, allocatedBytes);
+        currentEvent = null;
+    }
+
+    /**
+     * Records a count that is not tied to a single phase, such as the number
+     * of generic instantiations.
+     *
+     * @param name What is being counted
+     * @param value The count
+     */
+    public void setCount(String name, long value) {
+        counts.put(name, value);
+    }
+
+    /**
+     * Records the statistics of the optimisation passes, once they have
+     * finished running.
+     *
+     * @param passes The statistics of each pass, in the order they ran
+     */
+    public void setPasses(List<PassStatistics> passes) {
+        this.passes = new ArrayList<>(passes);
+    }
+
+    public List<PassStatistics> getPasses() {
+        return passes;
+    }
+
+    public List<PhaseTiming> getPhases() {
+        return phases;
+    }
+
+    public Map<String, Long> getCounts() {
+        return counts;
+    }
+
+    /**
+     * Formats the timings.
+     *
+     * @param format The format to use
+     * @return The formatted timings
+     */
+    public String format(Format format) {
+        return format == Format.JSON ? formatAsJson() : formatAsTable();
+    }
+
+    /**
+     * Formats the timings as a human-readable table.
+     *
+     * @return The table
+     */
+    public String formatAsTable() {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("%-20s %12s %14s %10s%n", "Phase", "Time (ms)", "Allocated (KB)", "Items"));
+        long totalNanos = 0;
+        long totalAllocatedBytes = 0;
+        for (PhaseTiming phase : phases) {
+            table.append(String.format("%-20s %12.2f %14s %10d %s%n",
+                    phase.getName(),
+                    phase.getDurationNanos() / 1e6,
+                    formatKilobytes(phase.getAllocatedBytes()),
+                    phase.getNumItems(),
+                    phase.getItemKind()));
+            totalNanos += phase.getDurationNanos();
+            if (totalAllocatedBytes >= 0 && phase.getAllocatedBytes() >= 0) {
+                totalAllocatedBytes += phase.getAllocatedBytes();
+            } else {
+                totalAllocatedBytes = -1;
+            }
+        }
+        table.append(String.format("%-20s %12.2f %14s%n", "Total", totalNanos / 1e6,
+                formatKilobytes(totalAllocatedBytes)));
+        if (!passes.isEmpty()) {
+            table.append(String.format("%n%-20s %12s %14s %s%n", "Pass", "Time (ms)", "Runs", "Counters"));
+            for (PassStatistics pass : passes) {
+                List<String> counters = new ArrayList<>();
+                for (Map.Entry<String, Long> counter : pass.getCounters().entrySet()) {
+                    counters.add(counter.getKey() + ": " + counter.getValue());
+                }
+                table.append(String.format("%-20s %12.2f %14d %s%n",
+                        pass.getPassName(),
+                        pass.getDurationNanos() / 1e6,
+                        pass.getNumRuns(),
+                        String.join(", ", counters)));
+            }
+            table.append(System.lineSeparator());
+        }
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            table.append(String.format("%s: %d%n", count.getKey(), count.getValue()));
+        }
+        return table.toString();
+    }
+
+    /**
+     * Formats the timings as a JSON object.
+     *
+     * @return The JSON text
+     */
+    public String formatAsJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"phases\": [");
+        for (int i = 0; i < phases.size(); i++) {
+            PhaseTiming phase = phases.get(i);
+            if (i > 0) {
+                json.append(", ");
+            }
+            json.append("{\"name\": \"").append(phase.getName()).append('"')
+                    .append(", \"timeNanos\": ").append(phase.getDurationNanos())
+                    .append(", \"allocatedBytes\": ").append(phase.getAllocatedBytes())
+                    .append(", \"items\": ").append(phase.getNumItems())
+                    .append(", \"itemKind\": \"").append(phase.getItemKind()).append("\"}");
+        }
+        json.append("], \"passes\": [");
+        for (int i = 0; i < passes.size(); i++) {
+            PassStatistics pass = passes.get(i);
+            if (i > 0) {
+                json.append(", ");
+            }
+            json.append("{\"name\": \"").append(pass.getPassName()).append('"')
+                    .append(", \"timeNanos\": ").append(pass.getDurationNanos())
+                    .append(", \"runs\": ").append(pass.getNumRuns())
+                    .append(", \"counters\": ");
+            appendCounts(json, pass.getCounters());
+            json.append('}');
+        }
+        json.append("], \"counts\": ");
+        appendCounts(json, counts);
+        json.append('}');
+        return json.toString();
+    }
+
+    private static void appendCounts(StringBuilder json, Map<String, Long> counts) {
+        json.append('{');
+        int i = 0;
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            if (i++ > 0) {
+                json.append(", ");
+            }
+            json.append('"').append(count.getKey()).append("\": ").append(count.getValue());
+        }
+        json.append('}');
+    }
+
+    private static String formatKilobytes(long bytes) {
+        return bytes < 0 ? "n/a" : String.valueOf(bytes / 1024);
+    }
+
+    /**
+     * Measures the total number of bytes allocated by the current thread.
+     *
+     * @return The number of bytes, or -1 if the JVM cannot measure it
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        if (!allocationBean.isThreadAllocatedMemorySupported()
+                || !allocationBean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * The measurements for one phase.
+     */
+    public static class PhaseTiming {
+
+        private String name;
+        private long durationNanos;
+        private long allocatedBytes;
+        private long numItems;
+        private String itemKind;
+
+        public PhaseTiming(String name, long durationNanos, long allocatedBytes, long numItems, String itemKind) {
+            this.name = name;
+            this.durationNanos = durationNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.numItems = numItems;
+            this.itemKind = itemKind;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * @return The number of bytes allocated, or -1 if unknown
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long getNumItems() {
+            return numItems;
+        }
+
+        public String getItemKind() {
+            return itemKind;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package util;
+
+import codegen.OutputFormat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the settings that control a single run of the compiler.
+ */
+public class CompilerOptions {
+
+    /**
+     * Whether to include additional debugging functions in the output
+     */
+    private boolean debug;
+
+    /**
+     * The directory used to cache compiled methods between runs, or null if
+     * caching is disabled
+     */
+    private String cacheDirectory;
+
+    /**
+     * The format in which to write the compiled module
+     */
+    private OutputFormat outputFormat;
+
+    /**
+     * The format in which to print the time spent in each phase, or null if
+     * the timings should not be printed
+     */
+    private CompilationTimings.Format timingsFormat;
+
+    /**
+     * The file used to save the parser's DFA states between runs, or null if
+     * they should not be saved
+     */
+    private String parserCacheFile;
+
+    /**
+     * Whether to write out each method as soon as it has been compiled, so
+     * that only a few methods are held in memory at once
+     */
+    private boolean streaming;
+
+    /**
+     * Whether to compile the sources into an object module to be linked
+     * later, rather than into a complete WebAssembly module
+     */
+    private boolean compileOnly;
+
+    /**
+     * Whether to import the runtime library from a separate runtime module
+     * rather than including it in the output
+     */
+    private boolean sharedRuntime;
+
+    /**
+     * Whether to generate code through the intermediate representation,
+     * rather than straight from the AST of each method
+     */
+    private boolean useIR;
+
+    /**
+     * The file to write the intermediate representation of every compiled
+     * method to, or null if it should not be written
+     */
+    private String irDumpFile;
+
+    /**
+     * How much to optimise the generated code, from 0, which generates code
+     * straight from the AST, to PassManager.MAX_OPTIMISATION_LEVEL
+     */
+    private int optimisationLevel;
+
+    /**
+     * The name of the optimisation pass after which to print the
+     * intermediate representation of every method, or null if it should not
+     * be printed
+     */
+    private String printAfterPass;
+
+    /**
+     * The methods from which the rest of the program is reached, each given
+     * as Class.method. If there are any, only these are exported and code
+     * that cannot be reached from them is left out of the module.
+     */
+    private List<String> entryPoints;
+
+    public CompilerOptions() {
+        debug = false;
+        cacheDirectory = null;
+        outputFormat = OutputFormat.WAT;
+        timingsFormat = null;
+        parserCacheFile = null;
+        streaming = false;
+        compileOnly = false;
+        sharedRuntime = false;
+        useIR = false;
+        irDumpFile = null;
+        optimisationLevel = 0;
+        printAfterPass = null;
+        entryPoints = new ArrayList<>();
+    }
+
+    public boolean getDebug() {
+        return debug;
+    }
+
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    public String getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public void setCacheDirectory(String cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public OutputFormat getOutputFormat() {
+        return outputFormat;
+    }
+
+    public void setOutputFormat(OutputFormat outputFormat) {
+        this.outputFormat = outputFormat;
+    }
+
+    public CompilationTimings.Format getTimingsFormat() {
+        return timingsFormat;
+    }
+
+    public void setTimingsFormat(CompilationTimings.Format timingsFormat) {
+        this.timingsFormat = timingsFormat;
+    }
+
+    public String getParserCacheFile() {
+        return parserCacheFile;
+    }
+
+    public void setParserCacheFile(String parserCacheFile) {
+        this.parserCacheFile = parserCacheFile;
+    }
+
+    public boolean getStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public boolean getCompileOnly() {
+        return compileOnly;
+    }
+
+    public void setCompileOnly(boolean compileOnly) {
+        this.compileOnly = compileOnly;
+    }
+
+    public boolean getSharedRuntime() {
+        return sharedRuntime;
+    }
+
+    public void setSharedRuntime(boolean sharedRuntime) {
+        this.sharedRuntime = sharedRuntime;
+    }
+
+    public boolean getUseIR() {
+        return useIR;
+    }
+
+    public void setUseIR(boolean useIR) {
+        this.useIR = useIR;
+    }
+
+    public String getIRDumpFile() {
+        return irDumpFile;
+    }
+
+    public void setIRDumpFile(String irDumpFile) {
+        this.irDumpFile = irDumpFile;
+    }
+
+    public int getOptimisationLevel() {
+        return optimisationLevel;
+    }
+
+    public void setOptimisationLevel(int optimisationLevel) {
+        this.optimisationLevel = optimisationLevel;
+    }
+
+    public String getPrintAfterPass() {
+        return printAfterPass;
+    }
+
+    public void setPrintAfterPass(String printAfterPass) {
+        this.printAfterPass = printAfterPass;
+    }
+
+    public List<String> getEntryPoints() {
+        return entryPoints;
+    }
+
+    public void setEntryPoints(List<String> entryPoints) {
+        this.entryPoints = entryPoints;
+    }
+}
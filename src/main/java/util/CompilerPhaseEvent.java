@@ -0,0 +1,160 @@
+package util;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A Java Flight Recorder event that is recorded for each phase of a
+ * compilation, so that the compiler can be profiled with JFR.
+ *
+ * The duration of the event is the duration of the phase.
+ *
+ * The compiler is built for Java 8, which does not always include JFR, so
+ * the event type is created through reflection with jdk.jfr.EventFactory.
+ * If that fails, the events are simply not recorded.
+ */
+class CompilerPhaseEvent {
+
+    /**
+     * The positions of the fields of the event, in the order they are
+     * declared by createEventType()
+     */
+    private static final int PHASE_FIELD = 0;
+    private static final int NUM_ITEMS_FIELD = 1;
+    private static final int ITEM_KIND_FIELD = 2;
+    private static final int ALLOCATED_BYTES_FIELD = 3;
+
+    private static final EventType EVENT_TYPE = createEventType();
+
+    /**
+     * The jdk.jfr.Event, or null if JFR is not available
+     */
+    private Object event;
+
+    /**
+     * Creates an event and starts timing it.
+     */
+    CompilerPhaseEvent() {
+        if (EVENT_TYPE != null) {
+            try {
+                event = EVENT_TYPE.newEvent.invoke(EVENT_TYPE.factory);
+                EVENT_TYPE.begin.invoke(event);
+            } catch (ReflectiveOperationException e) {
+                event = null;
+            }
+        }
+    }
+
+    /**
+     * Stops timing the event, and records it if JFR is recording events of
+     * this type.
+     *
+     * @param phase The name of the phase
+     * @param numItems The number of items processed in the phase
+     * @param itemKind What the items are
+     * @param allocatedBytes The number of bytes allocated, or -1 if unknown
+     */
+    void end(String phase, long numItems, String itemKind, long allocatedBytes) {
+        if (event == null) {
+            return;
+        }
+        try {
+            EVENT_TYPE.end.invoke(event);
+            if ((Boolean) EVENT_TYPE.shouldCommit.invoke(event)) {
+                EVENT_TYPE.set.invoke(event, PHASE_FIELD, phase);
+                EVENT_TYPE.set.invoke(event, NUM_ITEMS_FIELD, numItems);
+                EVENT_TYPE.set.invoke(event, ITEM_KIND_FIELD, itemKind);
+                EVENT_TYPE.set.invoke(event, ALLOCATED_BYTES_FIELD, allocatedBytes);
+                EVENT_TYPE.commit.invoke(event);
+            }
+        } catch (ReflectiveOperationException e) {
+            // The phase is still timed, just not recorded by JFR
+        }
+        event = null;
+    }
+
+    /**
+     * @return Whether events are recorded with JFR in this JVM
+     */
+    static boolean isFlightRecorderAvailable() {
+        return EVENT_TYPE != null;
+    }
+
+    /**
+     * Creates the event type, named javassembler.CompilerPhase.
+     *
+     * @return The event type, or null if JFR is not available
+     */
+    private static EventType createEventType() {
+        try {
+            Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+            Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+            Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+            Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            Constructor<?> newAnnotation = annotationElement.getConstructor(Class.class, Object.class);
+            Constructor<?> newField = valueDescriptor.getConstructor(Class.class, String.class, List.class);
+
+            List<Object> eventAnnotations = Arrays.asList(
+                    newAnnotation.newInstance(Class.forName("jdk.jfr.Name"), "javassembler.CompilerPhase"),
+                    newAnnotation.newInstance(Class.forName("jdk.jfr.Label"), "Compiler Phase"),
+                    newAnnotation.newInstance(Class.forName("jdk.jfr.Category"), new String[]{"JavAssembler"}),
+                    newAnnotation.newInstance(Class.forName("jdk.jfr.Description"),
+                            "A phase of a JavAssembler compilation"));
+
+            Class<?> label = Class.forName("jdk.jfr.Label");
+            List<Object> fields = new ArrayList<>();
+            fields.add(newField.newInstance(String.class, "phase",
+                    Collections.singletonList(newAnnotation.newInstance(label, "Phase"))));
+            fields.add(newField.newInstance(long.class, "numItems", Arrays.asList(
+                    newAnnotation.newInstance(label, "Items"),
+                    newAnnotation.newInstance(Class.forName("jdk.jfr.Description"),
+                            "The number of items processed in the phase"))));
+            fields.add(newField.newInstance(String.class, "itemKind",
+                    Collections.singletonList(newAnnotation.newInstance(label, "Item Kind"))));
+            fields.add(newField.newInstance(long.class, "allocatedBytes", Arrays.asList(
+                    newAnnotation.newInstance(label, "Allocated"),
+                    newAnnotation.newInstance(Class.forName("jdk.jfr.DataAmount"), "BYTES"))));
+
+            Object factory = eventFactory.getMethod("create", List.class, List.class)
+                    .invoke(null, eventAnnotations, fields);
+            return new EventType(factory, eventFactory.getMethod("newEvent"),
+                    eventClass.getMethod("begin"),
+                    eventClass.getMethod("end"),
+                    eventClass.getMethod("shouldCommit"),
+                    eventClass.getMethod("set", int.class, Object.class),
+                    eventClass.getMethod("commit"));
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            // JFR is missing, as it is from some older Java 8 runtimes
+            return null;
+        }
+    }
+
+    /**
+     * The event factory, and the methods used to record each event.
+     */
+    private static class EventType {
+
+        final Object factory;
+        final Method newEvent;
+        final Method begin;
+        final Method end;
+        final Method shouldCommit;
+        final Method set;
+        final Method commit;
+
+        EventType(Object factory, Method newEvent, Method begin, Method end,
+                  Method shouldCommit, Method set, Method commit) {
+            this.factory = factory;
+            this.newEvent = newEvent;
+            this.begin = begin;
+            this.end = end;
+            this.shouldCommit = shouldCommit;
+            this.set = set;
+            this.commit = commit;
+        }
+    }
+}
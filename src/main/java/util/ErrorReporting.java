@@ -1,6 +1,7 @@
 package util;
 
 import ast.types.Type;
+import errors.CompilationAbortedException;
 import org.antlr.v4.runtime.ParserRuleContext;
 
 import java.util.List;
@@ -12,7 +13,10 @@ import java.util.stream.Collectors;
 public class ErrorReporting {
 
     /**
-     * Reports an error to the console and exits.
+     * Reports an error, aborting the compilation.
+     *
+     * This never returns normally: it throws a CompilationAbortedException,
+     * which is left for the code that started the compilation to report.
      *
      * @param errorMessage The error to report
      * @param ctx The ParserRuleContext at which the error occurred
@@ -25,20 +29,19 @@ public class ErrorReporting {
                 + " on line " + line
                 + ", column " + col
                 + ": " + errorMessage;
-        System.err.println(message);
-        System.err.println("Exiting...");
-        System.exit(0);
+        throw new CompilationAbortedException(message);
     }
 
     /**
-     * Reports an error to the console and exits.
+     * Reports an error, aborting the compilation.
+     *
+     * This never returns normally: it throws a CompilationAbortedException,
+     * which is left for the code that started the compilation to report.
      *
      * @param errorMessage The error to report
      */
     public static void reportError(String errorMessage) {
-        System.err.println(errorMessage);
-        System.err.println("Exiting...");
-        System.exit(0);
+        throw new CompilationAbortedException(errorMessage);
     }
 
     /**
@@ -7,6 +7,7 @@ import errors.InvalidClassNameException;
 import errors.UndeclaredFunctionException;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,11 +20,14 @@ public class FunctionTable {
     private List<FunctionTableEntry> functions;
 
     /**
-     * Contains the map from
-     *      class -> function name ->
-     *      (parameter types list -> function table entry) tree
+     * Contains a lookup tree for the functions of each class, indexed by the
+     * type id of the class. The first edge of each tree is the id of the
+     * function name and the rest are the ids of the parameter types.
+     *
+     * This is built lazily on the first lookup. Lookups may come from several
+     * code generation threads at once, hence the volatile.
      */
-    private Map<JavaClass, Map<String, LookupTree<FunctionTableEntry, Type>>> classesToStaticFunctionsMap;
+    private volatile List<LookupTree<FunctionTableEntry>> functionLookupTreesByClass;
 
     /**
      * Tracks the next index in the table that we are free to assign.
@@ -39,7 +43,7 @@ public class FunctionTable {
 
     public FunctionTable() {
         functions = new ArrayList<>();
-        classesToStaticFunctionsMap = null;
+        functionLookupTreesByClass = null;
         functionsWithNameCount = new HashMap<>();
         nextIndexToAssign = 0;
     }
@@ -68,7 +72,7 @@ public class FunctionTable {
      * @param accessModifier The access modifier applied to this function
      * @return The function table entry that was created
      */
-    public FunctionTableEntry registerFunction(JavaClass containingClass,
+    public synchronized FunctionTableEntry registerFunction(JavaClass containingClass,
                                                String functionName,
                                                List<Type> parameterTypes,
                                                Type returnType,
@@ -109,57 +113,89 @@ public class FunctionTable {
                                              List<Type> parameterTypes)
             throws UndeclaredFunctionException, InvalidClassNameException {
 
-        if (classesToStaticFunctionsMap == null) {
-            classesToStaticFunctionsMap = buildStaticFunctionLookupTree();
+        if (functionLookupTreesByClass == null) {
+            synchronized (this) {
+                if (functionLookupTreesByClass == null) {
+                    functionLookupTreesByClass = buildFunctionLookupTrees();
+                }
+            }
         }
 
-        // Look up the map for the correct class
-        Map<String, LookupTree<FunctionTableEntry, Type>> functionNameMap =
-                classesToStaticFunctionsMap.getOrDefault(containingClass, null);
-        if (functionNameMap == null) {
+        // Look up the tree for the correct class
+        List<LookupTree<FunctionTableEntry>> lookupTrees = functionLookupTreesByClass;
+        int classId = containingClass.getTypeId();
+        LookupTree<FunctionTableEntry> lookupTree = (classId >= 0 && classId < lookupTrees.size())
+                ? lookupTrees.get(classId)
+                : null;
+        if (lookupTree == null) {
             String message = "Invalid class name " + containingClass;
             throw new InvalidClassNameException(message);
         }
 
-        // Look up the tree for the name within that class
-        LookupTree<FunctionTableEntry, Type> lookupTree =
-                functionNameMap.getOrDefault(functionName, null);
-
-        // Throw an exception if there's no entry with that function name
-        String errorMessage = "No function defined in class " + containingClass
-                + " with signature " + ErrorReporting.getFunctionSignatureOutput(functionName, parameterTypes);
-        if (lookupTree == null)
-            throw new UndeclaredFunctionException(errorMessage);
-
-        // Call the lookup method on that tree
-        FunctionTableEntry entry = lookupTree.lookup(parameterTypes);
-
-        // Throw an exception if there's no entry with those types as parameters
-        if (entry == null)
+        // Follow the name and then the parameter types down the tree. A name
+        // that has never been interned cannot belong to any function.
+        int nameId = InternTable.IDENTIFIERS.lookup(functionName);
+        FunctionTableEntry entry = (nameId != InternTable.NOT_INTERNED)
+                ? lookupTree.lookup(nameId, parameterTypes)
+                : null;
+
+        // Throw an exception if there's no entry with that signature
+        if (entry == null) {
+            String errorMessage = "No function defined in class " + containingClass
+                    + " with signature " + ErrorReporting.getFunctionSignatureOutput(functionName, parameterTypes);
             throw new UndeclaredFunctionException(errorMessage);
+        }
 
         return entry;
     }
 
-    private Map<JavaClass, Map<String, LookupTree<FunctionTableEntry, Type>>> buildStaticFunctionLookupTree() {
-        Map<JavaClass, Map<String, LookupTree<FunctionTableEntry, Type>>> map = new HashMap<>();
+    private List<LookupTree<FunctionTableEntry>> buildFunctionLookupTrees() {
+        List<LookupTree<FunctionTableEntry>> lookupTrees = new ArrayList<>();
         for (FunctionTableEntry entry : functions) {
-            if (!map.containsKey(entry.getContainingClass())) {
-                map.put(entry.getContainingClass(), new HashMap<>());
+            int classId = entry.getContainingClass().getTypeId();
+            while (lookupTrees.size() <= classId) {
+                lookupTrees.add(null);
             }
-            Map<String, LookupTree<FunctionTableEntry, Type>> nameMap = map.get(entry.getContainingClass());
-            if (!nameMap.containsKey(entry.getFunctionName())) {
-                nameMap.put(entry.getFunctionName(), new LookupTree<>());
+            LookupTree<FunctionTableEntry> lookupTree = lookupTrees.get(classId);
+            if (lookupTree == null) {
+                lookupTree = new LookupTree<>();
+                lookupTrees.set(classId, lookupTree);
             }
-            LookupTree<FunctionTableEntry, Type> lookupTree = nameMap.get(entry.getFunctionName());
-            boolean success = lookupTree.insert(entry.getParameterTypes(), entry);
+            int[] edges = LookupTree.getEdges(entry.getFunctionNameId(), entry.getParameterTypes());
+            boolean success = lookupTree.insert(edges, entry);
             if (!success) {
                 String signature = entry.getQualifiedSignature();
                 String errorMessage = "Duplicate functions with signature " + signature;
                 ErrorReporting.reportError(errorMessage);
             }
         }
-        return map;
+        return lookupTrees;
+    }
+
+    /**
+     * Sorts the functions from a given index onwards by the position of their
+     * containing classes in a list, and renumbers them to match. Functions
+     * in the same class keep their relative order, and functions whose class
+     * is not in the list are moved to the end.
+     *
+     * This is used to give the functions of generic instantiations the same
+     * indices regardless of the order in which parallel threads happened to
+     * instantiate them.
+     *
+     * @param firstIndex The index of the first function to sort
+     * @param classOrder The order in which the classes should appear
+     */
+    public synchronized void sortFunctionsByClass(int firstIndex, List<JavaClass> classOrder) {
+        Map<JavaClass, Integer> classPositions = new HashMap<>();
+        for (JavaClass javaClass : classOrder) {
+            classPositions.putIfAbsent(javaClass, classPositions.size());
+        }
+        List<FunctionTableEntry> toSort = functions.subList(firstIndex, functions.size());
+        toSort.sort(Comparator.comparingInt(entry ->
+                classPositions.getOrDefault(entry.getContainingClass(), Integer.MAX_VALUE)));
+        for (int i = firstIndex; i < functions.size(); i++) {
+            functions.get(i).setIndex(i);
+        }
     }
 
     /**
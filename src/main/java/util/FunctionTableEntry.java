@@ -16,11 +16,18 @@ public class FunctionTableEntry {
     private int index;
     private JavaClass containingClass;
     private String functionName;
+    private int functionNameId;
     private Type returnType;
     private boolean isStatic;
     private List<Type> parameterTypes;
     private AccessModifier accessModifier;
 
+    /**
+     * The name under which the function is emitted, or null if it has not
+     * been worked out yet
+     */
+    private volatile String outputName;
+
     public FunctionTableEntry(int index,
                               JavaClass containingClass,
                               String functionName,
@@ -31,6 +38,7 @@ public class FunctionTableEntry {
         this.index = index;
         this.containingClass = containingClass;
         this.functionName = functionName;
+        functionNameId = InternTable.IDENTIFIERS.intern(functionName);
         this.returnType = returnType;
         this.isStatic = isStatic;
         this.parameterTypes = parameterTypes;
@@ -41,6 +49,10 @@ public class FunctionTableEntry {
         return index;
     }
 
+    void setIndex(int index) {
+        this.index = index;
+    }
+
     public JavaClass getContainingClass() {
         return containingClass;
     }
@@ -49,6 +61,15 @@ public class FunctionTableEntry {
         return functionName;
     }
 
+    /**
+     * Returns the id of the function's name in InternTable.IDENTIFIERS.
+     *
+     * @return The id of the function's name
+     */
+    public int getFunctionNameId() {
+        return functionNameId;
+    }
+
     public Type getReturnType() {
         return returnType;
     }
@@ -65,6 +86,20 @@ public class FunctionTableEntry {
         return accessModifier;
     }
 
+    /**
+     * Returns the name under which the function is emitted, if it has
+     * already been worked out by CodeGenUtil.getFunctionNameForOutput().
+     *
+     * @return The output name, or null if it has not been worked out yet
+     */
+    public String getOutputName() {
+        return outputName;
+    }
+
+    public void setOutputName(String outputName) {
+        this.outputName = outputName;
+    }
+
     /**
      * Determines whether the method referenced by this table entry can be
      * executed from the given context.
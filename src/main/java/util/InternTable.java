@@ -0,0 +1,126 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Maps strings to dense integer ids.
+ *
+ * The first string interned is given id 0, the next id 1, and so on, so ids
+ * can be used to index flat arrays. Once a string has an id it keeps it, so
+ * tables built from ids can be compared without looking at the strings again.
+ *
+ * There is one table for identifiers (function and variable names) and one
+ * for types, both shared by the whole compiler. The tables are shared between
+ * compilations, so in server mode an identifier is only ever given one id
+ * however many programs use it. Interning is safe to call from several
+ * threads at once.
+ */
+public class InternTable {
+
+    /**
+     * The table of function and variable names
+     */
+    public static final InternTable IDENTIFIERS = new InternTable();
+
+    /**
+     * The table of types, keyed by a string that is equal for two types iff
+     * the types are equal
+     */
+    public static final InternTable TYPES = new InternTable();
+
+    /**
+     * The value returned by lookup() for a string that has not been interned
+     */
+    public static final int NOT_INTERNED = -1;
+
+    private Map<String, Integer> ids;
+
+    /**
+     * The string with each id, indexed by id
+     */
+    private List<String> strings;
+
+    /**
+     * The id to give out next from newId()
+     */
+    private AtomicInteger nextUnsharedId;
+
+    public InternTable() {
+        ids = new ConcurrentHashMap<>();
+        strings = new ArrayList<>();
+        nextUnsharedId = new AtomicInteger(NOT_INTERNED - 1);
+    }
+
+    /**
+     * Returns the id of a string, giving it the next free id if it does not
+     * already have one.
+     *
+     * @param string The string to intern
+     * @return The id of the string
+     */
+    public int intern(String string) {
+        Integer id = ids.get(string);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(string);
+            if (id == null) {
+                id = strings.size();
+                strings.add(string);
+                ids.put(string, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Gives out an id that is not shared with any string.
+     *
+     * This is used for types that are only equal to themselves. These ids are
+     * negative, so that they do not take up room in arrays indexed by id.
+     *
+     * @return The new id
+     */
+    public int newId() {
+        return nextUnsharedId.getAndDecrement();
+    }
+
+    /**
+     * Returns the id of a string without interning it.
+     *
+     * @param string The string to look up
+     * @return The id of the string, or NOT_INTERNED if it does not have one
+     */
+    public int lookup(String string) {
+        Integer id = ids.get(string);
+        return (id != null) ? id : NOT_INTERNED;
+    }
+
+    /**
+     * Returns the string with a given id.
+     *
+     * @param id The id to look up
+     * @return The string with that id, or null if the id was given out by
+     *         newId()
+     */
+    public synchronized String getString(int id) {
+        return (id >= 0) ? strings.get(id) : null;
+    }
+
+    /**
+     * Returns the number of strings interned so far.
+     *
+     * Every id given out by intern() is less than this, so it can be used as
+     * the size of an array indexed by id.
+     *
+     * @return The number of strings interned so far
+     */
+    public synchronized int size() {
+        return strings.size();
+    }
+}
@@ -1,17 +1,22 @@
 package util;
 
-import java.util.HashMap;
+import ast.types.Type;
+
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Provides fast lookup of functions through a tree where each edge represents
  * a type in the function's arguments list.
  *
+ * Edges are labelled with ids from an InternTable rather than with the types
+ * themselves. Each node keeps the ids of its outward edges in a sorted array,
+ * so following an edge is a binary search over a few ints and never hashes
+ * or compares types.
+ *
  * @param <ValueType> The type associated with each node
- * @param <EdgeType> The type associated with each edge
  */
-public class LookupTree<ValueType, EdgeType> {
+public class LookupTree<ValueType> {
 
     /**
      * The number of entries in the tree.
@@ -21,11 +26,42 @@ public class LookupTree<ValueType, EdgeType> {
     /**
      * The root of the tree.
      */
-    private LookupTreeNode root;
+    private LookupTreeNode<ValueType> root;
 
     public LookupTree() {
         numEntries = 0;
-        root = new LookupTreeNode();
+        root = new LookupTreeNode<>();
+    }
+
+    /**
+     * Returns the edges that lead to a function with given parameter types.
+     *
+     * @param parameterTypes The types of the parameters
+     * @return The id of each type, in order
+     */
+    public static int[] getEdges(List<Type> parameterTypes) {
+        int[] edges = new int[parameterTypes.size()];
+        for (int i = 0; i < edges.length; i++) {
+            edges[i] = parameterTypes.get(i).getTypeId();
+        }
+        return edges;
+    }
+
+    /**
+     * Returns the edges that lead to a function with a given name and given
+     * parameter types, for trees that hold functions with different names.
+     *
+     * @param nameId The id of the function name in InternTable.IDENTIFIERS
+     * @param parameterTypes The types of the parameters
+     * @return The name id followed by the id of each type
+     */
+    public static int[] getEdges(int nameId, List<Type> parameterTypes) {
+        int[] edges = new int[parameterTypes.size() + 1];
+        edges[0] = nameId;
+        for (int i = 1; i < edges.length; i++) {
+            edges[i] = parameterTypes.get(i - 1).getTypeId();
+        }
+        return edges;
     }
 
     /**
@@ -37,28 +73,16 @@ public class LookupTree<ValueType, EdgeType> {
      * @return true if the insertion was successful; false if there is already
      *      an entry at this position
      */
-    public boolean insert(List<EdgeType> edges, ValueType value) {
-
-        // Start at the root
-        LookupTreeNode currentNode = root;
-
-        // Walk down the tree
-        boolean inserting = false;
-        for (EdgeType edge : edges) {
-            if (inserting) {
-                LookupTreeNode newNode = new LookupTreeNode();
-                currentNode.outwardEdges.put(edge, newNode);
-                currentNode = newNode;
-            } else {
-                if (currentNode.outwardEdges.containsKey(edge)) {
-                    currentNode = currentNode.outwardEdges.get(edge);
-                } else {
-                    inserting = true;
-                    LookupTreeNode newNode = new LookupTreeNode();
-                    currentNode.outwardEdges.put(edge, newNode);
-                    currentNode = newNode;
-                }
+    public boolean insert(int[] edges, ValueType value) {
+
+        // Walk down the tree from the root, adding any nodes that are missing
+        LookupTreeNode<ValueType> currentNode = root;
+        for (int edge : edges) {
+            LookupTreeNode<ValueType> nextNode = currentNode.getChild(edge);
+            if (nextNode == null) {
+                nextNode = currentNode.addChild(edge);
             }
+            currentNode = nextNode;
         }
 
         // We have now arrived at the node in the correct place. If there's no
@@ -81,23 +105,44 @@ public class LookupTree<ValueType, EdgeType> {
      * @param edges The path to follow
      * @return The value that was found, or null if no such value exists
      */
-    public ValueType lookup(List<EdgeType> edges) {
+    public ValueType lookup(int[] edges) {
+        LookupTreeNode<ValueType> currentNode = root;
+        for (int i = 0; i < edges.length && currentNode != null; i++) {
+            currentNode = currentNode.getChild(edges[i]);
+        }
+        return (currentNode != null) ? currentNode.value : null;
+    }
 
-        // Start at the root
-        LookupTreeNode currentNode = root;
+    /**
+     * Looks up the function with given parameter types.
+     *
+     * This follows the ids of the types directly, without building the array
+     * of edges.
+     *
+     * @param parameterTypes The types of the parameters
+     * @return The value that was found, or null if no such value exists
+     */
+    public ValueType lookup(List<Type> parameterTypes) {
+        return lookupFrom(root, parameterTypes);
+    }
 
-        // Walk down the tree
-        for (EdgeType edge : edges) {
-            if (currentNode == null)
-                break;
-            currentNode = currentNode.outwardEdges.getOrDefault(edge, null);
-        }
+    /**
+     * Looks up the function with a given name and given parameter types.
+     *
+     * @param nameId The id of the function name in InternTable.IDENTIFIERS
+     * @param parameterTypes The types of the parameters
+     * @return The value that was found, or null if no such value exists
+     */
+    public ValueType lookup(int nameId, List<Type> parameterTypes) {
+        return lookupFrom(root.getChild(nameId), parameterTypes);
+    }
 
-        // Return the value found, or null if it doesn't exist
-        if (currentNode != null && currentNode.value != null)
-            return currentNode.value;
-        else
-            return null;
+    private ValueType lookupFrom(LookupTreeNode<ValueType> node, List<Type> parameterTypes) {
+        LookupTreeNode<ValueType> currentNode = node;
+        for (int i = 0; i < parameterTypes.size() && currentNode != null; i++) {
+            currentNode = currentNode.getChild(parameterTypes.get(i).getTypeId());
+        }
+        return (currentNode != null) ? currentNode.value : null;
     }
 
     /**
@@ -114,14 +159,58 @@ public class LookupTree<ValueType, EdgeType> {
      *
      * The node is a leaf iff value == null.
      */
-    private class LookupTreeNode {
+    private static class LookupTreeNode<ValueType> {
 
         ValueType value;
-        Map<EdgeType, LookupTreeNode> outwardEdges;
+
+        /**
+         * The ids of the outward edges, in ascending order. Only the first
+         * numChildren are in use.
+         */
+        int[] edges;
+
+        /**
+         * The node at the end of each outward edge, in the same order as
+         * the edges.
+         */
+        LookupTreeNode<ValueType>[] children;
+
+        int numChildren;
 
         public LookupTreeNode() {
             value = null;
-            outwardEdges = new HashMap<>();
+            edges = null;
+            children = null;
+            numChildren = 0;
+        }
+
+        LookupTreeNode<ValueType> getChild(int edge) {
+            if (numChildren == 0) {
+                return null;
+            }
+            int position = Arrays.binarySearch(edges, 0, numChildren, edge);
+            return (position >= 0) ? children[position] : null;
+        }
+
+        @SuppressWarnings("unchecked")
+        LookupTreeNode<ValueType> addChild(int edge) {
+            if (numChildren == 0) {
+                edges = new int[1];
+                children = (LookupTreeNode<ValueType>[]) new LookupTreeNode<?>[1];
+            } else if (numChildren == edges.length) {
+                edges = Arrays.copyOf(edges, numChildren * 2);
+                children = Arrays.copyOf(children, numChildren * 2);
+            }
+
+            // Keep the edges sorted so that they can be binary searched
+            int position = -Arrays.binarySearch(edges, 0, numChildren, edge) - 1;
+            System.arraycopy(edges, position, edges, position + 1, numChildren - position);
+            System.arraycopy(children, position, children, position + 1, numChildren - position);
+            LookupTreeNode<ValueType> child = new LookupTreeNode<>();
+            edges[position] = edge;
+            children[position] = child;
+            numChildren++;
+            return child;
         }
 
     }
@@ -0,0 +1,495 @@
+package util;
+
+import ast.types.GenericInstantiation;
+import ast.types.Type;
+import errors.InvalidObjectModuleException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The result of compiling some of the classes of a program on their own, to
+ * be linked with the rest of the program later.
+ *
+ * An object module holds the compiled code of every method of its classes,
+ * together with everything needed to link that code into a complete module:
+ *
+ *  - Exports: the declarations of each class, which is its source code with
+ *    the body of every method and constructor left empty. When the module is
+ *    linked, these are parsed along with the rest of the program, so the
+ *    class layouts, virtual tables and function table are built exactly as
+ *    if the whole program had been compiled at once.
+ *  - Imports: the declarations of each class from outside the module that
+ *    the module was compiled against, recorded as a hash. If any of them
+ *    have changed by the time the module is linked, the module has to be
+ *    recompiled.
+ *  - Symbols: the functions that the code refers to. The name of a function
+ *    in the output depends on the functions in the rest of the program, so
+ *    each name is recorded along with a description of the function it
+ *    refers to, and is renamed when the module is linked if necessary.
+ *  - Methods: the code of each method, in the order that the methods appear
+ *    in their class, along with the generic instantiations they refer to.
+ *
+ * The position of the virtual table of each class is only known once the
+ * whole program has been seen, so the code refers to it by name instead.
+ *
+ * Object modules are stored as text.
+ */
+public class ObjectModule {
+
+    /**
+     * The extension of files that contain object modules
+     */
+    public static final String FILE_EXTENSION = ".jobj";
+
+    /**
+     * The prefix of the names by which code refers to the virtual table of a
+     * class before it is linked
+     */
+    static final String VIRTUAL_TABLE_SYMBOL_PREFIX = "vtable:";
+
+    /**
+     * Increment this whenever the format of object modules or of the code
+     * inside them changes, so that out of date modules are rejected.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String HEADER = "JavAssembler object module ";
+    private static final String SEPARATOR = "\t";
+
+    /**
+     * Matches a name in the code, either after a $ or as a quoted string
+     */
+    private static final Pattern NAME_PATTERN = Pattern.compile("\\$([^\\s()\"]+)|\"([^\"]*)\"");
+
+    /**
+     * The prefix of the names of function types, which are named after a
+     * function
+     */
+    private static final String FUNCTION_TYPE_PREFIX = "func_";
+
+    private List<ExportedClass> exports;
+    private Map<String, String> imports;
+    private Map<String, String> symbols;
+    private List<CompiledMethod> methods;
+
+    public ObjectModule() {
+        exports = new ArrayList<>();
+        imports = new LinkedHashMap<>();
+        symbols = new TreeMap<>();
+        methods = new ArrayList<>();
+    }
+
+    /**
+     * Adds a class that is defined by the module.
+     *
+     * @param className The name of the class
+     * @param fileName The name of the file the class was read from
+     * @param declarations The source code of the class, with the body of
+     *                     every subroutine left empty
+     */
+    public void addExport(String className, String fileName, String declarations) {
+        exports.add(new ExportedClass(className, fileName, declarations));
+    }
+
+    /**
+     * Records the declarations of a class from outside the module that the
+     * module was compiled against.
+     *
+     * @param className The name of the class
+     * @param declarationsHash The hash of the declarations of the class, as
+     *                         given by getDeclarationsHash()
+     */
+    public void addImport(String className, String declarationsHash) {
+        imports.put(className, declarationsHash);
+    }
+
+    /**
+     * Records which function a name in the code refers to.
+     *
+     * If several functions have the same name in the output, the first one
+     * to be added is kept, since they are all given the same name again when
+     * the module is linked.
+     *
+     * @param name The name of the function in the code
+     * @param descriptor The description of the function, as given by
+     *                   describeFunction()
+     */
+    public void addSymbol(String name, String descriptor) {
+        symbols.putIfAbsent(name, descriptor);
+    }
+
+    /**
+     * Adds the code of a method. The methods of each class must be added in
+     * the order that they appear in the class.
+     *
+     * @param className The name of the class containing the method
+     * @param instantiations The generic instantiations the method refers to
+     * @param code The compiled code of the method
+     */
+    public void addMethod(String className, List<GenericInstantiation> instantiations, String code) {
+        methods.add(new CompiledMethod(className, instantiations, code));
+    }
+
+    public List<ExportedClass> getExports() {
+        return exports;
+    }
+
+    /**
+     * @return The hash of the declarations of each class that the module was
+     *         compiled against, keyed by class name
+     */
+    public Map<String, String> getImports() {
+        return imports;
+    }
+
+    /**
+     * @return The description of the function that each name in the code
+     *         refers to, keyed by name
+     */
+    public Map<String, String> getSymbols() {
+        return symbols;
+    }
+
+    public List<CompiledMethod> getMethods() {
+        return methods;
+    }
+
+    /**
+     * Writes the module out in UTF-8. The stream is not closed.
+     *
+     * @param output The stream to write to
+     * @throws IOException If the stream cannot be written
+     */
+    public void write(OutputStream output) throws IOException {
+        Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+        writer.write(HEADER + FORMAT_VERSION + "\n");
+        for (ExportedClass export : exports) {
+            writer.write("export " + export.getClassName() + SEPARATOR + export.getFileName()
+                    + SEPARATOR + export.getDeclarations().length() + "\n");
+            writer.write(export.getDeclarations());
+            writer.write("\n");
+        }
+        for (Map.Entry<String, String> entry : imports.entrySet()) {
+            writer.write("import " + entry.getKey() + SEPARATOR + entry.getValue() + "\n");
+        }
+        for (Map.Entry<String, String> entry : symbols.entrySet()) {
+            writer.write("symbol " + entry.getKey() + SEPARATOR + entry.getValue() + "\n");
+        }
+        for (CompiledMethod method : methods) {
+            writer.write("method " + method.getClassName() + SEPARATOR + method.getGenericInstantiations().size()
+                    + SEPARATOR + method.getCode().length() + "\n");
+            for (GenericInstantiation instantiation : method.getGenericInstantiations()) {
+                writer.write(instantiation.getGenericClassName());
+                for (String typeArgumentName : instantiation.getTypeArgumentNames()) {
+                    writer.write(SEPARATOR + typeArgumentName);
+                }
+                writer.write("\n");
+            }
+            writer.write(method.getCode());
+            writer.write("\n");
+        }
+        writer.flush();
+    }
+
+    /**
+     * Reads a module that was written by write(). The stream is read to the
+     * end, but is not closed.
+     *
+     * @param name The name of the file that the module came from, which is
+     *             used in error messages
+     * @param stream The stream to read the module from
+     * @return The module
+     * @throws IOException If the stream cannot be read
+     * @throws InvalidObjectModuleException If the stream does not contain an
+     *                                      object module, or the module was
+     *                                      written by a different version of
+     *                                      the compiler
+     */
+    public static ObjectModule read(String name, InputStream stream)
+            throws IOException, InvalidObjectModuleException {
+        String contents = new String(readAllBytes(stream), StandardCharsets.UTF_8);
+        if (!contents.startsWith(HEADER)) {
+            throw new InvalidObjectModuleException(name + " is not an object module");
+        }
+        ModuleReader reader = new ModuleReader(contents);
+        ObjectModule module = new ObjectModule();
+        try {
+            if (!reader.readLine().equals(HEADER + FORMAT_VERSION)) {
+                throw new InvalidObjectModuleException(name
+                        + " was compiled by a different version of the compiler, and must be recompiled");
+            }
+            while (!reader.atEnd()) {
+                String line = reader.readLine();
+                int kindEnd = line.indexOf(' ');
+                String kind = kindEnd < 0 ? line : line.substring(0, kindEnd);
+                String[] fields = line.substring(kindEnd + 1).split(SEPARATOR, -1);
+                switch (kind) {
+                    case "export":
+                        String declarations = reader.readText(Integer.parseInt(fields[2]));
+                        module.addExport(fields[0], fields[1], declarations);
+                        break;
+                    case "import":
+                        module.addImport(fields[0], fields[1]);
+                        break;
+                    case "symbol":
+                        module.addSymbol(fields[0], fields[1]);
+                        break;
+                    case "method":
+                        List<GenericInstantiation> instantiations = new ArrayList<>();
+                        int numInstantiations = Integer.parseInt(fields[1]);
+                        for (int i = 0; i < numInstantiations; i++) {
+                            String[] parts = reader.readLine().split(SEPARATOR);
+                            List<String> typeArgumentNames = Arrays.asList(parts).subList(1, parts.length);
+                            instantiations.add(new GenericInstantiation(parts[0], typeArgumentNames));
+                        }
+                        String code = reader.readText(Integer.parseInt(fields[2]));
+                        module.addMethod(fields[0], instantiations, code);
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown entry " + kind);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Any entry that cannot be read means that the file is corrupt
+            throw new InvalidObjectModuleException(name + " is not a valid object module");
+        }
+        return module;
+    }
+
+    /**
+     * Computes the hash by which a module records the declarations of a
+     * class that it was compiled against.
+     *
+     * @param declarations The source code of the class, with the body of
+     *                     every subroutine left empty
+     * @return The hash
+     */
+    public static String getDeclarationsHash(String declarations) {
+        return CompilationCache.hash(FORMAT_VERSION + "\n" + declarations);
+    }
+
+    /**
+     * Describes a function in a way that identifies it in any program that
+     * contains its class, for example "Maths::max(int,int)".
+     *
+     * @param entry The function
+     * @return The description
+     */
+    public static String describeFunction(FunctionTableEntry entry) {
+        StringBuilder descriptor = new StringBuilder();
+        descriptor.append(entry.getContainingClass()).append("::").append(entry.getFunctionName()).append('(');
+        List<Type> parameterTypes = entry.getParameterTypes();
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            if (i > 0) {
+                descriptor.append(',');
+            }
+            descriptor.append(CompilationCache.describeType(parameterTypes.get(i)));
+        }
+        return descriptor.append(')').toString();
+    }
+
+    /**
+     * Finds every name that some compiled code refers to, including the
+     * names of the functions that function types are named after.
+     *
+     * @param code The compiled code
+     * @return The names, without the leading $
+     */
+    public static Set<String> findReferencedNames(String code) {
+        Set<String> names = new TreeSet<>();
+        Matcher matcher = NAME_PATTERN.matcher(code);
+        while (matcher.find()) {
+            String name = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+            names.add(name);
+            if (name.startsWith(FUNCTION_TYPE_PREFIX)) {
+                names.add(name.substring(FUNCTION_TYPE_PREFIX.length()));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Resolves the names in the code of a method from a module, so that it
+     * can be placed in a complete module.
+     *
+     * Names that the module has a symbol for are renamed, along with the
+     * function types named after them, and references to virtual tables are
+     * replaced by their positions. All other names, such as those of local
+     * variables and of the runtime library, are left alone.
+     *
+     * @param code The code of the method
+     * @param renameSymbol Gives the name of the function that a symbol of the
+     *                     module refers to in the complete module, or null if
+     *                     the name is not a symbol of the module
+     * @param virtualTablePosition Gives the position of the virtual table of
+     *                             a class, from its name
+     * @return The linked code
+     */
+    public static String relink(String code,
+                                Function<String, String> renameSymbol,
+                                ToIntFunction<String> virtualTablePosition) {
+        StringBuffer linked = new StringBuffer(code.length());
+        Matcher matcher = NAME_PATTERN.matcher(code);
+        while (matcher.find()) {
+            String replacement;
+            if (matcher.group(1) != null) {
+                String name = matcher.group(1);
+                if (name.startsWith(VIRTUAL_TABLE_SYMBOL_PREFIX)) {
+                    String className = name.substring(VIRTUAL_TABLE_SYMBOL_PREFIX.length());
+                    replacement = Integer.toString(virtualTablePosition.applyAsInt(className));
+                } else {
+                    replacement = "$" + rename(name, renameSymbol);
+                }
+            } else {
+                replacement = "\"" + rename(matcher.group(2), renameSymbol) + "\"";
+            }
+            matcher.appendReplacement(linked, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(linked);
+        return linked.toString();
+    }
+
+    private static String rename(String name, Function<String, String> renameSymbol) {
+        String newName = renameSymbol.apply(name);
+        if (newName != null) {
+            return newName;
+        }
+        if (name.startsWith(FUNCTION_TYPE_PREFIX)) {
+            newName = renameSymbol.apply(name.substring(FUNCTION_TYPE_PREFIX.length()));
+            if (newName != null) {
+                return FUNCTION_TYPE_PREFIX + newName;
+            }
+        }
+        return name;
+    }
+
+    private static byte[] readAllBytes(InputStream stream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int numRead;
+        while ((numRead = stream.read(buffer)) != -1) {
+            bytes.write(buffer, 0, numRead);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the contents of a module a line or a block of text at a time.
+     */
+    private static class ModuleReader {
+
+        private String contents;
+        private int position;
+
+        ModuleReader(String contents) {
+            this.contents = contents;
+            position = 0;
+        }
+
+        boolean atEnd() {
+            return position >= contents.length();
+        }
+
+        String readLine() {
+            int lineEnd = contents.indexOf('\n', position);
+            if (lineEnd < 0) {
+                throw new IllegalStateException("Missing newline at end of line");
+            }
+            String line = contents.substring(position, lineEnd);
+            position = lineEnd + 1;
+            return line;
+        }
+
+        /**
+         * Reads a block of text of a known length, followed by a newline
+         */
+        String readText(int length) {
+            String text = contents.substring(position, position + length);
+            position += length;
+            if (contents.charAt(position) != '\n') {
+                throw new IllegalStateException("Missing newline after block of text");
+            }
+            position++;
+            return text;
+        }
+    }
+
+    /**
+     * A class defined by a module.
+     */
+    public static class ExportedClass {
+
+        private String className;
+        private String fileName;
+        private String declarations;
+
+        public ExportedClass(String className, String fileName, String declarations) {
+            this.className = className;
+            this.fileName = fileName;
+            this.declarations = declarations;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        /**
+         * @return The source code of the class, with the body of every
+         *         subroutine left empty
+         */
+        public String getDeclarations() {
+            return declarations;
+        }
+    }
+
+    /**
+     * The code of a method from a module.
+     */
+    public static class CompiledMethod {
+
+        private String className;
+        private List<GenericInstantiation> genericInstantiations;
+        private String code;
+
+        public CompiledMethod(String className, List<GenericInstantiation> genericInstantiations, String code) {
+            this.className = className;
+            this.genericInstantiations = Collections.unmodifiableList(genericInstantiations);
+            this.code = code;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public List<GenericInstantiation> getGenericInstantiations() {
+            return genericInstantiations;
+        }
+
+        public String getCode() {
+            return code;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package util;
+
+import ast.expressions.*;
+import ast.statements.*;
+import ast.structure.ClassMethod;
+import ast.structure.CodeBlock;
+import ast.types.JavaClass;
+import ast.types.Type;
+import codegen.CodeGenUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the methods of a program that can be reached from a set of entry
+ * points, so that the rest can be left out of the module.
+ *
+ * The calls made by each reachable method are found by walking its AST. A
+ * method call goes through the virtual table, so it may reach the method in
+ * that slot of any subclass of the receiver's class, but only a class that
+ * is instantiated somewhere in the reachable code can be the class of a
+ * receiver. The slot is therefore only followed in those classes, including
+ * the ones that are first instantiated after the call has been found. This
+ * is known as rapid type analysis.
+ *
+ * Instantiations of a generic class share the code and the virtual table of
+ * the generic class, so functions are identified by their output names.
+ */
+public class ReachabilityAnalysis {
+
+    private FunctionTable functionTable;
+    private ClassTable classTable;
+
+    /**
+     * The AST of each method, by output name
+     */
+    private Map<String, ClassMethod> methods;
+
+    private Set<String> entryPoints;
+    private Set<String> reachableFunctions;
+    private Deque<ClassMethod> methodsToVisit;
+
+    /**
+     * The classes instantiated by the reachable code, and the virtual table
+     * offsets called on each receiver class
+     */
+    private Set<JavaClass> instantiatedClasses;
+    private Map<JavaClass, Set<Integer>> virtualCalls;
+
+    /**
+     * The output names of the functions whose types are used by the
+     * reachable method calls
+     */
+    private Set<String> functionTypes;
+
+    /**
+     * The classes that the reachable code refers to, which decides which
+     * generic instantiations are still used
+     */
+    private Set<JavaClass> usedClasses;
+
+    /**
+     * Finds the method calls that may be devirtualised, whose methods are
+     * then called directly even if no receiver is ever instantiated
+     */
+    private ClassHierarchyAnalysis hierarchy;
+
+    public ReachabilityAnalysis(List<ClassMethod> methods, FunctionTable functionTable, ClassTable classTable) {
+        this.functionTable = functionTable;
+        this.classTable = classTable;
+        hierarchy = new ClassHierarchyAnalysis(classTable, functionTable);
+        this.methods = new HashMap<>();
+        for (ClassMethod method : methods) {
+            this.methods.put(CodeGenUtil.getFunctionNameForOutput(method, functionTable), method);
+        }
+        entryPoints = new HashSet<>();
+        reachableFunctions = new HashSet<>();
+        methodsToVisit = new ArrayDeque<>();
+        instantiatedClasses = new HashSet<>();
+        virtualCalls = new LinkedHashMap<>();
+        functionTypes = new HashSet<>();
+        usedClasses = new HashSet<>();
+    }
+
+    /**
+     * Finds every method that can be reached from the entry points.
+     *
+     * @param entryPoints The entry points, each given as Class.method. Every
+     *                    overload of the method is an entry point.
+     * @throws errors.CompilationAbortedException If an entry point does not
+     *                                            exist
+     */
+    public void analyse(List<String> entryPoints) {
+        for (String entryPoint : entryPoints) {
+            addEntryPoint(entryPoint);
+        }
+        while (!methodsToVisit.isEmpty()) {
+            visitCodeBlock(methodsToVisit.remove().getBody());
+        }
+    }
+
+    private void addEntryPoint(String entryPoint) {
+        int dot = entryPoint.lastIndexOf('.');
+        String className = entryPoint.substring(0, Math.max(dot, 0));
+        String methodName = entryPoint.substring(dot + 1);
+        boolean found = false;
+        for (FunctionTableEntry entry : functionTable.getFunctions()) {
+            JavaClass containingClass = entry.getContainingClass();
+            if (containingClass.getGenericClass() == null
+                    && containingClass.toString().equals(className)
+                    && entry.getFunctionName().equals(methodName)) {
+                entryPoints.add(CodeGenUtil.getFunctionNameForOutput(entry, functionTable));
+                markReachable(entry);
+                found = true;
+            }
+        }
+        if (!found) {
+            ErrorReporting.reportError("Unknown entry point " + entryPoint);
+        }
+    }
+
+    /**
+     * @return The output names of the entry points, which are the only
+     *         functions to export
+     */
+    public Set<String> getEntryPoints() {
+        return entryPoints;
+    }
+
+    public Set<String> getReachableFunctions() {
+        return reachableFunctions;
+    }
+
+    public boolean isReachable(ClassMethod method) {
+        return reachableFunctions.contains(CodeGenUtil.getFunctionNameForOutput(method, functionTable));
+    }
+
+    public Set<String> getFunctionTypes() {
+        return functionTypes;
+    }
+
+    /**
+     * Counts the generic instantiations that the reachable code never
+     * refers to, whose functions are left out of the module.
+     *
+     * @return The number of unused instantiations
+     */
+    public int getNumUnusedInstantiations() {
+        int numUnused = 0;
+        for (JavaClass instantiation : classTable.getInstantiations()) {
+            if (!usedClasses.contains(instantiation)) {
+                numUnused++;
+            }
+        }
+        return numUnused;
+    }
+
+    /**
+     * Builds a combined virtual table holding only the virtual tables of the
+     * classes that are instantiated. Each class keeps all of its slots,
+     * since method calls refer to them by offset, but a slot whose method
+     * can never be reached is filled with VirtualTable.UNUSED_ENTRY.
+     *
+     * @return The virtual table, which also records the function types used
+     *         by the reachable method calls
+     */
+    public VirtualTable buildVirtualTable() {
+        Set<JavaClass> classesWithTables = new HashSet<>();
+        for (JavaClass javaClass : instantiatedClasses) {
+            classesWithTables.add(getVirtualTableClass(javaClass));
+        }
+        List<Integer> table = new ArrayList<>();
+        Map<JavaClass, Integer> startIndexMap = new HashMap<>();
+        for (JavaClass javaClass : classTable.getClasses()) {
+            if (!classesWithTables.contains(javaClass)) {
+                continue;
+            }
+            startIndexMap.put(javaClass, table.size());
+            for (int index : javaClass.getVirtualTable()) {
+                FunctionTableEntry entry = functionTable.getEntry(index);
+                boolean reachable = reachableFunctions.contains(
+                        CodeGenUtil.getFunctionNameForOutput(entry, functionTable));
+                table.add(reachable ? index : VirtualTable.UNUSED_ENTRY);
+            }
+        }
+        VirtualTable virtualTable = new VirtualTable(table, startIndexMap);
+        virtualTable.setFunctionTypes(functionTypes);
+        return virtualTable;
+    }
+
+    private void markReachable(FunctionTableEntry entry) {
+        usedClasses.add(entry.getContainingClass());
+        String name = CodeGenUtil.getFunctionNameForOutput(entry, functionTable);
+        if (reachableFunctions.add(name)) {
+            ClassMethod method = methods.get(name);
+            if (method != null) {
+                methodsToVisit.add(method);
+            }
+        }
+    }
+
+    private void markInstantiated(JavaClass javaClass) {
+        usedClasses.add(javaClass);
+        if (!instantiatedClasses.add(javaClass)) {
+            return;
+        }
+        for (Map.Entry<JavaClass, Set<Integer>> call : virtualCalls.entrySet()) {
+            if (isSubclass(javaClass, call.getKey())) {
+                for (int offset : call.getValue()) {
+                    markSlotReachable(javaClass, offset);
+                }
+            }
+        }
+    }
+
+    private void markVirtualCall(JavaClass receiverClass, int offset) {
+        usedClasses.add(receiverClass);
+        Set<Integer> offsets = virtualCalls.computeIfAbsent(receiverClass, key -> new HashSet<>());
+        if (!offsets.add(offset)) {
+            return;
+        }
+        for (JavaClass javaClass : instantiatedClasses) {
+            if (isSubclass(javaClass, receiverClass)) {
+                markSlotReachable(javaClass, offset);
+            }
+        }
+    }
+
+    private void markSlotReachable(JavaClass javaClass, int offset) {
+        List<Integer> classVirtualTable = getVirtualTableClass(javaClass).getVirtualTable();
+        if (offset < classVirtualTable.size()) {
+            markReachable(functionTable.getEntry(classVirtualTable.get(offset)));
+        }
+    }
+
+    /**
+     * Decides whether an object of one class could be the receiver of a
+     * method call on another. Instantiations of the same generic class are
+     * treated as the same class, since they share a virtual table.
+     */
+    private static boolean isSubclass(JavaClass javaClass, JavaClass receiverClass) {
+        JavaClass receiverTableClass = getVirtualTableClass(receiverClass);
+        for (JavaClass ancestor = javaClass; ancestor != null; ancestor = ancestor.getParent()) {
+            if (ancestor.equals(receiverClass) || getVirtualTableClass(ancestor).equals(receiverTableClass)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static JavaClass getVirtualTableClass(JavaClass javaClass) {
+        return (javaClass.getGenericClass() != null) ? javaClass.getGenericClass() : javaClass;
+    }
+
+    private void visitCodeBlock(CodeBlock codeBlock) {
+        for (Statement statement : codeBlock.getStatements()) {
+            visitStatement(statement);
+        }
+    }
+
+    private void visitStatement(Statement statement) {
+        if (statement instanceof Assignment) {
+            Assignment assignment = (Assignment) statement;
+            visitExpression(assignment.getVariableExpression());
+            visitExpression(assignment.getExpression());
+        } else if (statement instanceof DeclarationAndAssignment) {
+            visitExpression(((DeclarationAndAssignment) statement).getExpression());
+        } else if (statement instanceof ReturnStatement) {
+            visitExpression(((ReturnStatement) statement).getExpression());
+        } else if (statement instanceof IfStatementChain) {
+            IfStatementChain chain = (IfStatementChain) statement;
+            visitExpression(chain.getCondition());
+            visitCodeBlock(chain.getIfBlock());
+            if (chain.hasNextIfStatementChain()) {
+                visitStatement(chain.getNextInChain());
+            } else if (chain.hasElseBlock()) {
+                visitCodeBlock(chain.getElseBlock());
+            }
+        } else if (statement instanceof WhileLoop) {
+            WhileLoop whileLoop = (WhileLoop) statement;
+            visitExpression(whileLoop.getCondition());
+            visitCodeBlock(whileLoop.getCodeBlock());
+        } else if (statement instanceof ForLoop) {
+            ForLoop forLoop = (ForLoop) statement;
+            visitStatement(forLoop.getInitialiser());
+            visitExpression(forLoop.getCondition());
+            visitExpression(forLoop.getUpdater());
+            visitCodeBlock(forLoop.getCodeBlock());
+        } else if (statement instanceof Expression) {
+            visitExpression((Expression) statement);
+        }
+    }
+
+    private void visitExpressions(List<Expression> expressions) {
+        if (expressions != null) {
+            for (Expression expression : expressions) {
+                visitExpression(expression);
+            }
+        }
+    }
+
+    private void visitExpression(Expression expression) {
+        if (expression instanceof BinaryOperatorExpression) {
+            BinaryOperatorExpression binaryExpression = (BinaryOperatorExpression) expression;
+            visitExpression(binaryExpression.getLeft());
+            visitExpression(binaryExpression.getRight());
+        } else if (expression instanceof FunctionCall) {
+            FunctionCall functionCall = (FunctionCall) expression;
+            markReachable(functionCall.getFunctionTableEntry());
+            visitExpressions(functionCall.getArguments());
+        } else if (expression instanceof MethodCall) {
+            MethodCall methodCall = (MethodCall) expression;
+            FunctionTableEntry staticEntry = methodCall.getStaticFunctionEntry();
+            Type receiverType = methodCall.getLocalVariable().getType();
+            JavaClass receiverClass = (receiverType instanceof JavaClass)
+                    ? (JavaClass) receiverType : staticEntry.getContainingClass();
+            functionTypes.add(CodeGenUtil.getFunctionNameForOutput(staticEntry, functionTable));
+            markVirtualCall(receiverClass, methodCall.getVirtualTableOffset());
+            FunctionTableEntry target = hierarchy.getMonomorphicTarget(receiverClass,
+                    methodCall.getVirtualTableOffset());
+            if (target != null) {
+                markReachable(target);
+            }
+            visitExpressions(methodCall.getArguments());
+        } else if (expression instanceof NewObjectExpression) {
+            NewObjectExpression newObject = (NewObjectExpression) expression;
+            markInstantiated(newObject.getType());
+            if (newObject.usesConstructor()) {
+                markReachable(newObject.getConstructor());
+            }
+            visitExpressions(newObject.getArguments());
+        } else if (expression instanceof NegateExpression) {
+            visitExpression(((NegateExpression) expression).getExpression());
+        } else if (expression instanceof NotExpression) {
+            visitExpression(((NotExpression) expression).getExpression());
+        } else if (expression instanceof NewArrayExpression) {
+            visitExpression(((NewArrayExpression) expression).getLengthExpression());
+        } else if (expression instanceof ArrayIndexExpression) {
+            ArrayIndexExpression element = (ArrayIndexExpression) expression;
+            visitExpression(element.getArrayExpression());
+            visitExpression(element.getIndexExpression());
+        } else if (expression instanceof ExpressionList) {
+            visitExpressions(((ExpressionList) expression).getExpressionList());
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package util;
 
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.misc.Interval;
 import parser.JavaFileParser;
 
 /**
@@ -50,4 +53,31 @@ public class SubroutineToCompile {
             return null;
         }
     }
+
+    /**
+     * @return The parse tree of the body of the subroutine
+     */
+    public JavaFileParser.CodeBlockContext getBody() {
+        return isMethod() ? methodDefinition.codeBlock() : constructorDefinition.codeBlock();
+    }
+
+    /**
+     * @return The source that the subroutine was read from
+     */
+    public CharStream getSource() {
+        ParserRuleContext ctx = isMethod() ? methodDefinition : constructorDefinition;
+        return ctx.start.getInputStream();
+    }
+
+    /**
+     * Returns the exact source code of the subroutine, from the start of its
+     * signature to its closing brace.
+     *
+     * @return The source code of the subroutine
+     */
+    public String getSourceText() {
+        ParserRuleContext ctx = isMethod() ? methodDefinition : constructorDefinition;
+        Interval interval = Interval.of(ctx.start.getStartIndex(), ctx.stop.getStopIndex());
+        return ctx.start.getInputStream().getText(interval);
+    }
 }
@@ -1,10 +1,12 @@
 package util;
 
+import ast.types.GenericJavaClass;
 import ast.types.JavaClass;
 import codegen.CodeGenUtil;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -13,27 +15,100 @@ import java.util.stream.Collectors;
  */
 public class VirtualTable {
 
+    /**
+     * The entry given to a slot whose method can never be called, which is
+     * filled with a function that traps
+     */
+    public static final int UNUSED_ENTRY = -1;
+
+    /**
+     * The name of the function that fills the unused slots
+     */
+    public static final String UNUSED_ENTRY_FUNCTION_NAME = "unused_virtual_method";
+
     private List<Integer> entries;
     private Map<JavaClass, Integer> startIndexMap;
 
+    /**
+     * Whether the code being generated will be linked with other code later,
+     * in which case the position of each class's virtual table is not yet
+     * known and must be referred to by name
+     */
+    private boolean relocatable;
+
+    /**
+     * The output names of the functions whose types are used by indirect
+     * calls through the table, or null if every non-static function may be
+     * called indirectly
+     */
+    private Set<String> functionTypes;
+
     public VirtualTable(List<Integer> entries, Map<JavaClass, Integer> startIndexMap) {
         this.entries = entries;
         this.startIndexMap = startIndexMap;
+        relocatable = false;
+        functionTypes = null;
+    }
+
+    public boolean isRelocatable() {
+        return relocatable;
+    }
+
+    public void setRelocatable(boolean relocatable) {
+        this.relocatable = relocatable;
+    }
+
+    public Set<String> getFunctionTypes() {
+        return functionTypes;
+    }
+
+    public void setFunctionTypes(Set<String> functionTypes) {
+        this.functionTypes = functionTypes;
     }
 
     public List<Integer> getEntries() {
         return entries;
     }
 
+    /**
+     * @return Whether any slot of the table is filled with UNUSED_ENTRY
+     */
+    public boolean hasUnusedEntries() {
+        return entries.contains(UNUSED_ENTRY);
+    }
+
     public List<String> getEntriesSymbolic(FunctionTable functionTable) {
         return entries
                 .stream()
-                .map(functionTable::getEntry)
-                .map(entry -> CodeGenUtil.getFunctionNameForOutput(entry, functionTable))
+                .map(index -> index == UNUSED_ENTRY
+                        ? UNUSED_ENTRY_FUNCTION_NAME
+                        : CodeGenUtil.getFunctionNameForOutput(functionTable.getEntry(index), functionTable))
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Looks up the start index of the virtual table of a class. An
+     * instantiation of a generic class uses the virtual table of the generic
+     * class.
+     *
+     * @param javaClass The class to look up
+     * @return The index of the first entry for the class
+     */
     public int getVirtualTablePosition(JavaClass javaClass) {
-        return startIndexMap.get(javaClass);
+        GenericJavaClass genericClass = javaClass.getGenericClass();
+        return startIndexMap.get(genericClass != null ? genericClass : javaClass);
+    }
+
+    /**
+     * Returns the name by which relocatable code refers to the start index of
+     * the virtual table of a class, which is resolved when the code is
+     * linked.
+     *
+     * @param javaClass The class to look up
+     * @return The symbolic name of the virtual table, without the leading $
+     */
+    public static String getVirtualTableSymbol(JavaClass javaClass) {
+        GenericJavaClass genericClass = javaClass.getGenericClass();
+        return ObjectModule.VIRTUAL_TABLE_SYMBOL_PREFIX + (genericClass != null ? genericClass : javaClass);
     }
 }
@@ -0,0 +1,48 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JavAssemblerTest {
+
+    private static String[] runServer(String... requests) throws IOException {
+        BufferedReader input = new BufferedReader(new StringReader(String.join("\n", requests)));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JavAssembler.runServer(JavAssembler.getCommandLineOptions(), input,
+                new PrintStream(output, true, "UTF-8"));
+        return new String(output.toByteArray(), StandardCharsets.UTF_8).split("\n");
+    }
+
+    @Test
+    void failedRequestIsReportedAsFailed() throws IOException {
+        String[] responses = runServer("-i Missing.java -o Missing.wat");
+        assertEquals("! Unable to read file Missing.java", responses[0]);
+        assertEquals("FAILED", responses[1]);
+        assertEquals(2, responses.length);
+    }
+
+    @Test
+    void serverKeepsRunningAfterAFailedRequest() throws IOException {
+        File source = File.createTempFile("Main", ".java");
+        source.deleteOnExit();
+        Files.write(source.toPath(), "public class Main { public static int f() { return 1; } }"
+                .getBytes(StandardCharsets.UTF_8));
+        File output = File.createTempFile("javassembler", ".wat");
+        output.deleteOnExit();
+
+        String[] responses = runServer(
+                "-i Missing.java -o " + output.getPath(),
+                "",
+                "-i " + source.getPath() + " -o " + output.getPath());
+        assertEquals(Arrays.asList("! Unable to read file Missing.java", "FAILED", "OK"), Arrays.asList(responses));
+    }
+}
@@ -5,6 +5,7 @@ import ast.types.PrimitiveType;
 import errors.MultipleVariableDeclarationException;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import util.InternTable;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -40,12 +41,12 @@ class VariableScopeTest {
     }
 
     @Test
-    void invalidVariableRequested() {
-        VariableScope parent = Mockito.mock(VariableScope.class);
+    void invalidVariableRequested() throws MultipleVariableDeclarationException {
+        VariableScope parent = new VariableScope();
+        parent.registerVariable("x", PrimitiveType.Int);
         VariableScope child = new VariableScope(parent);
-        VariableScope.Allocation allocation = child.getVariableWithName("x");
-        Mockito.verify(parent).getVariableWithName("x");
-        assertNull(allocation);
+        assertNull(child.getVariableWithName("y"));
+        assertNull(child.getVariableWithName("nameThatIsNeverDeclared"));
     }
 
     @Test
@@ -78,4 +79,48 @@ class VariableScopeTest {
         });
     }
 
-}
\ No newline at end of file
+    @Test
+    void variableAllocationInDistantAncestor() throws MultipleVariableDeclarationException {
+        VariableScope outer = new VariableScope();
+        outer.registerVariable("x", PrimitiveType.Int);
+        VariableScope scope = outer;
+        for (int i = 0; i < 10; i++) {
+            scope = new VariableScope(scope);
+        }
+        scope.registerVariable("y", PrimitiveType.Long);
+        VariableScope inner = new VariableScope(scope);
+        assertSame(outer.getVariableWithName("x"), inner.getVariableWithName("x"));
+        assertEquals(PrimitiveType.Long, inner.getVariableWithName("y").getType());
+        assertNull(outer.getVariableWithName("y"));
+    }
+
+    @Test
+    void variableDeclaredInParentAfterChildIsNotVisible() throws MultipleVariableDeclarationException {
+        VariableScope parent = new VariableScope();
+        parent.registerVariable("x", PrimitiveType.Int);
+        VariableScope child = new VariableScope(parent);
+        parent.registerVariable("y", PrimitiveType.Int);
+        assertNull(child.getVariableWithName("y"));
+        assertNotNull(parent.getVariableWithName("y"));
+
+        // The child can still declare a variable of its own with that name
+        child.registerVariable("y", PrimitiveType.Long);
+        assertEquals(PrimitiveType.Long, child.getVariableWithName("y").getType());
+        assertEquals(PrimitiveType.Int, parent.getVariableWithName("y").getType());
+    }
+
+    @Test
+    void variableLookedUpByNameId() throws MultipleVariableDeclarationException {
+        VariableScope scope = new VariableScope();
+        for (int i = 0; i < 20; i++) {
+            scope.registerVariable("v" + (19 - i), PrimitiveType.Int);
+        }
+        for (int i = 0; i < 20; i++) {
+            int nameId = InternTable.IDENTIFIERS.lookup("v" + i);
+            VariableScope.Allocation allocation = scope.getVariableWithId(nameId);
+            assertSame(scope.getVariableWithName("v" + i), allocation);
+            assertEquals(19 - i, ((VariableScope.LocalVariableAllocation) allocation).getLocalVariableIndex());
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package ast.types;
+
+import errors.DuplicateClassAttributeException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClassLayoutTest {
+
+    private static JavaClass.ClassAttribute attribute(String name, Type type) {
+        return new JavaClass.ClassAttribute(name, type, AccessModifier.PUBLIC);
+    }
+
+    @Test
+    void pointerBitsFollowAttributes() throws DuplicateClassAttributeException {
+        JavaClass referenced = new JavaClass("Referenced", Collections.emptyList(), null);
+        JavaClass javaClass = new JavaClass("Node", Arrays.asList(
+                attribute("value", PrimitiveType.Int),
+                attribute("next", referenced),
+                attribute("total", PrimitiveType.Long),
+                attribute("previous", referenced)), null);
+        ClassLayout layout = javaClass.getLayout();
+        assertEquals(5, layout.getNumPointerInfoWords());
+        assertEquals(Collections.singletonList(0b10010), layout.getEncodedPointersDescription());
+        assertEquals(javaClass.getNumAttributeBytes() + 12, layout.getPointerInfoStartOffset());
+        assertEquals(layout.getPointerInfoStartOffset() + 4, layout.getHeapSize());
+        assertSame(layout, javaClass.getLayout());
+    }
+
+    @Test
+    void subclassExtendsParentLayoutAcrossWords() throws DuplicateClassAttributeException {
+        JavaClass referenced = new JavaClass("Referenced", Collections.emptyList(), null);
+        List<JavaClass.ClassAttribute> parentAttributes = new ArrayList<>();
+        for (int i = 0; i < 31; i++) {
+            parentAttributes.add(attribute("a" + i, PrimitiveType.Int));
+        }
+        JavaClass parent = new JavaClass("Parent", parentAttributes, null);
+        JavaClass child = new JavaClass("Child", Arrays.asList(
+                attribute("first", referenced),
+                attribute("second", referenced)), parent);
+        ClassLayout layout = child.getLayout();
+        assertEquals(Arrays.asList(1 << 31, 1), layout.getEncodedPointersDescription());
+        assertEquals(33, layout.getAttributes().size());
+        assertEquals(Collections.singletonList(0), parent.getEncodedPointersDescription());
+        assertTrue(child.getIsPointerList().get(32));
+    }
+
+}
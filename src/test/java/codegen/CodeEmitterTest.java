@@ -0,0 +1,173 @@
+package codegen;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodeEmitterTest {
+
+    /**
+     * A grinning face, which is outside the Basic Multilingual Plane and so
+     * takes two chars
+     */
+    private static final String NON_BMP_CHARACTER = "😀";
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static String readFile(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void instructionsAreFormattedWithIndentation() {
+        CodeEmitter emitter = new CodeEmitter();
+        emitter.emitLine("(func $f");
+        emitter.increaseIndentationLevel();
+        emitter.emitInstruction("i64.const", Long.MIN_VALUE);
+        emitter.emitInstruction("i64.const", Long.MAX_VALUE);
+        emitter.emitInstruction("i32.const", -5);
+        emitter.emitInstruction("i32.const", 0);
+        emitter.emitInstruction(WasmType.Int32, "add");
+        emitter.increaseIndentationLevel();
+        emitter.emitMemoryInstruction(WasmType.Int64, "load", 16, 4);
+        emitter.decreaseIndentationLevel();
+        emitter.emitSymbolicInstruction("call", "alloc");
+        emitter.emitIndirectCall("func_Shape_area");
+        emitter.decreaseIndentationLevel();
+        emitter.emitLine(")");
+        assertEquals(String.join("\n",
+                "(func $f",
+                "  i64.const -9223372036854775808",
+                "  i64.const 9223372036854775807",
+                "  i32.const -5",
+                "  i32.const 0",
+                "  i32.add",
+                "    i64.load offset=16 align=4",
+                "  call $alloc",
+                "  call_indirect (type $func_Shape_area)",
+                ")",
+                ""), emitter.getEmittedCode());
+    }
+
+    @Test
+    void inMemoryBufferGrows() {
+        CodeEmitter emitter = new CodeEmitter();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            emitter.emitInstruction("i32.const", i);
+            expected.append("i32.const ").append(i).append('\n');
+        }
+        assertEquals(expected.toString(), emitter.getEmittedCode());
+    }
+
+    @Test
+    void channelIsSentAChunkEachTimeTheBufferFills() {
+        List<Integer> chunkLengths = new ArrayList<>();
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        WritableByteChannel channel = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer source) {
+                int length = source.remaining();
+                chunkLengths.add(length);
+                while (source.hasRemaining()) {
+                    written.write(source.get());
+                }
+                return length;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        CodeEmitter emitter = new CodeEmitter(channel);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            emitter.emitInstruction("i32.const", i);
+            expected.append("i32.const ").append(i).append('\n');
+        }
+
+        // The buffer is only written out when it is (nearly) full
+        assertTrue(chunkLengths.size() >= expected.length() / CodeEmitter.BUFFER_SIZE);
+        for (int length : chunkLengths) {
+            assertTrue(length > CodeEmitter.BUFFER_SIZE / 2 && length <= CodeEmitter.BUFFER_SIZE);
+        }
+        emitter.flush();
+        assertEquals(expected.toString(), new String(written.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void failureToWriteIsThrown() {
+        WritableByteChannel channel = Channels.newChannel(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("No space left on device");
+            }
+        });
+        CodeEmitter emitter = new CodeEmitter(channel);
+        emitter.emitLine("(module)");
+        UncheckedIOException thrown = assertThrows(UncheckedIOException.class, emitter::flush);
+        assertEquals("No space left on device", thrown.getCause().getMessage());
+
+        // A write when the buffer fills up fails in the same way
+        CodeEmitter fullEmitter = new CodeEmitter(channel);
+        assertThrows(UncheckedIOException.class, () -> {
+            for (int i = 0; i < CodeEmitter.BUFFER_SIZE; i++) {
+                fullEmitter.emitInstruction("i32.const", i);
+            }
+        });
+    }
+
+    @Test
+    void surrogatePairSplitByFlushIsWrittenWhole() throws IOException {
+        File file = File.createTempFile("javassembler", ".wat");
+        file.deleteOnExit();
+        CodeEmitter emitter = new CodeEmitter(file.getPath());
+
+        // The high surrogate fills the buffer, so it is flushed without the
+        // low surrogate
+        String padding = repeat(';', CodeEmitter.BUFFER_SIZE - 1);
+        emitter.emitRaw(padding);
+        emitter.emitLine(NON_BMP_CHARACTER);
+        emitter.close();
+        assertEquals(padding + NON_BMP_CHARACTER + "\n", readFile(file));
+    }
+
+    @Test
+    void nonBmpCharactersAreEncodedAcrossManyFlushes() throws IOException {
+        File file = File.createTempFile("javassembler", ".wat");
+        file.deleteOnExit();
+        CodeEmitter emitter = new CodeEmitter(file.getPath());
+        emitter.increaseIndentationLevel();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 30000; i++) {
+            String line = ";; " + NON_BMP_CHARACTER + i + "é";
+            emitter.emitLine(line);
+            expected.append("  ").append(line).append('\n');
+        }
+        emitter.close();
+        assertEquals(expected.toString(), readFile(file));
+    }
+}
@@ -1,12 +1,21 @@
 package codegen;
 
+import ast.types.AccessModifier;
 import ast.types.ItemArray;
 import ast.types.JavaClass;
 import ast.types.PrimitiveType;
+import errors.DuplicateClassAttributeException;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import util.FunctionTable;
+import util.FunctionTableEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 class CodeGenUtilTest {
 
@@ -72,4 +81,21 @@ class CodeGenUtilTest {
         assertEquals(WasmType.Int32, wasmType);
     }
 
-}
\ No newline at end of file
+    @Test
+    void overloadedStaticFunctionNamesAreMangled() throws DuplicateClassAttributeException {
+        JavaClass javaClass = new JavaClass("Maths", new ArrayList<>(), null);
+        FunctionTable functionTable = new FunctionTable();
+        FunctionTableEntry absInt = functionTable.registerFunction(javaClass, "abs",
+                Collections.singletonList(PrimitiveType.Int), PrimitiveType.Int, true, AccessModifier.PUBLIC);
+        FunctionTableEntry absLong = functionTable.registerFunction(javaClass, "abs",
+                Collections.singletonList(PrimitiveType.Long), PrimitiveType.Long, true, AccessModifier.PUBLIC);
+        FunctionTableEntry max = functionTable.registerFunction(javaClass, "max",
+                Arrays.asList(PrimitiveType.Int, PrimitiveType.Int), PrimitiveType.Int, true, AccessModifier.PUBLIC);
+        assertEquals("Maths_abs_int", CodeGenUtil.getFunctionNameForOutput(absInt, functionTable));
+        assertEquals("Maths_abs_long", CodeGenUtil.getFunctionNameForOutput(absLong, functionTable));
+        assertEquals("Maths_max", CodeGenUtil.getFunctionNameForOutput(max, functionTable));
+        assertSame(CodeGenUtil.getFunctionNameForOutput(absInt, functionTable),
+                CodeGenUtil.getFunctionNameForOutput(absInt, functionTable));
+    }
+
+}
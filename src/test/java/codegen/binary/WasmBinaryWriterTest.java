@@ -0,0 +1,65 @@
+package codegen.binary;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class WasmBinaryWriterTest {
+
+    private static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+
+    @Test
+    void unsignedLeb128SingleByte() {
+        WasmBinaryWriter writer = new WasmBinaryWriter();
+        writer.writeUnsignedLeb128(127);
+        assertArrayEquals(bytes(0x7f), writer.toByteArray());
+    }
+
+    @Test
+    void unsignedLeb128MultipleBytes() {
+        WasmBinaryWriter writer = new WasmBinaryWriter();
+        writer.writeUnsignedLeb128(624485);
+        assertArrayEquals(bytes(0xe5, 0x8e, 0x26), writer.toByteArray());
+    }
+
+    @Test
+    void signedLeb128Positive() {
+        WasmBinaryWriter writer = new WasmBinaryWriter();
+        writer.writeSignedLeb128(64);
+        assertArrayEquals(bytes(0xc0, 0x00), writer.toByteArray());
+    }
+
+    @Test
+    void signedLeb128Negative() {
+        WasmBinaryWriter writer = new WasmBinaryWriter();
+        writer.writeSignedLeb128(-123456);
+        assertArrayEquals(bytes(0xc0, 0xbb, 0x78), writer.toByteArray());
+    }
+
+    @Test
+    void signedLeb128MinusOne() {
+        WasmBinaryWriter writer = new WasmBinaryWriter();
+        writer.writeSignedLeb128(-1);
+        assertArrayEquals(bytes(0x7f), writer.toByteArray());
+    }
+
+    @Test
+    void float32IsLittleEndian() {
+        WasmBinaryWriter writer = new WasmBinaryWriter();
+        writer.writeFloat32(1.0f);
+        assertArrayEquals(bytes(0x00, 0x00, 0x80, 0x3f), writer.toByteArray());
+    }
+
+    @Test
+    void nameIsPrefixedWithLength() {
+        WasmBinaryWriter writer = new WasmBinaryWriter();
+        writer.writeName("abc");
+        assertArrayEquals(bytes(0x03, 0x61, 0x62, 0x63), writer.toByteArray());
+    }
+}
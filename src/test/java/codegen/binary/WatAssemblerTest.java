@@ -0,0 +1,169 @@
+package codegen.binary;
+
+import errors.WatAssemblyException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WatAssemblerTest {
+
+    private static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+
+    /**
+     * Finds the contents of a section in a binary module.
+     *
+     * @param module The module
+     * @param id The ID of the section
+     * @return The contents of the section, after its size
+     */
+    private static byte[] section(byte[] module, int id) {
+        int position = 8;
+        while (position < module.length) {
+            int sectionId = module[position++];
+            int size = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = module[position++];
+                size |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            if (sectionId == id) {
+                return Arrays.copyOfRange(module, position, position + size);
+            }
+            position += size;
+        }
+        fail("No section with ID " + id);
+        return null;
+    }
+
+    /**
+     * Finds the body of the only function in a module, after its size.
+     */
+    private static byte[] onlyFunctionBody(byte[] module) {
+        byte[] code = section(module, 10);
+        assertEquals(1, code[0]);
+        return Arrays.copyOfRange(code, 2, code.length);
+    }
+
+    @Test
+    void headerAndTypeSection() throws WatAssemblyException {
+        byte[] module = WatAssembler.assemble(
+                "(module (type $t (func (param i32 i64) (result f32))))", false);
+        assertArrayEquals(bytes(0x00, 0x61, 0x73, 0x6d, 0x01, 0x00, 0x00, 0x00), Arrays.copyOf(module, 8));
+        assertArrayEquals(bytes(0x01, 0x60, 0x02, 0x7f, 0x7e, 0x01, 0x7d), section(module, 1));
+    }
+
+    @Test
+    void importSection() throws WatAssemblyException {
+        byte[] module = WatAssembler.assemble(String.join("\n",
+                "(import \"env\" \"log\" (func $log (param i32)))",
+                "(import \"env\" \"mem\" (memory 1))",
+                "(func (export \"run\") i32.const 5 call $log)"), false);
+        // Function bodies are assembled first, so the type of run comes
+        // before the type of the imported function
+        assertArrayEquals(bytes(0x02, 0x60, 0x00, 0x00, 0x60, 0x01, 0x7f, 0x00), section(module, 1));
+        assertArrayEquals(bytes(0x02,
+                0x03, 'e', 'n', 'v', 0x03, 'l', 'o', 'g', 0x00, 0x01,
+                0x03, 'e', 'n', 'v', 0x03, 'm', 'e', 'm', 0x02, 0x00, 0x01), section(module, 2));
+        // The imported function takes index 0, so the defined one is index 1
+        assertArrayEquals(bytes(0x01, 0x03, 'r', 'u', 'n', 0x00, 0x01), section(module, 7));
+        assertArrayEquals(bytes(0x00, 0x41, 0x05, 0x10, 0x00, 0x0b), onlyFunctionBody(module));
+    }
+
+    @Test
+    void functionWithLocals() throws WatAssemblyException {
+        byte[] module = WatAssembler.assemble(String.join("\n",
+                "(func $f (param $x i32) (result i32)",
+                "  (local $a i32) (local $b i32) (local i64 f64)",
+                "  local.get $x",
+                "  local.set $b",
+                "  get_local $b)"), false);
+        assertArrayEquals(bytes(0x01, 0x00), section(module, 3));
+        // Consecutive locals of the same type are grouped together
+        assertArrayEquals(bytes(0x03, 0x02, 0x7f, 0x01, 0x7e, 0x01, 0x7c,
+                0x20, 0x00, 0x21, 0x02, 0x20, 0x02, 0x0b), onlyFunctionBody(module));
+    }
+
+    @Test
+    void memoryAndDataSections() throws WatAssemblyException {
+        byte[] module = WatAssembler.assemble(String.join("\n",
+                "(memory (export \"memory\") 1 2)",
+                "(data (i32.const 8) \"hi\\01\")"), false);
+        assertArrayEquals(bytes(0x01, 0x01, 0x01, 0x02), section(module, 5));
+        assertArrayEquals(bytes(0x01, 0x06, 'm', 'e', 'm', 'o', 'r', 'y', 0x02, 0x00), section(module, 7));
+        assertArrayEquals(bytes(0x01, 0x00, 0x41, 0x08, 0x0b, 0x03, 'h', 'i', 0x01), section(module, 11));
+    }
+
+    @Test
+    void tableElementsAndIndirectCalls() throws WatAssemblyException {
+        byte[] module = WatAssembler.assemble(String.join("\n",
+                "(type $v (func (result i32)))",
+                "(table 2 anyfunc)",
+                "(elem (i32.const 0) $a $b)",
+                "(func $a (result i32) i32.const 1)",
+                "(func $b (result i32) i32.const 2)",
+                "(func $c (param i32) (result i32) local.get 0 call_indirect (type $v))"), false);
+        // The functions with the same signature as $v share its type
+        assertArrayEquals(bytes(0x02, 0x60, 0x00, 0x01, 0x7f, 0x60, 0x01, 0x7f, 0x01, 0x7f), section(module, 1));
+        assertArrayEquals(bytes(0x03, 0x00, 0x00, 0x01), section(module, 3));
+        assertArrayEquals(bytes(0x01, 0x70, 0x00, 0x02), section(module, 4));
+        assertArrayEquals(bytes(0x01, 0x00, 0x41, 0x00, 0x0b, 0x02, 0x00, 0x01), section(module, 9));
+        byte[] code = section(module, 10);
+        byte[] lastBody = Arrays.copyOfRange(code, code.length - 7, code.length);
+        assertArrayEquals(bytes(0x00, 0x20, 0x00, 0x11, 0x00, 0x00, 0x0b), lastBody);
+    }
+
+    @Test
+    void instructionImmediates() throws WatAssemblyException {
+        byte[] module = WatAssembler.assemble(String.join("\n",
+                "(func (param i32) (result i32)",
+                "  i64.const 128 drop",
+                "  f32.const 1.5 drop",
+                "  f64.const -0.5 drop",
+                "  local.get 0 i64.load offset=16 align=4 drop",
+                "  (block $out (result i32)",
+                "    i32.const 7",
+                "    local.get 0",
+                "    br_if $out",
+                "    drop",
+                "    i32.const 0xffffffff))"), false);
+        assertArrayEquals(bytes(0x00,
+                0x42, 0x80, 0x01, 0x1a,
+                0x43, 0x00, 0x00, 0xc0, 0x3f, 0x1a,
+                0x44, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0xe0, 0xbf, 0x1a,
+                0x20, 0x00, 0x29, 0x02, 0x10, 0x1a,
+                0x02, 0x7f, 0x41, 0x07, 0x20, 0x00, 0x0d, 0x00, 0x1a, 0x41, 0x7f, 0x0b,
+                0x0b), onlyFunctionBody(module));
+    }
+
+    @Test
+    void foldedInstructionsWriteOperandsFirst() throws WatAssemblyException {
+        byte[] module = WatAssembler.assemble(
+                "(func (param i32) (result i32) (i32.add (local.get 0) (i32.const -1)))", false);
+        assertArrayEquals(bytes(0x00, 0x20, 0x00, 0x41, 0x7f, 0x6a, 0x0b), onlyFunctionBody(module));
+    }
+
+    @Test
+    void malformedModulesAreRejected() {
+        WatAssemblyException unknownInstruction = assertThrows(WatAssemblyException.class,
+                () -> WatAssembler.assemble("(func\n  i32.frobnicate)", false));
+        assertEquals("Unknown instruction i32.frobnicate (line 2)", unknownInstruction.getMessage());
+        assertThrows(WatAssemblyException.class,
+                () -> WatAssembler.assemble("(func br $nowhere)", false));
+        assertThrows(WatAssemblyException.class,
+                () -> WatAssembler.assemble("(func i32.const 0x100000000 drop)", false));
+        assertThrows(WatAssemblyException.class,
+                () -> WatAssembler.assemble("(func (local $x i32) (local $x i64))", false));
+        assertThrows(WatAssemblyException.class,
+                () -> WatAssembler.assemble("(func (result i32)", false));
+    }
+}
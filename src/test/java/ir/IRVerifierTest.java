@@ -0,0 +1,120 @@
+package ir;
+
+import errors.IRVerificationException;
+import ir.expressions.BinaryOperation;
+import ir.expressions.Constant;
+import ir.expressions.LocalGet;
+import ir.statements.Branch;
+import ir.statements.Jump;
+import ir.statements.Return;
+import ir.statements.SetLocal;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IRVerifierTest {
+
+    /**
+     * Builds a function that counts up to its parameter:
+     * <pre>
+     *   bb0: %1 = 0; jump bb1
+     *   bb1: branch %1 &lt; %0, bb2, bb3
+     *   bb2: %1 = %1 + 1; jump bb1
+     *   bb3: return %1
+     * </pre>
+     */
+    private static IRFunction createLoop() {
+        IRFunction function = new IRFunction("count", null, false, IRType.Int32);
+        IRLocal limit = function.addParameter(IRType.Int32);
+        IRLocal counter = function.addLocal(IRType.Int32);
+        BasicBlock entry = function.newBlock();
+        BasicBlock header = function.newBlock();
+        BasicBlock body = function.newBlock();
+        BasicBlock exit = function.newBlock();
+        entry.addStatement(new SetLocal(counter, new Constant(IRType.Int32, 0)));
+        entry.setTerminator(new Jump(header));
+        header.setTerminator(new Branch(
+                new BinaryOperation(BinaryOperation.Operator.SignedLessThan, IRType.Int32,
+                        new LocalGet(counter), new LocalGet(limit)),
+                body, exit));
+        body.addStatement(new SetLocal(counter,
+                new BinaryOperation(BinaryOperation.Operator.Add, IRType.Int32,
+                        new LocalGet(counter), new Constant(IRType.Int32, 1))));
+        body.setTerminator(new Jump(header));
+        exit.setTerminator(new Return(new LocalGet(counter)));
+        return function;
+    }
+
+    @Test
+    void loopIsWellFormed() throws IRVerificationException {
+        IRFunction function = createLoop();
+        IRVerifier.verify(function);
+
+        ControlFlowGraph graph = new ControlFlowGraph(function);
+        BasicBlock entry = function.getBlocks().get(0);
+        BasicBlock header = function.getBlocks().get(1);
+        BasicBlock body = function.getBlocks().get(2);
+        BasicBlock exit = function.getBlocks().get(3);
+        assertTrue(graph.isReducible());
+        assertTrue(graph.isLoopHeader(header));
+        assertFalse(graph.isLoopHeader(exit));
+        assertTrue(graph.isBackEdge(body, header));
+        assertEquals(entry, graph.getImmediateDominator(header));
+        assertEquals(header, graph.getImmediateDominator(exit));
+        assertTrue(graph.dominates(header, body));
+        assertFalse(graph.dominates(body, exit));
+    }
+
+    @Test
+    void unreachableBlocksAreRemoved() {
+        IRFunction function = createLoop();
+        function.newBlock().setTerminator(new Return(new Constant(IRType.Int32, 0)));
+        assertEquals(1, function.removeUnreachableBlocks());
+        assertEquals(4, function.getBlocks().size());
+    }
+
+    @Test
+    void returnOfWrongTypeIsRejected() {
+        IRFunction function = createLoop();
+        function.getBlocks().get(3).setTerminator(new Return(new Constant(IRType.Int64, 0L)));
+        assertThrows(IRVerificationException.class, () -> IRVerifier.verify(function));
+    }
+
+    @Test
+    void missingTerminatorIsRejected() {
+        IRFunction function = createLoop();
+        function.newBlock();
+        assertThrows(IRVerificationException.class, () -> IRVerifier.verify(function));
+    }
+
+    @Test
+    void localOfAnotherFunctionIsRejected() {
+        IRFunction function = createLoop();
+        IRLocal stranger = createLoop().getLocal(1);
+        function.getBlocks().get(3).setTerminator(new Return(new LocalGet(stranger)));
+        assertThrows(IRVerificationException.class, () -> IRVerifier.verify(function));
+    }
+
+    @Test
+    void irreducibleLoopIsRejected() {
+        // Two blocks that jump to each other, both entered from the entry
+        IRFunction function = new IRFunction("tangle", null, false, IRType.Void);
+        IRLocal condition = function.addParameter(IRType.Int32);
+        BasicBlock entry = function.newBlock();
+        BasicBlock first = function.newBlock();
+        BasicBlock second = function.newBlock();
+        entry.setTerminator(new Branch(new LocalGet(condition), first, second));
+        first.setTerminator(new Jump(second));
+        second.setTerminator(new Jump(first));
+        assertThrows(IRVerificationException.class, () -> IRVerifier.verify(function));
+    }
+
+    @Test
+    void printedFunctionShowsBlocks() {
+        String text = IRPrinter.print(createLoop());
+        assertTrue(text.startsWith("function count(i32 %0) -> i32\n"));
+        assertTrue(text.contains("  locals: i32 %1\n"));
+        assertTrue(text.contains("  jump bb1\n"));
+        assertTrue(text.contains("  return %1\n"));
+    }
+}
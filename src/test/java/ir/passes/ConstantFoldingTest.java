@@ -0,0 +1,134 @@
+package ir.passes;
+
+import ir.BasicBlock;
+import ir.IRFunction;
+import ir.IRLocal;
+import ir.IRType;
+import ir.expressions.BinaryOperation;
+import ir.expressions.BinaryOperation.Operator;
+import ir.expressions.Constant;
+import ir.expressions.IRExpression;
+import ir.expressions.LocalGet;
+import ir.statements.Branch;
+import ir.statements.Jump;
+import ir.statements.Return;
+import ir.statements.SetLocal;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConstantFoldingTest {
+
+    private static Constant i32(int value) {
+        return new Constant(IRType.Int32, value);
+    }
+
+    private static BinaryOperation i32(Operator operator, IRExpression left, IRExpression right) {
+        return new BinaryOperation(operator, IRType.Int32, left, right);
+    }
+
+    /**
+     * Folds the value returned by a function with one i32 parameter.
+     *
+     * @param returnType The type of the value
+     * @param value Builds the value from the parameter
+     * @return The folded value
+     */
+    private static IRExpression foldReturnValue(IRType returnType,
+                                                Function<IRLocal, IRExpression> value) {
+        IRFunction function = new IRFunction("f", null, false, returnType);
+        IRLocal parameter = function.addParameter(IRType.Int32);
+        function.newBlock().setTerminator(new Return(value.apply(parameter)));
+        new ConstantFolding().run(function, new PassStatistics("constant-fold"));
+        return ((Return) function.getEntryBlock().getTerminator()).getValue();
+    }
+
+    private static Number foldConstant(IRType returnType, IRExpression value) {
+        IRExpression folded = foldReturnValue(returnType, parameter -> value);
+        assertTrue(folded instanceof Constant, "not folded: " + folded);
+        return ((Constant) folded).getValue();
+    }
+
+    @Test
+    void integerArithmeticWrapsAround() {
+        assertEquals(Integer.MIN_VALUE, foldConstant(IRType.Int32,
+                i32(Operator.Add, i32(Integer.MAX_VALUE), i32(1))));
+        assertEquals(Long.MIN_VALUE, foldConstant(IRType.Int64, new BinaryOperation(Operator.Multiply,
+                IRType.Int64, new Constant(IRType.Int64, Long.MIN_VALUE), new Constant(IRType.Int64, -1L))));
+        assertEquals(1 << 1, foldConstant(IRType.Int32, i32(Operator.ShiftLeft, i32(1), i32(33))));
+    }
+
+    @Test
+    void narrowingMatchesTheRangeRestriction() {
+        // (short) 32767 + 1, narrowed with shl 16 and shr_s 16
+        IRExpression sum = i32(Operator.Add, i32(32767), i32(1));
+        IRExpression narrowed = i32(Operator.SignedShiftRight, i32(Operator.ShiftLeft, sum, i32(16)), i32(16));
+        assertEquals(-32768, foldConstant(IRType.Int32, narrowed));
+        // (char) 0 - 1, narrowed with and 0xffff
+        IRExpression difference = i32(Operator.Subtract, i32(0), i32(1));
+        assertEquals(0xffff, foldConstant(IRType.Int32, i32(Operator.And, difference, i32(0xffff))));
+    }
+
+    @Test
+    void divisionThatWouldTrapIsNotFolded() {
+        assertFalse(foldReturnValue(IRType.Int32,
+                parameter -> i32(Operator.SignedDivide, i32(1), i32(0))) instanceof Constant);
+        assertFalse(foldReturnValue(IRType.Int32,
+                parameter -> i32(Operator.SignedDivide, i32(Integer.MIN_VALUE), i32(-1))) instanceof Constant);
+        assertEquals(-3, foldConstant(IRType.Int32, i32(Operator.SignedDivide, i32(-7), i32(2))));
+    }
+
+    @Test
+    void floatArithmeticFollowsJava() {
+        assertEquals(0.1f + 0.2f, foldConstant(IRType.Float32, new BinaryOperation(Operator.Add,
+                IRType.Float32, new Constant(IRType.Float32, 0.1f), new Constant(IRType.Float32, 0.2f))));
+        assertEquals(Double.POSITIVE_INFINITY, foldConstant(IRType.Float64, new BinaryOperation(Operator.Divide,
+                IRType.Float64, new Constant(IRType.Float64, 1.0), new Constant(IRType.Float64, 0.0))));
+        IRExpression nan = new Constant(IRType.Float64, Double.NaN);
+        assertEquals(0, foldConstant(IRType.Int32, new BinaryOperation(Operator.EqualTo, IRType.Float64, nan, nan)));
+    }
+
+    @Test
+    void constantsAreCombinedAroundAnUnknownOperand() {
+        // i * 4 * 1024 becomes i * 4096
+        IRExpression folded = foldReturnValue(IRType.Int32, parameter ->
+                i32(Operator.Multiply, i32(Operator.Multiply, new LocalGet(parameter), i32(4)), i32(1024)));
+        assertEquals("mul.i32(%0, i32 4096)", folded.toString());
+        // x + 0 and 1 * x become x
+        folded = foldReturnValue(IRType.Int32, parameter ->
+                i32(Operator.Multiply, i32(1), i32(Operator.Add, new LocalGet(parameter), i32(0))));
+        assertEquals("%0", folded.toString());
+        // x - 3 + 3 becomes x
+        folded = foldReturnValue(IRType.Int32, parameter ->
+                i32(Operator.Add, i32(Operator.Subtract, new LocalGet(parameter), i32(3)), i32(3)));
+        assertEquals("%0", folded.toString());
+    }
+
+    @Test
+    void constantLocalIsOnlyPropagatedWhereItHasBeenAssigned() {
+        // bb0: branch %0, bb1, bb2
+        // bb1: %1 = 5; jump bb2
+        // bb2: return %1 + %1
+        IRFunction function = new IRFunction("f", null, false, IRType.Int32);
+        IRLocal parameter = function.addParameter(IRType.Int32);
+        IRLocal local = function.addLocal(IRType.Int32);
+        BasicBlock entry = function.newBlock();
+        BasicBlock assign = function.newBlock();
+        BasicBlock exit = function.newBlock();
+        entry.setTerminator(new Branch(new LocalGet(parameter), assign, exit));
+        assign.addStatement(new SetLocal(local, i32(5)));
+        assign.setTerminator(new Jump(exit));
+        exit.setTerminator(new Return(i32(Operator.Add, new LocalGet(local), new LocalGet(local))));
+        new ConstantFolding().run(function, new PassStatistics("constant-fold"));
+        assertEquals("return add.i32(%1, %1)", exit.getTerminator().toString());
+
+        // Once the assignment dominates the use, the sum is folded
+        entry.setTerminator(new Jump(assign));
+        PassStatistics statistics = new PassStatistics("constant-fold");
+        new ConstantFolding().run(function, statistics);
+        assertEquals("return i32 10", exit.getTerminator().toString());
+        assertEquals(2L, (long) statistics.getCounters().get("constants propagated"));
+    }
+}
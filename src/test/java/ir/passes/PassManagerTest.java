@@ -0,0 +1,111 @@
+package ir.passes;
+
+import errors.IRVerificationException;
+import ir.BasicBlock;
+import ir.IRFunction;
+import ir.IRLocal;
+import ir.IRType;
+import ir.IRVerifier;
+import ir.expressions.BinaryOperation;
+import ir.expressions.Constant;
+import ir.expressions.LocalGet;
+import ir.statements.Branch;
+import ir.statements.Jump;
+import ir.statements.Return;
+import ir.statements.SetLocal;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PassManagerTest {
+
+    /**
+     * Builds a function with an unused local and an if statement with empty
+     * branches:
+     * <pre>
+     *   bb0: %1 = %0 * 2; branch %0 &gt; 0, bb1, bb2
+     *   bb1: jump bb3
+     *   bb2: jump bb3
+     *   bb3: branch 1, bb4, bb5
+     *   bb4: return %0
+     *   bb5: return 0
+     * </pre>
+     */
+    private static IRFunction createFunction() {
+        IRFunction function = new IRFunction("f", null, false, IRType.Int32);
+        IRLocal parameter = function.addParameter(IRType.Int32);
+        IRLocal unused = function.addLocal(IRType.Int32);
+        BasicBlock entry = function.newBlock();
+        BasicBlock ifTrue = function.newBlock();
+        BasicBlock ifFalse = function.newBlock();
+        BasicBlock join = function.newBlock();
+        BasicBlock taken = function.newBlock();
+        BasicBlock notTaken = function.newBlock();
+        entry.addStatement(new SetLocal(unused,
+                new BinaryOperation(BinaryOperation.Operator.Multiply, IRType.Int32,
+                        new LocalGet(parameter), new Constant(IRType.Int32, 2))));
+        entry.setTerminator(new Branch(
+                new BinaryOperation(BinaryOperation.Operator.SignedGreaterThan, IRType.Int32,
+                        new LocalGet(parameter), new Constant(IRType.Int32, 0)),
+                ifTrue, ifFalse));
+        ifTrue.setTerminator(new Jump(join));
+        ifFalse.setTerminator(new Jump(join));
+        join.setTerminator(new Branch(new Constant(IRType.Int32, 1), taken, notTaken));
+        taken.setTerminator(new Return(new LocalGet(parameter)));
+        notTaken.setTerminator(new Return(new Constant(IRType.Int32, 0)));
+        return function;
+    }
+
+    @Test
+    void levelZeroRunsNoPasses() {
+        PassManager passManager = PassManager.forLevel(0);
+        assertFalse(passManager.hasPasses());
+        IRFunction function = createFunction();
+        assertNull(passManager.run(function));
+        assertEquals(6, function.getBlocks().size());
+    }
+
+    @Test
+    void higherLevelsRunMorePasses() {
+        assertFalse(PassManager.forLevel(1).runsPass("dead-stores"));
+        assertTrue(PassManager.forLevel(2).runsPass("dead-stores"));
+        assertTrue(PassManager.getPassNames().containsAll(Arrays.asList("devirtualise", "dead-stores", "dead-code", "simplify-cfg")));
+    }
+
+    @Test
+    void optimisedFunctionIsSmallerAndWellFormed() throws IRVerificationException {
+        PassManager passManager = PassManager.forLevel(2);
+        IRFunction function = createFunction();
+        passManager.run(function);
+        IRVerifier.verify(function);
+
+        // Everything collapses into the entry block
+        assertEquals(1, function.getBlocks().size());
+        BasicBlock entry = function.getEntryBlock();
+        assertTrue(entry.getStatements().isEmpty());
+        assertTrue(entry.getTerminator() instanceof Return);
+
+        List<PassStatistics> statistics = passManager.getStatistics();
+        assertEquals(4, statistics.size());
+        Map<String, Long> deadStores = statistics.get(1).getCounters();
+        assertEquals(1L, (long) deadStores.get("stores removed"));
+        assertEquals(4L, (long) deadStores.get("instructions removed"));
+        Map<String, Long> simplifyControlFlow = statistics.get(3).getCounters();
+        assertEquals(2L, (long) simplifyControlFlow.get("branches simplified"));
+        assertEquals(5L, (long) simplifyControlFlow.get("blocks removed"));
+        assertEquals(1L, statistics.get(3).getNumRuns());
+    }
+
+    @Test
+    void functionIsPrintedAfterTheChosenPass() {
+        PassManager passManager = PassManager.forLevel(2);
+        passManager.setPrintAfter("dead-stores");
+        String printed = passManager.run(createFunction());
+        assertFalse(printed.contains("%1 = "));
+        assertTrue(printed.contains("bb5:"));
+    }
+}
@@ -0,0 +1,92 @@
+package parser;
+
+import errors.SyntaxErrorException;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DFACacheTest {
+
+    /**
+     * Parses a program so that the shared DFAs have some states to save.
+     */
+    private static void warmUpParser() throws SyntaxErrorException {
+        String code = String.join("\n",
+                "public class Main {",
+                "    public static int f(int x) {",
+                "        int total = 0;",
+                "        for (int i = 0; i < x; i++) {",
+                "            total += i * 2;",
+                "        }",
+                "        return total;",
+                "    }",
+                "}");
+        new ParserWrapper().parse(CharStreams.fromString(code, "Main.java"));
+    }
+
+    private static byte[] writeCache() throws IOException, SyntaxErrorException {
+        warmUpParser();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            DFACache.write(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void assertSameStates(DFA[] expected, DFA[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].decision, actual[i].decision);
+            assertEquals(expected[i].states.keySet(), actual[i].states.keySet());
+            assertEquals(expected[i].s0, actual[i].s0);
+        }
+    }
+
+    @Test
+    void savedStatesAreReadBack() throws IOException, SyntaxErrorException {
+        byte[] cache = writeCache();
+        DFACache.LoadedDFAs loaded = DFACache.read(new DataInputStream(new ByteArrayInputStream(cache)));
+        assertSameStates(JavaFileParser._decisionToDFA, loaded.parserDFAs);
+        assertSameStates(JavaFileLexer._decisionToDFA, loaded.lexerDFAs);
+        assertTrue(Arrays.stream(loaded.parserDFAs).anyMatch(dfa -> !dfa.states.isEmpty()));
+    }
+
+    @Test
+    void truncatedCacheIsRejected() throws IOException, SyntaxErrorException {
+        byte[] cache = writeCache();
+        byte[] truncated = Arrays.copyOf(cache, cache.length / 2);
+        assertThrows(IOException.class,
+                () -> DFACache.read(new DataInputStream(new ByteArrayInputStream(truncated))));
+    }
+
+    @Test
+    void cacheIsNotLoadedOnceParsingHasStarted() throws IOException, SyntaxErrorException {
+        File file = File.createTempFile("javassembler", ".cache");
+        file.deleteOnExit();
+        Files.write(file.toPath(), writeCache());
+        assertFalse(new DFACache(file.getPath()).load());
+    }
+
+    @Test
+    void fileIsOnlySavedIfNewStatesWereLearned() throws IOException, SyntaxErrorException {
+        warmUpParser();
+        File file = File.createTempFile("javassembler", ".cache");
+        file.deleteOnExit();
+        file.delete();
+        DFACache cache = new DFACache(file.getPath());
+        cache.load();
+        cache.save();
+        assertFalse(file.exists());
+
+        new ParserWrapper().parse(CharStreams.fromString(
+                "class Other { boolean g(boolean a, boolean b) { return a && !b || (a == b); } }", "Other.java"));
+        cache.save();
+        assertTrue(file.exists());
+    }
+}
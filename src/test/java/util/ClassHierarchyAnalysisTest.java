@@ -0,0 +1,98 @@
+package util;
+
+import ast.types.AccessModifier;
+import ast.types.GenericJavaClass;
+import ast.types.HeapObjectReference;
+import ast.types.JavaClass;
+import ast.types.PrimitiveType;
+import errors.JavAssemblerException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ClassHierarchyAnalysisTest {
+
+    private FunctionTable functionTable = new FunctionTable();
+    private ClassTable classTable = new ClassTable();
+
+    private JavaClass declareClass(String name, JavaClass parent) throws JavAssemblerException {
+        JavaClass javaClass = new JavaClass(name, Collections.emptyList(), parent);
+        classTable.registerClass(name, javaClass);
+        return javaClass;
+    }
+
+    private FunctionTableEntry declareMethod(JavaClass javaClass, String name) throws JavAssemblerException {
+        FunctionTableEntry entry = functionTable.registerFunction(javaClass, name, Collections.emptyList(),
+                PrimitiveType.Int, false, AccessModifier.PUBLIC);
+        javaClass.registerNewMethod(Collections.emptyList(), PrimitiveType.Int, entry);
+        return entry;
+    }
+
+    @Test
+    void slotOverriddenBySubclassStaysVirtual() throws JavAssemblerException {
+        JavaClass shape = declareClass("Shape", null);
+        FunctionTableEntry shapeArea = declareMethod(shape, "area");
+        FunctionTableEntry shapeSides = declareMethod(shape, "sides");
+        JavaClass square = declareClass("Square", shape);
+        FunctionTableEntry squareArea = declareMethod(square, "area");
+
+        ClassHierarchyAnalysis hierarchy = new ClassHierarchyAnalysis(classTable, functionTable);
+        assertNull(hierarchy.getMonomorphicTarget(shape, 0));
+        assertSame(shapeSides, hierarchy.getMonomorphicTarget(shape, 1));
+        assertSame(squareArea, hierarchy.getMonomorphicTarget(square, 0));
+        assertSame(shapeSides, hierarchy.getMonomorphicTarget(square, 1));
+    }
+
+    @Test
+    void slotNotOverriddenIsDevirtualised() throws JavAssemblerException {
+        JavaClass animal = declareClass("Animal", null);
+        FunctionTableEntry speak = declareMethod(animal, "speak");
+        JavaClass dog = declareClass("Dog", animal);
+        FunctionTableEntry fetch = declareMethod(dog, "fetch");
+
+        ClassHierarchyAnalysis hierarchy = new ClassHierarchyAnalysis(classTable, functionTable);
+        assertSame(speak, hierarchy.getMonomorphicTarget(animal, 0));
+        assertSame(speak, hierarchy.getMonomorphicTarget(dog, 0));
+        assertSame(fetch, hierarchy.getMonomorphicTarget(dog, 1));
+    }
+
+    @Test
+    void overrideTwoLevelsDownKeepsEveryAncestorVirtual() throws JavAssemblerException {
+        JavaClass a = declareClass("A", null);
+        declareMethod(a, "m");
+        JavaClass b = declareClass("B", a);
+        JavaClass c = declareClass("C", b);
+        FunctionTableEntry cm = declareMethod(c, "m");
+
+        ClassHierarchyAnalysis hierarchy = new ClassHierarchyAnalysis(classTable, functionTable);
+        assertNull(hierarchy.getMonomorphicTarget(a, 0));
+        assertNull(hierarchy.getMonomorphicTarget(b, 0));
+        assertSame(cm, hierarchy.getMonomorphicTarget(c, 0));
+    }
+
+    @Test
+    void subclassOfGenericInstantiation() throws JavAssemblerException {
+        JavaClass box = declareClass("Box", null);
+        GenericJavaClass container = new GenericJavaClass("Container", Collections.emptyList(), null,
+                Collections.singletonList("T"));
+        classTable.registerClass("Container", container);
+        FunctionTableEntry get = declareMethod(container, "get");
+        FunctionTableEntry size = declareMethod(container, "size");
+        JavaClass boxContainer = container.instantiate(
+                Collections.<HeapObjectReference>singletonList(box), functionTable, classTable);
+        JavaClass special = declareClass("SpecialContainer", boxContainer);
+        FunctionTableEntry specialGet = declareMethod(special, "get");
+
+        // Instantiations share the methods of the generic class, so a call
+        // on any instantiation may reach the override
+        ClassHierarchyAnalysis hierarchy = new ClassHierarchyAnalysis(classTable, functionTable);
+        assertNull(hierarchy.getMonomorphicTarget(boxContainer, 0));
+        assertNull(hierarchy.getMonomorphicTarget(container, 0));
+        assertSame(size, hierarchy.getMonomorphicTarget(boxContainer, 1));
+        assertSame(specialGet, hierarchy.getMonomorphicTarget(special, 0));
+        assertSame(size, hierarchy.getMonomorphicTarget(special, 1));
+    }
+}
@@ -0,0 +1,311 @@
+package util;
+
+import codegen.OutputFormat;
+import errors.InvalidObjectModuleException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompilationTest {
+
+    private static final String CONTAINER_SOURCE = String.join("\n",
+            "public class Container<T> {",
+            "    private T value;",
+            "    public Container(T value) {",
+            "        this.value = value;",
+            "    }",
+            "    public T getValue() {",
+            "        return this.value;",
+            "    }",
+            "}");
+
+    private static final String BOX_SOURCE = String.join("\n",
+            "public class Box {",
+            "    public int value;",
+            "    public Box(int value) {",
+            "        this.value = value;",
+            "    }",
+            "}");
+
+    private static final String MAIN_SOURCE = String.join("\n",
+            "public class Main {",
+            "    public static int unbox(int x) {",
+            "        Box original = new Box(x);",
+            "        Container<Box> container = new Container<Box>(original);",
+            "        Box box = container.getValue();",
+            "        return box.value;",
+            "    }",
+            "}");
+
+    private static Compilation createCompilation(OutputFormat format) {
+        CompilerOptions options = new CompilerOptions();
+        options.setOutputFormat(format);
+        return createCompilation(options);
+    }
+
+    private static Compilation createCompilation(CompilerOptions options) {
+        Compilation compilation = new Compilation(options);
+        compilation.addSource("Container.java", CONTAINER_SOURCE);
+        compilation.addSource("Box.java", BOX_SOURCE);
+        compilation.addSource("Main.java", MAIN_SOURCE);
+        return compilation;
+    }
+
+    @Test
+    void compileToTextInMemory() {
+        CompilationResult result = createCompilation(OutputFormat.WAT).compile();
+        assertTrue(result.isSuccessful());
+        assertTrue(result.getDiagnostics().isEmpty());
+        assertTrue(result.getModuleText().startsWith("(module"));
+        assertTrue(result.getModuleText().contains("$Main_unbox"));
+    }
+
+    @Test
+    void compileToBinaryInMemory() {
+        CompilationResult result = createCompilation(OutputFormat.WASM).compile();
+        assertTrue(result.isSuccessful());
+        byte[] module = result.getModule();
+        assertArrayEquals(new byte[] {0x00, 0x61, 0x73, 0x6D}, Arrays.copyOf(module, 4));
+    }
+
+    @Test
+    void charLiteralIsEmittedAsItsCode() {
+        String source = "public class Letters { public static char first() { return 97c; } }";
+        CompilerOptions options = new CompilerOptions();
+        Compilation compilation = new Compilation(options);
+        compilation.addSource("Letters.java", source);
+        CompilationResult result = compilation.compile();
+        assertTrue(result.isSuccessful());
+        assertTrue(result.getModuleText().contains("i32.const 97\n"));
+
+        // The assembler rejects anything but a number after i32.const
+        options.setOutputFormat(OutputFormat.WASM);
+        compilation = new Compilation(options);
+        compilation.addSource("Letters.java", source);
+        assertTrue(compilation.compile().isSuccessful());
+    }
+
+    @Test
+    void syntaxErrorIsReportedAsDiagnostic() {
+        Compilation compilation = new Compilation(new CompilerOptions());
+        compilation.addSource("Broken.java", "public class Broken { public int f( { } }");
+        CompilationResult result = compilation.compile();
+        assertFalse(result.isSuccessful());
+        assertNull(result.getModule());
+        assertEquals(1, result.getDiagnostics().size());
+        assertTrue(result.getDiagnostics().get(0).contains("Broken.java"));
+    }
+
+    @Test
+    void syntaxErrorInMethodBodyIsReportedAtItsPosition() {
+        Compilation compilation = new Compilation(new CompilerOptions());
+        compilation.addSource("Broken.java", "public class Broken {\n    public int f() {\n        return 1 +;\n    }\n}");
+        CompilationResult result = compilation.compile();
+        assertFalse(result.isSuccessful());
+        assertTrue(result.getDiagnostics().get(0).contains("line 3:18"));
+    }
+
+    @Test
+    void streamingWritesTheSameModule() {
+        String expected = createCompilation(OutputFormat.WAT).compile().getModuleText();
+        CompilerOptions options = new CompilerOptions();
+        options.setStreaming(true);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CompilationResult result = createCompilation(options).compileTo(output);
+        assertTrue(result.isSuccessful());
+        assertNull(result.getModule());
+        assertEquals(expected, new String(output.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void moduleTextIsWrittenToTheStreamWithoutClosingIt() {
+        String expected = createCompilation(OutputFormat.WAT).compile().getModuleText();
+        ByteArrayOutputStream output = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                fail("The output stream was closed");
+            }
+        };
+        CompilationResult result = createCompilation(OutputFormat.WAT).compileTo(output);
+        assertTrue(result.isSuccessful());
+        assertEquals(expected, new String(output.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void failureToWriteTheModuleIsReported() {
+        OutputStream failingOutput = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Stream closed");
+            }
+        };
+        for (boolean streaming : new boolean[] {false, true}) {
+            CompilerOptions options = new CompilerOptions();
+            options.setStreaming(streaming);
+            CompilationResult result = createCompilation(options).compileTo(failingOutput);
+            assertFalse(result.isSuccessful());
+            assertEquals(Arrays.asList("Unable to write module: Stream closed"), result.getDiagnostics());
+        }
+    }
+
+    @Test
+    void sharedRuntimeIsImportedRatherThanIncluded() {
+        CompilerOptions options = new CompilerOptions();
+        options.setSharedRuntime(true);
+        CompilationResult result = createCompilation(options).compile();
+        assertTrue(result.isSuccessful());
+        assertTrue(result.getModuleText().contains("(import \"runtime\" \"alloc_object\""));
+        assertFalse(result.getModuleText().contains("(func $alloc_object"));
+
+        options.setOutputFormat(OutputFormat.WASM);
+        assertTrue(createCompilation(options).compile().isSuccessful());
+        byte[] runtime = Compilation.buildRuntimeModule(OutputFormat.WASM);
+        assertArrayEquals(new byte[] {0x00, 0x61, 0x73, 0x6D}, Arrays.copyOf(runtime, 4));
+    }
+
+    @Test
+    void intermediateRepresentationCompilesAndIsDumped() throws IOException {
+        File dump = File.createTempFile("javassembler", ".ir");
+        dump.deleteOnExit();
+        CompilerOptions options = new CompilerOptions();
+        options.setIRDumpFile(dump.getPath());
+        CompilationResult result = createCompilation(options).compile();
+        assertTrue(result.isSuccessful());
+        assertTrue(result.getModuleText().contains("(func $Main_unbox"));
+        String text = new String(Files.readAllBytes(dump.toPath()), StandardCharsets.UTF_8);
+        assertTrue(text.contains("function Main_unbox(i32 %0) -> i32 exported"));
+
+        options.setOutputFormat(OutputFormat.WASM);
+        options.setIRDumpFile(null);
+        options.setUseIR(true);
+        assertTrue(createCompilation(options).compile().isSuccessful());
+    }
+
+    @Test
+    void optimisationPassesAreTimed() {
+        CompilerOptions options = new CompilerOptions();
+        options.setOptimisationLevel(2);
+        CompilationResult result = createCompilation(options).compile();
+        assertTrue(result.isSuccessful());
+        assertTrue(result.getModuleText().contains("(func $Main_unbox"));
+        assertEquals(5, result.getTimings().getPasses().size());
+        assertEquals(1L, (long) result.getTimings().getPasses().get(0).getCounters().get("calls devirtualised"));
+        assertTrue(result.getTimings().formatAsJson().contains("\"name\": \"simplify-cfg\""));
+
+        assertTrue(createCompilation(OutputFormat.WAT).compile().getTimings().getPasses().isEmpty());
+    }
+
+    @Test
+    void intermediateRepresentationAfterAPassIsReturned() {
+        CompilerOptions options = new CompilerOptions();
+        options.setOptimisationLevel(1);
+        options.setPrintAfterPass("constant-fold");
+        CompilationResult result = createCompilation(options).compile();
+        assertTrue(result.isSuccessful());
+        assertTrue(result.getPrintedIR().contains("function Main_unbox(i32 %0) -> i32 exported"));
+
+        assertNull(createCompilation(OutputFormat.WAT).compile().getPrintedIR());
+    }
+
+    @Test
+    void codeUnreachableFromTheEntryPointsIsLeftOut() {
+        CompilerOptions options = new CompilerOptions();
+        options.setEntryPoints(Arrays.asList("Main.unbox"));
+        Compilation compilation = createCompilation(options);
+        compilation.addSource("Unused.java", "public class Unused { public static int f() { return 1; } }");
+        CompilationResult result = compilation.compile();
+        assertTrue(result.isSuccessful());
+        String text = result.getModuleText();
+        assertTrue(text.contains("(export \"Main_unbox\""));
+        assertTrue(text.contains("(func $Container_getValue"));
+        assertFalse(text.contains("(export \"Container_getValue\""));
+        assertFalse(text.contains("$Unused_f"));
+        assertEquals(1L, (long) result.getTimings().getCounts().get("methods removed"));
+
+        options.setEntryPoints(Arrays.asList("Main.missing"));
+        result = createCompilation(options).compile();
+        assertFalse(result.isSuccessful());
+        assertTrue(result.getDiagnostics().get(0).contains("Unknown entry point Main.missing"));
+    }
+
+    private static byte[] compileObjectModule(String[] names, String[] sources, byte[] objectModule)
+            throws IOException, InvalidObjectModuleException {
+        CompilerOptions options = new CompilerOptions();
+        options.setCompileOnly(true);
+        Compilation compilation = new Compilation(options);
+        for (int i = 0; i < names.length; i++) {
+            compilation.addSource(names[i], sources[i]);
+        }
+        if (objectModule != null) {
+            compilation.addObjectModule("library.jobj", new ByteArrayInputStream(objectModule));
+        }
+        CompilationResult result = compilation.compile();
+        assertTrue(result.isSuccessful());
+        return result.getModule();
+    }
+
+    @Test
+    void linkingObjectModulesGivesTheSameModule() throws IOException, InvalidObjectModuleException {
+        String expected = createCompilation(OutputFormat.WAT).compile().getModuleText();
+        byte[] library = compileObjectModule(new String[] {"Container.java", "Box.java"},
+                new String[] {CONTAINER_SOURCE, BOX_SOURCE}, null);
+        byte[] main = compileObjectModule(new String[] {"Main.java"}, new String[] {MAIN_SOURCE}, library);
+
+        Compilation compilation = new Compilation(new CompilerOptions());
+        compilation.addObjectModule("library.jobj", new ByteArrayInputStream(library));
+        compilation.addObjectModule("main.jobj", new ByteArrayInputStream(main));
+        CompilationResult result = compilation.compile();
+        assertTrue(result.isSuccessful());
+        assertEquals(expected, result.getModuleText());
+    }
+
+    @Test
+    void objectModuleCompiledAgainstChangedClassIsRejected() throws IOException, InvalidObjectModuleException {
+        byte[] library = compileObjectModule(new String[] {"Container.java", "Box.java"},
+                new String[] {CONTAINER_SOURCE, BOX_SOURCE}, null);
+        byte[] main = compileObjectModule(new String[] {"Main.java"}, new String[] {MAIN_SOURCE}, library);
+
+        Compilation compilation = new Compilation(new CompilerOptions());
+        compilation.addSource("Container.java", CONTAINER_SOURCE);
+        compilation.addSource("Box.java", BOX_SOURCE.replace("public int value;", "public long value;"));
+        compilation.addObjectModule("main.jobj", new ByteArrayInputStream(main));
+        CompilationResult result = compilation.compile();
+        assertFalse(result.isSuccessful());
+        assertTrue(result.getDiagnostics().get(0).contains("must be recompiled"));
+    }
+
+    @Test
+    void concurrentCompilationsAreIndependent() throws InterruptedException, ExecutionException {
+        String expected = createCompilation(OutputFormat.WAT).compile().getModuleText();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<CompilationResult>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> createCompilation(OutputFormat.WAT).compile()));
+            }
+            for (Future<CompilationResult> future : futures) {
+                CompilationResult result = future.get();
+                assertTrue(result.isSuccessful());
+                assertEquals(expected, result.getModuleText());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompilationTimingsTest {
+
+    /**
+     * Keeps allocated arrays reachable, so that the allocations cannot be
+     * optimised away
+     */
+    private static volatile Object sink;
+
+    @Test
+    void phasesAreRecordedAndFormatted() {
+        CompilationTimings timings = new CompilationTimings();
+        timings.startPhase("parse");
+        timings.endPhase(3, "files");
+        timings.startPhase("generate code");
+        timings.endPhase(7, "methods");
+        timings.setCount("generic instantiations", 2);
+
+        List<CompilationTimings.PhaseTiming> phases = timings.getPhases();
+        assertEquals(2, phases.size());
+        assertEquals("parse", phases.get(0).getName());
+        assertEquals(7, phases.get(1).getNumItems());
+        assertTrue(phases.get(0).getDurationNanos() >= 0);
+
+        String table = timings.formatAsTable();
+        assertTrue(table.contains("generate code"));
+        assertTrue(table.contains("generic instantiations: 2"));
+        String json = timings.formatAsJson();
+        assertTrue(json.contains("{\"name\": \"parse\""));
+        assertTrue(json.contains("\"items\": 7, \"itemKind\": \"methods\""));
+        assertTrue(json.contains("\"counts\": {\"generic instantiations\": 2}"));
+    }
+
+    @Test
+    void allocationIsMeasuredOnTheCompilingThread() {
+        CompilationTimings timings = new CompilationTimings();
+        timings.startPhase("allocate");
+        sink = new byte[8 << 20];
+        timings.endPhase(1, "arrays");
+        long allocatedBytes = timings.getPhases().get(0).getAllocatedBytes();
+        assertTrue(allocatedBytes == -1 || allocatedBytes >= 8 << 20);
+    }
+
+    @Test
+    void allocationByOtherThreadsIsNotCounted() throws InterruptedException {
+        CompilationTimings timings = new CompilationTimings();
+        timings.startPhase("idle");
+
+        // Another compilation allocates while this phase runs
+        Thread other = new Thread(() -> {
+            for (int i = 0; i < 16; i++) {
+                sink = new byte[4 << 20];
+            }
+        });
+        other.start();
+        other.join();
+
+        timings.endPhase(0, "items");
+        long allocatedBytes = timings.getPhases().get(0).getAllocatedBytes();
+        assertTrue(allocatedBytes < 4 << 20, "Counted " + allocatedBytes + " bytes from another thread");
+    }
+
+    @Test
+    void flightRecorderEventTypeIsCreatedWhenJfrIsAvailable() {
+        boolean jfrAvailable;
+        try {
+            Class.forName("jdk.jfr.EventFactory");
+            jfrAvailable = true;
+        } catch (ClassNotFoundException e) {
+            jfrAvailable = false;
+        }
+        assertEquals(jfrAvailable, CompilerPhaseEvent.isFlightRecorderAvailable());
+    }
+}
@@ -0,0 +1,88 @@
+package util;
+
+import ast.types.AccessModifier;
+import ast.types.JavaClass;
+import ast.types.PrimitiveType;
+import errors.DuplicateClassAttributeException;
+import errors.InvalidClassNameException;
+import errors.UndeclaredFunctionException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FunctionTableTest {
+
+    private static void register(FunctionTable functionTable, JavaClass javaClass, String functionName) {
+        functionTable.registerFunction(javaClass, functionName, Collections.emptyList(),
+                PrimitiveType.Int, false, AccessModifier.PUBLIC);
+    }
+
+    private static List<String> describe(FunctionTable functionTable) {
+        List<String> descriptions = new ArrayList<>();
+        for (FunctionTableEntry entry : functionTable.getFunctions()) {
+            descriptions.add(entry.getIndex() + " " + entry.getContainingClass() + "." + entry.getFunctionName());
+        }
+        return descriptions;
+    }
+
+    @Test
+    void sortingGivesTheSameIndicesWhateverTheRegistrationOrder() throws DuplicateClassAttributeException {
+        JavaClass main = new JavaClass("Main", Collections.emptyList(), null);
+        JavaClass first = new JavaClass("First", Collections.emptyList(), null);
+        JavaClass second = new JavaClass("Second", Collections.emptyList(), null);
+        List<JavaClass> classOrder = Arrays.asList(first, second);
+
+        // Two threads that built the ASTs for First and Second interleaved
+        // their registrations differently
+        FunctionTable oneOrder = new FunctionTable();
+        register(oneOrder, main, "main");
+        register(oneOrder, first, "a");
+        register(oneOrder, second, "c");
+        register(oneOrder, first, "b");
+        register(oneOrder, second, "d");
+        oneOrder.sortFunctionsByClass(1, classOrder);
+
+        FunctionTable otherOrder = new FunctionTable();
+        register(otherOrder, main, "main");
+        register(otherOrder, second, "c");
+        register(otherOrder, second, "d");
+        register(otherOrder, first, "a");
+        register(otherOrder, first, "b");
+        otherOrder.sortFunctionsByClass(1, classOrder);
+
+        List<String> expected = Arrays.asList("0 Main.main", "1 First.a", "2 First.b", "3 Second.c", "4 Second.d");
+        assertEquals(expected, describe(oneOrder));
+        assertEquals(expected, describe(otherOrder));
+    }
+
+    @Test
+    void overloadsAreLookedUpByClassNameAndParameterTypes()
+            throws DuplicateClassAttributeException, UndeclaredFunctionException, InvalidClassNameException {
+        JavaClass maths = new JavaClass("Maths", Collections.emptyList(), null);
+        JavaClass other = new JavaClass("Other", Collections.emptyList(), null);
+        FunctionTable functionTable = new FunctionTable();
+        FunctionTableEntry absInt = functionTable.registerFunction(maths, "abs",
+                Collections.singletonList(PrimitiveType.Int), PrimitiveType.Int, true, AccessModifier.PUBLIC);
+        FunctionTableEntry absLong = functionTable.registerFunction(maths, "abs",
+                Collections.singletonList(PrimitiveType.Long), PrimitiveType.Long, true, AccessModifier.PUBLIC);
+        FunctionTableEntry otherAbs = functionTable.registerFunction(other, "abs",
+                Collections.singletonList(PrimitiveType.Int), PrimitiveType.Int, true, AccessModifier.PUBLIC);
+
+        assertSame(absInt, functionTable.lookupFunction(maths, "abs", Collections.singletonList(PrimitiveType.Int)));
+        assertSame(absLong, functionTable.lookupFunction(maths, "abs", Collections.singletonList(PrimitiveType.Long)));
+        assertSame(otherAbs, functionTable.lookupFunction(other, "abs", Collections.singletonList(PrimitiveType.Int)));
+        assertThrows(UndeclaredFunctionException.class,
+                () -> functionTable.lookupFunction(other, "abs", Collections.singletonList(PrimitiveType.Long)));
+        assertThrows(UndeclaredFunctionException.class,
+                () -> functionTable.lookupFunction(maths, "functionNameThatIsNeverDeclared", Collections.emptyList()));
+
+        JavaClass empty = new JavaClass("ClassWithNoFunctions", Collections.emptyList(), null);
+        assertThrows(InvalidClassNameException.class,
+                () -> functionTable.lookupFunction(empty, "abs", Collections.singletonList(PrimitiveType.Int)));
+    }
+}
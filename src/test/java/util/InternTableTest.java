@@ -0,0 +1,74 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InternTableTest {
+
+    @Test
+    void idsAreDenseAndStable() {
+        InternTable table = new InternTable();
+        assertEquals(0, table.intern("x"));
+        assertEquals(1, table.intern("y"));
+        assertEquals(0, table.intern("x"));
+        assertEquals(2, table.size());
+        assertEquals("y", table.getString(1));
+    }
+
+    @Test
+    void lookupDoesNotIntern() {
+        InternTable table = new InternTable();
+        assertEquals(InternTable.NOT_INTERNED, table.lookup("x"));
+        assertEquals(0, table.size());
+        int id = table.intern("x");
+        assertEquals(id, table.lookup("x"));
+    }
+
+    @Test
+    void unsharedIdsAreDistinctAndOutsideTheArray() {
+        InternTable table = new InternTable();
+        int first = table.newId();
+        int second = table.newId();
+        assertNotEquals(first, second);
+        assertTrue(first < 0 && second < 0);
+        assertNotEquals(InternTable.NOT_INTERNED, first);
+        assertNull(table.getString(first));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    void concurrentInterningGivesEachStringOneId() throws InterruptedException, ExecutionException {
+        InternTable table = new InternTable();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<int[]>> results = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                results.add(executor.submit(() -> {
+                    int[] ids = new int[1000];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = table.intern("name" + i);
+                    }
+                    return ids;
+                }));
+            }
+            int[] expected = results.get(0).get();
+            for (Future<int[]> result : results) {
+                assertArrayEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1000, table.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("name" + i, table.getString(table.lookup("name" + i)));
+        }
+    }
+}
@@ -1,55 +1,99 @@
 package util;
 
+import ast.types.ItemArray;
+import ast.types.JavaClass;
+import ast.types.PrimitiveType;
+import ast.types.Type;
+import errors.DuplicateClassAttributeException;
 import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.*;
 
 class LookupTreeTest {
 
     @Test
     void emptyLookupTree() {
-        LookupTree<Void, Void> lookupTree = new LookupTree<>();
+        LookupTree<Void> lookupTree = new LookupTree<>();
         assertEquals(0, lookupTree.getCount());
     }
 
     @Test
     void lookupTreeZeroPathLength() {
-        LookupTree<Integer, Integer> lookupTree = new LookupTree<>();
-        lookupTree.insert(Collections.emptyList(), 10);
+        LookupTree<Integer> lookupTree = new LookupTree<>();
+        lookupTree.insert(new int[0], 10);
         assertEquals(1, lookupTree.getCount());
-        int value = lookupTree.lookup(Collections.emptyList());
+        int value = lookupTree.lookup(new int[0]);
         assertEquals(10, value);
     }
 
     @Test
     void lookupTreeOnePathLength() {
-        LookupTree<Integer, Integer> lookupTree = new LookupTree<>();
-        lookupTree.insert(Collections.singletonList(1), 10);
+        LookupTree<Integer> lookupTree = new LookupTree<>();
+        lookupTree.insert(new int[] {1}, 10);
         assertEquals(1, lookupTree.getCount());
-        int value = lookupTree.lookup(Collections.singletonList(1));
+        int value = lookupTree.lookup(new int[] {1});
         assertEquals(10, value);
     }
 
     @Test
     void lookupTreeSeveralPathLength() {
-        LookupTree<Integer, Integer> lookupTree = new LookupTree<>();
-        lookupTree.insert(Arrays.asList(1, 2, 3), 10);
+        LookupTree<Integer> lookupTree = new LookupTree<>();
+        lookupTree.insert(new int[] {1, 2, 3}, 10);
         assertEquals(1, lookupTree.getCount());
-        int value = lookupTree.lookup(Arrays.asList(1, 2, 3));
+        int value = lookupTree.lookup(new int[] {1, 2, 3});
         assertEquals(10, value);
     }
 
     @Test
     void lookupTreeBadPath() {
-        LookupTree<Integer, Integer> lookupTree = new LookupTree<>();
-        lookupTree.insert(Collections.singletonList(1), 10);
+        LookupTree<Integer> lookupTree = new LookupTree<>();
+        lookupTree.insert(new int[] {1}, 10);
         assertEquals(1, lookupTree.getCount());
-        Integer value = lookupTree.lookup(Collections.singletonList(2));
+        Integer value = lookupTree.lookup(new int[] {2});
         assertNull(value);
     }
 
-}
\ No newline at end of file
+    @Test
+    void lookupTreeManyBranches() {
+        // Insert the edges out of order so that they have to be kept sorted
+        LookupTree<Integer> lookupTree = new LookupTree<>();
+        for (int i = 0; i < 100; i++) {
+            int edge = (i * 37) % 100;
+            assertTrue(lookupTree.insert(new int[] {edge, -edge}, edge));
+        }
+        assertFalse(lookupTree.insert(new int[] {50, -50}, 0));
+        assertEquals(100, lookupTree.getCount());
+        for (int edge = 0; edge < 100; edge++) {
+            assertEquals(edge, (int) lookupTree.lookup(new int[] {edge, -edge}));
+        }
+        assertNull(lookupTree.lookup(new int[] {50}));
+        assertNull(lookupTree.lookup(new int[] {100, -100}));
+    }
+
+    @Test
+    void overloadsAreFoundByTypeAndName() throws DuplicateClassAttributeException {
+        JavaClass shape = new JavaClass("Shape", Collections.emptyList(), null);
+        List<Type> intAndShape = Arrays.asList(PrimitiveType.Int, shape);
+        List<Type> shapeArray = Collections.singletonList(new ItemArray(shape));
+        int area = InternTable.IDENTIFIERS.intern("area");
+        int scale = InternTable.IDENTIFIERS.intern("scale");
+
+        LookupTree<String> lookupTree = new LookupTree<>();
+        lookupTree.insert(LookupTree.getEdges(area, intAndShape), "area(int, Shape)");
+        lookupTree.insert(LookupTree.getEdges(area, shapeArray), "area(Shape[])");
+        lookupTree.insert(LookupTree.getEdges(scale, intAndShape), "scale(int, Shape)");
+
+        // Equal types built separately lead to the same entries
+        JavaClass sameShape = new JavaClass("Shape", Collections.emptyList(), null);
+        assertEquals("area(int, Shape)", lookupTree.lookup(area, Arrays.asList(PrimitiveType.Int, sameShape)));
+        assertEquals("area(Shape[])", lookupTree.lookup(area, Collections.singletonList(new ItemArray(sameShape))));
+        assertEquals("scale(int, Shape)", lookupTree.lookup(scale, intAndShape));
+        assertNull(lookupTree.lookup(scale, shapeArray));
+        assertNull(lookupTree.lookup(area, Arrays.asList(PrimitiveType.Long, shape)));
+    }
+
+}
@@ -0,0 +1,70 @@
+package util;
+
+import ast.types.GenericInstantiation;
+import errors.InvalidObjectModuleException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectModuleTest {
+
+    private static byte[] writeModule() throws IOException {
+        ObjectModule module = new ObjectModule();
+        module.addExport("Box", "Box.java", "public class Box {\n    public int value;\n}");
+        module.addImport("Container", "0123abcd");
+        module.addSymbol("Box_getValue", "Box.getValue()");
+        module.addMethod("Box", Collections.singletonList(
+                new GenericInstantiation("Container", Arrays.asList("Box"))), "(func $Box_getValue)");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        module.write(output);
+        return output.toByteArray();
+    }
+
+    private static ObjectModule read(byte[] bytes) throws IOException, InvalidObjectModuleException {
+        return ObjectModule.read("test.jobj", new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    void moduleIsReadBack() throws IOException, InvalidObjectModuleException {
+        ObjectModule module = read(writeModule());
+        assertEquals("Box", module.getExports().get(0).getClassName());
+        assertEquals("0123abcd", module.getImports().get("Container"));
+        assertEquals("Box.getValue()", module.getSymbols().get("Box_getValue"));
+        assertEquals("(func $Box_getValue)", module.getMethods().get(0).getCode());
+    }
+
+    @Test
+    void emptyFileIsRejected() {
+        InvalidObjectModuleException e = assertThrows(InvalidObjectModuleException.class,
+                () -> read(new byte[0]));
+        assertEquals("test.jobj is not an object module", e.getMessage());
+    }
+
+    @Test
+    void truncatedModuleIsRejected() throws IOException {
+        byte[] bytes = writeModule();
+        String header = new String(bytes, StandardCharsets.UTF_8).split("\n")[0];
+        assertThrows(InvalidObjectModuleException.class,
+                () -> read(Arrays.copyOf(bytes, header.length())));
+
+        // Cutting the module anywhere must give an error rather than a crash,
+        // although a module cut between two entries is still valid
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            try {
+                read(truncated);
+            } catch (InvalidObjectModuleException e) {
+                continue;
+            } catch (RuntimeException e) {
+                fail("Reading the first " + length + " bytes threw " + e);
+            }
+        }
+    }
+}